@@ -0,0 +1,207 @@
+package it.unipv.db;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool limitato di connessioni al database, aperte tramite il DBBackend scelto all'avvio.
+ * Il sito remotemysql mette a disposizione un numero limitato di connessioni: il pool ne apre al massimo maxSize,
+ *     solo quando servono, e le riutilizza. Se sono tutte in uso, chi ne chiede una attende fino al timeout.
+ * Una connessione rimasta inutilizzata per più di DBPOOLVALIDATIONINTERVAL millisecondi viene validata
+ *     prima di essere prestata; se non è più valida viene scartata e sostituita.
+ * Ogni connessione mantiene una cache LRU dei propri PreparedStatement: i contatori di hit e miss sono aggregati sul pool.
+ */
+public class ConnectionPool implements ConnectionProvider {
+    private final BlockingDeque<DBConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final List<DBConnection> allConnections = new ArrayList<>();
+    private final DBBackend backend;
+    private final Semaphore permits;
+    private final int maxSize;
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final List<Runnable> closeListeners = new ArrayList<>();
+    private boolean closing = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Crea il pool con la dimensione massima di default (DataReferences.DBPOOLMAXSIZE).
+     * @param backend -> il database a cui aprire le connessioni.
+     */
+    public ConnectionPool(DBBackend backend) { this(backend, DataReferences.DBPOOLMAXSIZE); }
+
+    /**
+     * Crea il pool.
+     * @param backend -> il database a cui aprire le connessioni;
+     * @param maxSize -> numero massimo di connessioni aperte contemporaneamente.
+     */
+    public ConnectionPool(DBBackend backend, int maxSize) {
+        if(maxSize <= 0) {
+            throw new ApplicationException("La dimensione del pool deve essere positiva: " + maxSize);
+        }
+        this.backend = backend;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Presta una connessione in uso esclusivo: va restituita chiudendola.
+     * @return -> una connessione valida, riutilizzata o appena aperta.
+     */
+    @Override
+    public DBConnection borrowConnection() {
+        if(closed) {
+            throw new ApplicationException("Il pool di connessioni è stato chiuso");
+        }
+        acquirePermit();
+        try {
+            DBConnection res;
+            while((res = idleConnections.pollFirst()) != null) {
+                if(isStillValid(res)) {
+                    res.setBorrowed(true);
+                    return res;
+                }
+                discard(res);
+            }
+            Connection connection = backend.openConnection();
+            res = new DBConnection(this, connection, new PreparedStatementCache( connection
+                                                                                 , DataReferences.DBSTATEMENTCACHESIZE
+                                                                                 , statementCacheHits
+                                                                                 , statementCacheMisses));
+            synchronized (allConnections) { allConnections.add(res); }
+            res.setBorrowed(true);
+            return res;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Restituisce una connessione al pool, riportandola in auto-commit se chi l'ha usata lo aveva disattivato.
+     * @param toRelease -> la connessione da restituire.
+     */
+    @Override
+    public void releaseConnection(DBConnection toRelease) {
+        if(!toRelease.isBorrowed()) { return; }
+        toRelease.setBorrowed(false);
+        try {
+            if(closed || !resetState(toRelease)) {
+                discard(toRelease);
+            } else {
+                idleConnections.offerFirst(toRelease);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Esegue le azioni registrate con addCloseListener e chiude tutte le connessioni inattive;
+     *     quelle ancora in uso vengono chiuse alla restituzione.
+     * Le azioni vengono eseguite prima di chiudere il pool, quindi possono ancora usarne le connessioni.
+     */
+    @Override
+    public void close() {
+        synchronized (closeListeners) {
+            if(closing) { return; }
+            closing = true;
+        }
+        Runnable listener;
+        while((listener = pollCloseListener()) != null) {
+            listener.run();
+        }
+        DBConnection toClose;
+        while((toClose = idleConnections.pollFirst()) != null) {
+            discard(toClose);
+        }
+    }
+
+    //Quando non ci sono più azioni da eseguire il pool risulta chiuso: un'azione registrata nel frattempo viene comunque eseguita
+    private Runnable pollCloseListener() {
+        synchronized (closeListeners) {
+            if(closeListeners.isEmpty()) {
+                closed = true;
+                return null;
+            }
+            return closeListeners.remove(0);
+        }
+    }
+
+    @Override
+    public void addCloseListener(Runnable listener) {
+        synchronized (closeListeners) {
+            if(!closed) {
+                closeListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    public int getMaxSize() { return maxSize; }
+
+    public int getOpenConnections() {
+        synchronized (allConnections) { return allConnections.size(); }
+    }
+
+    public int getIdleConnections() { return idleConnections.size(); }
+
+    /** Numero di PreparedStatement riutilizzati dalle cache delle connessioni. */
+    public long getStatementCacheHits() { return statementCacheHits.sum(); }
+
+    /** Numero di PreparedStatement che è stato necessario preparare (e quindi far analizzare al server). */
+    public long getStatementCacheMisses() { return statementCacheMisses.sum(); }
+
+    private void acquirePermit() {
+        try {
+            if(!permits.tryAcquire(DataReferences.DBPOOLBORROWTIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new ApplicationException("Nessuna connessione al Database disponibile entro " + DataReferences.DBPOOLBORROWTIMEOUT + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApplicationException("Interrotto durante l'attesa di una connessione al Database", e);
+        }
+    }
+
+    private boolean isStillValid(DBConnection toCheck) {
+        if(toCheck.getIdleTime() < DataReferences.DBPOOLVALIDATIONINTERVAL) { return true; }
+        try {
+            return toCheck.getConnection().isValid(DataReferences.DBPOOLVALIDATIONTIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean resetState(DBConnection toReset) {
+        try {
+            Connection c = toReset.getConnection();
+            if(c.isClosed()) { return false; }
+            if(!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(DBConnection toDiscard) {
+        synchronized (allConnections) { allConnections.remove(toDiscard); }
+        try {
+            toDiscard.closePhysically();
+        } catch (ApplicationException ignored) {
+            //La connessione viene comunque abbandonata
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package it.unipv.db;
+
+/**
+ * Astrazione del fornitore di connessioni al database.
+ * Ogni DAO richiede una connessione con borrowConnection() e la restituisce chiudendola (o con releaseConnection()):
+ *     in questo modo pannelli indipendenti possono interrogare il database in parallelo,
+ *     ognuno con il proprio Statement e i propri ResultSet.
+ */
+public interface ConnectionProvider {
+    DBConnection borrowConnection();
+    void releaseConnection(DBConnection toRelease);
+    void close();
+
+    /**
+     * Registra un'azione da eseguire alla chiusura del fornitore, ad esempio per eliminare le cache legate ad esso.
+     *     Se il fornitore è già stato chiuso l'azione viene eseguita subito.
+     * @param listener -> l'azione da eseguire.
+     */
+    void addCloseListener(Runnable listener);
+}
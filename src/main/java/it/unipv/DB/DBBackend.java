@@ -0,0 +1,13 @@
+package it.unipv.db;
+
+import java.sql.Connection;
+
+/**
+ * Rappresenta il motore di database a cui il ConnectionPool apre le connessioni fisiche.
+ * Il backend viene scelto all'avvio (vedi DataReferences.DBBACKEND):
+ *     RemoteDBBackend -> il database mysql hostato su remotemysql.com;
+ *     EmbeddedDBBackend -> un database H2 in-process, con lo schema creato automaticamente.
+ */
+public interface DBBackend {
+    Connection openConnection();
+}
@@ -1,47 +1,36 @@
 package it.unipv.db;
 
 import it.unipv.utils.ApplicationException;
-import it.unipv.utils.DataReferences;
 
 import java.sql.*;
 
 /**
- * Questa classe viene invocata all'apertura del programma e viene utilizzata per stabilire una connessione con
- *    il database mysql hostato su remotemysql. La connessione viene poi chiusa una volta chiuso il programma:
- *    questo perché il sito da a disposizione un numero limitato di connessioni e di richieste e, pertanto, è meglio
- *    condividere una singola connessione con tutte le classi, piuttosto che aprirla e chiuderla continuamente.
- * Infine, la logica di base del programma viene gestito tutto in locale, sempre per evitare attese infinite
- *    per eventuali richiami di select (con join) tra tabelle per il recupero di dati.
+ * Questa classe rappresenta una singola connessione fisica al database, prestata da un ConnectionProvider.
+ * Chi la ottiene con borrowConnection() ne ha l'uso esclusivo fino alla chiusura: close() non chiude la connessione
+ *     fisica, ma la restituisce al provider, che potrà prestarla ad altri.
+ * Va quindi usata sempre all'interno di un try-with-resources, in modo che venga restituita anche in caso di errore.
  */
-public class DBConnection {
-    private Connection connection = null;
+public class DBConnection implements AutoCloseable {
+    private ConnectionProvider provider;
+    private Connection connection;
+    private PreparedStatementCache statementCache;
     private Statement statement = null;
-    private ResultSet resultSet = null;
+    private boolean borrowed = false;
+    private long lastReleaseTime = System.currentTimeMillis();
 
-    /**
-     * Permette la connessione al database mysql hostato su remotemysql.com.
-     */
-    public DBConnection() { connect(); }
-
-    private void connect(){
-        try {
-            connection = DriverManager.getConnection("jdbc:mysql://remotemysql.com?" + "user=" + DataReferences.DBNAME + "&password=" + DataReferences.DBPASS);
-            statement = connection.createStatement();
-        } catch (SQLException e) {
-            throw new ApplicationException("Errore durante la connessione al Database", e);
-        }
+    DBConnection(ConnectionProvider provider, Connection connection, PreparedStatementCache statementCache) {
+        this.provider = provider;
+        this.connection = connection;
+        this.statementCache = statementCache;
     }
 
     /**
-     * Permette la chiusura della connessione al database, se esistente.
+     * Restituisce la connessione al provider da cui è stata ottenuta.
      */
+    @Override
     public void close() {
-        try {
-            if (connection != null) { connection.close(); }
-            if (statement != null) { statement.close(); }
-            if (resultSet != null) { resultSet.close(); }
-        } catch (SQLException e) {
-            throw new ApplicationException("Errore durante la chiusura della connessione al Database", e);
+        if(borrowed) {
+            provider.releaseConnection(this);
         }
     }
 
@@ -52,15 +41,36 @@ public class DBConnection {
      */
     public ResultSet getResultFromQuery(String query) {
         try {
+            if(statement == null) { statement = connection.createStatement(); }
             return statement.executeQuery(query);
         } catch (SQLException e) {
             throw new ApplicationException("Errore durante l'esecuzione della query", e);
         }
     }
 
+    /**
+     * Ritorna il PreparedStatement della query, riutilizzando quello già preparato su questa connessione se presente.
+     * Lo statement va chiuso a fine utilizzo: la chiusura lo rimette a disposizione nella cache.
+     * @param query -> query da preparare, con i valori passati come parametri (?) e non concatenati.
+     * @return -> il PreparedStatement della query.
+     */
     public PreparedStatement getPreparedStatementFromQuery(String query) {
         try{
-            return connection.prepareStatement(query);
+            return statementCache.prepare(query);
+        } catch (SQLException e) {
+            throw new ApplicationException("Errore durante l'esecuzione della query", e);
+        }
+    }
+
+    /**
+     * Ritorna un PreparedStatement che rende disponibili le chiavi generate dal database (getGeneratedKeys).
+     * Questi statement non passano dalla cache: vanno chiusi a fine utilizzo come gli altri.
+     * @param query -> query di inserimento da preparare.
+     * @return -> il PreparedStatement della query.
+     */
+    public PreparedStatement getPreparedStatementReturningKeys(String query) {
+        try{
+            return connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
         } catch (SQLException e) {
             throw new ApplicationException("Errore durante l'esecuzione della query", e);
         }
@@ -68,4 +78,36 @@ public class DBConnection {
 
     public Connection getConnection() { return this.connection; }
 
+    /**
+     * Ritorna i segnaposto di una condizione IN con il numero di parametri indicato, ad esempio "(?,?,?)".
+     * @param count -> il numero di parametri, almeno 1.
+     * @return -> i segnaposto da concatenare alla query.
+     */
+    public static String getInPlaceholders(int count) {
+        StringBuilder res = new StringBuilder("(");
+        for(int i = 0; i < count; i++) {
+            res.append(i == 0 ? "?" : ",?");
+        }
+        return res.append(")").toString();
+    }
+
+    boolean isBorrowed() { return borrowed; }
+
+    void setBorrowed(boolean borrowed) {
+        this.borrowed = borrowed;
+        if(!borrowed) { lastReleaseTime = System.currentTimeMillis(); }
+    }
+
+    long getIdleTime() { return System.currentTimeMillis() - lastReleaseTime; }
+
+    //Chiude realmente la connessione fisica: viene richiamato solo dal provider.
+    void closePhysically() {
+        try {
+            statementCache.clear();
+            if (statement != null) { statement.close(); }
+            if (connection != null) { connection.close(); }
+        } catch (SQLException e) {
+            throw new ApplicationException("Errore durante la chiusura della connessione al Database", e);
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package it.unipv.db;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Backend che avvia un database H2 in-process, in modalità compatibile con MySQL:
+ *     in questo modo il programma e i test possono funzionare senza rete, con latenze locali.
+ * Lo schema non viene creato qui: come per il database remoto, ci pensa lo SchemaMigrator.
+ */
+public class EmbeddedDBBackend implements DBBackend {
+    private final String url;
+
+    /**
+     * @param url -> url JDBC del database H2 (es.: jdbc:h2:./data/db/goldenmoviestudio oppure jdbc:h2:mem:test),
+     *               a cui vengono aggiunte le opzioni di compatibilità di DataReferences.EMBEDDEDDBOPTIONS.
+     */
+    public EmbeddedDBBackend(String url) {
+        this.url = url + DataReferences.EMBEDDEDDBOPTIONS;
+    }
+
+    @Override
+    public Connection openConnection() {
+        try {
+            return DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            throw new ApplicationException("Errore durante la connessione al Database embedded", e);
+        }
+    }
+}
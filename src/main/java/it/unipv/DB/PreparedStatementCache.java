@@ -0,0 +1,153 @@
+package it.unipv.db;
+
+import it.unipv.utils.ApplicationException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU dei PreparedStatement di una singola connessione, indicizzata per testo della query.
+ * Il PreparedStatement restituito è un involucro: la sua close() non chiude lo statement reale, ma ne azzera
+ *     parametri, batch e warning, chiude l'eventuale ResultSet rimasto aperto e lo rende di nuovo disponibile;
+ *     in questo modo i DAO possono continuare ad usare il try-with-resources.
+ * Quando la cache supera maxSize, lo statement usato meno di recente viene chiuso realmente; se in quel momento è in uso,
+ *     viene chiuso al rilascio.
+ * Non è thread-safe: la connessione a cui appartiene è in uso esclusivo di chi l'ha ottenuta dal pool.
+ */
+class PreparedStatementCache {
+    private final Connection connection;
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, CachedStatement> cache;
+
+    /**
+     * @param connection -> la connessione a cui appartengono gli statement;
+     * @param maxSize -> numero massimo di statement mantenuti aperti;
+     * @param hits -> contatore (condiviso dal pool) degli statement trovati in cache;
+     * @param misses -> contatore (condiviso dal pool) degli statement che è stato necessario preparare.
+     */
+    PreparedStatementCache(Connection connection, int maxSize, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if(size() > PreparedStatementCache.this.maxSize && !eldest.getValue().inUse) {
+                    eldest.getValue().doClose();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Ritorna lo statement della query, preparandolo solamente se non è già presente in cache.
+     * Se lo statement in cache è già in uso (stessa query aperta due volte), ne viene preparato uno non condiviso.
+     * @param query -> la query da preparare.
+     * @return -> il PreparedStatement da chiudere a fine utilizzo.
+     */
+    PreparedStatement prepare(String query) throws SQLException {
+        CachedStatement cached = cache.get(query);
+        if(cached != null && !cached.inUse && !cached.statement.isClosed()) {
+            hits.increment();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        misses.increment();
+        if(cached != null && cached.inUse) {
+            return connection.prepareStatement(query);
+        }
+
+        cached = new CachedStatement(query, connection.prepareStatement(query));
+        cached.inUse = true;
+        cache.put(query, cached);
+        return cached.proxy;
+    }
+
+    int size() { return cache.size(); }
+
+    /** Chiude realmente tutti gli statement in cache. */
+    void clear() {
+        Iterator<CachedStatement> it = cache.values().iterator();
+        while(it.hasNext()) {
+            it.next().doClose();
+            it.remove();
+        }
+    }
+
+    //Uno statement lasciato a metà da un errore (batch in coda, ResultSet aperto) non deve arrivare al prossimo utilizzatore
+    private void release(CachedStatement toRelease) {
+        try {
+            ResultSet resultSet = toRelease.statement.getResultSet();
+            if(resultSet != null) {
+                resultSet.close();
+            }
+            toRelease.statement.clearParameters();
+            toRelease.statement.clearBatch();
+            toRelease.statement.clearWarnings();
+            toRelease.inUse = false;
+        } catch (SQLException e) {
+            cache.remove(toRelease.query);
+            toRelease.doClose();
+        }
+        evictExceeding();
+    }
+
+    //Gli statement in uso non possono essere chiusi da removeEldestEntry: vengono rimossi qui, quando tornano liberi
+    private void evictExceeding() {
+        Iterator<CachedStatement> it = cache.values().iterator();
+        while(cache.size() > maxSize && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            if(!eldest.inUse) {
+                eldest.doClose();
+                it.remove();
+            }
+        }
+    }
+
+    private class CachedStatement {
+        private final String query;
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse = false;
+
+        CachedStatement(String query, PreparedStatement statement) {
+            this.query = query;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance( PreparedStatement.class.getClassLoader()
+                                                                   , new Class<?>[] { PreparedStatement.class }
+                                                                   , (p, method, args) -> {
+                if(method.getName().equals("close") && method.getParameterCount() == 0) {
+                    release(this);
+                    return null;
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private void doClose() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                throw new ApplicationException("Errore durante la chiusura di uno statement in cache", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package it.unipv.db;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Backend che si collega al database mysql hostato su remotemysql.com, le cui tabelle devono già esistere.
+ */
+public class RemoteDBBackend implements DBBackend {
+
+    @Override
+    public Connection openConnection() {
+        try {
+            return DriverManager.getConnection("jdbc:mysql://remotemysql.com?" + "user=" + DataReferences.DBNAME + "&password=" + DataReferences.DBPASS + "&useServerPrepStmts=true");
+        } catch (SQLException e) {
+            throw new ApplicationException("Errore durante la connessione al Database", e);
+        }
+    }
+}
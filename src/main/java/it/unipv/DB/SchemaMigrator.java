@@ -0,0 +1,239 @@
+package it.unipv.db;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classe che porta lo schema del database all'ultima versione, applicando in ordine gli script di migrazione
+ *     presenti in resources/db/migration ed elencati in DataReferences.DBMIGRATIONS (nome nel formato V<versione>__<descrizione>.sql).
+ * Le versioni applicate vengono registrate nella tabella SCHEMA_VERSION insieme al checksum (SHA-256) dello script:
+ *     uno script già applicato non deve più essere modificato, altrimenti la migrazione si interrompe con errore.
+ * Gli script devono essere compatibili sia con MySQL sia con H2 in modalità MySQL.
+ * Più postazioni avviate insieme non applicano due volte lo stesso script: la migrazione avviene tenendo bloccata
+ *     (SELECT ... FOR UPDATE) l'unica riga di SCHEMA_LOCK, e le versioni applicate vengono lette solo dopo aver ottenuto il blocco.
+ *     Il blocco è tenuto da una seconda connessione, perché le istruzioni DDL su MySQL concludono la transazione in corso:
+ *     il pool deve quindi poter fornire almeno due connessioni.
+ */
+public class SchemaMigrator {
+    private static final String METADATATABLE = "SCHEMA_VERSION";
+    private static final String LOCKTABLE = "SCHEMA_LOCK";
+
+    private final ConnectionProvider connectionProvider;
+    private final String location;
+    private final List<String> scripts;
+    private final int baselineVersion;
+
+    /**
+     * Costruttore che utilizza gli script e la versione di partenza definiti in DataReferences.
+     * @param connectionProvider -> il pool di connessioni al database da migrare.
+     */
+    public SchemaMigrator(ConnectionProvider connectionProvider) {
+        this(connectionProvider, "/db/migration/", DataReferences.DBMIGRATIONS, DataReferences.DBMIGRATIONBASELINE);
+    }
+
+    /**
+     * @param connectionProvider -> il pool di connessioni al database da migrare;
+     * @param location -> la cartella delle risorse che contiene gli script;
+     * @param scripts -> i nomi degli script, in ordine di versione;
+     * @param baselineVersion -> se SCHEMA_VERSION è vuota, le versioni fino a questa vengono registrate senza eseguirle
+     *                           (database già allineato a mano prima dell'introduzione delle migrazioni); 0 per eseguirle tutte.
+     */
+    public SchemaMigrator(ConnectionProvider connectionProvider, String location, List<String> scripts, int baselineVersion) {
+        this.connectionProvider = connectionProvider;
+        this.location = location;
+        this.scripts = scripts;
+        this.baselineVersion = baselineVersion;
+    }
+
+    /**
+     * Applica tutte le migrazioni non ancora registrate nel database.
+     * @return -> il numero di migrazioni eseguite.
+     */
+    public int migrate() {
+        try (DBConnection lockConnection = connectionProvider.borrowConnection()) {
+            createMetadataTableIfNeeded(lockConnection.getConnection());
+            lockConnection.getConnection().setAutoCommit(false);
+            try {
+                acquireLock(lockConnection.getConnection());
+                try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+                    return doMigrate(dbConnection.getConnection());
+                }
+            } finally {
+                lockConnection.getConnection().rollback();
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException("Errore durante la migrazione dello schema del database", e);
+        }
+    }
+
+    //Le versioni vengono lette dopo aver ottenuto il blocco: includono quelle applicate da chi lo teneva prima
+    private int doMigrate(Connection connection) throws SQLException {
+        Map<Integer, String> applied = retrieveAppliedVersions(connection);
+
+        int executed = 0;
+        int lastVersion = 0;
+        for(String script : scripts) {
+            int version = getVersion(script);
+            if(version <= lastVersion) {
+                throw new ApplicationException("Lo script " + script + " non rispetta l'ordine delle versioni");
+            }
+            lastVersion = version;
+
+            String content = readScript(script);
+            String checksum = getChecksum(content);
+            if(applied.containsKey(version)) {
+                if(!applied.get(version).equals(checksum)) {
+                    throw new ApplicationException("Lo script " + script + " è stato modificato dopo essere stato applicato");
+                }
+            } else if(applied.isEmpty() && version <= baselineVersion) {
+                recordVersion(connection, version, script, checksum);
+            } else {
+                executeScript(connection, content);
+                recordVersion(connection, version, script, checksum);
+                executed++;
+            }
+        }
+        return executed;
+    }
+
+    private void createMetadataTableIfNeeded(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA IF NOT EXISTS " + DataReferences.DBNAME);
+            statement.execute( "CREATE TABLE IF NOT EXISTS " + DataReferences.DBNAME + "." + METADATATABLE + " ("
+                             + "VERSION INT NOT NULL PRIMARY KEY, "
+                             + "SCRIPT VARCHAR(200) NOT NULL, "
+                             + "CHECKSUM VARCHAR(64) NOT NULL, "
+                             + "APPLIED_ON TIMESTAMP NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + DataReferences.DBNAME + "." + LOCKTABLE + " (ID INT NOT NULL PRIMARY KEY)");
+            statement.execute("INSERT INTO " + DataReferences.DBNAME + "." + LOCKTABLE + " (ID) values (1) ON DUPLICATE KEY UPDATE ID = ID");
+        }
+    }
+
+    //Attende che le altre postazioni abbiano finito di migrare: dopo un timeout del database si riprova, fino a DBMIGRATIONLOCKWAIT
+    private void acquireLock(Connection connection) throws SQLException {
+        long deadline = System.currentTimeMillis() + DataReferences.DBMIGRATIONLOCKWAIT;
+        while(true) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT ID FROM " + DataReferences.DBNAME + "." + LOCKTABLE + " WHERE ID = 1 FOR UPDATE")) {
+                resultSet.next();
+                return;
+            } catch (SQLException e) {
+                if(!isLockTimeout(e) || System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    //1205: lock wait timeout di MySQL; HYT00: timeout di H2
+    private boolean isLockTimeout(SQLException e) {
+        return e.getErrorCode() == 1205 || "HYT00".equals(e.getSQLState());
+    }
+
+    private Map<Integer, String> retrieveAppliedVersions(Connection connection) throws SQLException {
+        Map<Integer, String> res = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT VERSION, CHECKSUM FROM " + DataReferences.DBNAME + "." + METADATATABLE)) {
+            while(resultSet.next()) {
+                res.put(resultSet.getInt("VERSION"), resultSet.getString("CHECKSUM"));
+            }
+        }
+        return res;
+    }
+
+    private void recordVersion(Connection connection, int version, String script, String checksum) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + "." + METADATATABLE + " (VERSION, SCRIPT, CHECKSUM, APPLIED_ON) values (?,?,?,?)";
+        try (PreparedStatement ps = connection.prepareStatement(query)) {
+            ps.setInt(1, version);
+            ps.setString(2, script);
+            ps.setString(3, checksum);
+            ps.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            ps.execute();
+        }
+    }
+
+    //Le istruzioni DDL su MySQL non sono transazionali: la versione viene registrata solo dopo che tutte le istruzioni sono andate a buon fine
+    private void executeScript(Connection connection, String content) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for(String s : splitStatements(content)) {
+                statement.execute(s);
+            }
+        }
+    }
+
+    private int getVersion(String script) {
+        int separator = script.indexOf("__");
+        if(!script.startsWith("V") || separator < 2) {
+            throw new ApplicationException("Nome dello script " + script + " non valido: il formato richiesto è V<versione>__<descrizione>.sql");
+        }
+        try {
+            return Integer.parseInt(script.substring(1, separator));
+        } catch (NumberFormatException e) {
+            throw new ApplicationException("Nome dello script " + script + " non valido: il formato richiesto è V<versione>__<descrizione>.sql", e);
+        }
+    }
+
+    private String readScript(String script) {
+        try (InputStream in = getClass().getResourceAsStream(location + script)) {
+            if(in == null) {
+                throw new ApplicationException("Script di migrazione " + location + script + " non trovato");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            //Il checksum non deve dipendere dai fine riga del sistema su cui è stato fatto il checkout
+            return new String(out.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+        } catch (IOException e) {
+            throw new ApplicationException("Errore durante la lettura dello script " + script, e);
+        }
+    }
+
+    //Divide lo script nelle singole istruzioni, separate da ;, ignorando le righe di commento
+    private List<String> splitStatements(String content) {
+        List<String> res = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for(String line : content.split("\n")) {
+            if(line.trim().startsWith("--")) { continue; }
+            current.append(line).append("\n");
+            if(line.trim().endsWith(";")) {
+                res.add(current.toString().trim().replaceAll(";$", ""));
+                current.setLength(0);
+            }
+        }
+        if(!current.toString().trim().isEmpty()) { res.add(current.toString().trim()); }
+        return res;
+    }
+
+    private String getChecksum(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder res = new StringBuilder();
+            for(byte b : digest) {
+                res.append(String.format("%02x", b));
+            }
+            return res.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new ApplicationException(e);
+        }
+    }
+}
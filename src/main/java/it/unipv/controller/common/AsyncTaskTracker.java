@@ -0,0 +1,33 @@
+package it.unipv.controller.common;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tiene traccia dei caricamenti asincroni avviati da un pannello, in modo da poterli cancellare
+ *     quando il pannello viene chiuso (ICloseablePane.closeAllSubWindows): così un caricamento lento
+ *     non va ad aggiornare un pannello che non è più visibile.
+ */
+public class AsyncTaskTracker {
+    private final Set<CompletableFuture<?>> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registra un'operazione asincrona, che viene rimossa automaticamente al suo completamento.
+     * @param task -> l'operazione da registrare.
+     * @return -> la stessa operazione, per poterci concatenare il suo utilizzo.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> task) {
+        pendingTasks.add(task);
+        task.whenComplete((r, e) -> pendingTasks.remove(task));
+        return task;
+    }
+
+    /** Cancella tutte le operazioni non ancora completate. */
+    public void cancelAll() {
+        for(CompletableFuture<?> task : pendingTasks) {
+            task.cancel(true);
+        }
+        pendingTasks.clear();
+    }
+}
@@ -1,8 +1,8 @@
 package it.unipv.controller.common;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 
 public interface IHomeInitializer {
-    void init(DBConnection dbConnection);
+    void init(ConnectionProvider connectionProvider);
     void closeAll();
 }
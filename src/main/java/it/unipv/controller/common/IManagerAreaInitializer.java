@@ -1,8 +1,8 @@
 package it.unipv.controller.common;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 
 public interface IManagerAreaInitializer {
-    void init(IHomeTrigger homeController, DBConnection dbConnection);
+    void init(IHomeTrigger homeController, ConnectionProvider connectionProvider);
     void closeAllSubWindows();
 }
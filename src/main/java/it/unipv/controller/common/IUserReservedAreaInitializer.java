@@ -1,9 +1,9 @@
 package it.unipv.controller.common;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.model.User;
 
 public interface IUserReservedAreaInitializer {
-    void init(User loggedUser, DBConnection dbConnection);
+    void init(User loggedUser, ConnectionProvider connectionProvider);
     void closeAllSubWindows();
 }
@@ -1,12 +1,12 @@
 package it.unipv.controller.home;
 
 import it.unipv.controller.common.IHomeTrigger;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.HallDao;
 import it.unipv.dao.HallDaoImpl;
 import it.unipv.controller.common.GUIUtils;
 import it.unipv.controller.common.ICloseablePane;
-import it.unipv.model.Seat;
+import it.unipv.model.HallSeatCounts;
 import it.unipv.model.SeatTYPE;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.CloseableUtils;
@@ -30,7 +30,9 @@ import javafx.stage.Stage;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller di resources/fxml/home/hallList.fxml
@@ -43,7 +45,8 @@ public class HallListPanelController implements ICloseablePane {
     @FXML private ScrollPane hallPanel;
     private HallDao hallDao;
     private List<String> hallNames = new ArrayList<>();
-    private List<Image> previews = new ArrayList<>();
+    private Map<String, Image> previews = new HashMap<>();
+    private Map<String, HallSeatCounts> seatCounts = new HashMap<>();
     private int hallNamesSize = 0;
     private static int hallRowCount = 0;
     private static int hallColumnCount = 0;
@@ -55,11 +58,11 @@ public class HallListPanelController implements ICloseablePane {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param homeController -> serve per segnalare alla home (statusBar) le operazioni effettuate.
-     * @param dbConnection -> la connessione al database con la quale si istanzia HallDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia HallDaoImpl.
      */
-    public void init(IHomeTrigger homeController, DBConnection dbConnection) {
+    public void init(IHomeTrigger homeController, ConnectionProvider connectionProvider) {
         this.homeController = homeController;
-        this.hallDao = new HallDaoImpl(dbConnection);
+        this.hallDao = new HallDaoImpl(connectionProvider);
         columnMax = getColumnMaxFromPageWidth(hallPanel.getScene().getWindow().getWidth());
         createUI();
         checkPageDimension();
@@ -76,19 +79,17 @@ public class HallListPanelController implements ICloseablePane {
         homeController.triggerEndStatusEvent("Informazioni sulle sale correttamente caricate!");
     }
 
-    //Istanzio la lista dei nomi delle sale
+    //Istanzio la lista dei nomi delle sale, insieme al numero di posti per tipo di ognuna
     private void initHallNameList() {
-        hallNames = hallDao.retrieveHallNames();
+        seatCounts = hallDao.retrieveSeatCountsPerHall();
+        hallNames = new ArrayList<>(seatCounts.keySet());
         Collections.sort(hallNames);
         hallNamesSize = hallNames.size();
     }
 
-    //Istanzio la lista delle preview, grazie alla lista dei nomi delle sale
+    //Istanzio le preview di tutte le sale
     private void initPreview() {
-        previews.clear();
-        for(int i = 0; i<hallNamesSize; i++) {
-            previews.add(hallDao.retrieveHallPreviewAsImage(hallNames.get(i), 220, 395, true, true));
-        }
+        previews = hallDao.retrieveHallPreviewsAsImage(220, 395, true, true);
     }
 
     //Creo la visualizzazione in griglia delle sale
@@ -96,7 +97,7 @@ public class HallListPanelController implements ICloseablePane {
         grigliaSale.getChildren().clear();
 
         for(int i = 0; i<hallNamesSize; i++) {
-            createViewFromPreviews(hallNames.get(i), previews.get(i));
+            createViewFromPreviews(hallNames.get(i), previews.get(hallNames.get(i)));
         }
 
         hallRowCount = 0;
@@ -111,14 +112,14 @@ public class HallListPanelController implements ICloseablePane {
         nomeSalaLabel.setFont(font);
         nomeSalaLabel.setTextFill(Color.WHITE);
 
-        List<Seat> seatList = initDraggableSeatsList(nomeSalaLabel.getText().trim());
+        HallSeatCounts counts = seatCounts.get(hallName);
 
-        Label numPostiTotaliLabel = new Label("Capienza: " + seatList.size() + " posti");
+        Label numPostiTotaliLabel = new Label("Capienza: " + counts.getTotal() + " posti");
         numPostiTotaliLabel.setFont(font);
         numPostiTotaliLabel.setTextFill(Color.WHITE);
 
-        int numPostiVIP = getSeatNumberPerType(seatList, SeatTYPE.VIP);
-        int numPostiDisabili = getSeatNumberPerType(seatList, SeatTYPE.DISABILE);
+        int numPostiVIP = counts.getCount(SeatTYPE.VIP);
+        int numPostiDisabili = counts.getCount(SeatTYPE.DISABILE);
 
         Label numPostiDisabiliLabel = new Label("Posti per disabili: " + numPostiDisabili);
         numPostiDisabiliLabel.setFont(font);
@@ -187,20 +188,6 @@ public class HallListPanelController implements ICloseablePane {
         hallPreviewStage.show();
     }
 
-    //Inizializzo la lista dei posti a sedere, così da ricavare le informazioni da mettere sotto alle preview
-    private List<Seat> initDraggableSeatsList(String nomeSala) { return hallDao.retrieveSeats(nomeSala); }
-
-    //Ricavo il numero di posti a sedere (di un determinato tipo) di una sala
-    private int getSeatNumberPerType(List<Seat> mdsList, SeatTYPE type) {
-        int res = 0;
-        for(Seat mds : mdsList) {
-            if(mds.getType().equals(type)) {
-                res++;
-            }
-        }
-        return res;
-    }
-
     /** Se si verifica l'evento di una modifica o aggiunta di sala dalla parte manager, ricreo la UI ricaricando le informazioni */
     void triggerNewHallEvent() { createUI(); }
 
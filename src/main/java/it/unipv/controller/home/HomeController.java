@@ -1,7 +1,7 @@
 package it.unipv.controller.home;
 
 import it.unipv.controller.common.*;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.conversion.UserInfo;
 import it.unipv.model.Movie;
 import it.unipv.controller.login.LoginController;
@@ -52,7 +52,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
     @FXML private AnchorPane logoutPane;
     @FXML private BorderPane homePanel;
     private final Stage stageRegistrazione = new Stage();
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private final Stage stageLogin = new Stage();
     private User loggedUser;
     private IManagerAreaInitializer managerHomeController;
@@ -69,12 +69,12 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
      *     per eseguire un login automatico; imposta lo stato di visibilità degli elementi (ad esempio, se
      *     esiste un utente precedentemente salvato mostra il pulsante di logout, viceversa lo nasconde);
      *     infine fa partire il thread dei suggerimenti, che viene stoppato alla chiusura del programma.
-     * @param dbConnection -> è la connessione al database che viene istanziata all'apertura del programma da
-     *                        it.unipv.main.Home e che verrà poi passata a tutti gli altri controller invocati.
+     * @param connectionProvider -> è il pool di connessioni al database che viene istanziato all'apertura del programma da
+     *                        it.unipv.main.Home e che verrà poi passato a tutti gli altri controller invocati.
      */
     @Override
-    public void init(DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
+    public void init(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
         if(checkIfThereIsAlreadyUserSaved()) {
             loggedUser = UserInfo.getUserInfo(DataReferences.INFOUSERFILE);
             setupLoggedUser();
@@ -101,7 +101,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
     private void initWelcomePage(User user) {
         homePanel.getChildren().clear();
         WelcomePanelController wpc = openNewPanel("/fxml/home/welcome.fxml").getController();
-        wpc.init(user, dbConnection, stageRegistrazione);
+        wpc.init(user, connectionProvider, stageRegistrazione);
     }
 
     /* *********************************************************** METODI RIGUARDANTI IL MENÙ *********************************************************** */
@@ -179,12 +179,13 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
 
     private void openProgrammationPanel() {
         movieListPanelController = openNewPanel("/fxml/home/movieList.fxml").getController();
-        movieListPanelController.init(this, dbConnection);
+        movieListPanelController.init(this, connectionProvider);
+        if(!iCloseablePanes.contains(movieListPanelController)) { iCloseablePanes.add(movieListPanelController); }
     }
 
     private void openHallList() {
         hallListPanelController = openNewPanel("/fxml/home/hallList.fxml").getController();
-        hallListPanelController.init(this, dbConnection);
+        hallListPanelController.init(this, connectionProvider);
         if(!iCloseablePanes.contains(hallListPanelController)) { iCloseablePanes.add(hallListPanelController); }
     }
 
@@ -259,7 +260,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/managerarea/ManagerHome.fxml"));
                 Parent root = loader.load();
                 managerHomeController = loader.getController();
-                managerHomeController.init(this, dbConnection);
+                managerHomeController.init(this, connectionProvider);
                 managerAreaStage = new Stage();
                 managerAreaStage.setScene(new Scene(root));
                 managerAreaStage.setTitle("Area Manager");
@@ -290,7 +291,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/userarea/AreaRiservataHome.fxml"));
                 Parent p = loader.load();
                 areaRiservataInitializer = loader.getController();
-                areaRiservataInitializer.init(loggedUser, dbConnection);
+                areaRiservataInitializer.init(loggedUser, connectionProvider);
                 reservedAreaStage = new Stage();
                 reservedAreaStage.setScene(new Scene(p));
                 reservedAreaStage.setMinHeight(710);
@@ -315,7 +316,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login/Registrazione.fxml"));
             Parent p = loader.load();
             RegistrazioneController rc = loader.getController();
-            rc.init(dbConnection);
+            rc.init(connectionProvider);
             stageRegistrazione.setScene(new Scene(p));
             stageRegistrazione.setResizable(false);
             stageRegistrazione.setTitle("Registrazione");
@@ -332,7 +333,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login/Login.fxml"));
             Parent p = loader.load();
             LoginController lc = loader.getController();
-            lc.init(this, dbConnection);
+            lc.init(this, connectionProvider);
             stageLogin.setScene(new Scene(p));
             stageLogin.setTitle("Login");
             stageLogin.setResizable(false);
@@ -481,7 +482,7 @@ public class HomeController implements IHomeTrigger, IHomeInitializer {
 
     private void openSingleMoviePanel(Movie movie) {
         SingleMoviePanelController smpc = openNewPanel("/fxml/home/singleMoviePanel.fxml").getController();
-        smpc.init(this, movie, loggedUser, dbConnection);
+        smpc.init(this, movie, loggedUser, connectionProvider);
         if(!iCloseablePanes.contains(smpc)) { iCloseablePanes.add(smpc); }
     }
 
@@ -1,17 +1,21 @@
 package it.unipv.controller.home;
 
-import it.unipv.db.DBConnection;
-import it.unipv.dao.MovieDao;
+import it.unipv.db.ConnectionProvider;
+import it.unipv.dao.AsyncMovieDao;
 import it.unipv.dao.MovieDaoImpl;
 import it.unipv.controller.common.*;
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.model.MovieStatusTYPE;
 import it.unipv.model.MovieTYPE;
 import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
 import javafx.animation.*;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
@@ -22,15 +26,22 @@ import javafx.stage.Stage;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller di resources/fxml/home/movieList.fxml
  * Questa classe viene utilizzata per mostrare, nella Home, la lista dei film programmati attualmente presenti a sistema:
  *     viene mostrata la locandina ed al click su di essa si apre il pannello delle informazioni del film.
+ * La griglia viene creata subito con dei segnaposto, poi le locandine vengono caricate in background dal PosterLoader,
+ *     a partire da quelle visibili: alla chiusura del pannello il caricamento viene annullato.
  */
-public class MovieListPanelController {
-    private MovieDao movieDao;
+public class MovieListPanelController implements ICloseablePane {
+    private AsyncMovieDao movieDao;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
+    private PosterLoader posterLoader;
+    private Map<Node, String> posterCells = new HashMap<>();
     private GridPane filmGrid = new GridPane();
     private List<Movie> movies = new ArrayList<>();
     private List<Movie> filteredMovies = new ArrayList<>();
@@ -49,10 +60,11 @@ public class MovieListPanelController {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param homeController -> serve per segnalare alla home (statusBar) le operazioni effettuate.
-     * @param dbConnection -> la connessione al database con la quale si istanzia MovieDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia MovieDaoImpl.
      */
-    public void init(IHomeTrigger homeController, DBConnection dbConnection) {
-        this.movieDao = new MovieDaoImpl(dbConnection);
+    public void init(IHomeTrigger homeController, ConnectionProvider connectionProvider) {
+        this.movieDao = new AsyncMovieDao(new MovieDaoImpl(connectionProvider));
+        this.posterLoader = new PosterLoader(movieDao, asyncTasks, DataReferences.POSTERLOADPARALLELISM, PosterRenditionTYPE.GRID);
         this.homeController = homeController;
 
         rectangle2D3D.setVisible(false);
@@ -63,17 +75,18 @@ public class MovieListPanelController {
         columnMax = getColumnMaxFromPageWidth(movieScroll.getScene().getWindow().getWidth());
 
         setHomeIconListener();
+        setViewportListener();
         createUI();
         checkPageDimension();
     }
 
     private void createUI() {
         homeController.triggerStartStatusEvent("Carico i film programmati...");
-        Platform.runLater(() -> {
-            initMovieList();
+        asyncTasks.track(movieDao.retrieveMovieListWithoutPoster()).thenAccept(result -> {
+            initMovieList(result);
             initMovieGrid(movies);
+            homeController.triggerEndStatusEvent("Film programmati correttamente caricati!");
         });
-        homeController.triggerEndStatusEvent("Film programmati correttamente caricati!");
     }
 
     private void setHomeIconListener() {
@@ -86,14 +99,40 @@ public class MovieListPanelController {
         });
     }
 
-    private void initMovieList() {
-        movies = movieDao.retrieveCompleteMovieList(1000, 0, true, true);
+    //Ad ogni scorrimento o ridimensionamento vengono segnalate al PosterLoader le celle visibili, da caricare per prime
+    private void setViewportListener() {
+        movieScroll.vvalueProperty().addListener(e -> updateVisiblePosters());
+        movieScroll.viewportBoundsProperty().addListener(e -> updateVisiblePosters());
+    }
+
+    private void updateVisiblePosters() {
+        Bounds viewport = movieScroll.localToScene(movieScroll.getBoundsInLocal());
+        List<String> visible = new ArrayList<>();
+        for(Map.Entry<Node, String> cell : posterCells.entrySet()) {
+            if(viewport.intersects(cell.getKey().localToScene(cell.getKey().getBoundsInLocal()))) {
+                visible.add(cell.getValue());
+            }
+        }
+        posterLoader.setVisibleMovies(visible);
+    }
+
+    //Prima di ricreare la griglia viene svuotata la coda delle locandine delle vecchie celle
+    private void clearGrid() {
+        filmGrid.getChildren().clear();
+        posterCells.clear();
+        posterLoader.clear();
+        //Le posizioni delle nuove celle sono disponibili solo dopo il layout
+        Platform.runLater(this::updateVisiblePosters);
+    }
+
+    private void initMovieList(List<Movie> result) {
+        movies = result;
         Collections.sort(movies);
     }
 
     //Metodo che crea la visualizzazione in griglia dei film
     private void initMovieGrid(List<Movie> movies){
-        filmGrid.getChildren().clear();
+        clearGrid();
         filmGrid.setHgap(120);
         filmGrid.setVgap(80);
 
@@ -117,9 +156,21 @@ public class MovieListPanelController {
         posterPreview.setPreserveRatio(true);
         posterPreview.setFitWidth(200);
 
+        //Finché la locandina non è stata caricata viene mostrato un segnaposto delle stesse dimensioni
+        StackPane posterBox = new StackPane(posterPreview);
+        posterBox.setMinSize(200, 300);
+        if(movie.getLocandina() == null) {
+            posterBox.setStyle("-fx-background-color:#2b2b2b;");
+            posterLoader.request(movie, poster -> {
+                movie.setLocandina(poster);
+                posterPreview.setImage(poster);
+                posterBox.setStyle("-fx-background-color:transparent;");
+            });
+        }
+
         Label posterPreviewLabel = new Label();
         posterPreviewLabel.setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
-        posterPreviewLabel.setGraphic(posterPreview);
+        posterPreviewLabel.setGraphic(posterBox);
         posterPreviewLabel.setTooltip(new Tooltip(movie.getTitolo() + " (" + getRealMovieType(movie.getTipo()) + ")"));
 
         GUIUtils.setScaleTransitionOnControl(posterPreviewLabel);
@@ -132,6 +183,7 @@ public class MovieListPanelController {
         }
 
         filmGrid.add(anchor, columnCount, rowCount);
+        posterCells.put(anchor, movie.getCodice());
         columnCount++;
 
         movieScroll.setContent(filmGrid);
@@ -240,7 +292,7 @@ public class MovieListPanelController {
     //Metodo che crea la griglia a seconda del tipo (2D o 3D) cliccato (in questo caso, il genere non è già stato scelto)
     private void filterMoviesByMovieTYPE(MovieTYPE type) {
         filteredMovies.clear();
-        filmGrid.getChildren().clear();
+        clearGrid();
         for(Movie m : movies) {
             if(m.getStatus().equals(MovieStatusTYPE.AVAILABLE)) {
                 if(m.getTipo().equals(type)) {
@@ -255,7 +307,7 @@ public class MovieListPanelController {
 
     //Metodo che crea la griglia a seconda del genere cliccato (in questo caso il tipo 2D o 3D non è già stato scelto)
     private void filterMoviesByMovieGenre(String genere) {
-        filmGrid.getChildren().clear();
+        clearGrid();
         filteredMovies.clear();
         for(Movie m : movies) {
             if(m.getStatus().equals(MovieStatusTYPE.AVAILABLE)) {
@@ -271,7 +323,7 @@ public class MovieListPanelController {
 
     //Metodo che crea la griglia a seconda del genere e del tipo cliccato
     private void filterMoviesByMovieTYPEAndMovieGenre(MovieTYPE type, String genere) {
-        filmGrid.getChildren().clear();
+        clearGrid();
         filteredMovies.clear();
         for(Movie m : movies) {
             if(m.getStatus().equals(MovieStatusTYPE.AVAILABLE)) {
@@ -307,6 +359,13 @@ public class MovieListPanelController {
         });
     }
 
+    /** Metodo invocato alla chiusura del pannello: annulla l'eventuale caricamento dei film e delle locandine ancora in corso. */
+    @Override
+    public void closeAllSubWindows() {
+        posterLoader.close();
+        asyncTasks.cancelAll();
+    }
+
     private int getColumnMaxFromPageWidth(double width) {
         if(width<800) {
             return 2;
@@ -0,0 +1,118 @@
+package it.unipv.controller.home;
+
+import it.unipv.controller.common.AsyncTaskTracker;
+import it.unipv.dao.AsyncMovieDao;
+import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
+import javafx.scene.image.Image;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Carica in background le locandine della griglia dei film, al massimo maxParallel alla volta:
+ *     vengono scaricate prima le locandine delle celle visibili, poi le altre nell'ordine della griglia.
+ * Tutti i metodi, compresi i callback, vengono eseguiti sul thread di JavaFX, quindi la classe non necessita di sincronizzazione.
+ */
+class PosterLoader {
+    private final AsyncMovieDao movieDao;
+    private final AsyncTaskTracker asyncTasks;
+    private final int maxParallel;
+    private final PosterRenditionTYPE rendition;
+    private final Map<String, Movie> pending = new LinkedHashMap<>();
+    private final Set<String> loading = new HashSet<>();
+    private final Map<String, Consumer<Image>> targets = new HashMap<>();
+    private Set<String> visibleMovieCodes = new HashSet<>();
+    private boolean closed = false;
+
+    /**
+     * @param movieDao -> il DAO con il quale scaricare le locandine;
+     * @param asyncTasks -> il tracker del pannello, così che la chiusura annulli anche il caricamento delle locandine;
+     * @param maxParallel -> il numero massimo di locandine scaricate contemporaneamente;
+     * @param rendition -> il formato delle locandine da scaricare.
+     */
+    PosterLoader(AsyncMovieDao movieDao, AsyncTaskTracker asyncTasks, int maxParallel, PosterRenditionTYPE rendition) {
+        this.movieDao = movieDao;
+        this.asyncTasks = asyncTasks;
+        this.maxParallel = maxParallel;
+        this.rendition = rendition;
+    }
+
+    /**
+     * Accoda il caricamento della locandina di un film. Se la locandina dello stesso film è già in download
+     *     non ne viene avviato un altro: al completamento verrà eseguita l'ultima azione registrata.
+     * @param movie -> il film di cui caricare la locandina;
+     * @param onLoaded -> l'azione da eseguire sulla cella della griglia quando la locandina è pronta.
+     */
+    void request(Movie movie, Consumer<Image> onLoaded) {
+        targets.put(movie.getCodice(), onLoaded);
+        if(!loading.contains(movie.getCodice())) {
+            pending.put(movie.getCodice(), movie);
+        }
+        loadNext();
+    }
+
+    /** @param movieCodes -> i codici dei film le cui celle sono attualmente visibili, da caricare per primi. */
+    void setVisibleMovies(Collection<String> movieCodes) {
+        visibleMovieCodes = new HashSet<>(movieCodes);
+        loadNext();
+    }
+
+    /** Svuota la coda, ad esempio perché la griglia viene ricreata: i download già avviati vengono comunque completati. */
+    void clear() {
+        pending.clear();
+        targets.clear();
+        visibleMovieCodes.clear();
+    }
+
+    /** Interrompe definitivamente il caricamento: da richiamare alla chiusura del pannello, insieme a AsyncTaskTracker.cancelAll. */
+    void close() {
+        closed = true;
+        clear();
+    }
+
+    private void loadNext() {
+        while(!closed && loading.size() < maxParallel && !pending.isEmpty()) {
+            Movie next = pollNext();
+            loading.add(next.getCodice());
+            asyncTasks.track(movieDao.retrievePoster(next.getCodice(), rendition))
+                      .whenComplete((poster, e) -> onPosterLoaded(next, poster, e));
+        }
+    }
+
+    private Movie pollNext() {
+        Iterator<Movie> it = pending.values().iterator();
+        Movie res = null;
+        while(it.hasNext() && res == null) {
+            Movie m = it.next();
+            if(visibleMovieCodes.contains(m.getCodice())) {
+                res = m;
+                it.remove();
+            }
+        }
+        if(res == null) {
+            it = pending.values().iterator();
+            res = it.next();
+            it.remove();
+        }
+        return res;
+    }
+
+    /* In caso di errore o annullamento la cella resta con il segnaposto e la sua azione viene scartata:
+     *     l'errore viene già segnalato da DaoExecutor, e la locandina verrà richiesta di nuovo alla prossima creazione della griglia.
+     */
+    private void onPosterLoaded(Movie movie, Image poster, Throwable error) {
+        loading.remove(movie.getCodice());
+        Consumer<Image> target = targets.remove(movie.getCodice());
+        if(error == null && poster != null && target != null && !closed) {
+            target.accept(poster);
+        }
+        loadNext();
+    }
+}
@@ -1,13 +1,17 @@
 package it.unipv.controller.home;
 
+import it.unipv.controller.common.AsyncTaskTracker;
 import it.unipv.controller.common.IHomeTrigger;
-import it.unipv.db.DBConnection;
+import it.unipv.dao.AsyncMovieDao;
+import it.unipv.dao.MovieDaoImpl;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.ScheduleDao;
 import it.unipv.dao.ScheduleDaoImpl;
 import it.unipv.controller.prenotation.MoviePrenotationController;
 import it.unipv.controller.common.GUIUtils;
 import it.unipv.controller.common.ICloseablePane;
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.model.Schedule;
 import it.unipv.model.User;
 import it.unipv.utils.ApplicationException;
@@ -32,7 +36,6 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -45,10 +48,12 @@ public class SingleMoviePanelController implements ICloseablePane {
     private IHomeTrigger homeController;
     private Movie movie;
     private User loggedUser;
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private MoviePrenotationController mpc;
     private Stage prenotationStage;
     private ScheduleDao scheduleDao;
+    private AsyncMovieDao movieDao;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
     private Font font = new Font("Bebas Neue Regular", 24);
     @FXML private ScrollPane singleMovieScroll;
     @FXML private Label goBackToProgrammationButton;
@@ -58,14 +63,15 @@ public class SingleMoviePanelController implements ICloseablePane {
      * @param homeController -> serve per segnalare alla home (statusBar) le operazioni effettuate;
      * @param movie -> è il singolo film che viene mostrato;
      * @param loggedUser -> l'utente che è attualmente loggato, è null se non c'è nessuno loggato;
-     * @param dbConnection -> la connessione al database con la quale si istanzia scheduleDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia scheduleDaoImpl.
      */
-    public void init(IHomeTrigger homeController, Movie movie, User loggedUser, DBConnection dbConnection) {
+    public void init(IHomeTrigger homeController, Movie movie, User loggedUser, ConnectionProvider connectionProvider) {
         this.homeController = homeController;
         this.movie = movie;
         this.loggedUser = loggedUser;
-        this.dbConnection = dbConnection;
-        this.scheduleDao = new ScheduleDaoImpl(dbConnection);
+        this.connectionProvider = connectionProvider;
+        this.scheduleDao = new ScheduleDaoImpl(connectionProvider);
+        this.movieDao = new AsyncMovieDao(new MovieDaoImpl(connectionProvider));
         createUI();
     }
 
@@ -92,6 +98,10 @@ public class SingleMoviePanelController implements ICloseablePane {
         poster.setPreserveRatio(true);
         poster.setFitWidth(350);
         poster.setLayoutX(50);
+        //Intanto viene mostrata la locandina già caricata dalla griglia, poi sostituita con il formato per il dettaglio
+        asyncTasks.track(movieDao.retrievePoster(movie.getCodice(), PosterRenditionTYPE.DETAIL)).thenAccept(detail -> {
+            if(detail != null) { poster.setImage(detail); }
+        });
 
         Label title = new Label();
         setLabelParameter( title
@@ -328,13 +338,16 @@ public class SingleMoviePanelController implements ICloseablePane {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/prenotation/MoviePrenotation.fxml"));
                 Parent p = loader.load();
                 mpc = loader.getController();
-                mpc.init(homeController, scheduleLabel.getText().trim(), movie, loggedUser, dbConnection);
+                mpc.init(homeController, scheduleLabel.getText().trim(), movie, loggedUser, connectionProvider);
                 prenotationStage = new Stage();
                 prenotationStage.setScene(new Scene(p));
                 prenotationStage.setResizable(false);
                 prenotationStage.setTitle("Prenotazione " + movie.getTitolo() + " " + scheduleLabel.getText().trim());
                 prenotationStage.getIcons().add(new Image(getClass().getResourceAsStream("/images/GoldenMovieStudioIcon.png")));
-                prenotationStage.setOnCloseRequest( event -> isPrenotationAreaOpened = false);
+                prenotationStage.setOnCloseRequest( event -> {
+                    isPrenotationAreaOpened = false;
+                    mpc.closeAllSubWindows();
+                });
                 prenotationStage.show();
                 isPrenotationAreaOpened = true;
             } catch (IOException ex) {
@@ -345,15 +358,11 @@ public class SingleMoviePanelController implements ICloseablePane {
 
     private List<Schedule> getProgrammationListFromMovie(Movie m) {
         String date = "";
-        List<Schedule> allSchedules = scheduleDao.retrieveMovieSchedules();
-        Collections.sort(allSchedules);
         List<Schedule> res = new ArrayList<>();
-        for(Schedule ms : allSchedules) {
-            if(ms.getMovieCode().equals(m.getCodice())) {
-                if(!date.equals(ms.getDate())) {
-                    res.add(ms);
-                    date = ms.getDate();
-                }
+        for(Schedule ms : scheduleDao.retrieveSchedulesByMovie(m.getCodice())) {
+            if(!date.equals(ms.getDate())) {
+                res.add(ms);
+                date = ms.getDate();
             }
         }
         return res;
@@ -364,6 +373,7 @@ public class SingleMoviePanelController implements ICloseablePane {
     */
     @Override
     public void closeAllSubWindows() {
+        asyncTasks.cancelAll();
         if(prenotationStage!=null) { prenotationStage.close(); }
         if(mpc!=null) { mpc.closeAllSubWindows(); }
     }
@@ -1,6 +1,6 @@
 package it.unipv.controller.home;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.controller.login.RegistrazioneController;
 import it.unipv.model.User;
 import it.unipv.utils.ApplicationException;
@@ -30,36 +30,36 @@ public class WelcomePanelController {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param loggedUser -> l'utente che è attualmente loggato, è null se non c'è nessuno loggato
-     * @param dbConnection -> la connessione al database che serve al form di registrazione
+     * @param connectionProvider -> il pool di connessioni al database che serve al form di registrazione
      * @param stageRegistrazione -> lo stage di registrazione della home: utilizzo questo al posto di crearne uno nuovo
      *                                  soprattutto perché sia che lo apro da qua, sia che lo apro dalla home, viene
      *                                  segnalato che lo stage è aperto; questo perché è giusto che si apra solo un
      *                                  form di registrazione alla volta.
      */
-    public void init(User loggedUser, DBConnection dbConnection, Stage stageRegistrazione) {
+    public void init(User loggedUser, ConnectionProvider connectionProvider, Stage stageRegistrazione) {
         this.stageRegistrazione = stageRegistrazione;
         if(loggedUser==null) {
             registerLabel.setOnMouseExited(event -> registerLabel.setTextFill(Color.WHITE));
             registerLabel.setOnMouseEntered(event -> registerLabel.setTextFill(Color.valueOf("db8f00")));
-            registerLabel.setOnMouseClicked(event -> openRegisterPage(dbConnection));
+            registerLabel.setOnMouseClicked(event -> openRegisterPage(connectionProvider));
         } else {
             welcomeFooter.setVisible(false);
             welcomeLabel.setText(loggedUser.getNome() + ", bentornato in Golden Movie Studio!");
         }
     }
 
-    private void openRegisterPage(DBConnection dbConnection) {
+    private void openRegisterPage(ConnectionProvider connectionProvider) {
         if(!stageRegistrazione.isShowing()) {
-            doOpenRegisterPage(dbConnection);
+            doOpenRegisterPage(connectionProvider);
         }
     }
 
-    private void doOpenRegisterPage(DBConnection dbConnection) {
+    private void doOpenRegisterPage(ConnectionProvider connectionProvider) {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login/Registrazione.fxml"));
             Parent p = loader.load();
             RegistrazioneController rc = loader.getController();
-            rc.init(dbConnection);
+            rc.init(connectionProvider);
             stageRegistrazione.setScene(new Scene(p));
             stageRegistrazione.setResizable(false);
             stageRegistrazione.setTitle("Registrazione");
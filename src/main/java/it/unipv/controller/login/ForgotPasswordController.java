@@ -3,7 +3,7 @@ package it.unipv.controller.login;
 import java.util.ArrayList;
 import java.util.List;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.UserDao;
 import it.unipv.dao.UserDaoImpl;
 import it.unipv.controller.common.GUIUtils;
@@ -34,11 +34,11 @@ public class ForgotPasswordController {
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param loginController -> il controller del login, utilizzato per segnalargli che una password è stata resettata
      *                               e che quindi si ha la necessità di ricaricare le informazioni degli utenti;
-     * @param dbConnection -> la connessione al database con la quale si istanzia userDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia userDaoImpl.
      */
-    public void init(LoginController loginController, DBConnection dbConnection) {
+    public void init(LoginController loginController, ConnectionProvider connectionProvider) {
         this.loginController = loginController;
-        this.userDao = new UserDaoImpl(dbConnection);
+        this.userDao = new UserDaoImpl(connectionProvider);
         initUserList();
         GUIUtils.setScaleTransitionOnControl(infoButton);
     }
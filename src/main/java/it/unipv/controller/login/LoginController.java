@@ -5,7 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import it.unipv.controller.common.IHomeTrigger;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.UserDao;
 import it.unipv.dao.UserDaoImpl;
 import it.unipv.conversion.UserInfo;
@@ -34,18 +34,18 @@ public class LoginController {
     @FXML private PasswordField passwordTextfield;
     @FXML private CheckBox rememberCheckbox;
     private IHomeTrigger homeController;
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private UserDao userDao;
     private List<User> userList = new ArrayList<>();
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param homeController -> serve per segnalare alla home (e alla statusBar) le operazioni effettuate;
-     * @param dbConnection -> la connessione al database con la quale si istanzia userDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia userDaoImpl.
      */
-    public void init(IHomeTrigger homeController, DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
-        this.userDao = new UserDaoImpl(dbConnection);
+    public void init(IHomeTrigger homeController, ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.userDao = new UserDaoImpl(connectionProvider);
         this.homeController = homeController;
         GUIUtils.setScaleTransitionOnControl(passwordResetButton);
         initUserList();
@@ -58,7 +58,7 @@ public class LoginController {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login/ForgotPassword.fxml"));
                 Parent p = loader.load();
                 ForgotPasswordController fpc = loader.getController();
-                fpc.init(this, dbConnection);
+                fpc.init(this, connectionProvider);
                 Stage stage = new Stage();
                 stage.setScene(new Scene(p));
                 stage.setResizable(false);
@@ -3,7 +3,7 @@ package it.unipv.controller.login;
 import java.util.List;
 import java.util.regex.Pattern;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.UserDao;
 import it.unipv.dao.UserDaoImpl;
 import it.unipv.controller.common.GUIUtils;
@@ -27,10 +27,10 @@ public class RegistrazioneController {
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
-     * @param dbConnection -> la connessione al database con la quale si istanzia userDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia userDaoImpl.
      */
-    public void init(DBConnection dbConnection) {
-        userDao = new UserDaoImpl(dbConnection);
+    public void init(ConnectionProvider connectionProvider) {
+        userDao = new UserDaoImpl(connectionProvider);
         initUserList();
     }
 
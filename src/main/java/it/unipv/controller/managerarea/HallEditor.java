@@ -1,6 +1,6 @@
 package it.unipv.controller.managerarea;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.HallDao;
 import it.unipv.dao.HallDaoImpl;
 import it.unipv.model.Seat;
@@ -45,16 +45,16 @@ class HallEditor extends JFrame {
      * @param nomeSala -> nome della sala
      * @param hallPanelController -> controller da cui viene evocato il tool
      * @param wasItAlreadyCreated -> impostare a vero se si entra in modalità di modifica, altrimenti impostare a falso
-     * @param dbConnection -> la connessione al database con la quale si istanzia HallDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia HallDaoImpl.
      */
     HallEditor( String nomeSala
               , HallPanelController hallPanelController
               , boolean wasItAlreadyCreated
-              , DBConnection dbConnection) {
+              , ConnectionProvider connectionProvider) {
         this.nomeSala = nomeSala;
         this.hallPanelController = hallPanelController;
         this.wasItAlreadyCreated = wasItAlreadyCreated;
-        hallDao = new HallDaoImpl(dbConnection);
+        hallDao = new HallDaoImpl(connectionProvider);
 
         initMenuBar();
         initDraggableSeatsPanel(wasItAlreadyCreated);
@@ -67,16 +67,16 @@ class HallEditor extends JFrame {
      * @param hallPanelController -> controller da cui viene evocato il tool
      * @param rows -> numero di righe della griglia di posti di partenza
      * @param columns -> numero di colonne della griglia di posti di partenza
-     * @param dbConnection -> la connessione al database con la quale si istanzia HallDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database con la quale si istanzia HallDaoImpl.
      */
     HallEditor( String nomeSala
               , HallPanelController hallPanelController
               , int rows
               , int columns
-              , DBConnection dbConnection) {
+              , ConnectionProvider connectionProvider) {
         this.nomeSala = nomeSala;
         this.hallPanelController = hallPanelController;
-        hallDao = new HallDaoImpl(dbConnection);
+        hallDao = new HallDaoImpl(connectionProvider);
         initMenuBar();
         initDraggableSeatsPanel(rows, columns);
         initFrame();
@@ -233,6 +233,7 @@ class HallEditor extends JFrame {
 
         private List<String> createdSeatsName = new ArrayList<>();
         private List<Seat> draggableSeatsList = new ArrayList<>();
+        private SeatChangeTracker seatChangeTracker = new SeatChangeTracker();
 
         /**
          * Costruttore del pannello per creazione/modifica di una sala senza griglia iniziale
@@ -296,6 +297,7 @@ class HallEditor extends JFrame {
             for(Seat mds : draggableSeatsList) {
                 configureMDS(mds, mds.getText(), true);
             }
+            seatChangeTracker.markAsSaved(draggableSeatsList);
         }
 
         //Metodo che si occupa di configurare il singolo posto a sedere, assegnandogli un nome se è richiesto ed il menu richiamabile con click destro
@@ -516,7 +518,7 @@ class HallEditor extends JFrame {
         private void doSave() {
             if(wasItAlreadyCreated) {
                 Platform.runLater(() ->hallPanelController.triggerStartEventToManagerHome("Aggiorno la piantina di " + nomeSala + "..."));
-                hallDao.updateHallSeats(nomeSala, draggableSeatsList);
+                hallDao.updateHallSeats(nomeSala, seatChangeTracker.getChanges(draggableSeatsList));
                 hallDao.updateHallPreview(nomeSala, saveSnapshot(this));
                 JOptionPane.showMessageDialog(hallEditor, "Piantina aggiornata con successo!");
                 Platform.runLater(() -> hallPanelController.triggerEndEventToManagerHome("Piantina di " + nomeSala + " aggiornata con successo!"));
@@ -528,6 +530,7 @@ class HallEditor extends JFrame {
                 wasItAlreadyCreated = true;
                 Platform.runLater(() -> hallPanelController.triggerEndEventToManagerHome("Sala " + nomeSala + " creata con successo!"));
             }
+            seatChangeTracker.markAsSaved(draggableSeatsList);
             Platform.runLater(() -> hallPanelController.triggerModificationToHallList());
             isSomethingChanged = false;
         }
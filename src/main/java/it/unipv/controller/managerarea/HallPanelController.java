@@ -3,12 +3,13 @@ package it.unipv.controller.managerarea;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import it.unipv.controller.common.IManagerAreaTrigger;
 import it.unipv.dao.ScheduleDao;
 import it.unipv.dao.ScheduleDaoImpl;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.HallDao;
 import it.unipv.dao.HallDaoImpl;
 import it.unipv.controller.common.GUIUtils;
@@ -52,17 +53,17 @@ public class HallPanelController implements ICloseablePane {
     private IManagerAreaTrigger managerHomeController;
     private HallEditor hallEditor;
     private HallDao hallDao;
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param managerHomeController -> serve per segnalare all'Area Manager le operazioni effettuate
-     * @param dbConnection -> la connessione al database utilizzata per istanziare HallDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare HallDaoImpl
      */
-    public void init(IManagerAreaTrigger managerHomeController, DBConnection dbConnection) {
+    public void init(IManagerAreaTrigger managerHomeController, ConnectionProvider connectionProvider) {
         this.managerHomeController = managerHomeController;
-        this.dbConnection = dbConnection;
-        hallDao = new HallDaoImpl(dbConnection);
+        this.connectionProvider = connectionProvider;
+        hallDao = new HallDaoImpl(connectionProvider);
 
         columnMax = getColumnMaxFromPageWidth(nuovaSalaButton.getScene().getWindow().getWidth());
 
@@ -85,10 +86,12 @@ public class HallPanelController implements ICloseablePane {
         hallNamesSize = hallNames.size();
     }
 
+    //Le preview di tutte le sale vengono scaricate insieme, con un'unica query
     private void initPreview() {
         previews.clear();
+        Map<String, Image> hallPreviews = hallDao.retrieveHallPreviewsAsImage(150, 0, true, true);
         for(int i = 0; i<hallNamesSize; i++) {
-            previews.add(hallDao.retrieveHallPreviewAsImage(hallNames.get(i), 150, 0, true, true));
+            previews.add(hallPreviews.get(hallNames.get(i)));
         }
     }
 
@@ -153,7 +156,7 @@ public class HallPanelController implements ICloseablePane {
         pane.getChildren().addAll(snapHallView, nomeSalaLabel, deleteIcon, renameIcon);
 
         snapHallView.setOnMouseClicked(event -> {
-            hallEditor = new HallEditor(nomeSalaLabel.getText(), this, true, dbConnection);
+            hallEditor = new HallEditor(nomeSalaLabel.getText(), this, true, connectionProvider);
             hallEditor.setAlwaysOnTop(true);
         });
 
@@ -244,16 +247,10 @@ public class HallPanelController implements ICloseablePane {
     }
 
     private boolean checkIfIsOccupiedFromProgrammations(String hallName) {
-        ScheduleDao scheduleDao = new ScheduleDaoImpl(dbConnection);
-        List<Schedule> schedules = scheduleDao.retrieveMovieSchedules();
-        for(Schedule s : schedules) {
-            if(s.getHallName().equals(hallName)) {
-                if(!ApplicationUtils.checkIfDateIsInThePast(s.getDate())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        ScheduleDao scheduleDao = new ScheduleDaoImpl(connectionProvider);
+        List<Schedule> schedules = scheduleDao.retrieveSchedulesByHall(hallName);
+        //Le programmazioni sono ordinate per data: basta controllare l'ultima
+        return !schedules.isEmpty() && !ApplicationUtils.checkIfDateIsInThePast(schedules.get(schedules.size()-1).getDate());
     }
 
     //Listener al tasto "Nuova Sala"
@@ -269,7 +266,7 @@ public class HallPanelController implements ICloseablePane {
                                                           , "Richiesta conferma:"
                                                           , "Vuoi creare una griglia preimpostata?");
                     if(option.orElse(null)==ButtonType.NO) {
-                        hallEditor = new HallEditor(nomeSala, this, false, dbConnection);
+                        hallEditor = new HallEditor(nomeSala, this, false, connectionProvider);
                         hallEditor.setAlwaysOnTop(true);
                     } else {
                         Optional<Pair<String, String>> dialogMenu = configureRowAndColumnDialogRequest();
@@ -278,7 +275,7 @@ public class HallPanelController implements ICloseablePane {
                             int columns = Integer.parseInt(rowsAndcolumns.getValue());
 
                             if(rows<27) {
-                                hallEditor = new HallEditor(nomeSala, this, rows, columns, dbConnection);
+                                hallEditor = new HallEditor(nomeSala, this, rows, columns, connectionProvider);
                                 hallEditor.setAlwaysOnTop(true);
                             } else {
                                 GUIUtils.showAlert(Alert.AlertType.ERROR, "Errore", "Si è verificato un errore:", "Numero massimo di righe 26!");
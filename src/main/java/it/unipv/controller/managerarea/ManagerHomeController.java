@@ -1,7 +1,7 @@
 package it.unipv.controller.managerarea;
 
 import it.unipv.controller.common.*;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.utils.ApplicationException;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -40,18 +40,18 @@ public class ManagerHomeController implements IManagerAreaTrigger, IManagerAreaI
     private List<Label> labels = new ArrayList<>();
     private IHomeTrigger homeController;
     private List<ICloseablePane> iCloseablePanes = new ArrayList<>();
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private Thread animatedTipsThread;
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe;
      * @param homeController -> è il controller della Home del cinema, al quale bisogna segnalare eventi di aggiornamento
-     * @param dbConnection -> è la connessione al database che verrà condivisa con tutte le funzioni del manager
+     * @param connectionProvider -> è il pool di connessioni al database che verrà condivisa con tutte le funzioni del manager
      */
     @Override
-    public void init(IHomeTrigger homeController, DBConnection dbConnection) {
+    public void init(IHomeTrigger homeController, ConnectionProvider connectionProvider) {
         this.homeController = homeController;
-        this.dbConnection = dbConnection;
+        this.connectionProvider = connectionProvider;
         addLabelsToList();
         setOnMouseEnteredToLabels();
         setOnMouseExitedToLabels();
@@ -140,7 +140,7 @@ public class ManagerHomeController implements IManagerAreaTrigger, IManagerAreaI
     private void openHallPanel() {
         if(!openedPane.equals("MODIFICA SALE")) {
             HallPanelController hpc = openNewPanel("MODIFICA SALE", hallModifierLabel, "/fxml/managerarea/HallPanel.fxml").getController();
-            hpc.init(this, dbConnection);
+            hpc.init(this, connectionProvider);
             if(!iCloseablePanes.contains(hpc)) { iCloseablePanes.add(hpc); }
         }
     }
@@ -148,7 +148,7 @@ public class ManagerHomeController implements IManagerAreaTrigger, IManagerAreaI
     private void openProgrammationPanel() {
         if(!openedPane.equals("PROGRAMMAZIONE")) {
             ProgrammationPanelController ppc = openNewPanel("PROGRAMMAZIONE", schedulerLabel, "/fxml/managerarea/ProgrammationPanel.fxml").getController();
-            ppc.init(this, dbConnection);
+            ppc.init(this, connectionProvider);
             if(!iCloseablePanes.contains(ppc)) { iCloseablePanes.add(ppc); }
         }
     }
@@ -156,7 +156,7 @@ public class ManagerHomeController implements IManagerAreaTrigger, IManagerAreaI
     private void openMovieListPanel() {
         if(!openedPane.equals("LISTA FILM")) {
             MovieListPanelController mlpc = openNewPanel("LISTA FILM", movieListLabel, "/fxml/managerarea/MovieListPanel.fxml").getController();
-            mlpc.init(this, dbConnection);
+            mlpc.init(this, connectionProvider);
             if(!iCloseablePanes.contains(mlpc)) { iCloseablePanes.add(mlpc); }
         }
     }
@@ -164,14 +164,15 @@ public class ManagerHomeController implements IManagerAreaTrigger, IManagerAreaI
     private void openUserListPanel() {
         if(!openedPane.equals("LISTA UTENTI")){
             UserListPanelController ulpc = openNewPanel("LISTA UTENTI", userListLabel, "/fxml/managerarea/UserListPanel.fxml").getController();
-            ulpc.init(this, dbConnection);
+            ulpc.init(this, connectionProvider);
         }
     }
 
     private void openPricesPanel() {
         if(!openedPane.equals("MODIFICA PREZZI")){
             PricesPanelController ppc = openNewPanel("MODIFICA PREZZI", pricesModifierLabel, "/fxml/managerarea/PricesPanel.fxml").getController();
-            ppc.init(this, dbConnection);
+            ppc.init(this, connectionProvider);
+            if(!iCloseablePanes.contains(ppc)) { iCloseablePanes.add(ppc); }
         }
     }
 
@@ -59,11 +59,11 @@ public class MovieListPanelController implements ICloseablePane {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param managerHomeController -> serve per segnalare all'Area Manager le operazioni effettuate
-     * @param dbConnection -> la connessione al database utilizzata per istanziare MovieDaoImpl e ScheduleDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare MovieDaoImpl e ScheduleDaoImpl
      */
-    public void init(IManagerAreaTrigger managerHomeController, DBConnection dbConnection) {
-        this.movieDao = new MovieDaoImpl(dbConnection);
-        this.scheduleDao = new ScheduleDaoImpl(dbConnection);
+    public void init(IManagerAreaTrigger managerHomeController, ConnectionProvider connectionProvider) {
+        this.movieDao = new MovieDaoImpl(connectionProvider);
+        this.scheduleDao = new ScheduleDaoImpl(connectionProvider);
         this.managerHomeController = managerHomeController;
         createUI();
     }
@@ -212,11 +212,8 @@ public class MovieListPanelController implements ICloseablePane {
     }
 
     private void removeAssociatedSchedules(Movie movie) {
-        List<Schedule> schedules = scheduleDao.retrieveMovieSchedules();
-        for(Schedule ms : schedules) {
-            if(movie.getCodice().equalsIgnoreCase(ms.getMovieCode())) {
-                scheduleDao.deleteMovieSchedule(ms);
-            }
+        for(Schedule ms : scheduleDao.retrieveSchedulesByMovie(movie.getCodice())) {
+            scheduleDao.deleteMovieSchedule(ms);
         }
     }
 
@@ -42,7 +42,6 @@ public class MovieScheduleEditorController {
     private CustomTimeSpinner timeSpinner;
     private Movie movie;
     private MovieSchedulerController moviePanelController;
-    private List<Schedule> schedules;
     private List<Movie> movies;
     private MovieDao movieDao;
     private HallDao hallDao;
@@ -53,23 +52,20 @@ public class MovieScheduleEditorController {
      * @param movieSchedulerController -> controller da cui viene evocato questo form al quale si segnala la
      *                                        creazione di una nuova programmazione
      * @param movie -> film che si vuole programmare
-     * @param dbConnection -> la connessione al database utilizzata per istanziare MovieDaoImpl, HallDaoImpl e ScheduleDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare MovieDaoImpl, HallDaoImpl e ScheduleDaoImpl.
      */
-    void init(MovieSchedulerController movieSchedulerController, Movie movie, DBConnection dbConnection) {
-        this.movieDao = new MovieDaoImpl(dbConnection);
-        this.hallDao = new HallDaoImpl(dbConnection);
-        this.scheduleDao = new ScheduleDaoImpl(dbConnection);
+    void init(MovieSchedulerController movieSchedulerController, Movie movie, ConnectionProvider connectionProvider) {
+        this.movieDao = new MovieDaoImpl(connectionProvider);
+        this.hallDao = new HallDaoImpl(connectionProvider);
+        this.scheduleDao = new ScheduleDaoImpl(connectionProvider);
         this.moviePanelController = movieSchedulerController;
         this.movie = movie;
         GUIUtils.setScaleTransitionOnControl(salvaProgrammazioneButton);
-        initScheduleList();
         initMovieList();
         initTimePicker();
         initHallSelector();
     }
 
-    private void initScheduleList() { schedules = scheduleDao.retrieveMovieSchedules(); }
-
     private void initMovieList() { movies =  movieDao.retrieveMovieListWithoutPoster(); }
 
     //Inizializzo la combobox delle sale, prendendo i nomi tramite database (hallDao)
@@ -106,7 +102,6 @@ public class MovieScheduleEditorController {
             doSave(date, time, hall);
             moviePanelController.triggerNewScheduleEvent();
             GUIUtils.showAlert(Alert.AlertType.INFORMATION, "Successo", "Operazione riuscita: ", "Salvataggio riuscito correttamente!");
-            initScheduleList();
             initMovieList();
         }
     }
@@ -120,22 +115,19 @@ public class MovieScheduleEditorController {
         scheduleDao.insertNewMovieSchedule(schedule);
     }
 
-    //Metodo che controlla se la programmazione inserita dal manager è coerente con le altre programmazioni esistenti
+    //Metodo che controlla se la programmazione inserita dal manager è coerente con le altre programmazioni esistenti nella stessa sala
     private boolean checkIfICanAddThisSchedule(String hall, String incomingScheduleDate, int incomingMovieDuration) {
-        for(Schedule ms : schedules) {
-            if( (ms.getDate().trim().equalsIgnoreCase(incomingScheduleDate) && ms.getHallName().trim().equalsIgnoreCase(hall))
-             || (ms.getHallName().trim().equalsIgnoreCase(hall)) ) {
-                int existingMovieDuration = 0;
-                for(Movie m : movies) {
-                    if(ms.getMovieCode().equalsIgnoreCase(m.getCodice())) {
-                        existingMovieDuration = Integer.parseInt(m.getDurata());
-                        break;
-                    }
-                }
-                if(!checkIfSomethingIsAlreadyScheduledInThatTemporalGap(ms.getDate() + " " + ms.getTime(), existingMovieDuration, incomingScheduleDate, incomingMovieDuration)) {
-                    return true;
+        for(Schedule ms : scheduleDao.retrieveSchedulesByHall(hall)) {
+            int existingMovieDuration = 0;
+            for(Movie m : movies) {
+                if(ms.getMovieCode().equalsIgnoreCase(m.getCodice())) {
+                    existingMovieDuration = Integer.parseInt(m.getDurata());
+                    break;
                 }
             }
+            if(!checkIfSomethingIsAlreadyScheduledInThatTemporalGap(ms.getDate() + " " + ms.getTime(), existingMovieDuration, incomingScheduleDate, incomingMovieDuration)) {
+                return true;
+            }
         }
         return false;
     }
@@ -2,11 +2,12 @@ package it.unipv.controller.managerarea;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
+import it.unipv.dao.PrenotationDao;
+import it.unipv.dao.PrenotationDaoImpl;
 import it.unipv.dao.ScheduleDao;
 import it.unipv.dao.ScheduleDaoImpl;
 import it.unipv.controller.common.GUIUtils;
@@ -42,33 +43,27 @@ public class MovieSchedulerController implements ICloseablePane {
     private GridPane grigliaProgrammazione = new GridPane();
     private static int rowCount = 0;
     private static int columnCount = 0;
-    private List<Schedule> schedules = new ArrayList<>();
     private List<Schedule> actualSchedules = new ArrayList<>();
     private Movie movie;
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private ScheduleDao scheduleDao;
+    private PrenotationDao prenotationDao;
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param movie -> film che è interessato dalla creazione/eliminazione delle programmazioni
-     * @param dbConnection -> la connessione al database utilizzata per istanziare ScheduleDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare ScheduleDaoImpl e PrenotationDaoImpl
      */
-    void init(Movie movie, DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
-        scheduleDao = new ScheduleDaoImpl(dbConnection);
+    void init(Movie movie, ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        scheduleDao = new ScheduleDaoImpl(connectionProvider);
+        prenotationDao = new PrenotationDaoImpl(connectionProvider);
         initScheduleGrid(movie);
     }
 
     private void initMovieSchedulesList() {
-        schedules.clear();
         actualSchedules.clear();
-        schedules = scheduleDao.retrieveMovieSchedules();
-        Collections.sort(schedules);
-        for(Schedule ms : schedules) {
-            if(ms.getMovieCode().equalsIgnoreCase(movie.getCodice())) {
-                actualSchedules.add(ms);
-            }
-        }
+        actualSchedules.addAll(scheduleDao.retrieveSchedulesByMovie(movie.getCodice()));
     }
 
     //Metodo che crea la griglia delle programmazioni esistenti
@@ -121,12 +116,17 @@ public class MovieSchedulerController implements ICloseablePane {
         pane.getChildren().addAll(scheduleLabel, deleteIcon);
     }
 
-    //Listener al tasto di eliminazione schedule
+    //Listener al tasto di eliminazione schedule: se la programmazione ha già delle prenotazioni, lo si segnala al manager
     private void doDeleteSchedule(Schedule schedule) {
+        boolean hasPrenotations = prenotationDao.existsByScreening( schedule.getMovieCode()
+                                                                  , schedule.getDate()
+                                                                  , schedule.getTime()
+                                                                  , schedule.getHallName());
         Optional<ButtonType> option =
                 GUIUtils.showConfirmationAlert( "Attenzione"
                                               , "Richiesta conferma:"
-                                              , "Sei sicuro di voler eliminare dalla lista questa programmazione?");
+                                              , (hasPrenotations ? "Questa programmazione ha già delle prenotazioni.\n" : "")
+                                                + "Sei sicuro di voler eliminare dalla lista questa programmazione?");
         if(option.orElse(null)==ButtonType.YES) {
             scheduleDao.deleteMovieSchedule(schedule);
             refreshUI();
@@ -141,7 +141,7 @@ public class MovieSchedulerController implements ICloseablePane {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/managerarea/MovieScheduleEditor.fxml"));
                 Parent p = loader.load();
                 MovieScheduleEditorController msec = loader.getController();
-                msec.init(this, movie, dbConnection);
+                msec.init(this, movie, connectionProvider);
                 movieSchedulerEditorStage = new Stage();
                 movieSchedulerEditorStage.setScene(new Scene(p));
                 movieSchedulerEditorStage.setTitle("Nuova programmazione per " + movie.getTitolo());
@@ -1,13 +1,13 @@
 package it.unipv.controller.managerarea;
 
+import it.unipv.controller.common.AsyncTaskTracker;
 import it.unipv.controller.common.IManagerAreaTrigger;
-import it.unipv.db.DBConnection;
-import it.unipv.dao.PricesDao;
+import it.unipv.db.ConnectionProvider;
+import it.unipv.dao.AsyncPricesDao;
 import it.unipv.dao.PricesDaoImpl;
 import it.unipv.controller.common.GUIUtils;
 import it.unipv.controller.common.ICloseablePane;
 import it.unipv.model.Prices;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Label;
@@ -16,11 +16,13 @@ import javafx.scene.control.TextField;
 /**
  * Controller di resources/fxml/managerarea/PricesPanel.fxml
  * Questa classe viene utilizzata per mostrare/modificare i prezzi del cinema
+ * Lettura e salvataggio dei prezzi avvengono in background: alla chiusura del pannello il caricamento viene annullato.
  */
-public class PricesPanelController {
+public class PricesPanelController implements ICloseablePane {
 
     private Prices prices = null;
-    private PricesDao pricesDao;
+    private AsyncPricesDao pricesDao;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
     private IManagerAreaTrigger managerHomeController;
     @FXML private TextField baseTextField;
     @FXML private TextField vipTextField;
@@ -31,11 +33,11 @@ public class PricesPanelController {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param managerHomeController -> Controller della Home del manager, al quale vengono segnalati cambiamenti sui prezzi
-     * @param dbConnection -> la connessione al database utilizzata per istanziare PricesDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare PricesDaoImpl
      */
-    public void init(IManagerAreaTrigger managerHomeController, DBConnection dbConnection) {
+    public void init(IManagerAreaTrigger managerHomeController, ConnectionProvider connectionProvider) {
         this.managerHomeController = managerHomeController;
-        pricesDao = new PricesDaoImpl(dbConnection);
+        pricesDao = new AsyncPricesDao(new PricesDaoImpl(connectionProvider));
 
         fillUI();
 
@@ -45,15 +47,13 @@ public class PricesPanelController {
     //Prendo le informazioni dei prezzi, se esistenti sul database, e le carico nelle textfield
     private void fillUI() {
         managerHomeController.triggerStartStatusEvent("Carico le informazioni riguardanti i prezzi...");
-        Platform.runLater(() -> {
-            initPricesIfExists();
+        asyncTasks.track(pricesDao.retrievePrices()).thenAccept(result -> {
+            prices = result;
             setComponentIfPricesExists();
+            managerHomeController.triggerEndStatusEvent("Prezzi correttamente caricati!");
         });
-        managerHomeController.triggerEndStatusEvent("Prezzi correttamente caricati!");
     }
 
-    private void initPricesIfExists(){ prices = pricesDao.retrievePrices(); }
-
     //Se i prezzi esistono su database, allora carico le informazioni nelle textfield
     private void setComponentIfPricesExists(){
         if(prices!=null){
@@ -68,8 +68,7 @@ public class PricesPanelController {
     @FXML
     private void doSave() throws NumberFormatException {
         managerHomeController.triggerStartStatusEvent("Salvo i nuovi prezzi...");
-        Platform.runLater(this::doRealSave);
-        managerHomeController.triggerEndStatusEvent("Nuovi prezzi correttamente salvati!");
+        doRealSave();
     }
 
     private void doRealSave() {
@@ -90,8 +89,18 @@ public class PricesPanelController {
                         , Double.parseDouble(threeDTextField.getText())
                         , Double.parseDouble(reducedTextField.getText()));
             }
-            pricesDao.updatePrices(prices);
-            GUIUtils.showAlert(Alert.AlertType.INFORMATION, "Informazione", "Operazione riuscita: ", "Salvataggio prezzi riuscito con successo!");
+            saveButton.setDisable(true);
+            pricesDao.updatePrices(prices).whenComplete((r, e) -> {
+                saveButton.setDisable(false);
+                if(e == null) {
+                    managerHomeController.triggerEndStatusEvent("Nuovi prezzi correttamente salvati!");
+                    GUIUtils.showAlert(Alert.AlertType.INFORMATION, "Informazione", "Operazione riuscita: ", "Salvataggio prezzi riuscito con successo!");
+                }
+            });
         }
     }
+
+    /** Metodo invocato alla chiusura dell'area manager: annulla l'eventuale caricamento dei prezzi ancora in corso. */
+    @Override
+    public void closeAllSubWindows() { asyncTasks.cancelAll(); }
 }
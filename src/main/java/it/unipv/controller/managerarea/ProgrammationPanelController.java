@@ -10,6 +10,7 @@ import it.unipv.dao.MovieDaoImpl;
 import it.unipv.dao.ScheduleDaoImpl;
 import it.unipv.controller.common.*;
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.model.Schedule;
 import it.unipv.model.MovieStatusTYPE;
 import it.unipv.utils.ApplicationException;
@@ -54,17 +55,17 @@ public class ProgrammationPanelController implements ICloseablePane {
     private MovieSchedulerController msc;
     private MovieDao movieDao;
     private ScheduleDao scheduleDao;
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param managerHomeController -> controller della home del manager, al quale vengono segnalati cambiamenti nella lista film
-     * @param dbConnection -> la connessione al database utilizzata per istanziare MovieDaoIMpl e ScheduleDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare MovieDaoIMpl e ScheduleDaoImpl
      */
-    public void init(IManagerAreaTrigger managerHomeController, DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
-        this.movieDao = new MovieDaoImpl(dbConnection);
-        this.scheduleDao = new ScheduleDaoImpl(dbConnection);
+    public void init(IManagerAreaTrigger managerHomeController, ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.movieDao = new MovieDaoImpl(connectionProvider);
+        this.scheduleDao = new ScheduleDaoImpl(connectionProvider);
         this.managerHomeController = managerHomeController;
         columnMax = getColumnMaxFromPageWidth(moviePanel.getScene().getWindow().getWidth());
         createUI();
@@ -80,7 +81,7 @@ public class ProgrammationPanelController implements ICloseablePane {
     }
 
     private void initMoviesList() {
-        movies = movieDao.retrieveCompleteMovieList(130, 0, true, true);
+        movies = movieDao.retrieveCompleteMovieList(PosterRenditionTYPE.THUMBNAIL);
         Collections.sort(movies);
     }
 
@@ -230,11 +231,8 @@ public class ProgrammationPanelController implements ICloseablePane {
 
     //Rimuovo le programmazioni associate al film in questione se si cancella il film
     private void removeAssociatedSchedules(Movie movie) {
-        List<Schedule> schedules = scheduleDao.retrieveMovieSchedules();
-        for(Schedule ms : schedules) {
-            if(movie.getCodice().equalsIgnoreCase(ms.getMovieCode())) {
-                scheduleDao.deleteMovieSchedule(ms);
-            }
+        for(Schedule ms : scheduleDao.retrieveSchedulesByMovie(movie.getCodice())) {
+            scheduleDao.deleteMovieSchedule(ms);
         }
     }
 
@@ -262,7 +260,7 @@ public class ProgrammationPanelController implements ICloseablePane {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/managerarea/MovieScheduler.fxml"));
                 Parent p = loader.load();
                 msc = loader.getController();
-                msc.init(movie, dbConnection);
+                msc.init(movie, connectionProvider);
                 movieSchedulerStage = new Stage();
                 movieSchedulerStage.setScene(new Scene(p));
                 movieSchedulerStage.setTitle("Programmazione " + movie.getTitolo());
@@ -0,0 +1,71 @@
+package it.unipv.controller.managerarea;
+
+import it.unipv.model.HallSeatChanges;
+import it.unipv.model.Seat;
+import it.unipv.model.SeatTYPE;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classe utilizzata dall'HallEditor per ricavare le modifiche fatte ai posti rispetto all'ultimo salvataggio:
+ *     per ogni posto salvato viene memorizzato lo stato (nome, coordinate, tipo) che ha sul database,
+ *     così da poter scrivere solamente i posti aggiunti, spostati, rinominati, con tipo modificato o eliminati.
+ */
+class SeatChangeTracker {
+
+    private Map<Seat, SavedSeat> savedSeats = new IdentityHashMap<>();
+
+    /**
+     * Memorizza lo stato dei posti come presente sul database: va richiamato al caricamento e dopo ogni salvataggio.
+     * @param seats -> i posti attualmente salvati.
+     */
+    void markAsSaved(List<Seat> seats) {
+        savedSeats.clear();
+        for(Seat s : seats) {
+            savedSeats.put(s, new SavedSeat(s));
+        }
+    }
+
+    /**
+     * Confronta i posti attuali con quelli salvati.
+     * @param seats -> i posti attualmente presenti nell'editor.
+     * @return -> le modifiche da applicare sul database.
+     */
+    HallSeatChanges getChanges(List<Seat> seats) {
+        HallSeatChanges changes = new HallSeatChanges();
+        Map<Seat, SavedSeat> notFound = new IdentityHashMap<>(savedSeats);
+
+        for(Seat s : seats) {
+            SavedSeat saved = notFound.remove(s);
+            if(saved == null) {
+                changes.addInserted(s);
+            } else if(!saved.name.equals(s.getText())) {
+                changes.addRemoved(saved.name);
+                changes.addInserted(s);
+            } else if(saved.x != s.getX() || saved.y != s.getY() || saved.type != s.getType()) {
+                changes.addUpdated(s);
+            }
+        }
+
+        for(SavedSeat saved : notFound.values()) {
+            changes.addRemoved(saved.name);
+        }
+        return changes;
+    }
+
+    private static class SavedSeat {
+        private final String name;
+        private final int x;
+        private final int y;
+        private final SeatTYPE type;
+
+        private SavedSeat(Seat s) {
+            this.name = s.getText();
+            this.x = s.getX();
+            this.y = s.getY();
+            this.type = s.getType();
+        }
+    }
+}
@@ -46,12 +46,12 @@ public class UserListPanelController {
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param managerAreaController -> il controller dell'area manager, che segnala alla Home cambiamenti nella lista utenti
-     * @param dbConnection -> la connessione al database utilizzata per istanziare UserDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare UserDaoImpl
      */
-    public void init(IManagerAreaTrigger managerAreaController, DBConnection dbConnection) {
+    public void init(IManagerAreaTrigger managerAreaController, ConnectionProvider connectionProvider) {
         this.managerAreaController = managerAreaController;
-        this.prenotationDao = new PrenotationDaoImpl(dbConnection);
-        this.userDao = new UserDaoImpl(dbConnection);
+        this.prenotationDao = new PrenotationDaoImpl(connectionProvider);
+        this.userDao = new UserDaoImpl(connectionProvider);
         GUIUtils.setScaleTransitionOnControl(searchButton);
         createUI();
     }
@@ -164,13 +164,10 @@ public class UserListPanelController {
         }
     }
 
-    //Alla rimozione di un utente, cancello anche le sue prenotazioni, perché non ha senso tenerle per ora
+    //Alla rimozione di un utente, cancello anche le sue prenotazioni, perché non ha senso tenerle per ora: se non ne ha, non c'è nulla da fare
     private void removeConcerningPrenotations(User user) {
-        List<Prenotation> prenotations = prenotationDao.retrievePrenotationList();
-        for(Prenotation p : prenotations) {
-            if(p.getNomeUtente().equalsIgnoreCase(user.getNome())) {
-                prenotationDao.deletePrenotation(p);
-            }
+        for(Prenotation p : prenotationDao.retrieveByUser(user.getNome())) {
+            prenotationDao.deletePrenotation(p);
         }
     }
 
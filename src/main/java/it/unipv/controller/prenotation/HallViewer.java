@@ -1,22 +1,45 @@
 package it.unipv.controller.prenotation;
 
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.HallDao;
 import it.unipv.dao.HallDaoImpl;
+import it.unipv.dao.SeatHoldService;
+import it.unipv.dao.SeatOccupancyIndex;
+import it.unipv.model.HallLayout;
+import it.unipv.model.ScreeningKey;
 import it.unipv.model.Seat;
 import it.unipv.model.SeatTYPE;
+import it.unipv.utils.DataReferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Questa classe è usata come selettore dei posti durante la prenotazione, accessibile solamente all'utente.
+ * I posti selezionati vengono tenuti per questa postazione (SeatHoldService): le altre postazioni li vedono in grigio
+ *     e non possono selezionarli, e questo selettore aggiorna periodicamente quelli tenuti dalle altre.
+ * Le operazioni sui posti tenuti e occupati vengono eseguite, nell'ordine in cui sono richieste, sul thread dei posti tenuti
+ *     del form di prenotazione, così da non sovrapporsi ai posti liberati dal form:
+ *     l'EDT non attende il database, ed il risultato viene applicato sull'EDT solo se il selettore è ancora aperto.
+ *     Alla chiusura vengono liberati i posti tenuti da questo selettore che non sono stati confermati nel form di prenotazione.
  */
 class HallViewer extends JFrame {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HallViewer.class);
+
     private String nomeSala;
     private JPanel undraggableSeatsPanel;
     private List<Seat> undraggableSeats = new ArrayList<>();
@@ -24,44 +47,70 @@ class HallViewer extends JFrame {
     private MoviePrenotationController moviePrenotationController;
     private boolean isSomethingChanged = false;
     private HallDao hallDao;
+    private SeatOccupancyIndex seatOccupancyIndex;
+    private HallLayout layout;
+    private ScreeningKey screening;
+    private SeatHoldService seatHolds;
+    private Timer heldSeatsRefresher;
+    private ExecutorService dbExecutor;
+    private final Set<String> heldHere = Collections.synchronizedSet(new HashSet<>());
+    private volatile boolean disposed = false;
+    private boolean refreshingHeldSeats = false;
 
     /**
      * Costruttore richiamabile se l'utente non ha ancora selezionato dei posti
      * @param moviePrenotationController -> controller del form di prenotazione, al quale si segnalano i posti confermati dall'utente;
      * @param nomeSala -> il nome della sala che ha scelto l'utente;
-     * @param occupiedSeatNames -> lista dei posti già attualmente selezionati e confermati in precedenza (anche da altri utenti);
-     * @param dbConnection -> la connessione al database utilizzata per istanziare HallDaoImpl.
+     * @param screening -> la proiezione scelta dall'utente, di cui mostrare i posti già prenotati (anche da altri utenti);
+     * @param seatHolds -> il servizio con cui tenere i posti selezionati, condiviso con il form di prenotazione;
+     * @param seatHoldExecutor -> il thread del form di prenotazione su cui eseguire le operazioni sul database;
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare HallDaoImpl e l'indice dei posti occupati.
      */
-    HallViewer(MoviePrenotationController moviePrenotationController, String nomeSala, List<String> occupiedSeatNames, DBConnection dbConnection) {
+    HallViewer(MoviePrenotationController moviePrenotationController, String nomeSala, ScreeningKey screening, SeatHoldService seatHolds, ExecutorService seatHoldExecutor, ConnectionProvider connectionProvider) {
         this.moviePrenotationController = moviePrenotationController;
         this.nomeSala = nomeSala;
-        hallDao = new HallDaoImpl(dbConnection);
+        this.screening = screening;
+        this.seatHolds = seatHolds;
+        this.dbExecutor = seatHoldExecutor;
+        hallDao = new HallDaoImpl(connectionProvider);
+        seatOccupancyIndex = SeatOccupancyIndex.of(connectionProvider);
         initDraggableSeatsList();
         initUndraggableSeatsPanel();
-        setUnselectableSeat(occupiedSeatNames);
+        setUnselectableSeat();
+        refreshHeldSeats();
         initMenuBar();
         initFrame();
     }
 
-    private void initDraggableSeatsList() { undraggableSeats = hallDao.retrieveSeats(nomeSala); }
+    private void initDraggableSeatsList() {
+        layout = hallDao.retrieveHallLayout(nomeSala);
+        undraggableSeats = Seat.createSeats(layout);
+    }
 
     /**
      * Costruttore richiamabile se l'utente ha già selezionato dei posti e vuole selezionarne o deselezionarne altri.
      * @param moviePrenotationController -> controller del form di prenotazione, al quale si segnalano i posti confermati dall'utente;
      * @param nomeSala -> il nome della sala che ha scelto l'utente;
      * @param selectedMDS -> lista dei posti selezionati dall'utente nella stessa sessione
-     * @param occupiedSeatNames -> lista dei posti già attualmente selezionati e confermati in precedenza (anche da altri utenti);
-     * @param dbConnection -> la connessione al database utilizzata per istanziare HallDaoImpl.
+     * @param screening -> la proiezione scelta dall'utente, di cui mostrare i posti già prenotati (anche da altri utenti);
+     * @param seatHolds -> il servizio con cui tenere i posti selezionati, condiviso con il form di prenotazione;
+     * @param seatHoldExecutor -> il thread del form di prenotazione su cui eseguire le operazioni sul database;
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare HallDaoImpl e l'indice dei posti occupati.
      */
-    HallViewer(MoviePrenotationController moviePrenotationController, String nomeSala, List<Seat> selectedMDS, List<String> occupiedSeatNames, DBConnection dbConnection) {
+    HallViewer(MoviePrenotationController moviePrenotationController, String nomeSala, List<Seat> selectedMDS, ScreeningKey screening, SeatHoldService seatHolds, ExecutorService seatHoldExecutor, ConnectionProvider connectionProvider) {
         this.moviePrenotationController = moviePrenotationController;
         this.nomeSala = nomeSala;
-        this.selectedMDS = selectedMDS;
-        hallDao = new HallDaoImpl(dbConnection);
+        this.selectedMDS = new ArrayList<>(selectedMDS);
+        this.screening = screening;
+        this.seatHolds = seatHolds;
+        this.dbExecutor = seatHoldExecutor;
+        hallDao = new HallDaoImpl(connectionProvider);
+        seatOccupancyIndex = SeatOccupancyIndex.of(connectionProvider);
         initDraggableSeatsList();
         initUndraggableSeatsPanel();
         setSelectedMDS();
-        setUnselectableSeat(occupiedSeatNames);
+        setUnselectableSeat();
+        refreshHeldSeats();
         initMenuBar();
         initFrame();
     }
@@ -80,6 +129,83 @@ class HallViewer extends JFrame {
             isSomethingChanged = false;
         });
         saveItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_MASK));
+
+        JMenuItem bestSeatsItem = new JMenuItem("Migliori posti vicini");
+        fileMenu.add(bestSeatsItem);
+        bestSeatsItem.addActionListener(e -> doSelectBestSeats());
+        bestSeatsItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_MASK));
+    }
+
+    /* Metodo che, dato il numero di persone del gruppo, sostituisce i posti selezionati con il miglior blocco di posti
+     *     adiacenti nella stessa fila (HallRows.findBestBlock), tenendoli per questa postazione.
+     *     Il blocco è tutto di posti normali o tutto di posti VIP, che hanno prezzi diversi: viene proposto il migliore tra i due.
+     */
+    private void doSelectBestSeats() {
+        String reply = JOptionPane.showInputDialog(this, "Quanti posti vicini?", "Migliori posti vicini", JOptionPane.QUESTION_MESSAGE);
+        if(reply == null) {
+            return;
+        }
+        int partySize;
+        try {
+            partySize = Integer.parseInt(reply.trim());
+        } catch (NumberFormatException ex) {
+            partySize = 0;
+        }
+        if(partySize <= 0) {
+            JOptionPane.showMessageDialog(this, "Inserire un numero di posti valido!");
+            return;
+        }
+
+        //Vengono usati i posti tenuti letti all'ultimo aggiornamento: se nel frattempo un'altra postazione ne ha tenuto uno, la selezione viene annullata
+        BitSet unavailable = new BitSet(undraggableSeats.size());
+        for(int i=0; i<undraggableSeats.size(); i++) {
+            Seat mds = undraggableSeats.get(i);
+            if(mds.getType().equals(SeatTYPE.OCCUPATO) || mds.getIsHeld()) {
+                unavailable.set(i);
+            }
+        }
+        int[] block = layout.getRows().findBestBlock(unavailable, partySize, EnumSet.of(SeatTYPE.NORMALE, SeatTYPE.VIP));
+        if(block.length == 0) {
+            JOptionPane.showMessageDialog(this, "Non ci sono " + partySize + " posti vicini liberi in questa sala!");
+            return;
+        }
+
+        List<String> previous = new ArrayList<>();
+        for(Seat mds : selectedMDS) {
+            mds.setBorder(new LineBorder(Color.BLUE,3));
+            previous.add(mds.getText().trim());
+        }
+        selectedMDS.clear();
+        heldHere.removeAll(previous);
+        List<Seat> blockSeats = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for(int i : block) {
+            Seat mds = undraggableSeats.get(i);
+            mds.setBorder(new LineBorder(Color.CYAN, 3));
+            selectedMDS.add(mds);
+            blockSeats.add(mds);
+            names.add(layout.getName(i));
+        }
+        isSomethingChanged = true;
+
+        runInBackground(() -> {
+            seatHolds.release(screening, previous);
+            List<String> notHeld = seatHolds.hold(screening, names);
+            if(!notHeld.isEmpty()) {
+                List<String> held = new ArrayList<>(names);
+                held.removeAll(notHeld);
+                seatHolds.release(screening, held);
+            }
+            return notHeld;
+        }, notHeld -> {
+            if(notHeld.isEmpty()) {
+                heldHere.addAll(names);
+            } else {
+                blockSeats.forEach(this::deselect);
+                refreshHeldSeats();
+                JOptionPane.showMessageDialog(this, "Alcuni posti sono appena stati scelti da un altro utente, riprovare!");
+            }
+        }, () -> blockSeats.forEach(this::deselect));
     }
 
     private void initUndraggableSeatsPanel() {
@@ -92,13 +218,26 @@ class HallViewer extends JFrame {
             mds.addMouseListener(new MouseAdapter() {
                 @Override
                 public void mouseClicked(MouseEvent e) {
-                    if(!mds.getType().equals(SeatTYPE.OCCUPATO)) {
+                    if(!mds.getType().equals(SeatTYPE.OCCUPATO) && !mds.getIsHeld()) {
+                        String name = mds.getText().trim();
+                        List<String> names = Collections.singletonList(name);
                         if(selectedMDS.contains(mds)) {
-                            mds.setBorder(new LineBorder(Color.BLUE,3));
-                            selectedMDS.remove(mds);
+                            deselect(mds);
+                            heldHere.remove(name);
+                            runInBackground(() -> { seatHolds.release(screening, names); return null; }, r -> {}, () -> {});
                         } else {
+                            //Il posto viene mostrato subito come selezionato: se un'altra postazione lo ha selezionato
+                            //    prima dell'ultimo aggiornamento, la selezione viene annullata
                             mds.setBorder(new LineBorder(Color.CYAN, 3));
                             selectedMDS.add(mds);
+                            runInBackground(() -> seatHolds.hold(screening, names), notHeld -> {
+                                if(notHeld.isEmpty()) {
+                                    heldHere.add(name);
+                                } else {
+                                    deselect(mds);
+                                    mds.setIsHeld(true);
+                                }
+                            }, () -> deselect(mds));
                         }
                         isSomethingChanged = true;
                     }
@@ -108,32 +247,109 @@ class HallViewer extends JFrame {
         }
     }
 
-    private void setUnselectableSeat(List<String> names) {
-        if(names.size()>0) {
+    /* I posti sono nello stesso ordine della piantina, quindi il bit i del BitSet corrisponde al posto i.
+     * Un posto selezionato prima di ricevere i posti occupati viene deselezionato e liberato.
+     */
+    private void setUnselectableSeat() {
+        runInBackground(() -> {
+            seatOccupancyIndex.refresh();
+            return seatOccupancyIndex.getOccupiedSeats(screening, layout);
+        }, occupied -> {
+            List<String> toRelease = new ArrayList<>();
+            for(int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i+1)) {
+                Seat mds = undraggableSeats.get(i);
+                if(selectedMDS.contains(mds)) {
+                    deselect(mds);
+                    toRelease.add(mds.getText().trim());
+                }
+                mds.setType(SeatTYPE.OCCUPATO);
+                mds.updateBackgroundForChangingType();
+            }
+            if(!toRelease.isEmpty()) {
+                heldHere.removeAll(toRelease);
+                runInBackground(() -> { seatHolds.release(screening, toRelease); return null; }, r -> {}, () -> {});
+            }
+        }, () -> {});
+    }
+
+    //Aggiorna i posti tenuti dalle altre postazioni: quelli già selezionati qui restano tenuti da questa postazione
+    private void refreshHeldSeats() {
+        if(refreshingHeldSeats) {
+            return;
+        }
+        refreshingHeldSeats = true;
+        runInBackground(() -> seatHolds.retrieveHeldByOthers(screening), held -> {
+            refreshingHeldSeats = false;
             for(Seat mds : undraggableSeats) {
-                for(String s : names) {
-                    if(mds.getText().trim().equalsIgnoreCase(s)) {
-                        mds.setType(SeatTYPE.OCCUPATO);
-                        mds.updateBackgroundForChangingType();
-                    }
+                boolean isHeld = !selectedMDS.contains(mds) && held.contains(mds.getText().trim());
+                if(mds.getIsHeld() != isHeld) {
+                    mds.setIsHeld(isHeld);
                 }
             }
+        }, () -> refreshingHeldSeats = false);
+    }
+
+    private void deselect(Seat mds) {
+        if(selectedMDS.remove(mds)) {
+            mds.setBorder(new LineBorder(Color.BLUE,3));
+        }
+    }
+
+    /**
+     * Esegue un'operazione sul database sul thread del selettore, nell'ordine di richiesta, e ne applica il risultato sull'EDT.
+     * @param task -> l'operazione sul database;
+     * @param onResult -> l'aggiornamento dei posti con il risultato, eseguito sull'EDT;
+     * @param onError -> l'annullamento dell'aggiornamento già mostrato, eseguito sull'EDT se l'operazione fallisce.
+     */
+    private <T> void runInBackground(Supplier<T> task, Consumer<T> onResult, Runnable onError) {
+        if(disposed) {
+            return;
         }
+        dbExecutor.execute(() -> {
+            try {
+                T res = task.get();
+                SwingUtilities.invokeLater(() -> {
+                    if(!disposed) { onResult.accept(res); }
+                });
+            } catch (RuntimeException e) {
+                LOGGER.warn("Operazione sui posti della sala " + nomeSala + " non riuscita", e);
+                SwingUtilities.invokeLater(() -> {
+                    if(!disposed) { onError.run(); }
+                });
+            }
+        });
     }
 
-    //Metodo che imposta "selezionati" i posti che l'utente aveva già selezionato in questa sessione (magari per deselezionarne o selezionarne poi altri)
+    /* Metodo che imposta "selezionati" i posti che l'utente aveva già selezionato in questa sessione (magari per deselezionarne o selezionarne poi altri).
+     * I posti vengono tenuti di nuovo per questa proiezione: quelli che nel frattempo ha selezionato un'altra postazione vengono scartati.
+     */
     private void setSelectedMDS() {
         List<Seat> toAdd = new ArrayList<>();
         for(Seat mds : undraggableSeats) {
             for(Seat smds : selectedMDS) {
                 if(smds.getText().trim().equals(mds.getText().trim())) {
-                    mds.setBorder(new LineBorder(Color.CYAN,3));
                     toAdd.add(mds);
                 }
             }
         }
+        List<String> names = new ArrayList<>();
+        for(Seat mds : toAdd) {
+            names.add(mds.getText().trim());
+            mds.setBorder(new LineBorder(Color.CYAN,3));
+        }
         selectedMDS.clear();
         selectedMDS.addAll(toAdd);
+        runInBackground(() -> seatHolds.hold(screening, names), notHeld -> {
+            for(Seat mds : toAdd) {
+                String name = mds.getText().trim();
+                if(notHeld.contains(name)) {
+                    deselect(mds);
+                    mds.setIsHeld(true);
+                } else {
+                    heldHere.add(name);
+                }
+            }
+        }, () -> toAdd.forEach(this::deselect));
     }
 
 
@@ -147,6 +363,8 @@ class HallViewer extends JFrame {
         setResizable(false);
         setLocationRelativeTo(null);
         setVisible(true);
+        heldSeatsRefresher = new Timer((int) DataReferences.CHANGEPOLLINTERVAL, e -> refreshHeldSeats());
+        heldSeatsRefresher.start();
         addWindowListener(new WindowAdapter() {
             @Override public void windowClosing(WindowEvent e) { doConfirmSelectedSeats(); }
         });
@@ -164,4 +382,32 @@ class HallViewer extends JFrame {
 
         moviePrenotationController.triggerClosingHallViewer();
     }
+
+    //I posti tenuti da questo selettore e non confermati nel form di prenotazione vengono liberati, senza attendere il database
+    @Override
+    public void dispose() {
+        if(!disposed) {
+            disposed = true;
+            if(heldSeatsRefresher != null) {
+                heldSeatsRefresher.stop();
+            }
+            List<String> toRelease;
+            synchronized(heldHere) {
+                toRelease = new ArrayList<>(heldHere);
+            }
+            for(Seat mds : moviePrenotationController.getSelectedSeats()) {
+                toRelease.remove(mds.getText().trim());
+            }
+            if(!toRelease.isEmpty()) {
+                dbExecutor.execute(() -> {
+                    try {
+                        seatHolds.release(screening, toRelease);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Posti della sala " + nomeSala + " non liberati: torneranno liberi alla scadenza", e);
+                    }
+                });
+            }
+        }
+        super.dispose();
+    }
 }
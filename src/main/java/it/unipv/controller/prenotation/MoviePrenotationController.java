@@ -2,6 +2,8 @@ package it.unipv.controller.prenotation;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import it.unipv.controller.common.IHomeTrigger;
 import it.unipv.db.*;
@@ -13,10 +15,12 @@ import it.unipv.dao.HallDaoImpl;
 import it.unipv.dao.PrenotationDaoImpl;
 import it.unipv.dao.PricesDaoImpl;
 import it.unipv.dao.ScheduleDaoImpl;
+import it.unipv.dao.AsyncSeatOccupancyIndex;
+import it.unipv.dao.SeatHoldService;
+import it.unipv.dao.SeatOccupancyIndex;
 import it.unipv.controller.common.*;
 import it.unipv.model.*;
 import it.unipv.utils.ApplicationException;
-import it.unipv.utils.ApplicationUtils;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -25,6 +29,7 @@ import javafx.scene.Cursor;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
+import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Tooltip;
@@ -38,6 +43,8 @@ import javafx.scene.text.FontWeight;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Controller di resources/fxml/prenotation/MoviePrenotation.fxml
@@ -50,11 +57,12 @@ import org.apache.commons.lang3.StringUtils;
  *     5) L'utente conferma.
  */
 public class MoviePrenotationController implements ICloseablePane {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MoviePrenotationController.class);
 
     private List<Schedule> schedules = new ArrayList<>();
-    private List<Prenotation> prenotations;
     private List<Seat> selectedMDS = new ArrayList<>();
     private List<String> completeHallNameList = new ArrayList<>();
+    private Map<String, Image> hallPreviews;
     private GridPane grigliaSale = new GridPane();
     private static int rowCount = 0, columnCount = 0;
     private Movie movie;
@@ -69,7 +77,15 @@ public class MoviePrenotationController implements ICloseablePane {
     private HallDao hallDao;
     private ScheduleDao scheduleDao;
     private PrenotationDao prenotationDao;
-    private DBConnection dbConnection;
+    private SeatHoldService seatHolds;
+    private final ExecutorService seatHoldExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "seat-holds");
+        t.setDaemon(true);
+        return t;
+    });
+    private AsyncSeatOccupancyIndex seatOccupancyIndex;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
+    private ConnectionProvider connectionProvider;
     @FXML private Label closeButton, confirmButton;
     @FXML private AnchorPane orariPanel, salaHeader, summaryPanel;
     @FXML private ScrollPane salaPanel;
@@ -80,33 +96,28 @@ public class MoviePrenotationController implements ICloseablePane {
      * @param date -> la data che l'utente ha scelto dal pannello "SingleMoviePanel";
      * @param movie -> il film che l'utente ha scelto di prenotare;
      * @param user -> l'utente che vuole effettuare la prenotazione;
-     * @param dbConnection -> la connessione al database utilizzata per istanziare PricesDaoImpl, HallDaoImpl, ScheduleDaoImpl e PrenotationDaoImpl.
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare PricesDaoImpl, HallDaoImpl, ScheduleDaoImpl e PrenotationDaoImpl.
      */
-    public void init(IHomeTrigger homeController, String date, Movie movie, User user, DBConnection dbConnection) {
+    public void init(IHomeTrigger homeController, String date, Movie movie, User user, ConnectionProvider connectionProvider) {
         this.homeController = homeController;
         this.movie = movie;
         this.scheduleDate = date;
         this.user = user;
-        this.dbConnection = dbConnection;
-        this.pricesDao = new PricesDaoImpl(dbConnection);
-        this.hallDao = new HallDaoImpl(dbConnection);
-        this.scheduleDao = new ScheduleDaoImpl(dbConnection);
-        this.prenotationDao = new PrenotationDaoImpl(dbConnection);
+        this.connectionProvider = connectionProvider;
+        this.pricesDao = new PricesDaoImpl(connectionProvider);
+        this.hallDao = new HallDaoImpl(connectionProvider);
+        this.scheduleDao = new ScheduleDaoImpl(connectionProvider);
+        this.prenotationDao = new PrenotationDaoImpl(connectionProvider);
+        this.seatHolds = new SeatHoldService(connectionProvider);
+        this.seatOccupancyIndex = new AsyncSeatOccupancyIndex(SeatOccupancyIndex.of(connectionProvider), hallDao);
         initSchedules(date, movie);
         initListOfHallNames();
         initPrices();
-        initPrenotationList();
         createUI();
     }
 
     private void initSchedules(String date, Movie movie) {
-        List<Schedule> allSchedules = scheduleDao.retrieveMovieSchedules();
-        Collections.sort(allSchedules);
-        for (Schedule ms : allSchedules) {
-            if (ms.getDate().equals(date) && ms.getMovieCode().equals(movie.getCodice())) {
-                schedules.add(ms);
-            }
-        }
+        schedules.addAll(scheduleDao.retrieveSchedulesByMovieAndDate(movie.getCodice(), date));
     }
 
     private void initListOfHallNames() {
@@ -115,7 +126,6 @@ public class MoviePrenotationController implements ICloseablePane {
     }
     private void initPrices() { prices = pricesDao.retrievePrices(); }
 
-    private void initPrenotationList() { prenotations = prenotationDao.retrievePrenotationList(); }
 
     private void createUI() {
         Font infoFont = new Font("Bebas Neue", 24);
@@ -139,18 +149,23 @@ public class MoviePrenotationController implements ICloseablePane {
 
     private List<Label> listOfHourLabels = new ArrayList<>();
 
-    //Metodo che crea le label degli orari disponibili per la prenotazione, basandosi sulla lista delle prenotazioni
+    /* Metodo che crea le label degli orari disponibili per la prenotazione, basandosi sulla lista delle prenotazioni.
+     * Sotto ogni orario vengono mostrati i posti liberi in tutte le sale di quell'orario, dai contatori dell'indice dei posti occupati:
+     *     l'indice viene aggiornato in background e i posti liberi compaiono quando sono pronti.
+     */
     private void createHourLabels(Font font, double initalX) {
         double x = initalX + 230;
         double y = 50;
         int count = 0;
         String ora = "";
+        Map<String, Label> hourLabels = new HashMap<>();
         for (Schedule ms : schedules) {
             if(!ms.getTime().equals(ora)) {
                 Label hourLabel = new Label("  " + ms.getTime() + "  ");
                 hourLabel.setTextFill(Color.WHITE);
                 hourLabel.setFont(font);
                 hourLabel.setBorder(new Border(new BorderStroke(Color.WHITE, BorderStrokeStyle.SOLID, null, new BorderWidths(1))));
+                hourLabels.put(ms.getTime(), hourLabel);
 
                 setHourLabelListener(font, hourLabel);
 
@@ -169,6 +184,12 @@ public class MoviePrenotationController implements ICloseablePane {
             }
             ora = ms.getTime();
         }
+
+        asyncTasks.track(seatOccupancyIndex.retrieveAvailabilities(getScreenings(hourLabels.keySet()))).thenAccept(result -> {
+            for(Map.Entry<String, Label> entry : hourLabels.entrySet()) {
+                setAvailabilityGraphic(entry.getValue(), getHourAvailability(result, entry.getKey()));
+            }
+        });
     }
 
     /* Setto i listener delle label degli orari:
@@ -194,6 +215,7 @@ public class MoviePrenotationController implements ICloseablePane {
         hourLabel.setOnMouseClicked(event -> {
             summaryPanel.getChildren().clear();
             selectedMDS.clear();
+            releaseHeldSeats();
             finalPrenotation = null;
 
             hourLabel.setBorder(new Border(new BorderStroke(Color.YELLOW, BorderStrokeStyle.SOLID, null, new BorderWidths(1))));
@@ -227,14 +249,29 @@ public class MoviePrenotationController implements ICloseablePane {
         hallListLabel.setLayoutX(50);
         salaHeader.getChildren().add(hallListLabel);
 
-        List<String> hallNames = getHallsInvolvedInThatHour(hourLabel.getText().trim());
+        //Le preview di tutte le sale vengono scaricate insieme al primo click e riutilizzate per gli altri orari
+        if(hallPreviews == null) {
+            hallPreviews = hallDao.retrieveHallPreviewsAsImage(150, 0, true, true);
+        }
+
+        String orario = hourLabel.getText().trim();
+        List<String> hallNames = getHallsInvolvedInThatHour(orario);
+        Map<String, Label> hallLabels = new HashMap<>();
         for (String s : completeHallNameList) {
             if (hallNames.contains(s)) {
-                createHallGridCell(s, hallDao.retrieveHallPreviewAsImage(s, 150, 0, true, true));
+                hallLabels.put(s, createHallGridCell(s, hallPreviews.get(s)));
             }
         }
         rowCount = 0;
         columnCount = 0;
+
+        //Le disponibilità vengono aggiornate con le prenotazioni fatte nel frattempo, anche dalle altre postazioni
+        asyncTasks.track(seatOccupancyIndex.retrieveAvailabilities(getScreenings(Collections.singleton(orario)))).thenAccept(result -> {
+            setAvailabilityGraphic(hourLabel, getHourAvailability(result, orario));
+            for(Map.Entry<String, Label> entry : hallLabels.entrySet()) {
+                setAvailabilityGraphic(entry.getValue(), result.get(getScreening(orario, entry.getKey())));
+            }
+        });
     }
 
     private List<String> getHallsInvolvedInThatHour(String orario) {
@@ -248,8 +285,44 @@ public class MoviePrenotationController implements ICloseablePane {
         return res;
     }
 
-    //La singola cella della griglia delle sale, contiene la preview ed il nome della sala
-    private void createHallGridCell(String nomeSala, Image image) {
+    //Proiezione del film nel giorno scelto
+    private ScreeningKey getScreening(String orario, String nomeSala) {
+        return new ScreeningKey(movie.getCodice(), scheduleDate.trim(), orario.trim(), nomeSala);
+    }
+
+    //Le proiezioni di tutte le sale degli orari indicati
+    private List<ScreeningKey> getScreenings(Collection<String> orari) {
+        List<ScreeningKey> res = new ArrayList<>();
+        for (String orario : orari) {
+            for (String nomeSala : getHallsInvolvedInThatHour(orario.trim())) {
+                res.add(getScreening(orario, nomeSala));
+            }
+        }
+        return res;
+    }
+
+    private ScreeningAvailability getHourAvailability(Map<ScreeningKey, ScreeningAvailability> availabilities, String orario) {
+        ScreeningAvailability res = new ScreeningAvailability(0, 0, 0, 0);
+        for (String nomeSala : getHallsInvolvedInThatHour(orario.trim())) {
+            res = res.plus(availabilities.get(getScreening(orario, nomeSala)));
+        }
+        return res;
+    }
+
+    //Mostra sotto il testo della label i posti liberi (il testo resta l'orario o il nome della sala), con il dettaglio nel tooltip
+    private void setAvailabilityGraphic(Label label, ScreeningAvailability availability) {
+        Label availabilityLabel = new Label(availability.isSoldOut() ? "ESAURITO" : availability.getFree() + "/" + availability.getTotal() + " liberi");
+        availabilityLabel.setFont(Font.font("system", FontWeight.NORMAL, FontPosture.REGULAR, 11));
+        availabilityLabel.setTextFill(availability.isSoldOut() ? Color.RED : Color.LIGHTGRAY);
+        label.setGraphic(availabilityLabel);
+        label.setContentDisplay(ContentDisplay.BOTTOM);
+        label.setTooltip(new Tooltip(availability.toString()));
+    }
+
+    /* La singola cella della griglia delle sale, contiene la preview, il nome della sala ed i posti ancora liberi:
+     *     restituisce la label del nome, sotto la quale vengono mostrati i posti liberi quando sono pronti.
+     */
+    private Label createHallGridCell(String nomeSala, Image image) {
         Label nomeSalaLabel = new Label(nomeSala);
         nomeSalaLabel.setFont(Font.font("system", FontWeight.NORMAL, FontPosture.REGULAR, 15));
         nomeSalaLabel.setTextFill(Color.WHITE);
@@ -277,12 +350,16 @@ public class MoviePrenotationController implements ICloseablePane {
 
         snapHallView.setOnMouseClicked(event -> {
             if (!opened) {
+                //I posti tenuti per un'altra sala vengono liberati: quelli già selezionati vengono tenuti di nuovo dal selettore
+                if (!nomeSalaLabel.getText().trim().equals(clickedHall)) {
+                    releaseHeldSeats();
+                }
                 clickedHall = nomeSalaLabel.getText().trim();
                 if (selectedMDS.size() > 0) {
-                    hallViewer = new HallViewer(this, nomeSalaLabel.getText().trim(), selectedMDS, getOccupiedSeatNames(), dbConnection);
+                    hallViewer = new HallViewer(this, nomeSalaLabel.getText().trim(), selectedMDS, getClickedScreening(), seatHolds, seatHoldExecutor, connectionProvider);
                     hallViewer.setAlwaysOnTop(true);
                 } else {
-                    hallViewer = new HallViewer(this, nomeSalaLabel.getText().trim(), getOccupiedSeatNames(), dbConnection);
+                    hallViewer = new HallViewer(this, nomeSalaLabel.getText().trim(), getClickedScreening(), seatHolds, seatHoldExecutor, connectionProvider);
                     hallViewer.setAlwaysOnTop(true);
                 }
                 opened = true;
@@ -293,21 +370,12 @@ public class MoviePrenotationController implements ICloseablePane {
         pane.getChildren().addAll(nomeSalaLabel);
 
         GUIUtils.setScaleTransitionOnControl(snapHallView);
+        return nomeSalaLabel;
     }
 
-    //Metodo che ricava, se presenti, i posti che sono già stati occupati per quella determinata programmazione
-    private List<String> getOccupiedSeatNames() {
-        List<String> occupiedSeat = new ArrayList<>();
-        for (Prenotation p : prenotations) {
-            if ( p.getGiornoFilm().equalsIgnoreCase(scheduleDate.trim())
-              && p.getOraFilm().equalsIgnoreCase(clickedHour.trim())
-              && p.getNomeFilm().equalsIgnoreCase(movie.getTitolo())
-              && p.getCodiceFilm().equalsIgnoreCase(movie.getCodice())
-              && p.getSalaFilm().equalsIgnoreCase(clickedHall.trim())) {
-                occupiedSeat.add(p.getPostiSelezionati());
-            }
-        }
-        return ApplicationUtils.splitter(occupiedSeat, "-");
+    //La proiezione scelta dall'utente, di cui HallViewer mostra i posti già occupati
+    private ScreeningKey getClickedScreening() {
+        return new ScreeningKey(movie.getCodice(), scheduleDate.trim(), clickedHour.trim(), clickedHall.trim());
     }
 
     //Creo il pannello del riepilogo finale (dopo che l'utente ha scelto i posti)
@@ -385,6 +453,9 @@ public class MoviePrenotationController implements ICloseablePane {
         createSummaryPanel();
     }
 
+    /** @return -> i posti selezionati e confermati nel form di prenotazione. */
+    List<Seat> getSelectedSeats() { return selectedMDS; }
+
     /** Segnala al form di prenotazione che è stata chiuso il selettore dei posti. */
     void triggerClosingHallViewer() {
         opened = false;
@@ -393,14 +464,43 @@ public class MoviePrenotationController implements ICloseablePane {
 
     private void confirmButtonListener() {
         if (finalPrenotation != null) {
-            prenotationDao.insertNewPrenotation(finalPrenotation);
-            openAvvisoPrenotazioneController();
-            doClose();
+            ReservationResult result = prenotationDao.reserve(finalPrenotation);
+            if (result.isReserved()) {
+                //I posti tenuti vengono liberati dalla chiusura del form (closeAllSubWindows)
+                openAvvisoPrenotazioneController();
+                doClose();
+            } else {
+                //Qualcun altro ha prenotato alcuni dei posti dopo l'apertura del selettore: l'utente deve sceglierne altri
+                summaryPanel.getChildren().clear();
+                selectedMDS.clear();
+                releaseHeldSeats();
+                finalPrenotation = null;
+                GUIUtils.showAlert(Alert.AlertType.ERROR, "Errore", "Posti non più disponibili: ", "I posti " + String.join("-", result.getConflicts()) + " sono appena stati prenotati da un altro utente, selezionarne altri!");
+            }
         } else {
             GUIUtils.showAlert(Alert.AlertType.ERROR, "Errore", "Si è verificato un errore: ", "Non è ancora stata creata una prenotazione!");
         }
     }
 
+    /* Le operazioni sui posti tenuti vengono eseguite, nell'ordine in cui sono richieste, su un thread del form condiviso
+     *     con il selettore dei posti: il thread di JavaFX non attende il database, e un posto liberato qui non può
+     *     sovrapporsi a uno tenuto subito dopo dal selettore. Se il database non è raggiungibile i posti tornano liberi alla scadenza.
+     */
+    private void releaseHeldSeats() { runOnSeatHoldExecutor(seatHolds::releaseAll); }
+
+    private void runOnSeatHoldExecutor(Runnable task) {
+        if (seatHoldExecutor.isShutdown()) {
+            return;
+        }
+        seatHoldExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Posti tenuti non liberati: torneranno liberi alla scadenza", e);
+            }
+        });
+    }
+
     private void doClose() {
         Stage stage = (Stage) orariPanel.getScene().getWindow();
         stage.getOnCloseRequest().handle(new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST));
@@ -426,13 +526,16 @@ public class MoviePrenotationController implements ICloseablePane {
     }
 
     /**
-     * Metodo chiamato alla chiusura del progetto:
-     *     permette di chiudere l'eventuale sottofinestra del selettore dei posti
+     * Metodo chiamato alla chiusura del progetto o del form di prenotazione:
+     *     permette di chiudere l'eventuale sottofinestra del selettore dei posti e di liberare i posti tenuti
      */
     @Override
     public void closeAllSubWindows() {
+        asyncTasks.cancelAll();
         if (hallViewer != null) {
             hallViewer.dispose();
         }
+        runOnSeatHoldExecutor(seatHolds::close);
+        seatHoldExecutor.shutdown();
     }
 }
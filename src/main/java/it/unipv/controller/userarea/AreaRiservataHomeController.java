@@ -7,7 +7,7 @@ import java.util.List;
 import it.unipv.controller.common.GUIUtils;
 import it.unipv.controller.common.IUserReservedAreaInitializer;
 import it.unipv.controller.common.IUserReservedAreaTrigger;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.controller.common.ICloseablePane;
 import it.unipv.model.User;
 import it.unipv.utils.ApplicationException;
@@ -43,17 +43,17 @@ public class AreaRiservataHomeController implements IUserReservedAreaInitializer
     private List<Label> labels = new ArrayList<>();
     private User loggedUser;
     private List<ICloseablePane> iCloseablePanes = new ArrayList<>();
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
     private Thread animatedTipsThread;
 
     /**
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe;
      * @param loggedUser -> l'utente che richiede di vedere la propria area riservata;
-     * @param dbConnection -> la connessione al database che verrà condivisa a tutte le funzioni dell'area riservata.
+     * @param connectionProvider -> il pool di connessioni al database che verrà condivisa a tutte le funzioni dell'area riservata.
      */
     @Override
-    public void init(User loggedUser, DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
+    public void init(User loggedUser, ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
         this.loggedUser = loggedUser;
 
         statusLabel.setVisible(false);
@@ -148,14 +148,14 @@ public class AreaRiservataHomeController implements IUserReservedAreaInitializer
         if(!openedPane.equals("PRENOTAZIONI")) {
             CurrentPrenotationPanelController cppc =
                     openNewPanel("PRENOTAZIONI", prenotationsLabel, "/fxml/userarea/CurrentPrenotationPanel.fxml").getController();
-            cppc.init(this, loggedUser, dbConnection);
+            cppc.init(this, loggedUser, connectionProvider);
         }
     }
 
     private void openHistoryPanel() {
         if(!openedPane.equals("FILM VISTI")) {
             HistoryPanelController hpc = openNewPanel("FILM VISTI", seenMoviesLabel, "/fxml/userarea/HistoryPanel.fxml").getController();
-            hpc.init(this, loggedUser, dbConnection);
+            hpc.init(this, loggedUser, connectionProvider);
             if(!iCloseablePanes.contains(hpc)) {
                 iCloseablePanes.add(hpc);
             }
@@ -165,7 +165,10 @@ public class AreaRiservataHomeController implements IUserReservedAreaInitializer
     private void openTipsPanel() {
         if(!openedPane.equals("SUGGERIMENTI")){
             TipsPanelController tpc = openNewPanel("SUGGERIMENTI", tipsLabel, "/fxml/userarea/TipsPanel.fxml").getController();
-            tpc.init(this, loggedUser, dbConnection);
+            tpc.init(this, loggedUser, connectionProvider);
+            if(!iCloseablePanes.contains(tpc)) {
+                iCloseablePanes.add(tpc);
+            }
         }
     }
 
@@ -3,7 +3,7 @@ package it.unipv.controller.userarea;
 import java.util.*;
 
 import it.unipv.controller.common.IUserReservedAreaTrigger;
-import it.unipv.db.DBConnection;
+import it.unipv.db.ConnectionProvider;
 import it.unipv.dao.PrenotationDao;
 import it.unipv.dao.PrenotationDaoImpl;
 import it.unipv.controller.common.GUIUtils;
@@ -43,11 +43,11 @@ public class CurrentPrenotationPanelController {
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param areaRiservataController -> serve per segnalare all'area riservata le operazioni effettuate
      * @param user -> l'utente connesso al sistema
-     * @param dbConnection -> la connessione al database utilizzata per istanziare PrenotationDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare PrenotationDaoImpl
      */
-    public void init(IUserReservedAreaTrigger areaRiservataController, User user, DBConnection dbConnection) {
+    public void init(IUserReservedAreaTrigger areaRiservataController, User user, ConnectionProvider connectionProvider) {
         this.user = user;
-        this.prenotationDao = new PrenotationDaoImpl(dbConnection);
+        this.prenotationDao = new PrenotationDaoImpl(connectionProvider);
         this.areaRiservataController = areaRiservataController;
         GUIUtils.setScaleTransitionOnControl(searchButton);
         createUI();
@@ -64,10 +64,8 @@ public class CurrentPrenotationPanelController {
 
     private void initPrenotationList() {
         prenotations.clear();
-        List<Prenotation> x = prenotationDao.retrievePrenotationList();
-        for(Prenotation p : x) {
-            if( p.getNomeUtente().equalsIgnoreCase(user.getNome())
-             && !ApplicationUtils.checkIfDateIsInThePast(p.getGiornoFilm())) {
+        for(Prenotation p : prenotationDao.retrieveByUser(user.getNome())) {
+            if(!ApplicationUtils.checkIfDateIsInThePast(p.getGiornoFilm())) {
                 prenotations.add(p);
             }
         }
@@ -5,15 +5,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import it.unipv.controller.common.AsyncTaskTracker;
 import it.unipv.controller.common.IUserReservedAreaTrigger;
 import it.unipv.db.*;
-import it.unipv.dao.MovieDao;
-import it.unipv.dao.PrenotationDao;
+import it.unipv.dao.AsyncMovieDao;
+import it.unipv.dao.AsyncPrenotationDao;
 import it.unipv.dao.MovieDaoImpl;
 import it.unipv.dao.PrenotationDaoImpl;
 import it.unipv.controller.common.GUIUtils;
 import it.unipv.controller.common.ICloseablePane;
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.model.User;
 import it.unipv.model.Prenotation;
 import it.unipv.utils.ApplicationException;
@@ -50,9 +52,10 @@ public class HistoryPanelController implements ICloseablePane {
     private List<Prenotation> prenotations = new ArrayList<>();
     private GridPane grigliaFilm = new GridPane();
     private Stage oldestPrenotationStage;
-    private MovieDao movieDao;
+    private AsyncMovieDao movieDao;
     private IUserReservedAreaTrigger areaRiservataController;
-    private PrenotationDao prenotationDao;
+    private AsyncPrenotationDao prenotationDao;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
     @FXML private ScrollPane historyPanel;
     @FXML private TextField searchBarTextfield;
     @FXML private Label searchButton;
@@ -61,11 +64,11 @@ public class HistoryPanelController implements ICloseablePane {
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param areaRiservataController -> serve per segnalare all'area riservata le operazioni effettuate
      * @param loggedUser -> l'utente connesso al sistema
-     * @param dbConnection -> la connessione al database utilizzata per istanziare MovieDaoImpl e PrenotationDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare MovieDaoImpl e PrenotationDaoImpl
      */
-    public void init(IUserReservedAreaTrigger areaRiservataController, User loggedUser, DBConnection dbConnection) {
-        this.movieDao = new MovieDaoImpl(dbConnection);
-        this.prenotationDao = new PrenotationDaoImpl(dbConnection);
+    public void init(IUserReservedAreaTrigger areaRiservataController, User loggedUser, ConnectionProvider connectionProvider) {
+        this.movieDao = new AsyncMovieDao(new MovieDaoImpl(connectionProvider));
+        this.prenotationDao = new AsyncPrenotationDao(new PrenotationDaoImpl(connectionProvider));
         this.loggedUser = loggedUser;
         this.areaRiservataController = areaRiservataController;
         GUIUtils.setScaleTransitionOnControl(searchButton);
@@ -77,23 +80,19 @@ public class HistoryPanelController implements ICloseablePane {
 
     private void createUI() {
         areaRiservataController.triggerStartStatusEvent("Carico film visti in precedenza...");
-        Platform.runLater(() -> {
-            initMovieAndPrenotationList();
-            createMovieGrid();
-        });
-        areaRiservataController.triggerEndStatusEvent("Lista film visti da " + loggedUser.getNome() + " caricata con successo!");
+        asyncTasks.track(prenotationDao.retrieveByUser(loggedUser.getNome()))
+                  .thenCombine(asyncTasks.track(movieDao.retrieveCompleteMovieList(PosterRenditionTYPE.THUMBNAIL)), (prenotationList, movieList) -> {
+                      initMovieAndPrenotationList(prenotationList, movieList);
+                      createMovieGrid();
+                      areaRiservataController.triggerEndStatusEvent("Lista film visti da " + loggedUser.getNome() + " caricata con successo!");
+                      return null;
+                  });
     }
 
-    private void initMovieAndPrenotationList() {
-        List<Prenotation> x = prenotationDao.retrievePrenotationList();
-        for(Prenotation p : x) {
-            if(p.getNomeUtente().equalsIgnoreCase(loggedUser.getNome())) {
-                prenotations.add(p);
-            }
-        }
+    private void initMovieAndPrenotationList(List<Prenotation> x, List<Movie> y) {
+        prenotations.addAll(x);
         Collections.sort(prenotations);
 
-        List<Movie> y = movieDao.retrieveCompleteMovieList(130,0,true,true);
         String temp = "";
         for(Movie m : y) {
             for(Prenotation p : prenotations) {
@@ -248,6 +247,7 @@ public class HistoryPanelController implements ICloseablePane {
      */
     @Override
     public void closeAllSubWindows() {
+        asyncTasks.cancelAll();
         if(oldestPrenotationStage!=null) {
             if(oldestPrenotationStage.isShowing()) {
                 oldestPrenotationStage.close();
@@ -1,12 +1,15 @@
 package it.unipv.controller.userarea;
 
+import it.unipv.controller.common.AsyncTaskTracker;
+import it.unipv.controller.common.ICloseablePane;
 import it.unipv.controller.common.IUserReservedAreaTrigger;
 import it.unipv.db.*;
-import it.unipv.dao.MovieDao;
-import it.unipv.dao.PrenotationDao;
+import it.unipv.dao.AsyncMovieDao;
+import it.unipv.dao.AsyncPrenotationDao;
 import it.unipv.dao.MovieDaoImpl;
 import it.unipv.dao.PrenotationDaoImpl;
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.model.MovieStatusTYPE;
 import it.unipv.model.User;
 import it.unipv.model.Prenotation;
@@ -33,8 +36,9 @@ import java.util.*;
  * Controller di resources/fxml/userarea/TipsPanel.fxml
  * Questa classe viene utilizzata per mostrare le locandine dei film suggeriti all'utente:
  *     si basa sui tre generi più visti dell'utente e mostra i film, attualmente programmati, appartententi a quei generi
+ * Film e prenotazioni vengono caricati in background: alla chiusura del pannello il caricamento viene annullato.
  */
-public class TipsPanelController {
+public class TipsPanelController implements ICloseablePane {
 
     private User loggedUser;
     private static int rowCount = 0;
@@ -44,8 +48,9 @@ public class TipsPanelController {
     private List<Movie> seenMovies = new ArrayList<>();
     private List<Movie> movies = new ArrayList<>();
     private GridPane grigliaFilm = new GridPane();
-    private MovieDao movieDao;
-    private PrenotationDao prenotationDao;
+    private AsyncMovieDao movieDao;
+    private AsyncPrenotationDao prenotationDao;
+    private AsyncTaskTracker asyncTasks = new AsyncTaskTracker();
     private IUserReservedAreaTrigger areaRiservataController;
     @FXML private ScrollPane tipsPanel;
     @FXML private Label welcomeLabel;
@@ -54,11 +59,11 @@ public class TipsPanelController {
      * Metodo principale del controller, deve essere chiamato all'inizializzazione della classe.
      * @param areaRiservataController -> serve per segnalare all'area riservata le operazioni effettuate
      * @param loggedUser -> l'utente che ha effettuato l'accesso al sistema
-     * @param dbConnection -> la connessione al database utilizzata per istanziare PrenotationDaoImpl
+     * @param connectionProvider -> il pool di connessioni al database utilizzata per istanziare PrenotationDaoImpl
      */
-    public void init(IUserReservedAreaTrigger areaRiservataController, User loggedUser, DBConnection dbConnection) {
-        this.movieDao = new MovieDaoImpl(dbConnection);
-        this.prenotationDao = new PrenotationDaoImpl(dbConnection);
+    public void init(IUserReservedAreaTrigger areaRiservataController, User loggedUser, ConnectionProvider connectionProvider) {
+        this.movieDao = new AsyncMovieDao(new MovieDaoImpl(connectionProvider));
+        this.prenotationDao = new AsyncPrenotationDao(new PrenotationDaoImpl(connectionProvider));
         this.loggedUser = loggedUser;
         this.areaRiservataController = areaRiservataController;
         columnMax = getColumnMaxFromPageWidth(tipsPanel.getScene().getWindow().getWidth());
@@ -68,21 +73,19 @@ public class TipsPanelController {
 
     private void createUI() {
         areaRiservataController.triggerStartStatusEvent("Carico suggerimenti in base ai film visti da " + loggedUser.getNome() + "...");
-        Platform.runLater(() -> {
-            initFullMovieList();
-            initMovieList();
-            createMovieGrid();
-        });
-        areaRiservataController.triggerEndStatusEvent("Suggerimenti per " + loggedUser.getNome() + " correttamente caricati!");
-    }
-
-    private void initFullMovieList() {
-        fullMovieList = movieDao.retrieveCompleteMovieList(130,0,true,true);
+        asyncTasks.track(movieDao.retrieveCompleteMovieList(PosterRenditionTYPE.THUMBNAIL))
+                  .thenCombine(asyncTasks.track(prenotationDao.retrieveByUser(loggedUser.getNome())), (movieList, prenotationList) -> {
+                      fullMovieList = movieList;
+                      initMovieList(prenotationList);
+                      createMovieGrid();
+                      areaRiservataController.triggerEndStatusEvent("Suggerimenti per " + loggedUser.getNome() + " correttamente caricati!");
+                      return null;
+                  });
     }
 
     //Inizializzo la lista dei film che saranno poi effettivamente mostrati, a partire dalla lista completa (fullMovieList)
-    private void initMovieList() {
-        List<String> topThreeSeenGenres = getTopThreeSeenGenres();
+    private void initMovieList(List<Prenotation> prenotationList) {
+        List<String> topThreeSeenGenres = getTopThreeSeenGenres(prenotationList);
         for(String s : topThreeSeenGenres) {
             for(Movie m : fullMovieList) {
                 if(m.getGenere().toLowerCase().contains(s.trim().toLowerCase()) && m.getStatus().equals(MovieStatusTYPE.AVAILABLE)) {
@@ -95,8 +98,8 @@ public class TipsPanelController {
     }
 
     //Metodo che ricava i tre generi più visti dall'utente su cui basare i suggerimenti;
-    private List<String> getTopThreeSeenGenres() {
-        initSeenMovies(initPrenotationList());
+    private List<String> getTopThreeSeenGenres(List<Prenotation> prenotationList) {
+        initSeenMovies(initPrenotationList(prenotationList));
         List<String> genres = new ArrayList<>();
 
         for(Movie m : seenMovies) {
@@ -120,14 +123,8 @@ public class TipsPanelController {
         }
     }
 
-    private List<Prenotation> initPrenotationList() {
-        List<Prenotation> x = prenotationDao.retrievePrenotationList();
-        List<Prenotation> prenotations = new ArrayList<>();
-        for(Prenotation p : x) {
-            if(p.getNomeUtente().equalsIgnoreCase(loggedUser.getNome())) {
-                prenotations.add(p);
-            }
-        }
+    private List<Prenotation> initPrenotationList(List<Prenotation> prenotationList) {
+        List<Prenotation> prenotations = new ArrayList<>(prenotationList);
         Collections.sort(prenotations);
         return prenotations;
     }
@@ -202,6 +199,10 @@ public class TipsPanelController {
         }
     }
 
+    /** Metodo invocato alla chiusura dell'area riservata: annulla l'eventuale caricamento ancora in corso. */
+    @Override
+    public void closeAllSubWindows() { asyncTasks.cancelAll(); }
+
     private int temp = 0;
     private void checkPageDimension() {
         Platform.runLater(() -> {
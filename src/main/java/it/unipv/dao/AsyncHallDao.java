@@ -0,0 +1,32 @@
+package it.unipv.dao;
+
+import it.unipv.model.Seat;
+import javafx.scene.image.Image;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facciata asincrona di HallDao: le operazioni vengono eseguite dal DaoExecutor
+ *     e il risultato viene consegnato sul thread di JavaFX.
+ */
+public class AsyncHallDao {
+    private HallDao hallDao;
+
+    public AsyncHallDao(HallDao hallDao) { this.hallDao = hallDao; }
+
+    /** Versione asincrona di HallDao.retrieveHallNames. */
+    public CompletableFuture<List<String>> retrieveHallNames() {
+        return DaoExecutor.supplyAsync(hallDao::retrieveHallNames);
+    }
+
+    /** Versione asincrona di HallDao.retrieveSeats. */
+    public CompletableFuture<List<Seat>> retrieveSeats(String hallName) {
+        return DaoExecutor.supplyAsync(() -> hallDao.retrieveSeats(hallName));
+    }
+
+    /** Versione asincrona di HallDao.retrieveHallPreviewAsImage: la decodifica dell'anteprima avviene fuori dal thread di JavaFX. */
+    public CompletableFuture<Image> retrieveHallPreviewAsImage(String hallName, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
+        return DaoExecutor.supplyAsync(() -> hallDao.retrieveHallPreviewAsImage(hallName, requestedWidth, requestedHeight, preserveRatio, smooth));
+    }
+}
@@ -0,0 +1,38 @@
+package it.unipv.dao;
+
+import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
+import javafx.scene.image.Image;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facciata asincrona di MovieDao: le operazioni vengono eseguite dal DaoExecutor
+ *     e il risultato viene consegnato sul thread di JavaFX.
+ */
+public class AsyncMovieDao {
+    private MovieDao movieDao;
+
+    public AsyncMovieDao(MovieDao movieDao) { this.movieDao = movieDao; }
+
+    /** Versione asincrona di MovieDao.retrieveCompleteMovieList: il download e la decodifica delle locandine avvengono fuori dal thread di JavaFX. */
+    public CompletableFuture<List<Movie>> retrieveCompleteMovieList(double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
+        return DaoExecutor.supplyAsync(() -> movieDao.retrieveCompleteMovieList(requestedWidth, requestedHeight, preserveRatio, smooth));
+    }
+
+    /** Versione asincrona di MovieDao.retrieveCompleteMovieList con la locandina nel formato ridotto indicato. */
+    public CompletableFuture<List<Movie>> retrieveCompleteMovieList(PosterRenditionTYPE rendition) {
+        return DaoExecutor.supplyAsync(() -> movieDao.retrieveCompleteMovieList(rendition));
+    }
+
+    /** Versione asincrona di MovieDao.retrievePoster. */
+    public CompletableFuture<Image> retrievePoster(String movieCode, PosterRenditionTYPE rendition) {
+        return DaoExecutor.supplyAsync(() -> movieDao.retrievePoster(movieCode, rendition));
+    }
+
+    /** Versione asincrona di MovieDao.retrieveMovieListWithoutPoster. */
+    public CompletableFuture<List<Movie>> retrieveMovieListWithoutPoster() {
+        return DaoExecutor.supplyAsync(movieDao::retrieveMovieListWithoutPoster);
+    }
+}
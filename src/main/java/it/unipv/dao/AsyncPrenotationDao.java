@@ -0,0 +1,26 @@
+package it.unipv.dao;
+
+import it.unipv.model.Prenotation;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facciata asincrona di PrenotationDao: le operazioni vengono eseguite dal DaoExecutor
+ *     e il risultato viene consegnato sul thread di JavaFX.
+ */
+public class AsyncPrenotationDao {
+    private PrenotationDao prenotationDao;
+
+    public AsyncPrenotationDao(PrenotationDao prenotationDao) { this.prenotationDao = prenotationDao; }
+
+    /** Versione asincrona di PrenotationDao.retrievePrenotationList. */
+    public CompletableFuture<List<Prenotation>> retrievePrenotationList() {
+        return DaoExecutor.supplyAsync(prenotationDao::retrievePrenotationList);
+    }
+
+    /** Versione asincrona di PrenotationDao.retrieveByUser. */
+    public CompletableFuture<List<Prenotation>> retrieveByUser(String userName) {
+        return DaoExecutor.supplyAsync(() -> prenotationDao.retrieveByUser(userName));
+    }
+}
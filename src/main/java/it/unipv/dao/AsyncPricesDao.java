@@ -0,0 +1,25 @@
+package it.unipv.dao;
+
+import it.unipv.model.Prices;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facciata asincrona di PricesDao: le operazioni vengono eseguite dal DaoExecutor
+ *     e il risultato viene consegnato sul thread di JavaFX.
+ */
+public class AsyncPricesDao {
+    private PricesDao pricesDao;
+
+    public AsyncPricesDao(PricesDao pricesDao) { this.pricesDao = pricesDao; }
+
+    /** Versione asincrona di PricesDao.retrievePrices. */
+    public CompletableFuture<Prices> retrievePrices() {
+        return DaoExecutor.supplyAsync(pricesDao::retrievePrices);
+    }
+
+    /** Versione asincrona di PricesDao.updatePrices. */
+    public CompletableFuture<Void> updatePrices(Prices p) {
+        return DaoExecutor.runAsync(() -> pricesDao.updatePrices(p));
+    }
+}
@@ -0,0 +1,47 @@
+package it.unipv.dao;
+
+import it.unipv.model.HallLayout;
+import it.unipv.model.ScreeningAvailability;
+import it.unipv.model.ScreeningKey;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Facciata asincrona di SeatOccupancyIndex: l'aggiornamento dell'indice e la lettura delle piantine vengono eseguiti
+ *     dal DaoExecutor e il risultato viene consegnato sul thread di JavaFX.
+ */
+public class AsyncSeatOccupancyIndex {
+    private SeatOccupancyIndex seatOccupancyIndex;
+    private HallDao hallDao;
+
+    /**
+     * @param seatOccupancyIndex -> l'indice dei posti occupati;
+     * @param hallDao -> il DAO da cui leggere le piantine delle sale.
+     */
+    public AsyncSeatOccupancyIndex(SeatOccupancyIndex seatOccupancyIndex, HallDao hallDao) {
+        this.seatOccupancyIndex = seatOccupancyIndex;
+        this.hallDao = hallDao;
+    }
+
+    /**
+     * Aggiorna l'indice con le prenotazioni fatte nel frattempo, anche dalle altre postazioni,
+     *     e calcola la disponibilità delle proiezioni richieste; la piantina di ogni sala viene letta una sola volta.
+     * @param screenings -> le proiezioni di cui calcolare la disponibilità.
+     * @return -> la disponibilità di ogni proiezione.
+     */
+    public CompletableFuture<Map<ScreeningKey, ScreeningAvailability>> retrieveAvailabilities(List<ScreeningKey> screenings) {
+        return DaoExecutor.supplyAsync(() -> {
+            seatOccupancyIndex.refresh();
+            Map<String, HallLayout> layouts = new HashMap<>();
+            Map<ScreeningKey, ScreeningAvailability> res = new HashMap<>();
+            for(ScreeningKey screening : screenings) {
+                HallLayout layout = layouts.computeIfAbsent(screening.getHallName(), hallDao::retrieveHallLayout);
+                res.put(screening, seatOccupancyIndex.getAvailability(screening, layout));
+            }
+            return res;
+        });
+    }
+}
@@ -0,0 +1,133 @@
+package it.unipv.dao;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Cache su disco dei blob scaricati dal database (locandine e anteprime delle sale).
+ * Ogni file ha come nome l'hash SHA-256 del suo contenuto: i DAO leggono dal database solamente l'hash
+ *     e scaricano il blob solamente se il file corrispondente non è presente, ad esempio perché l'immagine è cambiata.
+ * I file vengono letti tramite memory mapping, senza copiarli in un buffer intermedio.
+ * Un errore di scrittura della cache non è bloccante: il blob verrà semplicemente scaricato di nuovo.
+ */
+public class BlobDiskCache {
+    private final File directory;
+
+    /** Cache nella cartella indicata da DataReferences.BLOBCACHEDIR. */
+    public BlobDiskCache() { this(new File(DataReferences.BLOBCACHEDIR)); }
+
+    /** @param directory -> la cartella che contiene i file della cache. */
+    public BlobDiskCache(File directory) { this.directory = directory; }
+
+    /**
+     * @param hash -> l'hash del contenuto cercato, come presente sul database.
+     * @return -> il contenuto del file, oppure null se il file non è presente in cache.
+     */
+    public InputStream read(String hash) {
+        if(hash == null) { return null; }
+        File file = new File(directory, hash);
+        if(!file.isFile()) { return null; }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Memorizza un blob appena scaricato o caricato sul database.
+     * @param hash -> l'hash del contenuto, calcolato con hashOf;
+     * @param content -> il contenuto del blob.
+     */
+    public void write(String hash, byte[] content) {
+        File file = new File(directory, hash);
+        if(file.isFile()) { return; }
+        try {
+            Files.createDirectories(directory.toPath());
+            //Scrittura su file temporaneo e poi rinomina: un file della cache è sempre completo
+            Path temp = Files.createTempFile(directory.toPath(), hash, ".tmp");
+            Files.write(temp, content);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //La cache è solo un'ottimizzazione: il blob resta comunque sul database
+        }
+    }
+
+    /**
+     * @param content -> il contenuto di cui calcolare l'hash.
+     * @return -> l'hash SHA-256 del contenuto in esadecimale, lo stesso salvato sul database.
+     */
+    public static String hashOf(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder res = new StringBuilder();
+            for(byte b : digest) {
+                res.append(String.format("%02x", b));
+            }
+            return res.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /**
+     * @param in -> lo stream da leggere (non viene chiuso).
+     * @return -> tutto il contenuto dello stream.
+     */
+    public static byte[] readFully(InputStream in) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 4096));
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    private static class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private MappedInputStream(ByteBuffer buffer) { this.buffer = buffer; }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(len == 0) { return 0; }
+            if(!buffer.hasRemaining()) { return -1; }
+            int toRead = Math.min(len, buffer.remaining());
+            buffer.get(b, off, toRead);
+            return toRead;
+        }
+
+        @Override
+        public long skip(long n) {
+            int toSkip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + toSkip);
+            return toSkip;
+        }
+
+        @Override
+        public int available() { return buffer.remaining(); }
+    }
+}
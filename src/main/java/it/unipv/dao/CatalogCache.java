@@ -0,0 +1,112 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.utils.DataReferences;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Cache condivisa del catalogo (film, programmazioni, nomi delle sale e prezzi), letti da quasi tutti i pannelli.
+ * Esiste un'istanza per ogni ConnectionProvider, condivisa da tutti i DAO che lo utilizzano:
+ *     i metodi di lettura dei DAO la interrogano prima di eseguire la query (read-through),
+ *     mentre i metodi di scrittura invalidano solamente il catalogo che hanno modificato.
+ * Le modifiche effettuate da altre istanze del programma invalidano la cache tramite il ChangeTracker,
+ *     o al più tardi alla scadenza dello snapshot (DataReferences.CATALOGCACHETTL millisecondi).
+ * I valori memorizzati sono snapshot immutabili: i DAO restituiscono ai chiamanti delle copie, che possono essere modificate liberamente.
+ */
+public class CatalogCache {
+    public enum Catalog { MOVIES, SCHEDULES, HALLNAMES, PRICES }
+
+    private static final ProviderRegistry<CatalogCache> INSTANCES = new ProviderRegistry<>();
+
+    private final long ttlMillis;
+    private final Map<Catalog, Snapshot> snapshots = new EnumMap<>(Catalog.class);
+    private final Map<Catalog, Long> generations = new EnumMap<>(Catalog.class);
+    private long hits = 0;
+    private long misses = 0;
+
+    /** @param ttlMillis -> dopo quanti millisecondi uno snapshot viene ricaricato dal database; se minore o uguale a 0 la cache non memorizza nulla. */
+    public CatalogCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        for(Catalog c : Catalog.values()) {
+            generations.put(c, 0L);
+        }
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni dei DAO.
+     * @return -> la cache condivisa dai DAO che utilizzano quel fornitore di connessioni.
+     */
+    public static CatalogCache of(ConnectionProvider connectionProvider) {
+        return INSTANCES.get(connectionProvider, cp -> new CatalogCache(DataReferences.CATALOGCACHETTL));
+    }
+
+    /**
+     * Restituisce lo snapshot di un catalogo, caricandolo con loader se assente o scaduto.
+     *     Il caricamento avviene fuori dal lock: se nel frattempo il catalogo viene invalidato, il valore caricato
+     *     viene restituito al chiamante ma non memorizzato, perché potrebbe non contenere la modifica.
+     * @param catalog -> il catalogo richiesto;
+     * @param loader -> la query che carica il catalogo; il valore restituito non deve più essere modificato.
+     * @return -> lo snapshot del catalogo.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Catalog catalog, Supplier<T> loader) {
+        long generation;
+        synchronized(this) {
+            T cached = (T) getIfFresh(catalog);
+            if(cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            generation = generations.get(catalog);
+        }
+
+        T res = loader.get();
+        synchronized(this) {
+            if(ttlMillis > 0 && res != null && generations.get(catalog) == generation) {
+                snapshots.put(catalog, new Snapshot(res, System.currentTimeMillis() + ttlMillis));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Restituisce lo snapshot di un catalogo solo se già presente e valido, senza interrogare il database.
+     * @param catalog -> il catalogo richiesto.
+     * @return -> lo snapshot, oppure null se assente o scaduto.
+     */
+    public synchronized Object getIfFresh(Catalog catalog) {
+        Snapshot snapshot = snapshots.get(catalog);
+        if(snapshot == null || System.currentTimeMillis() >= snapshot.expiresAt) {
+            return null;
+        }
+        return snapshot.value;
+    }
+
+    /** @param catalogs -> i cataloghi modificati, che verranno ricaricati alla prossima lettura. */
+    public synchronized void invalidate(Catalog... catalogs) {
+        for(Catalog c : catalogs) {
+            snapshots.remove(c);
+            generations.put(c, generations.get(c) + 1);
+        }
+    }
+
+    public void invalidateAll() { invalidate(Catalog.values()); }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    private static class Snapshot {
+        private final Object value;
+        private final long expiresAt;
+
+        private Snapshot(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.db.DBConnection;
+import it.unipv.model.ChangeSet;
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Log delle righe inserite ed eliminate (tabella CHANGE_LOG), su cui si basa la sincronizzazione incrementale:
+ *     le scritture registrano l'ID della riga modificata nella stessa transazione della modifica,
+ *     e retrieveChangesSince restituisce le sole righe toccate dopo il watermark del client.
+ * Il log non contiene lo stato delle righe: viene letto in join con la tabella, quindi una riga ancora presente
+ *     è stata inserita, una assente è stata eliminata.
+ * Prima di aggiungere la propria riga al log ogni scrittura blocca la riga della tabella in CHANGE_VERSION fino al commit:
+ *     le scritture su una stessa tabella ricevono quindi i SEQ nell'ordine in cui vengono confermate, ed un lettore
+ *     che vede un SEQ vede anche tutti i precedenti. Il blocco dura solo dall'inserimento nel log al commit.
+ * Ogni lettura registra il watermark del lettore in CHANGE_LOG_READER: prune elimina il log fino al watermark più basso
+ *     tra i lettori attivi, ed un lettore con un watermark già eliminato riceve l'intera tabella.
+ *     Alla chiusura del fornitore di connessioni il lettore viene rimosso, così non trattiene più il log.
+ */
+class ChangeLog {
+
+    interface RowWriter {
+        /** @return -> l'ID della riga inserita o eliminata. */
+        long write(DBConnection dbConnection) throws SQLException;
+    }
+
+    interface RowReader<T> {
+        T read(ResultSet resultSet) throws SQLException;
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeLog.class);
+
+    //Un lettore per ogni fornitore di connessioni, cioè per ogni postazione
+    private static final ProviderRegistry<String> READERS = new ProviderRegistry<>();
+
+    private ChangeLog() {}
+
+    /**
+     * Esegue una scrittura e la registra nel log, in un'unica transazione.
+     * @param connectionProvider -> il fornitore della connessione;
+     * @param table -> la tabella modificata;
+     * @param writer -> la scrittura, che restituisce l'ID della riga modificata.
+     * @return -> l'ID della riga modificata.
+     */
+    static long writeAndLog(ConnectionProvider connectionProvider, ChangeTracker.Table table, RowWriter writer) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            Connection connection = dbConnection.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                long id = writer.write(dbConnection);
+                doLockTable(dbConnection, table);
+                doAppend(dbConnection, table, id);
+                connection.commit();
+                return id;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /**
+     * Recupera le righe modificate dopo il watermark. Con watermark 0 restituisce l'intera tabella:
+     *     le righe precedenti all'introduzione del log non vi compaiono.
+     * @param connectionProvider -> il fornitore della connessione;
+     * @param table -> la tabella da sincronizzare, con chiave primaria ID;
+     * @param watermark -> il watermark restituito dalla sincronizzazione precedente, 0 per la prima;
+     * @param reader -> la conversione di una riga del ResultSet nell'oggetto corrispondente.
+     * @return -> le modifiche successive al watermark.
+     */
+    static <T> ChangeSet<T> retrieveChangesSince(ConnectionProvider connectionProvider, ChangeTracker.Table table, long watermark, RowReader<T> reader) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            ChangeSet<T> res = watermark <= 0 || watermark < doRetrievePrunedSeq(dbConnection, table)
+                             ? doRetrieveAll(dbConnection, table, reader)
+                             : doRetrieveDelta(dbConnection, table, watermark, reader);
+            doRegisterReader(dbConnection, READERS.get(connectionProvider, ChangeLog::createReader), table, res.getWatermark());
+            return res;
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /**
+     * Elimina le righe del log già lette da tutti i lettori attivi; i lettori inattivi da più di
+     *     DataReferences.CHANGELOGREADERTTL secondi non vengono più considerati.
+     * @param connectionProvider -> il fornitore della connessione;
+     * @param table -> la tabella di cui eliminare il log.
+     * @return -> il numero di righe eliminate.
+     */
+    static int prune(ConnectionProvider connectionProvider, ChangeTracker.Table table) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            Connection connection = dbConnection.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                int res = doPrune(dbConnection, table);
+                connection.commit();
+                return res;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    //L'ultima riga del log di ogni tabella non viene mai eliminata: il watermark di una lettura completa (MAX(SEQ)) non torna indietro,
+    //    e MySQL non riassegna i SEQ già usati dopo un riavvio. Senza lettori attivi si elimina tutto il resto
+    private static int doPrune(DBConnection dbConnection, ChangeTracker.Table table) throws SQLException {
+        doLockTable(dbConnection, table);
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".CHANGE_LOG_READER WHERE NOME_TABELLA = ? "
+                     + "AND AGGIORNATO < TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.setInt(2, -DataReferences.CHANGELOGREADERTTL);
+            ps.execute();
+        }
+
+        long limit;
+        query = "SELECT (SELECT MIN(WATERMARK) FROM " + DataReferences.DBNAME + ".CHANGE_LOG_READER WHERE NOME_TABELLA = ?), "
+              + "(SELECT MAX(SEQ) FROM " + DataReferences.DBNAME + ".CHANGE_LOG WHERE NOME_TABELLA = ?)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.setString(2, table.name());
+            try (ResultSet resultSet = ps.executeQuery()) {
+                resultSet.next();
+                long lastSeq = resultSet.getLong(2);
+                long lowestWatermark = resultSet.getLong(1);
+                limit = resultSet.wasNull() ? lastSeq - 1 : Math.min(lowestWatermark, lastSeq - 1);
+            }
+        }
+        if(limit <= 0) {
+            return 0;
+        }
+
+        int res;
+        query = "DELETE FROM " + DataReferences.DBNAME + ".CHANGE_LOG WHERE NOME_TABELLA = ? AND SEQ <= ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.setLong(2, limit);
+            res = ps.executeUpdate();
+        }
+        query = "UPDATE " + DataReferences.DBNAME + ".CHANGE_VERSION SET LOG_ELIMINATO = GREATEST(LOG_ELIMINATO, ?) WHERE NOME_TABELLA = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setLong(1, limit);
+            ps.setString(2, table.name());
+            ps.execute();
+        }
+        return res;
+    }
+
+    //Blocca la riga della tabella in CHANGE_VERSION fino al termine della transazione
+    private static void doLockTable(DBConnection dbConnection, ChangeTracker.Table table) throws SQLException {
+        String query = "SELECT VERSIONE FROM " + DataReferences.DBNAME + ".CHANGE_VERSION WHERE NOME_TABELLA = ? FOR UPDATE";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            try (ResultSet resultSet = ps.executeQuery()) {
+                resultSet.next();
+            }
+        }
+    }
+
+    private static long doRetrievePrunedSeq(DBConnection dbConnection, ChangeTracker.Table table) throws SQLException {
+        String query = "SELECT LOG_ELIMINATO FROM " + DataReferences.DBNAME + ".CHANGE_VERSION WHERE NOME_TABELLA = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            try (ResultSet resultSet = ps.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static String createReader(ConnectionProvider connectionProvider) {
+        String res = UUID.randomUUID().toString();
+        connectionProvider.addCloseListener(() -> unregisterReader(connectionProvider, res));
+        return res;
+    }
+
+    //Se il database non è raggiungibile il lettore viene ignorato dopo DataReferences.CHANGELOGREADERTTL secondi
+    private static void unregisterReader(ConnectionProvider connectionProvider, String readerId) {
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".CHANGE_LOG_READER WHERE ID_LETTORE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, readerId);
+            ps.execute();
+        } catch (SQLException | ApplicationException e) {
+            LOGGER.warn("Lettore del log delle modifiche non rimosso, verrà ignorato alla scadenza", e);
+        }
+    }
+
+    private static void doRegisterReader(DBConnection dbConnection, String readerId, ChangeTracker.Table table, long watermark) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".CHANGE_LOG_READER (ID_LETTORE, NOME_TABELLA, WATERMARK, AGGIORNATO) "
+                     + "values (?,?,?,CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE WATERMARK = VALUES(WATERMARK), AGGIORNATO = VALUES(AGGIORNATO)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, readerId);
+            ps.setString(2, table.name());
+            ps.setLong(3, watermark);
+            ps.execute();
+        }
+    }
+
+    private static void doAppend(DBConnection dbConnection, ChangeTracker.Table table, long id) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".CHANGE_LOG (NOME_TABELLA, ID_RIGA) values (?,?)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.setLong(2, id);
+            ps.execute();
+        }
+    }
+
+    //Il watermark viene letto prima della tabella: le righe modificate nel frattempo verranno rilette con la sincronizzazione successiva
+    private static <T> ChangeSet<T> doRetrieveAll(DBConnection dbConnection, ChangeTracker.Table table, RowReader<T> reader) throws SQLException {
+        long watermark;
+        String query = "SELECT COALESCE(MAX(SEQ), 0) FROM " + DataReferences.DBNAME + ".CHANGE_LOG WHERE NOME_TABELLA = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            try (ResultSet resultSet = ps.executeQuery()) {
+                watermark = resultSet.next() ? resultSet.getLong(1) : 0;
+            }
+        }
+
+        query = "SELECT * FROM " + DataReferences.DBNAME + "." + table.name();
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query);
+             ResultSet resultSet = ps.executeQuery()) {
+            List<T> rows = new ArrayList<>();
+            while(resultSet.next()) {
+                rows.add(reader.read(resultSet));
+            }
+            return new ChangeSet<>(rows, new ArrayList<>(), watermark, true);
+        }
+    }
+
+    private static <T> ChangeSet<T> doRetrieveDelta(DBConnection dbConnection, ChangeTracker.Table table, long watermark, RowReader<T> reader) throws SQLException {
+        String query = "SELECT L.SEQ, L.ID_RIGA, R.* FROM " + DataReferences.DBNAME + ".CHANGE_LOG L "
+                     + "LEFT JOIN " + DataReferences.DBNAME + "." + table.name() + " R ON R.ID = L.ID_RIGA "
+                     + "WHERE L.NOME_TABELLA = ? AND L.SEQ > ? ORDER BY L.SEQ";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.setLong(2, watermark);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                Map<Long, T> upserted = new LinkedHashMap<>();
+                Set<Long> deleted = new LinkedHashSet<>();
+                long newWatermark = watermark;
+                while(resultSet.next()) {
+                    newWatermark = Math.max(newWatermark, resultSet.getLong("SEQ"));
+                    long id = resultSet.getLong("ID_RIGA");
+                    resultSet.getLong("ID");
+                    if(resultSet.wasNull()) {
+                        deleted.add(id);
+                    } else if(!upserted.containsKey(id)) {
+                        upserted.put(id, reader.read(resultSet));
+                    }
+                }
+                return new ChangeSet<>(new ArrayList<>(upserted.values()), deleted, newWatermark, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.db.DBConnection;
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Notifica delle modifiche fatte dalle altre postazioni che utilizzano lo stesso database.
+ * Ogni scrittura dei DAO incrementa la versione della tabella modificata nella tabella CHANGE_VERSION;
+ *     un thread in background legge periodicamente solo quella tabella e, quando una versione cambia,
+ *     invalida il catalogo corrispondente della CatalogCache e avvisa i listener registrati.
+ * Le scritture fatte da questa istanza invalidano subito la cache locale: la successiva lettura delle versioni
+ *     le vedrà comunque come modifiche e causerà al più un ricaricamento in più.
+ * La notifica non è bloccante: se la versione non può essere aggiornata (errore SQL, pool esaurito o chiuso) le altre postazioni vedranno
+ *     la modifica alla scadenza della cache (DataReferences.CATALOGCACHETTL).
+ */
+public class ChangeTracker {
+    public enum Table {
+        MOVIE(CatalogCache.Catalog.MOVIES),
+        SCHEDULE(CatalogCache.Catalog.SCHEDULES),
+        MAPS(CatalogCache.Catalog.HALLNAMES),
+        PRICES(CatalogCache.Catalog.PRICES),
+        PRENOTATION(null);
+
+        private final CatalogCache.Catalog catalog;
+
+        Table(CatalogCache.Catalog catalog) { this.catalog = catalog; }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeTracker.class);
+    private static final ProviderRegistry<ChangeTracker> INSTANCES = new ProviderRegistry<>(ChangeTracker::close);
+
+    private final ConnectionProvider connectionProvider;
+    private final CatalogCache catalogCache;
+    private final Map<Table, Long> lastVersions = new EnumMap<>(Table.class);
+    private final List<Consumer<Set<Table>>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService poller;
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni con cui leggere e aggiornare le versioni;
+     * @param catalogCache -> la cache da invalidare quando una tabella viene modificata.
+     */
+    public ChangeTracker(ConnectionProvider connectionProvider, CatalogCache catalogCache) {
+        this.connectionProvider = connectionProvider;
+        this.catalogCache = catalogCache;
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni dei DAO.
+     * @return -> il ChangeTracker condiviso dai DAO che utilizzano quel fornitore di connessioni.
+     */
+    public static ChangeTracker of(ConnectionProvider connectionProvider) {
+        return INSTANCES.get(connectionProvider, cp -> new ChangeTracker(cp, CatalogCache.of(cp)));
+    }
+
+    /**
+     * Avvia la lettura periodica delle versioni e, ogni DataReferences.CHANGELOGPRUNEINTERVAL millisecondi,
+     *     l'eliminazione del log delle modifiche già letto; se è già avviata non fa nulla.
+     * @param intervalMillis -> ogni quanti millisecondi leggere le versioni.
+     */
+    public synchronized void start(long intervalMillis) {
+        if(poller != null) { return; }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            //Un'eccezione non catturata fermerebbe per sempre il poller: qualunque errore (database momentaneamente
+            //    non raggiungibile, listener fallito) viene registrato e si riprova al prossimo giro
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Controllo delle modifiche non riuscito, nuovo tentativo tra {} ms", intervalMillis, e);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                pruneChangeLog();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Eliminazione del log delle modifiche non riuscita", e);
+            }
+        }, DataReferences.CHANGELOGPRUNEINTERVAL, DataReferences.CHANGELOGPRUNEINTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Elimina le righe del log delle modifiche (CHANGE_LOG) già lette dalle repliche di tutte le postazioni attive.
+     * @return -> il numero di righe eliminate.
+     */
+    public int pruneChangeLog() {
+        int res = 0;
+        for(Table t : Table.values()) {
+            res += ChangeLog.prune(connectionProvider, t);
+        }
+        return res;
+    }
+
+    /** Ferma la lettura periodica: viene richiamato alla chiusura del programma, prima di chiudere il pool. */
+    public synchronized void close() {
+        if(poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    /**
+     * Registra un'azione da eseguire quando delle tabelle vengono modificate, da questa o da un'altra postazione.
+     *     L'azione viene eseguita sul thread che ha rilevato la modifica, quindi non su quello di JavaFX.
+     * @param listener -> l'azione, che riceve le tabelle modificate.
+     */
+    public void addListener(Consumer<Set<Table>> listener) { listeners.add(listener); }
+
+    public void removeListener(Consumer<Set<Table>> listener) { listeners.remove(listener); }
+
+    /**
+     * Segnala la modifica di una tabella: invalida la cache locale, avvisa i listener e incrementa la versione sul database.
+     * @param table -> la tabella modificata.
+     */
+    public void tableChanged(Table table) {
+        if(table.catalog != null) {
+            catalogCache.invalidate(table.catalog);
+        }
+        notifyListeners(EnumSet.of(table));
+
+        String query = "UPDATE " + DataReferences.DBNAME + ".CHANGE_VERSION SET VERSIONE = VERSIONE + 1 WHERE NOME_TABELLA = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, table.name());
+            ps.execute();
+        } catch (SQLException | ApplicationException e) {
+            //Anche con il pool esaurito o chiuso la scrittura resta valida: le altre postazioni vedranno la modifica alla scadenza della cache
+            LOGGER.warn("Versione della tabella {} non aggiornata", table, e);
+        }
+    }
+
+    /**
+     * Legge le versioni delle tabelle e invalida i cataloghi modificati dall'ultima lettura.
+     *     La prima lettura memorizza solamente le versioni di partenza.
+     * @return -> le tabelle modificate dall'ultima lettura.
+     */
+    public Set<Table> poll() {
+        Map<Table, Long> versions = doRetrieveVersions();
+        Set<Table> changed = EnumSet.noneOf(Table.class);
+        synchronized(lastVersions) {
+            for(Map.Entry<Table, Long> e : versions.entrySet()) {
+                Long last = lastVersions.put(e.getKey(), e.getValue());
+                if(last != null && !last.equals(e.getValue())) {
+                    changed.add(e.getKey());
+                }
+            }
+        }
+
+        if(!changed.isEmpty()) {
+            for(Table t : changed) {
+                if(t.catalog != null) {
+                    catalogCache.invalidate(t.catalog);
+                }
+            }
+            notifyListeners(changed);
+        }
+        return changed;
+    }
+
+    private Map<Table, Long> doRetrieveVersions() {
+        String query = "SELECT NOME_TABELLA, VERSIONE FROM " + DataReferences.DBNAME + ".CHANGE_VERSION";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query);
+             ResultSet resultSet = ps.executeQuery()) {
+            Map<Table, Long> res = new EnumMap<>(Table.class);
+            while(resultSet.next()) {
+                Table table = getTableFromName(resultSet.getString("NOME_TABELLA"));
+                if(table != null) {
+                    res.put(table, resultSet.getLong("VERSIONE"));
+                }
+            }
+            return res;
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    //Le righe aggiunte da versioni più recenti del programma vengono ignorate
+    private Table getTableFromName(String name) {
+        for(Table t : Table.values()) {
+            if(t.name().equalsIgnoreCase(name)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    //Un listener che fallisce non impedisce la notifica agli altri, né fa fallire la scrittura che ha segnalato la modifica
+    private void notifyListeners(Set<Table> changed) {
+        for(Consumer<Set<Table>> l : listeners) {
+            try {
+                l.accept(changed);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Notifica delle tabelle modificate {} non riuscita", changed, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package it.unipv.dao;
+
+import it.unipv.utils.DataReferences;
+import javafx.application.Platform;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor condiviso dai DAO asincroni (AsyncMovieDao, AsyncHallDao, ...).
+ * Le operazioni JDBC e la decodifica delle immagini vengono eseguite su un numero limitato di thread dedicati
+ *     (DataReferences.DAOIOTHREADS, pari alla dimensione del pool di connessioni), mentre il risultato viene
+ *     consegnato sul thread di JavaFX: chi riceve il CompletableFuture può quindi aggiornare direttamente la UI.
+ * Cancellare il CompletableFuture restituito evita che l'operazione parta, se non è ancora partita,
+ *     e in ogni caso che il risultato venga consegnato.
+ */
+public class DaoExecutor {
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(DataReferences.DAOIOTHREADS, r -> {
+        Thread t = new Thread(r, "dao-io-" + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Executor fxExecutor = Platform::runLater;
+
+    private DaoExecutor() {}
+
+    /**
+     * Esegue l'operazione sull'executor di I/O e consegna il risultato sul thread di JavaFX.
+     * Gli errori (diversi dalla cancellazione) vengono segnalati sul thread di JavaFX come eccezioni non gestite,
+     *     come accadeva quando le operazioni venivano eseguite direttamente nella Platform.runLater.
+     * Sia il risultato sia l'errore vengono consegnati sul thread di JavaFX, quindi anche i callback che gestiscono l'errore
+     *     possono aggiornare la UI; la cancellazione, invece, completa il CompletableFuture sul thread che la richiede.
+     * @param task -> l'operazione da eseguire.
+     * @return -> il CompletableFuture del risultato, completato sul thread di JavaFX.
+     */
+    static <T> CompletableFuture<T> supplyAsync(Supplier<T> task) {
+        CompletableFuture<T> source = CompletableFuture.supplyAsync(task, ioExecutor);
+        CompletableFuture<T> res = new CompletableFuture<>();
+        source.whenCompleteAsync((r, e) -> {
+            if(e == null) {
+                res.complete(r);
+            } else {
+                res.completeExceptionally(e);
+            }
+        }, fxExecutor);
+        res.whenComplete((r, e) -> {
+            if(res.isCancelled()) {
+                source.cancel(true);
+            } else if(e != null) {
+                reportError(e);
+            }
+        });
+        return res;
+    }
+
+    static CompletableFuture<Void> runAsync(Runnable task) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /** Ferma i thread di I/O: viene richiamato alla chiusura del programma. */
+    public static void shutdown() { ioExecutor.shutdownNow(); }
+
+    private static void reportError(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if(!(cause instanceof CancellationException)) {
+            fxExecutor.execute(() -> {
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, cause);
+            });
+        }
+    }
+}
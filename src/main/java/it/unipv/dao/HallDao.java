@@ -1,18 +1,25 @@
 package it.unipv.dao;
 
+import it.unipv.model.HallLayout;
+import it.unipv.model.HallSeatChanges;
+import it.unipv.model.HallSeatCounts;
 import it.unipv.model.Seat;
 import javafx.scene.image.Image;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
 public interface HallDao {
     List<Seat> retrieveSeats(String hallName);
+    HallLayout retrieveHallLayout(String hallName);
     List<String> retrieveHallNames();
     Image retrieveHallPreviewAsImage(String hallName, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth);
     InputStream retrieveHallPreviewAsStream(String hallName);
-    void updateHallSeats(String hallName, List<Seat> toUpdate);
+    Map<String, Image> retrieveHallPreviewsAsImage(double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth);
+    Map<String, HallSeatCounts> retrieveSeatCountsPerHall();
+    void updateHallSeats(String hallName, HallSeatChanges changes);
     void updateHallPreview(String hallName, ByteArrayInputStream previewStream);
     void removeHallAndPreview(String hallName);
     void insertNewHall(String hallName, List<Seat> toInsert);
@@ -1,22 +1,31 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
+import it.unipv.model.HallLayout;
+import it.unipv.model.HallSeatChanges;
+import it.unipv.model.HallSeatCounts;
 import it.unipv.model.Seat;
 import it.unipv.model.SeatTYPE;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.CloseableUtils;
 import it.unipv.utils.DataReferences;
+import it.unipv.utils.LRUCache;
 import javafx.scene.image.Image;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.sql.Blob;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 /**
  * Questa classe fa riferimento alle tabelle MAPS e MAPPREVIEWS
@@ -24,34 +33,129 @@ import java.util.Objects;
  */
 public class HallDaoImpl implements HallDao {
 
-    private DBConnection dbConnection;
+    //Una cache per ogni fornitore di connessioni: sale con lo stesso nome su database diversi non si sovrappongono
+    private static final ProviderRegistry<LRUCache<String, HallLayout>> LAYOUTCACHES = new ProviderRegistry<>();
 
-    public HallDaoImpl(DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
+    private ConnectionProvider connectionProvider;
+    private BlobDiskCache diskCache;
+    private CatalogCache catalogCache;
+    private ChangeTracker changeTracker;
+    private LRUCache<String, HallLayout> layoutCache;
+    private volatile double lastSeatsWriteRate = 0;
+
+    public HallDaoImpl(ConnectionProvider connectionProvider) {
+        this(connectionProvider, new BlobDiskCache());
+    }
+
+    public HallDaoImpl(ConnectionProvider connectionProvider, BlobDiskCache diskCache) {
+        this.connectionProvider = connectionProvider;
+        this.diskCache = diskCache;
+        this.catalogCache = CatalogCache.of(connectionProvider);
+        this.changeTracker = ChangeTracker.of(connectionProvider);
+        this.layoutCache = getLayoutCache(connectionProvider);
     }
 
     /**
-     * Ricava i posti di una sala a partire dal nome della stessa.
+     * Ricava i posti di una sala a partire dal nome della stessa, come componenti Swing da visualizzare:
+     *     chi non deve mostrare la piantina dovrebbe utilizzare retrieveHallLayout.
      * @param hallName -> il nome della sala di cui trovare i posti.
      * @return -> la lista dei posti correttamente inizializzata.
      */
     @Override
     public List<Seat> retrieveSeats(String hallName) {
-        try {
-            return retrieveSeatsFromResultSet(dbConnection.getResultFromQuery("select * from " + DataReferences.DBNAME + ".MAPS where NOME_SALA = '" + hallName + "';"));
+        return Seat.createSeats(retrieveHallLayout(hallName));
+    }
+
+    /**
+     * Ricava la piantina di una sala senza creare componenti grafici.
+     *     Le piantine vengono tenute in una cache condivisa: dal database viene letta solo la versione della sala
+     *     e i posti vengono scaricati di nuovo solamente se la versione è cambiata.
+     * @param hallName -> il nome della sala.
+     * @return -> la piantina della sala, vuota se la sala non esiste.
+     */
+    @Override
+    public HallLayout retrieveHallLayout(String hallName) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            long version = doRetrieveHallVersion(dbConnection, hallName);
+            HallLayout cached = layoutCache.get(hallName);
+            if(cached != null && cached.getVersion() == version) {
+                return cached;
+            }
+            HallLayout res = doRetrieveHallLayout(dbConnection, hallName, version);
+            layoutCache.put(hallName, res, res.getEstimatedBytes());
+            return res;
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
     /**
-     * Ricava i nomi delle sale disponibili a sistema.
+     * @param connectionProvider -> il fornitore di connessioni dei DAO.
+     * @return -> la cache delle piantine, condivisa dalle istanze del DAO che utilizzano quel fornitore di connessioni.
+     */
+    public static LRUCache<String, HallLayout> getLayoutCache(ConnectionProvider connectionProvider) {
+        return LAYOUTCACHES.get(connectionProvider, cp -> new LRUCache<>(DataReferences.HALLLAYOUTCACHEMAXBYTES));
+    }
+
+    private long doRetrieveHallVersion(DBConnection dbConnection, String hallName) throws SQLException {
+        String query = "SELECT VERSIONE FROM " + DataReferences.DBNAME + ".HALL_VERSION WHERE NOME_SALA = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong("VERSIONE") : 0;
+            }
+        }
+    }
+
+    //I posti sono ordinati per nome: l'indice di un posto nella piantina non dipende dall'ordine restituito dal database
+    private HallLayout doRetrieveHallLayout(DBConnection dbConnection, String hallName, long version) throws SQLException {
+        String query = "SELECT NOME_POSTO, COORD_X, COORD_Y, TIPO_POSTO FROM " + DataReferences.DBNAME + ".MAPS WHERE NOME_SALA = ? ORDER BY NOME_POSTO";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                List<String> names = new ArrayList<>();
+                List<Integer> xs = new ArrayList<>();
+                List<Integer> ys = new ArrayList<>();
+                List<SeatTYPE> types = new ArrayList<>();
+                while(resultSet.next()) {
+                    names.add(resultSet.getString("NOME_POSTO"));
+                    xs.add(resultSet.getInt("COORD_X"));
+                    ys.add(resultSet.getInt("COORD_Y"));
+                    types.add(getSeatTypeFromName(resultSet.getString("TIPO_POSTO")));
+                }
+                return new HallLayout( hallName
+                                     , version
+                                     , names.toArray(new String[0])
+                                     , xs.stream().mapToInt(Integer::intValue).toArray()
+                                     , ys.stream().mapToInt(Integer::intValue).toArray()
+                                     , types.toArray(new SeatTYPE[0]));
+            }
+        }
+    }
+
+    //Da eseguire nella stessa transazione della modifica dei posti: le piantine in cache con la versione precedente non verranno più usate
+    private void doIncrementHallVersion(DBConnection dbConnection, String hallName) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".HALL_VERSION (NOME_SALA, VERSIONE) values (?, 1) ON DUPLICATE KEY UPDATE VERSIONE = VERSIONE + 1";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
+            ps.execute();
+        }
+    }
+
+    /**
+     * Ricava i nomi delle sale disponibili a sistema, dalla CatalogCache se ancora valida.
      * @return -> lista di stringhe rappresentante i nomi delle sale correttamente inizializzate.
      */
     @Override
     public List<String> retrieveHallNames() {
-        try {
-            return retrieveHallNamesFromResultSet(dbConnection.getResultFromQuery("select distinct NOME_SALA from " + DataReferences.DBNAME + ".MAPS"));
+        return new ArrayList<>(catalogCache.get(CatalogCache.Catalog.HALLNAMES, this::doRetrieveHallNames));
+    }
+
+    private List<String> doRetrieveHallNames() {
+        String query = "select distinct NOME_SALA from " + DataReferences.DBNAME + ".MAPS";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            return Collections.unmodifiableList(retrieveHallNamesFromResultSet(ps.executeQuery()));
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
@@ -68,56 +172,166 @@ public class HallDaoImpl implements HallDao {
      */
     @Override
     public Image retrieveHallPreviewAsImage(String hallName, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
-        try {
-            return getHallPreviewFromResultSetAsImage( dbConnection.getResultFromQuery("select PREVIEW from " + DataReferences.DBNAME + ".MAPPREVIEWS where NOME_SALA = '" + hallName + "';")
-                                                     , requestedWidth
-                                                     , requestedHeight
-                                                     , preserveRatio
-                                                     , smooth);
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
-        }
+        InputStream in = retrieveHallPreviewAsStream(hallName);
+        return in == null ? null : decodePreview(in, requestedWidth, requestedHeight, preserveRatio, smooth);
     }
 
     /**
      * Recupera la preview delle sale come stream: rispetto l'Image, lo stream rappresenta l'immagine "vera e propria".
+     *     Dal database viene letto prima l'hash della preview: se il file corrispondente è già nella cache su disco
+     *     il blob non viene scaricato.
      * @param hallName -> la sala di cui si vuole recuperare la preview come stream.
-     * @return -> ritorna la preview della sala come InputStream.
+     * @return -> ritorna la preview della sala come InputStream, null se la sala non ha una preview.
      */
     @Override
     public InputStream retrieveHallPreviewAsStream(String hallName) {
-        try {
-            return retrieveHallPreviewFromResultSetAsStream(dbConnection.getResultFromQuery("select PREVIEW from " + DataReferences.DBNAME + ".MAPPREVIEWS where NOME_SALA = '" + hallName + "';"));
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            InputStream cached = diskCache.read(doRetrievePreviewHash(dbConnection, hallName));
+            return cached != null ? cached : doDownloadPreview(dbConnection, hallName);
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
-    private InputStream retrieveHallPreviewFromResultSetAsStream(ResultSet resultSet) throws SQLException {
-        try {
-            Blob blob = null;
+    private String doRetrievePreviewHash(DBConnection dbConnection, String hallName) throws SQLException {
+        String query = "select PREVIEW_HASH from " + DataReferences.DBNAME + ".MAPPREVIEWS where NOME_SALA = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                return resultSet.next() ? resultSet.getString("PREVIEW_HASH") : null;
+            }
+        }
+    }
+
+    private InputStream doDownloadPreview(DBConnection dbConnection, String hallName) throws SQLException {
+        byte[] content = doDownloadPreviews(dbConnection, Collections.singletonList(hallName)).get(hallName);
+        return content == null ? null : new ByteArrayInputStream(content);
+    }
+
+    //Scarica le preview delle sale indicate con un'unica query e le salva nella cache su disco
+    private Map<String, byte[]> doDownloadPreviews(DBConnection dbConnection, List<String> hallNames) throws SQLException {
+        String query = "select NOME_SALA, PREVIEW, PREVIEW_HASH from " + DataReferences.DBNAME + ".MAPPREVIEWS "
+                     + "where NOME_SALA in " + DBConnection.getInPlaceholders(hallNames.size());
+        Map<String, byte[]> res = new HashMap<>();
+        Map<String, String> hashesToSave = new HashMap<>();
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(int i = 0; i < hallNames.size(); i++) {
+                ps.setString(i + 1, hallNames.get(i));
+            }
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while(resultSet.next()) {
+                    Blob blob = resultSet.getBlob("PREVIEW");
+                    if(blob == null) { continue; }
+                    byte[] content = blob.getBytes(1, (int) blob.length());
+                    String hash = BlobDiskCache.hashOf(content);
+                    diskCache.write(hash, content);
+                    if(!hash.equals(resultSet.getString("PREVIEW_HASH"))) {
+                        hashesToSave.put(resultSet.getString("NOME_SALA"), hash);
+                    }
+                    res.put(resultSet.getString("NOME_SALA"), content);
+                }
+            }
+        }
+
+        //Preview caricate prima dell'introduzione dell'hash: viene salvato ora, così la prossima volta verrà usata la cache su disco
+        if(!hashesToSave.isEmpty()) {
+            String update = "UPDATE " + DataReferences.DBNAME + ".MAPPREVIEWS SET PREVIEW_HASH = ? WHERE NOME_SALA = ? AND PREVIEW_HASH IS NULL";
+            try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(update)) {
+                for(Map.Entry<String, String> e : hashesToSave.entrySet()) {
+                    ps.setString(1, e.getValue());
+                    ps.setString(2, e.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Recupera le preview di tutte le sale: con una sola query vengono letti gli hash, poi con una seconda query
+     *     vengono scaricate insieme le sole preview che non sono già nella cache su disco.
+     * @param requestedWidth -> la larghezza che vogliamo dare alle Image;
+     * @param requestedHeight -> l'altezza che vogliamo dare alle Image;
+     * @param preserveRatio -> decidere se mantenere l'aspect ratio o meno
+     * @param smooth -> indica in generale se applicare un algoritmo di miglioramento delle Image finali;
+     * @return -> le preview indicizzate per nome della sala.
+     */
+    @Override
+    public Map<String, Image> retrieveHallPreviewsAsImage(double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
+        String query = "select NOME_SALA, PREVIEW_HASH from " + DataReferences.DBNAME + ".MAPPREVIEWS order by NOME_SALA";
+        Map<String, Image> res = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query);
+                 ResultSet resultSet = ps.executeQuery()) {
+                while(resultSet.next()) {
+                    String hallName = resultSet.getString("NOME_SALA");
+                    InputStream cached = diskCache.read(resultSet.getString("PREVIEW_HASH"));
+                    res.put(hallName, cached == null ? null : decodePreview(cached, requestedWidth, requestedHeight, preserveRatio, smooth));
+                    if(cached == null) { missing.add(hallName); }
+                }
+            }
+
+            if(!missing.isEmpty()) {
+                for(Map.Entry<String, byte[]> e : doDownloadPreviews(dbConnection, missing).entrySet()) {
+                    res.put(e.getKey(), decodePreview(new ByteArrayInputStream(e.getValue()), requestedWidth, requestedHeight, preserveRatio, smooth));
+                }
+            }
+            return res;
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /**
+     * Conta i posti di ogni sala per tipo, con un GROUP BY eseguito dal database: non vengono scaricati i singoli posti.
+     * @return -> il numero di posti per tipo, indicizzato per nome della sala (in ordine alfabetico).
+     */
+    @Override
+    public Map<String, HallSeatCounts> retrieveSeatCountsPerHall() {
+        String query = "select NOME_SALA, TIPO_POSTO, count(*) as NUMERO from " + DataReferences.DBNAME + ".MAPS "
+                     + "group by NOME_SALA, TIPO_POSTO order by NOME_SALA";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query);
+             ResultSet resultSet = ps.executeQuery()) {
+            Map<String, HallSeatCounts> res = new LinkedHashMap<>();
             while(resultSet.next()) {
-                blob = resultSet.getBlob("PREVIEW");
+                String hallName = resultSet.getString("NOME_SALA");
+                res.computeIfAbsent(hallName, HallSeatCounts::new)
+                   .setCount(getSeatTypeFromName(resultSet.getString("TIPO_POSTO")), resultSet.getInt("NUMERO"));
             }
-            return blob.getBinaryStream(1, Objects.requireNonNull(blob).length());
-        } finally {
-            resultSet.close();
+            return res;
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
         }
     }
 
+    private Image decodePreview(InputStream in, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
+        Image result = new Image(in, requestedWidth, requestedHeight, preserveRatio, smooth);
+        CloseableUtils.close(in);
+        return result;
+    }
+
     /**
-     * Cancella tutta la sala e la ricrea: non è un vero e proprio update:
-     * possono capitare volte in cui modifico posti già esistenti, ma anche volte in cui inserisco nuovi posti
+     * Applica alla sala solamente le modifiche fatte ai posti, identificati per nome:
+     *     prima vengono eliminati i posti rimossi o rinominati, poi aggiornati quelli spostati o con tipo modificato,
+     *     infine inseriti quelli nuovi o rinominati. Il tutto avviene in un'unica transazione.
      * @param hallName -> sala da aggiornare
-     * @param toUpdate -> lista posti aggiornati da inserire nuovamente
+     * @param changes -> modifiche ai posti rispetto a quanto presente sul database
      */
     @Override
-    public void updateHallSeats(String hallName, List<Seat> toUpdate) {
+    public void updateHallSeats(String hallName, HallSeatChanges changes) {
+        //Una sala a cui vengono tolti tutti i posti scompare dall'elenco delle sale
         try {
-            doRemoveSeats(hallName);
-            doInsertSeats(hallName, toUpdate);
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
+            doInTransaction(changes.size(), dbConnection -> {
+                doRemoveSeats(dbConnection, hallName, changes.getRemovedNames());
+                doUpdateSeats(dbConnection, hallName, changes.getUpdated());
+                doInsertSeats(dbConnection, hallName, changes.getInserted());
+                doIncrementHallVersion(dbConnection, hallName);
+            });
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.MAPS);
         }
     }
 
@@ -141,7 +355,14 @@ public class HallDaoImpl implements HallDao {
      */
     @Override
     public void removeHallAndPreview(String hallName) {
-        doRemoveSeats(hallName);
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            doRemoveSeats(dbConnection, hallName);
+            doIncrementHallVersion(dbConnection, hallName);
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.MAPS);
+        }
         doRemovePreview(hallName);
     }
 
@@ -152,10 +373,13 @@ public class HallDaoImpl implements HallDao {
      */
     @Override
     public void insertNewHall(String hallName, List<Seat> toInsert) {
-        try{
-            doInsertSeats(hallName, toInsert);
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
+        try {
+            doInTransaction(toInsert.size(), dbConnection -> {
+                doInsertSeats(dbConnection, hallName, toInsert);
+                doIncrementHallVersion(dbConnection, hallName);
+            });
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.MAPS);
         }
     }
 
@@ -173,6 +397,13 @@ public class HallDaoImpl implements HallDao {
         }
     }
 
+    /**
+     * Restituisce la velocità, in posti al secondo, dell'ultimo salvataggio dei posti effettuato da questo DAO.
+     * Non fa parte di HallDao: serve solo per misurare il salvataggio a blocchi nei test.
+     * @return -> posti scritti al secondo, 0 se non è ancora stato salvato nulla.
+     */
+    public double getLastSeatsWriteRate() { return lastSeatsWriteRate; }
+
     /**
      * Permette di aggiornare il nome della sala sul database.
      * @param oldHallName -> vecchio nome della sala sul quale basarci per ritrovare le informazioni;
@@ -180,24 +411,33 @@ public class HallDaoImpl implements HallDao {
      */
     @Override
     public void renameHallAndPreview(String oldHallName, String newHallName) {
-        doRenameHall(oldHallName, newHallName);
+        try {
+            doRenameHall(oldHallName, newHallName);
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.MAPS);
+        }
         doRenamePreview(oldHallName, newHallName);
     }
 
     private void doRenameHall(String oldHallName, String newHallName) {
-        String query = "UPDATE " + DataReferences.DBNAME + ".MAPS SET NOME_SALA = ? WHERE NOME_SALA = '" + oldHallName + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setString(1, newHallName);
-            ps.execute();
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
-        }
+        String query = "UPDATE " + DataReferences.DBNAME + ".MAPS SET NOME_SALA = ? WHERE NOME_SALA = ?";
+        doInTransaction(0, dbConnection -> {
+            try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                ps.setString(1, newHallName);
+                ps.setString(2, oldHallName);
+                ps.execute();
+            }
+            doIncrementHallVersion(dbConnection, oldHallName);
+            doIncrementHallVersion(dbConnection, newHallName);
+        });
     }
 
     private void doRenamePreview(String oldHallName, String newHallName) {
-        String query = "UPDATE " + DataReferences.DBNAME + ".MAPPREVIEWS SET NOME_SALA = ? WHERE NOME_SALA = '" + oldHallName + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        String query = "UPDATE " + DataReferences.DBNAME + ".MAPPREVIEWS SET NOME_SALA = ? WHERE NOME_SALA = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setString(1, newHallName);
+            ps.setString(2, oldHallName);
             ps.execute();
         } catch (SQLException e) {
             throw new ApplicationException(e);
@@ -205,19 +445,26 @@ public class HallDaoImpl implements HallDao {
     }
 
     private void doInsertHallPreview(String hallName, ByteArrayInputStream previewStream) {
-        String query = "insert into " + DataReferences.DBNAME + ".MAPPREVIEWS (NOME_SALA, PREVIEW) values (?,?)";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        String query = "insert into " + DataReferences.DBNAME + ".MAPPREVIEWS (NOME_SALA, PREVIEW, PREVIEW_HASH) values (?,?,?)";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            byte[] preview = BlobDiskCache.readFully(previewStream);
+            String hash = BlobDiskCache.hashOf(preview);
             ps.setString(1, hallName);
-            ps.setBinaryStream(2, previewStream, previewStream.available());
+            ps.setBinaryStream(2, new ByteArrayInputStream(preview), preview.length);
+            ps.setString(3, hash);
             ps.execute();
+            diskCache.write(hash, preview);
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
     private void doRemovePreview(String hallName) {
-        String query = "delete from "+ DataReferences.DBNAME + ".MAPPREVIEWS where NOME_SALA = '" + hallName + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        String query = "delete from "+ DataReferences.DBNAME + ".MAPPREVIEWS where NOME_SALA = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
             ps.execute();
         } catch (SQLException e) {
             throw new ApplicationException(e);
@@ -226,79 +473,163 @@ public class HallDaoImpl implements HallDao {
     }
 
     private void doUpdateHallPreview(String hallName, ByteArrayInputStream previewStream) {
-        String query = "UPDATE " + DataReferences.DBNAME + ".MAPPREVIEWS SET PREVIEW = ? WHERE NOME_SALA = '" + hallName + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setBinaryStream(1, previewStream, previewStream.available());
+        String query = "UPDATE " + DataReferences.DBNAME + ".MAPPREVIEWS SET PREVIEW = ?, PREVIEW_HASH = ? WHERE NOME_SALA = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            byte[] preview = BlobDiskCache.readFully(previewStream);
+            String hash = BlobDiskCache.hashOf(preview);
+            ps.setBinaryStream(1, new ByteArrayInputStream(preview), preview.length);
+            ps.setString(2, hash);
+            ps.setString(3, hallName);
             ps.execute();
+            diskCache.write(hash, preview);
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
-    private void doInsertSeats(String hallName, List<Seat> toUpdate) throws SQLException {
-        PreparedStatement ps = null;
-        try {
-            String query = "INSERT INTO " + DataReferences.DBNAME + ".MAPS(NOME_SALA,NOME_POSTO,COORD_X, COORD_Y, TIPO_POSTO) values (?,?,?,?,?)";
-            for(Seat s : toUpdate) {
-                ps = dbConnection.getPreparedStatementFromQuery(query);
+    //Inserisce i posti con un'unica PreparedStatement, inviandoli al database a blocchi di DataReferences.DBBATCHSIZE
+    private void doInsertSeats(DBConnection dbConnection, String hallName, List<Seat> toInsert) throws SQLException {
+        if(toInsert.isEmpty()) { return; }
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".MAPS(NOME_SALA,NOME_POSTO,COORD_X, COORD_Y, TIPO_POSTO) values (?,?,?,?,?)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            int pending = 0;
+            for(Seat s : toInsert) {
                 ps.setString(1, hallName);
                 ps.setString(2, s.getText());
                 ps.setInt(3, s.getX());
                 ps.setInt(4, s.getY());
+                ps.setString(5, getSeatTypeName(s));
+                ps.addBatch();
 
-                switch(s.getType()) {
-                    case NORMALE:
-                        ps.setString(5, "NORMALE");
-                        break;
-
-                    case DISABILE:
-                        ps.setString(5, "DISABILE");
-                        break;
+                if(++pending == DataReferences.DBBATCHSIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if(pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
 
-                    case VIP:
-                        ps.setString(5, "VIP");
-                        break;
+    private void doUpdateSeats(DBConnection dbConnection, String hallName, List<Seat> toUpdate) throws SQLException {
+        if(toUpdate.isEmpty()) { return; }
+        String query = "UPDATE " + DataReferences.DBNAME + ".MAPS SET COORD_X = ?, COORD_Y = ?, TIPO_POSTO = ? WHERE NOME_SALA = ? AND NOME_POSTO = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            int pending = 0;
+            for(Seat s : toUpdate) {
+                ps.setInt(1, s.getX());
+                ps.setInt(2, s.getY());
+                ps.setString(3, getSeatTypeName(s));
+                ps.setString(4, hallName);
+                ps.setString(5, s.getText());
+                ps.addBatch();
+
+                if(++pending == DataReferences.DBBATCHSIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if(pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
 
-                    case OCCUPATO:
-                        ps.setString(5, "OCCUPATO");
-                        break;
+    private void doRemoveSeats(DBConnection dbConnection, String hallName, List<String> seatNames) throws SQLException {
+        if(seatNames.isEmpty()) { return; }
+        String query = "delete from "+ DataReferences.DBNAME + ".MAPS where NOME_SALA = ? and NOME_POSTO = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            int pending = 0;
+            for(String seatName : seatNames) {
+                ps.setString(1, hallName);
+                ps.setString(2, seatName);
+                ps.addBatch();
 
-                    default:
-                        throw new ApplicationException("Tipo " + s.getType() + " non riconosciuto!");
+                if(++pending == DataReferences.DBBATCHSIZE) {
+                    ps.executeBatch();
+                    pending = 0;
                 }
-
-                ps.execute();
             }
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
-        } finally {
-            if(ps!=null) { ps.close(); }
+            if(pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private String getSeatTypeName(Seat s) {
+        switch(s.getType()) {
+            case NORMALE:
+                return "NORMALE";
+
+            case DISABILE:
+                return "DISABILE";
+
+            case VIP:
+                return "VIP";
+
+            case OCCUPATO:
+                return "OCCUPATO";
+
+            default:
+                throw new ApplicationException("Tipo " + s.getType() + " non riconosciuto!");
         }
     }
 
-    private void doRemoveSeats(String hallName) {
-        String query = "delete from "+ DataReferences.DBNAME + ".MAPS where NOME_SALA = '" + hallName + "';";
+    private SeatTYPE getSeatTypeFromName(String name) {
+        switch(name) {
+            case "NORMALE":
+                return SeatTYPE.NORMALE;
+
+            case "VIP":
+                return SeatTYPE.VIP;
+
+            case "DISABILE":
+                return SeatTYPE.DISABILE;
+
+            case "OCCUPATO":
+                return SeatTYPE.OCCUPATO;
+
+            default:
+                throw new ApplicationException("Tipo " + name + " non riconosciuto!");
+        }
+    }
+
+    private void doRemoveSeats(DBConnection dbConnection, String hallName) throws SQLException {
+        String query = "delete from "+ DataReferences.DBNAME + ".MAPS where NOME_SALA = ?";
         try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, hallName);
             ps.execute();
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
         }
     }
 
-    private Image getHallPreviewFromResultSetAsImage(ResultSet resultSet, double requestedWidth, double requestedHeight, boolean preserveRation, boolean smooth) throws SQLException{
-        try {
-            Blob blob = null;
-            while(resultSet.next()) {
-                blob = resultSet.getBlob("PREVIEW");
+    /* Esegue le operazioni su un'unica connessione con l'auto-commit disabilitato: o vengono salvate tutte, o nessuna.
+     * Al termine aggiorna la velocità di scrittura, calcolata sul numero di posti scritti (se ne sono stati scritti).
+     */
+    private void doInTransaction(int rows, SeatsWriter writer) {
+        long start = System.nanoTime();
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            Connection connection = dbConnection.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                writer.write(dbConnection);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
             }
-            InputStream in = blob.getBinaryStream(1, Objects.requireNonNull(blob).length());
-            Image result = new Image(in, requestedWidth, requestedHeight, preserveRation, smooth);
-            CloseableUtils.close(in);
-            return result;
-        } finally {
-            resultSet.close();
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
         }
+        if(rows > 0) {
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+            lastSeatsWriteRate = rows * 1_000_000_000d / elapsed;
+        }
+    }
 
+    private interface SeatsWriter {
+        void write(DBConnection dbConnection) throws SQLException;
     }
 
     private List<String> retrieveHallNamesFromResultSet(ResultSet resultSet) throws SQLException {
@@ -312,39 +643,4 @@ public class HallDaoImpl implements HallDao {
             resultSet.close();
         }
     }
-
-    private List<Seat> retrieveSeatsFromResultSet(ResultSet resultSet) throws SQLException {
-        try {
-            List<Seat> res = new ArrayList<>();
-            while(resultSet.next()) {
-                Seat s;
-                switch (resultSet.getString("TIPO_POSTO")) {
-                    case "NORMALE":
-                        s = new Seat(resultSet.getInt("COORD_X"), resultSet.getInt("COORD_Y"), SeatTYPE.NORMALE);
-                        break;
-
-                    case "VIP":
-                        s = new Seat(resultSet.getInt("COORD_X"), resultSet.getInt("COORD_Y"), SeatTYPE.VIP);
-                        break;
-
-                    case "DISABILE":
-                        s = new Seat(resultSet.getInt("COORD_X"), resultSet.getInt("COORD_Y"), SeatTYPE.DISABILE);
-                        break;
-
-                    case "OCCUPATO":
-                        s = new Seat(resultSet.getInt("COORD_X"), resultSet.getInt("COORD_Y"), SeatTYPE.OCCUPATO);
-                        break;
-
-                    default:
-                        throw new ApplicationException("Tipo " + resultSet.getString("TIPO_POSTO") + " non riconosciuto!");
-                }
-                s.setText(resultSet.getString("NOME_POSTO"));
-                res.add(s);
-            }
-            return res;
-        } finally {
-            resultSet.close();
-        }
-
-    }
 }
@@ -1,12 +1,16 @@
 package it.unipv.dao;
 
 import it.unipv.model.Movie;
+import it.unipv.model.PosterRenditionTYPE;
+import javafx.scene.image.Image;
 
 import java.io.FileInputStream;
 import java.util.List;
 
 public interface MovieDao {
     List<Movie> retrieveCompleteMovieList(double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth);
+    List<Movie> retrieveCompleteMovieList(PosterRenditionTYPE rendition);
+    Image retrievePoster(String movieCode, PosterRenditionTYPE rendition);
     List<Movie> retrieveMovieListWithoutPoster();
     void insertNewMovie(Movie toInsert, FileInputStream posterStream);
     void updateMovieButNotPoster(Movie toUpdate);
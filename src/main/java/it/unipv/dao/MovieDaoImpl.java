@@ -1,23 +1,31 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
 import it.unipv.model.Movie;
 import it.unipv.model.MovieStatusTYPE;
 import it.unipv.model.MovieTYPE;
+import it.unipv.model.PosterRenditionTYPE;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.CloseableUtils;
 import it.unipv.utils.DataReferences;
+import it.unipv.utils.LRUCache;
 import javafx.scene.image.Image;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
-import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Blob;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -25,12 +33,32 @@ import java.util.Objects;
  * Si occupa di inserire/recuperare/aggiornare/eliminare i dati riguardanti i film e le locandine.
  */
 public class MovieDaoImpl implements MovieDao {
-    private DBConnection dbConnection;
+    //Tutte le colonne tranne LOCANDINA, che viene letta solo quando serve
+    private static final String MOVIECOLUMNS = "CODICE, TITOLO, GENERE, REGIA, MOVIE.CAST, DURATA, ANNO, TRAMA, TIPO, STATUS";
+    //Una cache per ogni fornitore di connessioni: film con lo stesso codice su database diversi non si sovrappongono
+    private static final ProviderRegistry<LRUCache<PosterKey, Image>> POSTERCACHES = new ProviderRegistry<>();
 
-    public MovieDaoImpl(DBConnection dbConnection) { this.dbConnection = dbConnection; }
+    private ConnectionProvider connectionProvider;
+    private BlobDiskCache diskCache;
+    private CatalogCache catalogCache;
+    private ChangeTracker changeTracker;
+    private LRUCache<PosterKey, Image> posterCache;
+
+    public MovieDaoImpl(ConnectionProvider connectionProvider) { this(connectionProvider, new BlobDiskCache()); }
+
+    public MovieDaoImpl(ConnectionProvider connectionProvider, BlobDiskCache diskCache) {
+        this.connectionProvider = connectionProvider;
+        this.diskCache = diskCache;
+        this.catalogCache = CatalogCache.of(connectionProvider);
+        this.changeTracker = ChangeTracker.of(connectionProvider);
+        this.posterCache = posterCacheOf(connectionProvider);
+    }
 
     /**
-     * Recupera la lista dei film completa, compresa la locandina
+     * Recupera la lista dei film completa, compresa la locandina originale ridimensionata come richiesto.
+     *     Le locandine già scaricate e decodificate con la stessa dimensione vengono prese dalla cache in memoria,
+     *     quelle già scaricate in precedenza (anche da un avvio precedente) dalla cache su disco, verificata tramite l'hash:
+     *     il blob viene quindi letto dal database solamente per le locandine nuove o modificate.
      * @param requestedWidth -> la larghezza dell'Image che rappresenta la locandina
      * @param requestedHeight -> l'altezza dell'Image che rappresenta la locandina
      * @param preserveRatio -> indica se mantenere l'aspect ratio o meno
@@ -39,12 +67,96 @@ public class MovieDaoImpl implements MovieDao {
      */
     @Override
     public List<Movie> retrieveCompleteMovieList(double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) {
-        try {
-            return retrieveCompleteMoviesFromResultSet( dbConnection.getResultFromQuery("SELECT * FROM " + DataReferences.DBNAME + ".MOVIE")
-                                                      , requestedWidth
-                                                      , requestedHeight
-                                                      , preserveRatio
-                                                      , smooth);
+        return doRetrieveMoviesWithPoster(null, requestedWidth, requestedHeight, preserveRatio, smooth, "");
+    }
+
+    /**
+     * Recupera la lista dei film completa, con la locandina nel formato ridotto indicato:
+     *     rispetto alla locandina originale vengono scaricati e decodificati molti meno byte.
+     *     Valgono le stesse cache di retrieveCompleteMovieList.
+     * @param rendition -> il formato della locandina richiesto dalla schermata.
+     * @return -> ritorna la lista completa dei film, comprensiva di locandina nel formato indicato.
+     */
+    @Override
+    public List<Movie> retrieveCompleteMovieList(PosterRenditionTYPE rendition) {
+        return doRetrieveMoviesWithPoster(rendition, rendition.getWidth(), 0, true, true, "");
+    }
+
+    /**
+     * Recupera la locandina di un solo film nel formato ridotto indicato, ad esempio per la schermata di dettaglio.
+     * @param movieCode -> il codice del film;
+     * @param rendition -> il formato della locandina richiesto dalla schermata.
+     * @return -> la locandina, oppure null se il film non esiste.
+     */
+    @Override
+    public Image retrievePoster(String movieCode, PosterRenditionTYPE rendition) {
+        List<Movie> res = doRetrieveMoviesWithPoster(rendition, rendition.getWidth(), 0, true, true, " WHERE CODICE = ?", movieCode);
+        return res.isEmpty() ? null : res.get(0).getLocandina();
+    }
+
+    //Con rendition a null viene utilizzata la locandina originale, altrimenti il formato ridotto (se già generato)
+    private List<Movie> doRetrieveMoviesWithPoster( PosterRenditionTYPE rendition
+                                                  , double requestedWidth
+                                                  , double requestedHeight
+                                                  , boolean preserveRatio
+                                                  , boolean smooth
+                                                  , String condition
+                                                  , String... params) {
+        Map<String, Movie> missingOriginals = new LinkedHashMap<>();
+        Map<String, Movie> missingRenditions = new LinkedHashMap<>();
+        Map<String, PosterKey> missingKeys = new HashMap<>();
+        List<Movie> res = new ArrayList<>();
+        String query = rendition == null
+                     ? "SELECT " + MOVIECOLUMNS + ", LOCANDINA_VERSION, LOCANDINA_HASH FROM " + DataReferences.DBNAME + ".MOVIE" + condition
+                     : "SELECT " + MOVIECOLUMNS + ", LOCANDINA_VERSION, R.HASH AS LOCANDINA_HASH FROM " + DataReferences.DBNAME + ".MOVIE "
+                       + "LEFT JOIN " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION R ON R.CODICE_FILM = CODICE AND R.FORMATO = ?" + condition;
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                int i = 1;
+                if(rendition != null) {
+                    ps.setString(i++, rendition.name());
+                }
+                for(String param : params) {
+                    ps.setString(i++, param);
+                }
+                try (ResultSet resultSet = ps.executeQuery()) {
+                    while(resultSet.next()) {
+                        Movie movie = getMovieWithoutPoster(resultSet);
+                        PosterKey key = new PosterKey( movie.getCodice()
+                                                     , resultSet.getInt("LOCANDINA_VERSION")
+                                                     , rendition
+                                                     , requestedWidth
+                                                     , requestedHeight
+                                                     , preserveRatio
+                                                     , smooth);
+                        String hash = resultSet.getString("LOCANDINA_HASH");
+                        Image poster = posterCache.get(key);
+                        if(poster == null) {
+                            InputStream cached = diskCache.read(hash);
+                            if(cached != null) {
+                                poster = decodePoster(key, cached);
+                            }
+                        }
+                        if(poster != null) {
+                            movie.setLocandina(poster);
+                        } else if(rendition != null && hash != null) {
+                            missingRenditions.put(movie.getCodice(), movie);
+                        } else {
+                            missingOriginals.put(movie.getCodice(), movie);
+                        }
+                        missingKeys.put(movie.getCodice(), key);
+                        res.add(movie);
+                    }
+                }
+            }
+
+            if(!missingRenditions.isEmpty()) {
+                doRetrieveMissingRenditions(dbConnection, rendition, missingRenditions, missingKeys);
+            }
+            if(!missingOriginals.isEmpty()) {
+                doRetrieveMissingPosters(dbConnection, missingOriginals, missingKeys);
+            }
+            return res;
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
@@ -53,17 +165,45 @@ public class MovieDaoImpl implements MovieDao {
     /**
      * Recupera la lista dei film senza la locandina. Questo perché può capitare di dover
      *     utilizzare le informazioni dei film, senza però interessare la locandina.
+     * La lista viene presa dalla CatalogCache, se ancora valida.
      * @return -> ritorna la lista completa dei film senza la locandina.
      */
     @Override
     public List<Movie> retrieveMovieListWithoutPoster() {
-        try {
-            return retrieveMoviesWithoutPosterFromResultSet(dbConnection.getResultFromQuery("SELECT * FROM " + DataReferences.DBNAME + ".MOVIE"));
+        List<Movie> snapshot = catalogCache.get(CatalogCache.Catalog.MOVIES, this::doRetrieveMovieListWithoutPoster);
+        List<Movie> res = new ArrayList<>(snapshot.size());
+        for(Movie m : snapshot) {
+            res.add(copyOf(m));
+        }
+        return res;
+    }
+
+    private List<Movie> doRetrieveMovieListWithoutPoster() {
+        String query = "SELECT " + MOVIECOLUMNS + " FROM " + DataReferences.DBNAME + ".MOVIE";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            return Collections.unmodifiableList(retrieveMoviesWithoutPosterFromResultSet(ps.executeQuery()));
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
+    //Lo snapshot in cache è condiviso: al chiamante va una copia che può modificare
+    private static Movie copyOf(Movie m) {
+        Movie res = new Movie();
+        res.setCodice(m.getCodice());
+        res.setTitolo(m.getTitolo());
+        res.setGenere(m.getGenere());
+        res.setRegia(m.getRegia());
+        res.setCast(m.getCast());
+        res.setDurata(m.getDurata());
+        res.setAnno(m.getAnno());
+        res.setTrama(m.getTrama());
+        res.setTipo(m.getTipo());
+        res.setStatus(m.getStatus());
+        return res;
+    }
+
     /**
      * Inserisce le informazioni di un nuovo film nel database.
      * @param toInsert -> nuovo film da inserire;
@@ -75,6 +215,8 @@ public class MovieDaoImpl implements MovieDao {
             doInsertNewMovie(toInsert, posterStream);
         } finally {
             CloseableUtils.close(posterStream);
+            invalidatePoster(toInsert.getCodice());
+            changeTracker.tableChanged(ChangeTracker.Table.MOVIE);
         }
     }
 
@@ -85,7 +227,11 @@ public class MovieDaoImpl implements MovieDao {
      */
     @Override
     public void updateMovieButNotPoster(Movie toUpdate) {
-        doUpdateMovieButNotPoster(toUpdate);
+        try {
+            doUpdateMovieButNotPoster(toUpdate);
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.MOVIE);
+        }
     }
 
     /**
@@ -98,6 +244,8 @@ public class MovieDaoImpl implements MovieDao {
             doUpdateMovie(toUpdate, posterStream);
         } finally {
             CloseableUtils.close(posterStream);
+            invalidatePoster(toUpdate.getCodice());
+            changeTracker.tableChanged(ChangeTracker.Table.MOVIE);
         }
     }
 
@@ -107,13 +255,184 @@ public class MovieDaoImpl implements MovieDao {
      */
     @Override
     public void deleteMovie(Movie toDelete) {
-        doDeleteMovie(toDelete);
+        try {
+            doDeleteMovie(toDelete);
+        } finally {
+            invalidatePoster(toDelete.getCodice());
+            changeTracker.tableChanged(ChangeTracker.Table.MOVIE);
+        }
     }
 
-    private void doDeleteMovie(Movie toDelete) {
-        String query = "DELETE FROM "+ DataReferences.DBNAME + ".MOVIE where CODICE = '" + toDelete.getCodice() + "';";
+    /**
+     * Elimina dalla cache tutte le versioni e le dimensioni della locandina di un film.
+     * @param movieCode -> il codice del film.
+     */
+    private void invalidatePoster(String movieCode) {
+        posterCache.removeIf(key -> key.movieCode.equals(movieCode));
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni dei DAO.
+     * @return -> la cache delle locandine, condivisa dalle istanze del DAO che utilizzano quel fornitore di connessioni.
+     */
+    public static LRUCache<?, Image> getPosterCache(ConnectionProvider connectionProvider) { return posterCacheOf(connectionProvider); }
+
+    private static LRUCache<PosterKey, Image> posterCacheOf(ConnectionProvider connectionProvider) {
+        return POSTERCACHES.get(connectionProvider, cp -> new LRUCache<>(DataReferences.POSTERCACHEMAXBYTES));
+    }
+
+    private void doRetrieveMissingRenditions(DBConnection dbConnection, PosterRenditionTYPE rendition, Map<String, Movie> missing, Map<String, PosterKey> missingKeys) throws SQLException {
+        String query = "SELECT CODICE_FILM, IMMAGINE, HASH FROM " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION "
+                     + "WHERE FORMATO = ? AND CODICE_FILM IN " + DBConnection.getInPlaceholders(missing.size());
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            int i = 1;
+            ps.setString(i++, rendition.name());
+            for(String code : missing.keySet()) {
+                ps.setString(i++, code);
+            }
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while(resultSet.next()) {
+                    String code = resultSet.getString("CODICE_FILM");
+                    byte[] content = resultSet.getBytes("IMMAGINE");
+                    diskCache.write(resultSet.getString("HASH"), content);
+                    missing.get(code).setLocandina(decodePoster(missingKeys.get(code), new ByteArrayInputStream(content)));
+                }
+            }
+        }
+    }
+
+    //Scarica le locandine originali. Se era richiesto un formato ridotto non ancora presente (film caricato prima dei formati)
+    //    questo viene generato e salvato ora, così le richieste successive non scaricheranno più l'originale
+    private void doRetrieveMissingPosters(DBConnection dbConnection, Map<String, Movie> missing, Map<String, PosterKey> missingKeys) throws SQLException {
+        String query = "SELECT CODICE, LOCANDINA, LOCANDINA_HASH FROM " + DataReferences.DBNAME + ".MOVIE WHERE CODICE IN " + DBConnection.getInPlaceholders(missing.size());
+        Map<String, String> hashesToSave = new HashMap<>();
+        Map<String, byte[]> originals = new HashMap<>();
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            int i = 1;
+            for(String code : missing.keySet()) {
+                ps.setString(i++, code);
+            }
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while(resultSet.next()) {
+                    Blob blob = resultSet.getBlob("LOCANDINA");
+                    if(blob == null) { continue; }
+                    String code = resultSet.getString("CODICE");
+                    byte[] content = blob.getBytes(1, (int) blob.length());
+                    String hash = BlobDiskCache.hashOf(content);
+                    diskCache.write(hash, content);
+                    if(!hash.equals(resultSet.getString("LOCANDINA_HASH"))) {
+                        hashesToSave.put(code, hash);
+                    }
+                    originals.put(code, content);
+                }
+            }
+        }
+
+        //Locandine caricate prima dell'introduzione dell'hash: viene salvato ora, così al prossimo avvio verrà usata la cache su disco
+        if(!hashesToSave.isEmpty()) {
+            doSavePosterHashes(dbConnection, hashesToSave);
+        }
+
+        for(Map.Entry<String, byte[]> original : originals.entrySet()) {
+            PosterKey key = missingKeys.get(original.getKey());
+            byte[] content = original.getValue();
+            if(key.rendition != null) {
+                Map<PosterRenditionTYPE, byte[]> renditions = PosterRenditions.generate(content);
+                if(!renditions.isEmpty()) {
+                    doSaveRenditionsIgnoringConflicts(dbConnection, original.getKey(), renditions);
+                    content = renditions.get(key.rendition);
+                }
+            }
+            missing.get(original.getKey()).setLocandina(decodePoster(key, new ByteArrayInputStream(content)));
+        }
+    }
+
+    //Se un'altra istanza sta generando gli stessi formati, il salvataggio può fallire per il vincolo di unicità:
+    //    non è un problema, i formati sono già sul database. Ogni altro errore viene propagato
+    private void doSaveRenditionsIgnoringConflicts(DBConnection dbConnection, String movieCode, Map<PosterRenditionTYPE, byte[]> renditions) throws SQLException {
+        try {
+            doInTransaction(dbConnection, () -> doSaveRenditions(dbConnection, movieCode, renditions));
+        } catch (SQLException e) {
+            if(!PrenotationDaoImpl.isUniqueViolation(e)) {
+                throw e;
+            }
+        }
+    }
+
+    //Il film ed i formati della sua locandina vengono scritti insieme: in caso di errore non resta un film senza formati (o con quelli vecchi)
+    private void doInTransaction(DBConnection dbConnection, MovieWriter writer) throws SQLException {
+        Connection connection = dbConnection.getConnection();
+        connection.setAutoCommit(false);
+        try {
+            writer.write();
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private interface MovieWriter {
+        void write() throws SQLException;
+    }
+
+    private void doSaveRenditions(DBConnection dbConnection, String movieCode, Map<PosterRenditionTYPE, byte[]> renditions) throws SQLException {
+        doDeleteRenditions(dbConnection, movieCode);
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION (CODICE_FILM, FORMATO, IMMAGINE, HASH) values (?,?,?,?)";
         try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(Map.Entry<PosterRenditionTYPE, byte[]> rendition : renditions.entrySet()) {
+                String hash = BlobDiskCache.hashOf(rendition.getValue());
+                ps.setString(1, movieCode);
+                ps.setString(2, rendition.getKey().name());
+                ps.setBinaryStream(3, new ByteArrayInputStream(rendition.getValue()), rendition.getValue().length);
+                ps.setString(4, hash);
+                ps.addBatch();
+                diskCache.write(hash, rendition.getValue());
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void doDeleteRenditions(DBConnection dbConnection, String movieCode) throws SQLException {
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION WHERE CODICE_FILM = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, movieCode);
             ps.execute();
+        }
+    }
+
+    private void doSavePosterHashes(DBConnection dbConnection, Map<String, String> hashes) throws SQLException {
+        String query = "UPDATE " + DataReferences.DBNAME + ".MOVIE SET LOCANDINA_HASH = ? WHERE CODICE = ? AND LOCANDINA_HASH IS NULL";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(Map.Entry<String, String> e : hashes.entrySet()) {
+                ps.setString(1, e.getValue());
+                ps.setString(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private Image decodePoster(PosterKey key, InputStream in) {
+        Image poster = new Image(in, key.width, key.height, key.preserveRatio, key.smooth);
+        CloseableUtils.close(in);
+        if(poster.isError()) { return null; }
+        posterCache.put(key, poster, (long) Math.ceil(poster.getWidth()) * (long) Math.ceil(poster.getHeight()) * 4);
+        return poster;
+    }
+
+    private void doDeleteMovie(Movie toDelete) {
+        String query = "DELETE FROM "+ DataReferences.DBNAME + ".MOVIE where CODICE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            doInTransaction(dbConnection, () -> {
+                try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                    ps.setString(1, toDelete.getCodice());
+                    ps.execute();
+                }
+                doDeleteRenditions(dbConnection, toDelete.getCodice());
+            });
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
@@ -129,8 +448,9 @@ public class MovieDaoImpl implements MovieDao {
                                                                  + ", TRAMA = ?"
                                                                  + ", TIPO = ?"
                                                                  + ", STATUS = ? "
-                     + "WHERE CODICE = '" + toUpdate.getCodice() + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                     + "WHERE CODICE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setString(1, toUpdate.getTitolo());
             ps.setString(2, toUpdate.getGenere());
             ps.setString(3, toUpdate.getRegia());
@@ -140,6 +460,7 @@ public class MovieDaoImpl implements MovieDao {
             ps.setString(7, toUpdate.getTrama());
             ps.setString(8, toUpdate.getTipo().name());
             ps.setString(9, toUpdate.getStatus().name());
+            ps.setString(10, toUpdate.getCodice());
             ps.execute();
         } catch (SQLException e) {
             throw new ApplicationException(e);
@@ -148,6 +469,8 @@ public class MovieDaoImpl implements MovieDao {
 
     private void doUpdateMovie(Movie toUpdate, FileInputStream posterStream) {
         String query = "UPDATE " + DataReferences.DBNAME + ".MOVIE SET LOCANDINA = ?"
+                                                         + ", LOCANDINA_VERSION = LOCANDINA_VERSION + 1"
+                                                         + ", LOCANDINA_HASH = ?"
                                                          + ", TITOLO = ?"
                                                          + ", GENERE = ?"
                                                          + ", REGIA = ?"
@@ -157,40 +480,61 @@ public class MovieDaoImpl implements MovieDao {
                                                          + ", TRAMA = ?"
                                                          + ", TIPO = ?"
                                                          + ", STATUS = ? "
-                     + "WHERE CODICE = '" + toUpdate.getCodice() + "';";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setBinaryStream(1, posterStream, posterStream.available());
-            ps.setString(2, toUpdate.getTitolo());
-            ps.setString(3, toUpdate.getGenere());
-            ps.setString(4, toUpdate.getRegia());
-            ps.setString(5, toUpdate.getCast());
-            ps.setString(6, toUpdate.getDurata());
-            ps.setString(7, toUpdate.getAnno());
-            ps.setString(8, toUpdate.getTrama());
-            ps.setString(9, toUpdate.getTipo().name());
-            ps.setString(10, toUpdate.getStatus().name());
-            ps.execute();
-        } catch (SQLException | IOException e) {
+                     + "WHERE CODICE = ?";
+        byte[] poster = BlobDiskCache.readFully(posterStream);
+        String hash = BlobDiskCache.hashOf(poster);
+        Map<PosterRenditionTYPE, byte[]> renditions = PosterRenditions.generate(poster);
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            doInTransaction(dbConnection, () -> {
+                try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                    ps.setBinaryStream(1, new ByteArrayInputStream(poster), poster.length);
+                    ps.setString(2, hash);
+                    ps.setString(3, toUpdate.getTitolo());
+                    ps.setString(4, toUpdate.getGenere());
+                    ps.setString(5, toUpdate.getRegia());
+                    ps.setString(6, toUpdate.getCast());
+                    ps.setString(7, toUpdate.getDurata());
+                    ps.setString(8, toUpdate.getAnno());
+                    ps.setString(9, toUpdate.getTrama());
+                    ps.setString(10, toUpdate.getTipo().name());
+                    ps.setString(11, toUpdate.getStatus().name());
+                    ps.setString(12, toUpdate.getCodice());
+                    ps.execute();
+                }
+                doSaveRenditions(dbConnection, toUpdate.getCodice(), renditions);
+            });
+            diskCache.write(hash, poster);
+        } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
     private void doInsertNewMovie(Movie toInsert, FileInputStream posterStream) {
-        String query = "insert into " + DataReferences.DBNAME + ".MOVIE (CODICE, LOCANDINA, TITOLO, GENERE, REGIA, CAST, DURATA, ANNO, TRAMA, TIPO, STATUS) values (?,?,?,?,?,?,?,?,?,?,?)";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setString(1, toInsert.getCodice());
-            ps.setBinaryStream(2, posterStream, posterStream.available());
-            ps.setString(3, toInsert.getTitolo());
-            ps.setString(4, toInsert.getGenere());
-            ps.setString(5, toInsert.getRegia());
-            ps.setString(6, toInsert.getCast());
-            ps.setString(7, toInsert.getDurata());
-            ps.setString(8, toInsert.getAnno());
-            ps.setString(9, toInsert.getTrama());
-            ps.setString(10, toInsert.getTipo().name());
-            ps.setString(11, toInsert.getStatus().name());
-            ps.execute();
-        } catch (SQLException | IOException e) {
+        String query = "insert into " + DataReferences.DBNAME + ".MOVIE (CODICE, LOCANDINA, LOCANDINA_HASH, TITOLO, GENERE, REGIA, CAST, DURATA, ANNO, TRAMA, TIPO, STATUS) values (?,?,?,?,?,?,?,?,?,?,?,?)";
+        byte[] poster = BlobDiskCache.readFully(posterStream);
+        String hash = BlobDiskCache.hashOf(poster);
+        Map<PosterRenditionTYPE, byte[]> renditions = PosterRenditions.generate(poster);
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            doInTransaction(dbConnection, () -> {
+                try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                    ps.setString(1, toInsert.getCodice());
+                    ps.setBinaryStream(2, new ByteArrayInputStream(poster), poster.length);
+                    ps.setString(3, hash);
+                    ps.setString(4, toInsert.getTitolo());
+                    ps.setString(5, toInsert.getGenere());
+                    ps.setString(6, toInsert.getRegia());
+                    ps.setString(7, toInsert.getCast());
+                    ps.setString(8, toInsert.getDurata());
+                    ps.setString(9, toInsert.getAnno());
+                    ps.setString(10, toInsert.getTrama());
+                    ps.setString(11, toInsert.getTipo().name());
+                    ps.setString(12, toInsert.getStatus().name());
+                    ps.execute();
+                }
+                doSaveRenditions(dbConnection, toInsert.getCodice(), renditions);
+            });
+            diskCache.write(hash, poster);
+        } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
@@ -207,32 +551,6 @@ public class MovieDaoImpl implements MovieDao {
         }
     }
 
-    private List<Movie> retrieveCompleteMoviesFromResultSet(ResultSet resultSet, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) throws SQLException {
-        List<Movie> res = new ArrayList<>();
-        try {
-            while(resultSet.next()) {
-                res.add(getMovie(resultSet, requestedWidth, requestedHeight, preserveRatio, smooth));
-            }
-            return res;
-        } finally {
-            resultSet.close();
-        }
-    }
-
-    private Movie getMovie(ResultSet resultSet, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) throws SQLException {
-        Movie toAdd = getMovieWithoutPoster(resultSet);
-        toAdd.setLocandina(getImageFromBlob(resultSet, requestedWidth, requestedHeight, preserveRatio, smooth));
-        return toAdd;
-    }
-
-    private Image getImageFromBlob(ResultSet resultSet, double requestedWidth, double requestedHeight, boolean preserveRatio, boolean smooth) throws SQLException {
-        Blob blob = resultSet.getBlob("LOCANDINA");
-        InputStream in = blob.getBinaryStream(1, Objects.requireNonNull(blob).length());
-        Image res = new Image(in, requestedWidth, requestedHeight, preserveRatio, smooth);
-        CloseableUtils.close(in);
-        return res;
-    }
-
     private Movie getMovieWithoutPoster(ResultSet resultSet) throws SQLException {
         Movie toAdd = new Movie();
         toAdd.setCodice( resultSet.getString("CODICE"));
@@ -263,4 +581,42 @@ public class MovieDaoImpl implements MovieDao {
         }
         return toAdd;
     }
+
+    //Chiave della cache: la stessa locandina può essere richiesta con dimensioni diverse dai vari pannelli
+    private static class PosterKey {
+        private final String movieCode;
+        private final int version;
+        private final PosterRenditionTYPE rendition;
+        private final double width;
+        private final double height;
+        private final boolean preserveRatio;
+        private final boolean smooth;
+
+        private PosterKey(String movieCode, int version, PosterRenditionTYPE rendition, double width, double height, boolean preserveRatio, boolean smooth) {
+            this.movieCode = movieCode;
+            this.version = version;
+            this.rendition = rendition;
+            this.width = width;
+            this.height = height;
+            this.preserveRatio = preserveRatio;
+            this.smooth = smooth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) { return true; }
+            if(!(o instanceof PosterKey)) { return false; }
+            PosterKey other = (PosterKey) o;
+            return version == other.version
+                && rendition == other.rendition
+                && Double.compare(width, other.width) == 0
+                && Double.compare(height, other.height) == 0
+                && preserveRatio == other.preserveRatio
+                && smooth == other.smooth
+                && movieCode.equals(other.movieCode);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(movieCode, version, rendition, width, height, preserveRatio, smooth); }
+    }
 }
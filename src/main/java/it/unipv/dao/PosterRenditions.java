@@ -0,0 +1,82 @@
+package it.unipv.dao;
+
+import it.unipv.model.PosterRenditionTYPE;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Genera i formati ridotti di una locandina (PosterRenditionTYPE) a partire dall'immagine originale.
+ * Utilizza java.awt e ImageIO, quindi non richiede che JavaFX sia stato avviato.
+ */
+class PosterRenditions {
+
+    private PosterRenditions() {}
+
+    /**
+     * @param original -> il contenuto del file della locandina originale.
+     * @return -> i formati ridotti codificati in JPEG; vuoto se l'immagine originale non è leggibile.
+     */
+    static Map<PosterRenditionTYPE, byte[]> generate(byte[] original) {
+        Map<PosterRenditionTYPE, byte[]> res = new EnumMap<>(PosterRenditionTYPE.class);
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(original));
+            if(source == null) { return res; }
+            for(PosterRenditionTYPE rendition : PosterRenditionTYPE.values()) {
+                res.put(rendition, encode(scale(source, rendition.getWidth())));
+            }
+            return res;
+        } catch (IOException e) {
+            res.clear();
+            return res;
+        }
+    }
+
+    //Riduce l'immagine dimezzandola più volte e poi alla larghezza finale: evita l'aliasing di una riduzione in un solo passo
+    private static BufferedImage scale(BufferedImage source, int width) {
+        int targetWidth = Math.min(width, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * (double) targetWidth / source.getWidth()));
+
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        do {
+            if(currentWidth / 2 >= targetWidth) {
+                currentWidth /= 2;
+                currentHeight = Math.max(targetHeight, currentHeight / 2);
+            } else {
+                currentWidth = targetWidth;
+                currentHeight = targetHeight;
+            }
+            current = draw(current, currentWidth, currentHeight);
+        } while(currentWidth != targetWidth || currentHeight != targetHeight);
+        return current;
+    }
+
+    //Il JPEG non supporta la trasparenza: l'immagine viene disegnata su uno sfondo RGB
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage res = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = res.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return res;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
@@ -1,12 +1,20 @@
 package it.unipv.dao;
 
+import it.unipv.model.ChangeSet;
 import it.unipv.model.Prenotation;
+import it.unipv.model.ReservationResult;
 
 import java.util.List;
 
 public interface PrenotationDao {
     List<Prenotation> retrievePrenotationList();
-    void insertNewPrenotation(Prenotation toInsert);
+    List<Prenotation> retrieveByUser(String userName);
+    List<Prenotation> retrieveByScreening(String movieCode, String date, String time, String hall);
+    int countByUser(String userName);
+    boolean existsByScreening(String movieCode, String date, String time, String hall);
+    ChangeSet<Prenotation> retrieveChangesSince(long watermark);
+    long insertNewPrenotation(Prenotation toInsert);
+    ReservationResult reserve(Prenotation toInsert);
     void deletePrenotation(Prenotation toDelete);
 
 }
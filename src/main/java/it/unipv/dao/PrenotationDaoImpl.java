@@ -1,7 +1,11 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
+import it.unipv.model.ChangeSet;
 import it.unipv.model.Prenotation;
+import it.unipv.model.ReservationResult;
+import it.unipv.model.ScreeningKey;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.DataReferences;
 
@@ -9,16 +13,36 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
  * Questa classe fa riferimento alla tabella PRENOTATION
  * Si occupa di inserire/recuperare/eliminare i dati riguardanti le prenotazioni.
+ * Le ricerche per utente e per proiezione vengono eseguite dal database.
+ * Inserimenti ed eliminazioni vengono registrati nel log delle modifiche (ChangeLog), su cui si basa
+ *     la copia in memoria delle prenotazioni (getReplica) aggiornata in modo incrementale.
+ * Ogni prenotazione scrive anche un posto per riga in SEAT_RESERVATION, con il suo tipo, nella stessa transazione:
+ *     il vincolo di unicità di quella tabella impedisce di vendere due volte lo stesso posto senza bisogno di lock globali.
+ *     Le prenotazioni precedenti a quella tabella vengono copiate da PrenotationSeatMigrator.
  */
 public class PrenotationDaoImpl implements PrenotationDao {
-    private DBConnection dbConnection;
+    private static final String USERCONDITION = "NOMEUTENTE = ?";
+    private static final String SCREENINGCONDITION = "CODICEFILM = ? AND GIORNOFILM = ? AND ORAFILM = ? AND SALAFILM = ?";
+    //Tentativi di prenotazione quando un'altra postazione occupa uno dei posti tra il controllo e l'inserimento
+    private static final int RESERVATIONATTEMPTS = 3;
+    //Tipo del posto al momento della prenotazione, dalla piantina della sala
+    private static final String SEATTYPEQUERY = "(SELECT MAX(TIPO_POSTO) FROM " + DataReferences.DBNAME + ".MAPS WHERE NOME_SALA = ? AND NOME_POSTO = ?)";
 
-    public PrenotationDaoImpl(DBConnection dbConnection) { this.dbConnection = dbConnection; }
+    private static final ProviderRegistry<SyncedReplica<Prenotation>> REPLICAS = new ProviderRegistry<>();
+
+    private ConnectionProvider connectionProvider;
+    private ChangeTracker changeTracker;
+
+    public PrenotationDaoImpl(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.changeTracker = ChangeTracker.of(connectionProvider);
+    }
 
     /**
      * Recupera la lista delle prenotazioni dal database.
@@ -26,46 +50,203 @@ public class PrenotationDaoImpl implements PrenotationDao {
      */
     @Override public List<Prenotation> retrievePrenotationList() { return doRetrievePrenotationList(); }
 
+    /**
+     * Recupera le prenotazioni effettuate da un utente.
+     * @param userName -> il nome dell'utente.
+     * @return -> lista delle prenotazioni dell'utente.
+     */
+    @Override public List<Prenotation> retrieveByUser(String userName) {
+        return doRetrieveFilteredPrenotations(USERCONDITION, userName);
+    }
+
+    /**
+     * Recupera le prenotazioni effettuate per una proiezione.
+     * @param movieCode -> il codice del film;
+     * @param date -> il giorno della proiezione, nel formato dd/MM/yyyy;
+     * @param time -> l'ora della proiezione, nel formato HH:mm;
+     * @param hall -> la sala della proiezione.
+     * @return -> lista delle prenotazioni della proiezione.
+     */
+    @Override public List<Prenotation> retrieveByScreening(String movieCode, String date, String time, String hall) {
+        return doRetrieveFilteredPrenotations(SCREENINGCONDITION, movieCode, date, time, hall);
+    }
+
+    /**
+     * Conta le prenotazioni effettuate da un utente, senza recuperarle.
+     * @param userName -> il nome dell'utente.
+     * @return -> il numero di prenotazioni dell'utente.
+     */
+    @Override public int countByUser(String userName) {
+        return doCountPrenotations(USERCONDITION, userName);
+    }
+
+    /**
+     * Verifica se esiste almeno una prenotazione per una proiezione.
+     * @param movieCode -> il codice del film;
+     * @param date -> il giorno della proiezione, nel formato dd/MM/yyyy;
+     * @param time -> l'ora della proiezione, nel formato HH:mm;
+     * @param hall -> la sala della proiezione.
+     * @return -> vero se la proiezione ha almeno una prenotazione.
+     */
+    @Override public boolean existsByScreening(String movieCode, String date, String time, String hall) {
+        return doCountPrenotations(SCREENINGCONDITION, movieCode, date, time, hall) > 0;
+    }
+
+    /**
+     * Recupera le sole prenotazioni inserite o eliminate dopo il watermark, tramite il log delle modifiche.
+     * @param watermark -> il watermark restituito dalla richiesta precedente, 0 per ricevere tutte le prenotazioni.
+     * @return -> le modifiche successive al watermark, insieme al nuovo watermark.
+     */
+    @Override public ChangeSet<Prenotation> retrieveChangesSince(long watermark) {
+        return ChangeLog.retrieveChangesSince(connectionProvider, ChangeTracker.Table.PRENOTATION, watermark, this::getPrenotation);
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni al database.
+     * @return -> la copia in memoria delle prenotazioni, condivisa da tutti i pannelli che utilizzano quel fornitore di connessioni.
+     */
+    public static SyncedReplica<Prenotation> getReplica(ConnectionProvider connectionProvider) {
+        return REPLICAS.get(connectionProvider, cp -> new SyncedReplica<>(new PrenotationDaoImpl(cp)::retrieveChangesSince, Prenotation::getId));
+    }
+
     /**
      * Inserisce le informazioni di una nuova prenotazione nel database.
-     * @param toInsert -> la nuova prenotazione da inserire.
+     * @param toInsert -> la nuova prenotazione da inserire, a cui viene assegnato l'ID generato dal database.
+     * @return -> l'ID generato per la nuova prenotazione.
+     * @throws ApplicationException -> se qualcuno dei posti è già stato prenotato; per sapere quali utilizzare reserve.
      */
-    @Override public void insertNewPrenotation(Prenotation toInsert) { doInsertNewPrenotation(toInsert); }
+    @Override public long insertNewPrenotation(Prenotation toInsert) {
+        ReservationResult res = reserve(toInsert);
+        if(!res.isReserved()) {
+            throw new ApplicationException("I posti " + String.join("-", res.getConflicts()) + " sono già stati prenotati");
+        }
+        return res.getPrenotationId();
+    }
 
     /**
-     * Rimuove le informazioni di una prenotazione dal database.
+     * Prenota i posti selezionati (POSTISELEZIONATI) per la proiezione della prenotazione e la inserisce, in un'unica transazione:
+     *     o vengono prenotati tutti i posti, o nessuno.
+     * @param toInsert -> la nuova prenotazione da inserire, a cui viene assegnato l'ID generato dal database.
+     * @return -> l'esito della prenotazione, con i posti già occupati se non è stato possibile effettuarla.
+     */
+    @Override public ReservationResult reserve(Prenotation toInsert) {
+        try {
+            for(int i=0; i<RESERVATIONATTEMPTS; i++) {
+                try {
+                    return ReservationResult.reserved(ChangeLog.writeAndLog(connectionProvider, ChangeTracker.Table.PRENOTATION, dbConnection -> doReserve(dbConnection, toInsert)));
+                } catch (SeatConflictException e) {
+                    toInsert.setId(0);
+                    if(!e.conflicts.isEmpty()) {
+                        return ReservationResult.conflicting(e.conflicts);
+                    }
+                }
+            }
+            throw new ApplicationException("Impossibile prenotare i posti: la proiezione è stata modificata da troppe prenotazioni contemporanee");
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.PRENOTATION);
+        }
+    }
+
+    /**
+     * Rimuove le informazioni di una prenotazione dal database, identificandola tramite il suo ID.
      * @param toDelete -> la prenotazione da rimuovere.
      */
-    @Override public void deletePrenotation(Prenotation toDelete) { doDeletePrenotation(toDelete); }
-
-    private void doDeletePrenotation(Prenotation toDelete) {
-        String query = "DELETE FROM " + DataReferences.DBNAME + ".PRENOTATION where "
-                                                                                     + "NOMEUTENTE = ? AND "
-                                                                                     + "NOMEFILM = ? AND "
-                                                                                     + "CODICEFILM = ? AND "
-                                                                                     + "GIORNOFILM = ? AND "
-                                                                                     + "ORAFILM = ? AND "
-                                                                                     + "SALAFILM = ? AND "
-                                                                                     + "POSTISELEZIONATI = ? AND "
-                                                                                     + "COSTOTOTALE = ?";
+    @Override public void deletePrenotation(Prenotation toDelete) {
+        try {
+            ChangeLog.writeAndLog(connectionProvider, ChangeTracker.Table.PRENOTATION, dbConnection -> doDeletePrenotation(dbConnection, toDelete));
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.PRENOTATION);
+        }
+    }
+
+    private long doDeletePrenotation(DBConnection dbConnection, Prenotation toDelete) throws SQLException {
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".SEAT_RESERVATION where ID_PRENOTAZIONE = ?";
         try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setString(1, toDelete.getNomeUtente());
-            ps.setString(2, toDelete.getNomeFilm());
-            ps.setString(3, toDelete.getCodiceFilm());
-            ps.setString(4, toDelete.getGiornoFilm());
-            ps.setString(5, toDelete.getOraFilm());
-            ps.setString(6, toDelete.getSalaFilm());
-            ps.setString(7, toDelete.getPostiSelezionati());
-            ps.setString(8, toDelete.getCostoTotale());
+            ps.setLong(1, toDelete.getId());
             ps.execute();
+        }
+
+        query = "DELETE FROM " + DataReferences.DBNAME + ".PRENOTATION where ID = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setLong(1, toDelete.getId());
+            ps.execute();
+            return toDelete.getId();
+        }
+    }
+
+    /* Il controllo preventivo permette di indicare all'utente i posti occupati; se un'altra postazione li prenota
+     *     tra il controllo e l'inserimento è il vincolo di unicità a fermare la transazione, che viene ripetuta da reserve.
+     */
+    private long doReserve(DBConnection dbConnection, Prenotation toInsert) throws SQLException {
+        ScreeningKey screening = ScreeningKey.of(toInsert);
+        List<String> seatNames = toInsert.getSeatNames();
+        List<String> conflicts = doRetrieveReservedSeats(dbConnection, screening, seatNames);
+        if(!conflicts.isEmpty()) {
+            throw new SeatConflictException(conflicts);
+        }
+
+        long id = doInsertNewPrenotation(dbConnection, toInsert);
+        try {
+            doInsertSeatReservations(dbConnection, screening, seatNames, id);
         } catch (SQLException e) {
-            throw new ApplicationException(e);
+            if(isUniqueViolation(e)) {
+                throw new SeatConflictException(new ArrayList<>());
+            }
+            throw e;
         }
+        return id;
     }
 
-    private void doInsertNewPrenotation(Prenotation toInsert) {
-        String query = "INSERT INTO " + DataReferences.DBNAME + ".PRENOTATION (NOMEUTENTE, NOMEFILM, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, POSTISELEZIONATI, COSTOTOTALE) values (?,?,?,?,?,?,?,?)";
+    private List<String> doRetrieveReservedSeats(DBConnection dbConnection, ScreeningKey screening, List<String> seatNames) throws SQLException {
+        List<String> res = new ArrayList<>();
+        if(seatNames.isEmpty()) { return res; }
+        String query = "SELECT NOME_POSTO FROM " + DataReferences.DBNAME + ".SEAT_RESERVATION WHERE " + SCREENINGCONDITION
+                     + " AND NOME_POSTO IN " + DBConnection.getInPlaceholders(seatNames.size());
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            setParameters(ps, screening.getMovieCode(), screening.getDate(), screening.getTime(), screening.getHallName());
+            for(int i=0; i<seatNames.size(); i++) {
+                ps.setString(i+5, seatNames.get(i));
+            }
+            try (ResultSet resultSet = ps.executeQuery()) {
+                while(resultSet.next()) {
+                    res.add(resultSet.getString("NOME_POSTO"));
+                }
+            }
+        }
+        //Stesso ordine della selezione dell'utente
+        res.sort(Comparator.comparingInt(seatNames::indexOf));
+        return res;
+    }
+
+    //Un unico statement per tutti i posti, eseguito a batch: la query preparata è la stessa per ogni numero di posti
+    private void doInsertSeatReservations(DBConnection dbConnection, ScreeningKey screening, List<String> seatNames, long prenotationId) throws SQLException {
+        if(seatNames.isEmpty()) { return; }
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".SEAT_RESERVATION (ID_PRENOTAZIONE, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, NOME_POSTO, TIPO_POSTO) "
+                     + "values (?,?,?,?,?,?," + SEATTYPEQUERY + ")";
         try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(String seatName : seatNames) {
+                ps.setLong(1, prenotationId);
+                ps.setString(2, screening.getMovieCode());
+                ps.setString(3, screening.getDate());
+                ps.setString(4, screening.getTime());
+                ps.setString(5, screening.getHallName());
+                ps.setString(6, seatName);
+                ps.setString(7, screening.getHallName());
+                ps.setString(8, seatName);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    //23505 è il codice di H2 per la violazione di un vincolo di unicità, 1062 quello di MySQL; usato anche da SeatHoldService
+    static boolean isUniqueViolation(SQLException e) {
+        return "23505".equals(e.getSQLState()) || e.getErrorCode() == 1062;
+    }
+
+    private long doInsertNewPrenotation(DBConnection dbConnection, Prenotation toInsert) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".PRENOTATION (NOMEUTENTE, NOMEFILM, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, POSTISELEZIONATI, COSTOTOTALE) values (?,?,?,?,?,?,?,?)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementReturningKeys(query)) {
             ps.setString(1, toInsert.getNomeUtente());
             ps.setString(2, toInsert.getNomeFilm());
             ps.setString(3, toInsert.getCodiceFilm());
@@ -75,35 +256,93 @@ public class PrenotationDaoImpl implements PrenotationDao {
             ps.setString(7, toInsert.getPostiSelezionati());
             ps.setString(8, toInsert.getCostoTotale());
             ps.execute();
+            toInsert.setId(getGeneratedKey(ps));
+            return toInsert.getId();
+        }
+    }
+
+    private List<Prenotation> doRetrievePrenotationList() {
+        String query = "SELECT * FROM " + DataReferences.DBNAME + ".PRENOTATION";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            return getPrenotationsFromResultSet(ps.executeQuery());
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
-    private List<Prenotation> doRetrievePrenotationList() {
-        try {
-            return getPrenotationsFromResultSet(dbConnection.getResultFromQuery("SELECT * FROM " + DataReferences.DBNAME + ".PRENOTATION"));
+    private List<Prenotation> doRetrieveFilteredPrenotations(String condition, String... parameters) {
+        String query = "SELECT * FROM " + DataReferences.DBNAME + ".PRENOTATION WHERE " + condition;
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            setParameters(ps, parameters);
+            return getPrenotationsFromResultSet(ps.executeQuery());
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    private int doCountPrenotations(String condition, String... parameters) {
+        String query = "SELECT COUNT(*) FROM " + DataReferences.DBNAME + ".PRENOTATION WHERE " + condition;
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            setParameters(ps, parameters);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
+    private void setParameters(PreparedStatement ps, String... parameters) throws SQLException {
+        for(int i=0; i<parameters.length; i++) {
+            ps.setString(i+1, parameters[i]);
+        }
+    }
+
+    private long getGeneratedKey(PreparedStatement ps) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if(!keys.next()) {
+                throw new ApplicationException("Il database non ha restituito l'ID della nuova prenotazione");
+            }
+            return keys.getLong(1);
+        }
+    }
+
     private List<Prenotation> getPrenotationsFromResultSet(ResultSet resultSet) throws SQLException {
         try {
             List<Prenotation> res = new ArrayList<>();
             while(resultSet.next()) {
-                res.add(new Prenotation( resultSet.getString("NOMEUTENTE")
-                                       , resultSet.getString("NOMEFILM")
-                                       , resultSet.getString("CODICEFILM")
-                                       , resultSet.getString("GIORNOFILM")
-                                       , resultSet.getString("ORAFILM")
-                                       , resultSet.getString("SALAFILM")
-                                       , resultSet.getString("POSTISELEZIONATI")
-                                       , resultSet.getString("COSTOTOTALE")));
+                res.add(getPrenotation(resultSet));
             }
             return res;
         } finally {
             resultSet.close();
         }
     }
+
+    //Interrompe la transazione di reserve; la lista è vuota se i posti sono stati occupati durante la transazione
+    private static class SeatConflictException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final List<String> conflicts;
+
+        private SeatConflictException(List<String> conflicts) {
+            super("Posti già occupati: " + conflicts);
+            this.conflicts = conflicts;
+        }
+    }
+
+    private Prenotation getPrenotation(ResultSet resultSet) throws SQLException {
+        Prenotation res = new Prenotation( resultSet.getString("NOMEUTENTE")
+                                         , resultSet.getString("NOMEFILM")
+                                         , resultSet.getString("CODICEFILM")
+                                         , resultSet.getString("GIORNOFILM")
+                                         , resultSet.getString("ORAFILM")
+                                         , resultSet.getString("SALAFILM")
+                                         , resultSet.getString("POSTISELEZIONATI")
+                                         , resultSet.getString("COSTOTOTALE"));
+        res.setId(resultSet.getLong("ID"));
+        return res;
+    }
 }
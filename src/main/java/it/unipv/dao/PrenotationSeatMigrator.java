@@ -0,0 +1,206 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.db.DBConnection;
+import it.unipv.model.Prenotation;
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copia i posti delle prenotazioni precedenti a SEAT_RESERVATION (stringhe POSTISELEZIONATI come "A1-A2-B3")
+ *     in una riga per posto, con il tipo del posto letto dalla piantina attuale della sala.
+ * Le prenotazioni vengono lette per ID crescente a blocchi di chunkSize, quindi la memoria occupata non dipende
+ *     dalla dimensione della tabella; ogni blocco viene copiato in una transazione che registra anche l'ultimo ID copiato
+ *     in DATA_MIGRATION, così una copia interrotta riprende dal blocco successivo.
+ * Le prenotazioni che hanno già i loro posti (inserite da PrenotationDaoImpl dopo l'introduzione di SEAT_RESERVATION)
+ *     vengono saltate; un posto venduto due volte prima del vincolo di unicità resta assegnato alla prenotazione con ID minore,
+ *     e viene contato in getConflicts.
+ * La copia è un'operazione da eseguire una volta sola, tramite it.unipv.main.MigrateDB, e non all'avvio del programma.
+ */
+public class PrenotationSeatMigrator {
+    private static final String NAME = "SEAT_RESERVATION";
+
+    private final ConnectionProvider connectionProvider;
+    private final int chunkSize;
+    private long migratedSeats = 0;
+    private long conflicts = 0;
+
+    /** @param connectionProvider -> il pool di connessioni al database; i blocchi sono di DataReferences.SEATMIGRATIONCHUNK prenotazioni. */
+    public PrenotationSeatMigrator(ConnectionProvider connectionProvider) { this(connectionProvider, DataReferences.SEATMIGRATIONCHUNK); }
+
+    /**
+     * @param connectionProvider -> il pool di connessioni al database;
+     * @param chunkSize -> il numero di prenotazioni lette e copiate per ogni transazione.
+     */
+    public PrenotationSeatMigrator(ConnectionProvider connectionProvider, int chunkSize) {
+        this.connectionProvider = connectionProvider;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Copia tutte le prenotazioni non ancora copiate, riprendendo dall'ultimo blocco registrato; se la copia è già completata non fa nulla.
+     * @return -> il numero di prenotazioni copiate.
+     */
+    public long migrate() {
+        long res = 0;
+        int copied;
+        while((copied = migrateNextChunk()) >= 0) {
+            res += copied;
+        }
+        return res;
+    }
+
+    /**
+     * Copia il blocco successivo all'ultimo registrato.
+     * @return -> il numero di prenotazioni copiate, oppure -1 se non ci sono più prenotazioni da copiare.
+     */
+    public int migrateNextChunk() {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            Connection connection = dbConnection.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                int res = doMigrateNextChunk(dbConnection);
+                connection.commit();
+                return res;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /** @return -> i posti copiati da questa istanza. */
+    public long getMigratedSeats() { return migratedSeats; }
+
+    /** @return -> i posti non copiati perché già assegnati a un'altra prenotazione della stessa proiezione. */
+    public long getConflicts() { return conflicts; }
+
+    private int doMigrateNextChunk(DBConnection dbConnection) throws SQLException {
+        Long lastId = doRetrieveCheckpoint(dbConnection);
+        if(lastId == null) {
+            return -1;
+        }
+
+        List<Prenotation> chunk = doRetrieveChunk(dbConnection, lastId);
+        if(chunk.isEmpty()) {
+            doSaveCheckpoint(dbConnection, lastId, true);
+            return -1;
+        }
+        doInsertSeats(dbConnection, chunk);
+        doSaveCheckpoint(dbConnection, chunk.get(chunk.size() - 1).getId(), false);
+        return chunk.size();
+    }
+
+    //L'ultimo ID copiato, oppure null se la copia è già completata
+    private Long doRetrieveCheckpoint(DBConnection dbConnection) throws SQLException {
+        String query = "SELECT ULTIMO_ID, COMPLETATA FROM " + DataReferences.DBNAME + ".DATA_MIGRATION WHERE NOME = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, NAME);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                if(!resultSet.next()) {
+                    return 0L;
+                }
+                return resultSet.getBoolean("COMPLETATA") ? null : resultSet.getLong("ULTIMO_ID");
+            }
+        }
+    }
+
+    private void doSaveCheckpoint(DBConnection dbConnection, long lastId, boolean completed) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".DATA_MIGRATION (NOME, ULTIMO_ID, COMPLETATA) values (?,?,?) "
+                     + "ON DUPLICATE KEY UPDATE ULTIMO_ID = VALUES(ULTIMO_ID), COMPLETATA = VALUES(COMPLETATA)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, NAME);
+            ps.setLong(2, lastId);
+            ps.setBoolean(3, completed);
+            ps.execute();
+        }
+    }
+
+    //Vengono letti solo ID e posti: il resto della prenotazione viene copiato direttamente dal database
+    private List<Prenotation> doRetrieveChunk(DBConnection dbConnection, long lastId) throws SQLException {
+        String query = "SELECT P.ID, P.POSTISELEZIONATI FROM " + DataReferences.DBNAME + ".PRENOTATION P WHERE P.ID > ? "
+                     + "AND NOT EXISTS (SELECT 1 FROM " + DataReferences.DBNAME + ".SEAT_RESERVATION R WHERE R.ID_PRENOTAZIONE = P.ID) "
+                     + "ORDER BY P.ID LIMIT ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setLong(1, lastId);
+            ps.setInt(2, chunkSize);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                List<Prenotation> res = new ArrayList<>();
+                while(resultSet.next()) {
+                    Prenotation p = new Prenotation(null, null, null, null, null, null, resultSet.getString("POSTISELEZIONATI"), null);
+                    p.setId(resultSet.getLong("ID"));
+                    res.add(p);
+                }
+                return res;
+            }
+        }
+    }
+
+    /* I posti del blocco vengono inviati in un unico batch. Se un posto è già assegnato a un'altra prenotazione il batch
+     *     viene annullato fino al savepoint e i posti del blocco vengono copiati uno alla volta, per contare i conflitti.
+     */
+    private void doInsertSeats(DBConnection dbConnection, List<Prenotation> chunk) throws SQLException {
+        Connection connection = dbConnection.getConnection();
+        Savepoint savepoint = connection.setSavepoint();
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(getInsertSeatQuery())) {
+            for(Prenotation p : chunk) {
+                for(String seatName : p.getSeatNames()) {
+                    setInsertSeatParameters(ps, p, seatName);
+                    ps.addBatch();
+                }
+            }
+            long inserted = 0;
+            for(int count : ps.executeBatch()) {
+                inserted += Math.max(count, 0);
+            }
+            migratedSeats += inserted;
+        } catch (BatchUpdateException e) {
+            if(!PrenotationDaoImpl.isUniqueViolation(e)) {
+                throw e;
+            }
+            connection.rollback(savepoint);
+            for(Prenotation p : chunk) {
+                for(String seatName : p.getSeatNames()) {
+                    doInsertSeat(dbConnection, p, seatName);
+                }
+            }
+        }
+    }
+
+    private void doInsertSeat(DBConnection dbConnection, Prenotation p, String seatName) throws SQLException {
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(getInsertSeatQuery())) {
+            setInsertSeatParameters(ps, p, seatName);
+            migratedSeats += ps.executeUpdate();
+        } catch (SQLException e) {
+            if(!PrenotationDaoImpl.isUniqueViolation(e)) {
+                throw e;
+            }
+            conflicts++;
+        }
+    }
+
+    //INSERT ... SELECT: se nel frattempo la prenotazione è stata eliminata non viene inserito nulla
+    private String getInsertSeatQuery() {
+        return "INSERT INTO " + DataReferences.DBNAME + ".SEAT_RESERVATION (ID_PRENOTAZIONE, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, NOME_POSTO, TIPO_POSTO) "
+                     + "SELECT P.ID, P.CODICEFILM, P.GIORNOFILM, P.ORAFILM, P.SALAFILM, ?, "
+                     + "(SELECT MAX(M.TIPO_POSTO) FROM " + DataReferences.DBNAME + ".MAPS M WHERE M.NOME_SALA = P.SALAFILM AND M.NOME_POSTO = ?) "
+                     + "FROM " + DataReferences.DBNAME + ".PRENOTATION P WHERE P.ID = ?";
+    }
+
+    private void setInsertSeatParameters(PreparedStatement ps, Prenotation p, String seatName) throws SQLException {
+        ps.setString(1, seatName);
+        ps.setString(2, seatName);
+        ps.setLong(3, p.getId());
+    }
+}
@@ -1,5 +1,6 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
 import it.unipv.model.Prices;
 import it.unipv.utils.ApplicationException;
@@ -14,17 +15,25 @@ import java.sql.SQLException;
  * Si occupa di recuperare/aggiornare i dati riguardanti i prezzi del cinema.
  */
 public class PricesDaoImpl implements PricesDao {
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
+    private CatalogCache catalogCache;
+    private ChangeTracker changeTracker;
 
-    public PricesDaoImpl(DBConnection dbConnection) {
-        this.dbConnection = dbConnection;
+    public PricesDaoImpl(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.catalogCache = CatalogCache.of(connectionProvider);
+        this.changeTracker = ChangeTracker.of(connectionProvider);
     }
 
     /**
-     * Recupera le informazioni riguardanti i prezzi del cinema.
+     * Recupera le informazioni riguardanti i prezzi del cinema, dalla CatalogCache se ancora valida.
      * @return -> l'oggetto Prices correttamente inizializzato con i prezzi del cinema.
      */
-    @Override public Prices retrievePrices() { return doRetrievePrices(); }
+    @Override
+    public Prices retrievePrices() {
+        Prices snapshot = catalogCache.get(CatalogCache.Catalog.PRICES, this::doRetrievePrices);
+        return snapshot == null ? null : new Prices(snapshot.getBase(), snapshot.getVip(), snapshot.getThreed(), snapshot.getReduced());
+    }
 
     /**
      * Aggiorna le informazioni riguardanti i prezzi del cinema.
@@ -32,13 +41,19 @@ public class PricesDaoImpl implements PricesDao {
      */
     @Override
     public void updatePrices(Prices p) {
-        doTruncate();
-        doInsert(p);
+        try {
+            doTruncate();
+            doInsert(p);
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.PRICES);
+        }
     }
 
     private Prices doRetrievePrices() {
-        try {
-            return retrievePricesFromResultSet(dbConnection.getResultFromQuery("select * from " + DataReferences.DBNAME + ".PRICES"));
+        String query = "select * from " + DataReferences.DBNAME + ".PRICES";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            return retrievePricesFromResultSet(ps.executeQuery());
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
@@ -61,7 +76,8 @@ public class PricesDaoImpl implements PricesDao {
 
     private void doInsert(Prices p){
         String query = "INSERT INTO " + DataReferences.DBNAME + ".PRICES(BASE, VIP, THREED, REDUCED) values (?,?,?,?)";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setDouble(1, p.getBase());
             ps.setDouble(2, p.getVip());
             ps.setDouble(3, p.getThreed());
@@ -73,8 +89,9 @@ public class PricesDaoImpl implements PricesDao {
     }
 
     private void doTruncate() {
-        String query = "TRUNCATE "+ DataReferences.DBNAME + ".PRICES";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        String query = "TRUNCATE TABLE "+ DataReferences.DBNAME + ".PRICES";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.execute();
         } catch (SQLException e) {
             throw new ApplicationException(e);
@@ -0,0 +1,52 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Istanze condivise per ogni ConnectionProvider (cache, repliche, tracker delle modifiche).
+ * Le istanze mantengono un riferimento al proprio fornitore, quindi non possono essere chiavi deboli di una WeakHashMap:
+ *     vengono invece eliminate esplicitamente alla chiusura del fornitore, tramite ConnectionProvider.addCloseListener.
+ */
+class ProviderRegistry<V> {
+    private final Map<ConnectionProvider, V> instances = new HashMap<>();
+    private final Consumer<V> onClose;
+
+    ProviderRegistry() { this(v -> {}); }
+
+    /** @param onClose -> l'azione eseguita sull'istanza quando il suo fornitore viene chiuso. */
+    ProviderRegistry(Consumer<V> onClose) { this.onClose = onClose; }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni;
+     * @param factory -> crea l'istanza se il fornitore non ne ha ancora una.
+     * @return -> l'istanza associata al fornitore.
+     */
+    V get(ConnectionProvider connectionProvider, Function<ConnectionProvider, V> factory) {
+        V res;
+        synchronized(instances) {
+            res = instances.get(connectionProvider);
+            if(res != null) {
+                return res;
+            }
+            res = factory.apply(connectionProvider);
+            instances.put(connectionProvider, res);
+        }
+        connectionProvider.addCloseListener(() -> remove(connectionProvider));
+        return res;
+    }
+
+    private void remove(ConnectionProvider connectionProvider) {
+        V removed;
+        synchronized(instances) {
+            removed = instances.remove(connectionProvider);
+        }
+        if(removed != null) {
+            onClose.accept(removed);
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package it.unipv.dao;
 
+import it.unipv.model.ChangeSet;
 import it.unipv.model.Schedule;
 
 import java.util.List;
 
 public interface ScheduleDao {
     List<Schedule> retrieveMovieSchedules();
-    void insertNewMovieSchedule(Schedule toInsert);
+    List<Schedule> retrieveSchedulesByMovie(String movieCode);
+    List<Schedule> retrieveSchedulesByMovieAndDate(String movieCode, String date);
+    List<Schedule> retrieveSchedulesByHall(String hallName);
+    List<Schedule> retrieveSchedulesBetween(String fromDate, String toDate);
+    ChangeSet<Schedule> retrieveChangesSince(long watermark);
+    long insertNewMovieSchedule(Schedule toInsert);
     void deleteMovieSchedule(Schedule toDelete);
 }
@@ -1,6 +1,8 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
+import it.unipv.model.ChangeSet;
 import it.unipv.model.Schedule;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.DataReferences;
@@ -9,89 +11,249 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Questa classe fa riferimento alla tabella SCHEDULE
  * Si occupa di inserire/recuperare/eliminare i dati riguardanti le programmazioni dei film.
+ * Le ricerche filtrate vengono eseguite dal database, che restituisce le programmazioni già ordinate per data e ora;
+ *     se però la lista completa è già presente e valida nella CatalogCache, vengono filtrate in memoria senza interrogare il database.
+ * Inserimenti ed eliminazioni vengono registrati nel log delle modifiche (ChangeLog): la lista completa viene ricostruita
+ *     a partire da una copia in memoria (getReplica), scaricando dal database solamente le programmazioni modificate.
  */
 public class ScheduleDaoImpl implements ScheduleDao {
-    private DBConnection dbConnection;
+    //DATA è salvata come dd/MM/yyyy: per ordinarla cronologicamente e cercarla per intervallo si usa la copia DATA_ORDINABILE (yyyyMMdd), indicizzata
+    private static final String ORDERBYDATEANDTIME = " ORDER BY DATA_ORDINABILE, ORA";
 
-    public ScheduleDaoImpl(DBConnection dbConnection) { this.dbConnection = dbConnection; }
+    private static final Comparator<Schedule> BYDATEANDTIME = Comparator.comparing((Schedule s) -> toSortableDateLenient(s.getDate()))
+                                                                        .thenComparing(Schedule::getTime, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private static final ProviderRegistry<SyncedReplica<Schedule>> REPLICAS = new ProviderRegistry<>();
+
+    private ConnectionProvider connectionProvider;
+    private CatalogCache catalogCache;
+    private ChangeTracker changeTracker;
+
+    public ScheduleDaoImpl(ConnectionProvider connectionProvider) {
+        this.connectionProvider = connectionProvider;
+        this.catalogCache = CatalogCache.of(connectionProvider);
+        this.changeTracker = ChangeTracker.of(connectionProvider);
+    }
 
     /**
-     * Recupera le informazioni delle programmazioni dal database.
+     * Recupera le informazioni delle programmazioni dal database, o dalla CatalogCache se ancora valida.
      * @return -> lista completa delle programmazioni.
      */
     @Override public List<Schedule> retrieveMovieSchedules() {
-        return doRetrieveMovieSchedules();
+        return copyOf(catalogCache.get(CatalogCache.Catalog.SCHEDULES, this::doRetrieveMovieSchedules), s -> true);
+    }
+
+    /**
+     * Recupera le programmazioni di un film, ordinate per data e ora.
+     * @param movieCode -> il codice del film.
+     * @return -> lista delle programmazioni del film.
+     */
+    @Override public List<Schedule> retrieveSchedulesByMovie(String movieCode) {
+        List<Schedule> cached = getCachedSchedules(s -> movieCode.equals(s.getMovieCode()));
+        if(cached != null) { return cached; }
+        return doRetrieveFilteredSchedules("CODICE_FILM = ?", movieCode);
+    }
+
+    /**
+     * Recupera le programmazioni di un film in un determinato giorno, ordinate per ora.
+     * @param movieCode -> il codice del film;
+     * @param date -> il giorno, nel formato dd/MM/yyyy.
+     * @return -> lista delle programmazioni del film in quel giorno.
+     */
+    @Override public List<Schedule> retrieveSchedulesByMovieAndDate(String movieCode, String date) {
+        List<Schedule> cached = getCachedSchedules(s -> movieCode.equals(s.getMovieCode()) && date.equals(s.getDate()));
+        if(cached != null) { return cached; }
+        return doRetrieveFilteredSchedules("CODICE_FILM = ? AND DATA = ?", movieCode, date);
+    }
+
+    /**
+     * Recupera le programmazioni di una sala, ordinate per data e ora.
+     * @param hallName -> il nome della sala.
+     * @return -> lista delle programmazioni della sala.
+     */
+    @Override public List<Schedule> retrieveSchedulesByHall(String hallName) {
+        List<Schedule> cached = getCachedSchedules(s -> hallName.equals(s.getHallName()));
+        if(cached != null) { return cached; }
+        return doRetrieveFilteredSchedules("SALA = ?", hallName);
+    }
+
+    /**
+     * Recupera le programmazioni comprese tra due giorni (estremi inclusi), ordinate per data e ora.
+     * @param fromDate -> il primo giorno, nel formato dd/MM/yyyy;
+     * @param toDate -> l'ultimo giorno, nel formato dd/MM/yyyy.
+     * @return -> lista delle programmazioni comprese nell'intervallo.
+     */
+    @Override public List<Schedule> retrieveSchedulesBetween(String fromDate, String toDate) {
+        String from = toSortableDate(fromDate);
+        String to = toSortableDate(toDate);
+        List<Schedule> cached = getCachedSchedules(s -> {
+            String date = toSortableDateLenient(s.getDate());
+            return date.compareTo(from) >= 0 && date.compareTo(to) <= 0;
+        });
+        if(cached != null) { return cached; }
+        return doRetrieveFilteredSchedules("DATA_ORDINABILE BETWEEN ? AND ?", from, to);
+    }
+
+    /**
+     * Recupera le sole programmazioni inserite o eliminate dopo il watermark, tramite il log delle modifiche.
+     * @param watermark -> il watermark restituito dalla richiesta precedente, 0 per ricevere tutte le programmazioni.
+     * @return -> le modifiche successive al watermark, insieme al nuovo watermark.
+     */
+    @Override public ChangeSet<Schedule> retrieveChangesSince(long watermark) {
+        return ChangeLog.retrieveChangesSince(connectionProvider, ChangeTracker.Table.SCHEDULE, watermark, this::getMovieSchedule);
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni al database.
+     * @return -> la copia in memoria delle programmazioni, condivisa da tutti i DAO che utilizzano quel fornitore di connessioni.
+     */
+    public static SyncedReplica<Schedule> getReplica(ConnectionProvider connectionProvider) {
+        return REPLICAS.get(connectionProvider, cp -> new SyncedReplica<>(new ScheduleDaoImpl(cp)::retrieveChangesSince, Schedule::getId));
     }
 
     /**
      * Permette di inserire una nuova programmazione nel database.
-     * @param toInsert -> la nuova programmazione da inserire.
+     * @param toInsert -> la nuova programmazione da inserire, a cui viene assegnato l'ID generato dal database.
+     * @return -> l'ID generato per la nuova programmazione.
      */
-    @Override public void insertNewMovieSchedule(Schedule toInsert) {
-        doInsertNewMovieSchedule(toInsert);
+    @Override public long insertNewMovieSchedule(Schedule toInsert) {
+        try {
+            return ChangeLog.writeAndLog(connectionProvider, ChangeTracker.Table.SCHEDULE, dbConnection -> doInsertNewMovieSchedule(dbConnection, toInsert));
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.SCHEDULE);
+        }
     }
 
     /**
-     * Permette di eliminare una programmazione dal database.
+     * Permette di eliminare una programmazione dal database, identificandola tramite il suo ID.
      * @param toDelete -> la programmazione da eliminare.
      */
     @Override public void deleteMovieSchedule(Schedule toDelete) {
-        doDeleteMovieSchedule(toDelete);
+        try {
+            ChangeLog.writeAndLog(connectionProvider, ChangeTracker.Table.SCHEDULE, dbConnection -> doDeleteMovieSchedule(dbConnection, toDelete));
+        } finally {
+            changeTracker.tableChanged(ChangeTracker.Table.SCHEDULE);
+        }
     }
 
-    private void doDeleteMovieSchedule(Schedule toDelete) {
-        String query = "DELETE FROM "+ DataReferences.DBNAME + ".SCHEDULE where CODICE_FILM = ? AND DATA = ? AND ORA = ? AND SALA = ?";
+    //Filtra la lista completa in cache con lo stesso ordinamento della query; null se la lista non è in cache
+    @SuppressWarnings("unchecked")
+    private List<Schedule> getCachedSchedules(Predicate<Schedule> condition) {
+        List<Schedule> snapshot = (List<Schedule>) catalogCache.getIfFresh(CatalogCache.Catalog.SCHEDULES);
+        if(snapshot == null) { return null; }
+        List<Schedule> res = copyOf(snapshot, condition);
+        res.sort(BYDATEANDTIME);
+        return res;
+    }
+
+    //Lo snapshot in cache è condiviso: al chiamante vanno delle copie che può modificare
+    private static List<Schedule> copyOf(List<Schedule> snapshot, Predicate<Schedule> condition) {
+        List<Schedule> res = new ArrayList<>();
+        for(Schedule s : snapshot) {
+            if(condition.test(s)) {
+                Schedule copy = new Schedule();
+                copy.setId(s.getId());
+                copy.setMovieCode(s.getMovieCode());
+                copy.setDate(s.getDate());
+                copy.setTime(s.getTime());
+                copy.setHallName(s.getHallName());
+                res.add(copy);
+            }
+        }
+        return res;
+    }
+
+    private long doDeleteMovieSchedule(DBConnection dbConnection, Schedule toDelete) throws SQLException {
+        String query = "DELETE FROM "+ DataReferences.DBNAME + ".SCHEDULE where ID = ?";
         try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
-            ps.setString(1, toDelete.getMovieCode());
-            ps.setString(2, toDelete.getDate());
-            ps.setString(3, toDelete.getTime());
-            ps.setString(4, toDelete.getHallName());
+            ps.setLong(1, toDelete.getId());
             ps.execute();
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
+            return toDelete.getId();
         }
     }
 
-    private void doInsertNewMovieSchedule(Schedule toInsert) {
-        String query = "INSERT INTO " + DataReferences.DBNAME + ".SCHEDULE (CODICE_FILM, DATA, ORA, SALA) values (?,?,?,?)";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+    private long doInsertNewMovieSchedule(DBConnection dbConnection, Schedule toInsert) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".SCHEDULE (CODICE_FILM, DATA, ORA, SALA, DATA_ORDINABILE) values (?,?,?,?,?)";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementReturningKeys(query)) {
             ps.setString(1, toInsert.getMovieCode());
             ps.setString(2, toInsert.getDate());
             ps.setString(3, toInsert.getTime());
             ps.setString(4, toInsert.getHallName());
+            ps.setString(5, toSortableDateLenient(toInsert.getDate()));
             ps.execute();
-        } catch (SQLException e) {
-            throw new ApplicationException(e);
+            toInsert.setId(getGeneratedKey(ps));
+            return toInsert.getId();
         }
     }
 
     private List<Schedule> doRetrieveMovieSchedules() {
-        try {
-            return getMovieSchedulesFromResultSet(dbConnection.getResultFromQuery("SELECT * FROM " + DataReferences.DBNAME + ".SCHEDULE"));
+        SyncedReplica<Schedule> replica = getReplica(connectionProvider);
+        replica.refresh();
+        return Collections.unmodifiableList(replica.retrieve(s -> true));
+    }
+
+    private List<Schedule> doRetrieveFilteredSchedules(String condition, String... parameters) {
+        String query = "SELECT * FROM " + DataReferences.DBNAME + ".SCHEDULE WHERE " + condition + ORDERBYDATEANDTIME;
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(int i=0; i<parameters.length; i++) {
+                ps.setString(i+1, parameters[i]);
+            }
+            return getMovieSchedulesFromResultSet(ps.executeQuery());
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
     }
 
+    private String toSortableDate(String date) {
+        if(date == null || date.length() != 10) {
+            throw new ApplicationException("Data " + date + " non valida: il formato richiesto è dd/MM/yyyy");
+        }
+        return date.substring(6, 10) + date.substring(3, 5) + date.substring(0, 2);
+    }
+
+    //Come DATA_ORDINABILE sul database: non fallisce sulle date salvate in un formato diverso
+    private static String toSortableDateLenient(String date) {
+        if(date == null || date.length() != 10) { return date == null ? "" : date; }
+        return date.substring(6, 10) + date.substring(3, 5) + date.substring(0, 2);
+    }
+
+    private long getGeneratedKey(PreparedStatement ps) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if(!keys.next()) {
+                throw new ApplicationException("Il database non ha restituito l'ID della nuova programmazione");
+            }
+            return keys.getLong(1);
+        }
+    }
+
     private List<Schedule> getMovieSchedulesFromResultSet(ResultSet resultSet) throws SQLException {
         try {
             List<Schedule> res = new ArrayList<>();
             while(resultSet.next()) {
-                Schedule toAdd = new Schedule();
-                toAdd.setMovieCode(resultSet.getString("CODICE_FILM"));
-                toAdd.setDate(resultSet.getString("DATA"));
-                toAdd.setTime(resultSet.getString("ORA"));
-                toAdd.setHallName(resultSet.getString("SALA"));
-                res.add(toAdd);
+                res.add(getMovieSchedule(resultSet));
             }
             return res;
         } finally {
             resultSet.close();
         }
     }
+
+    private Schedule getMovieSchedule(ResultSet resultSet) throws SQLException {
+        Schedule res = new Schedule();
+        res.setId(resultSet.getLong("ID"));
+        res.setMovieCode(resultSet.getString("CODICE_FILM"));
+        res.setDate(resultSet.getString("DATA"));
+        res.setTime(resultSet.getString("ORA"));
+        res.setHallName(resultSet.getString("SALA"));
+        return res;
+    }
 }
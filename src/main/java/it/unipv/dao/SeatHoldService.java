@@ -0,0 +1,241 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.db.DBConnection;
+import it.unipv.model.ScreeningKey;
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posti tenuti da questa postazione mentre l'utente li sceglie nel selettore (tabella SEAT_HOLD):
+ *     le altre postazioni che mostrano la stessa proiezione li vedono come non disponibili finché il tenuto non scade.
+ * Ogni posto tenuto scade dopo ttlSeconds secondi; un unico task periodico (heartbeat) li prolunga tutti con una sola
+ *     UPDATE finché il servizio non viene chiuso, o finché passano più di idleSeconds secondi senza che vengano tenuti
+ *     o liberati dei posti: così anche un selettore o un form abbandonati aperti liberano i posti, alla scadenza.
+ *     Se la postazione si blocca i posti tornano liberi allo stesso modo: le letture ignorano le righe scadute
+ *     e la pulizia usa l'indice su SCADENZA, quindi nessuna delle due scorre tutti i posti tenuti.
+ * La prenotazione vera e propria resta protetta da SEAT_RESERVATION: il tenuto serve solo a non far scegliere
+ *     a due utenti gli stessi posti.
+ */
+public class SeatHoldService {
+    private static final String SCREENINGCONDITION = "CODICEFILM = ? AND GIORNOFILM = ? AND ORAFILM = ? AND SALAFILM = ?";
+    private static final String EXPIRATION = "TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP)";
+    private static final Logger LOGGER = LoggerFactory.getLogger(SeatHoldService.class);
+
+    private final ConnectionProvider connectionProvider;
+    private final int ttlSeconds;
+    private final int idleSeconds;
+    private final String sessionId = UUID.randomUUID().toString();
+    private ScheduledExecutorService heartbeat;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni al database; i posti scadono dopo DataReferences.SEATHOLDTTL secondi,
+     *                           e non vengono più prolungati dopo DataReferences.SEATHOLDIDLETIMEOUT secondi di inattività.
+     */
+    public SeatHoldService(ConnectionProvider connectionProvider) { this(connectionProvider, DataReferences.SEATHOLDTTL, DataReferences.SEATHOLDIDLETIMEOUT); }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni al database;
+     * @param ttlSeconds -> dopo quanti secondi senza heartbeat un posto tenuto torna libero;
+     * @param idleSeconds -> dopo quanti secondi senza posti tenuti o liberati l'heartbeat si ferma.
+     */
+    public SeatHoldService(ConnectionProvider connectionProvider, int ttlSeconds, int idleSeconds) {
+        this.connectionProvider = connectionProvider;
+        this.ttlSeconds = ttlSeconds;
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * Tiene dei posti di una proiezione per questa postazione e avvia l'heartbeat, se non è già avviato.
+     * @param screening -> la proiezione;
+     * @param seatNames -> i nomi dei posti.
+     * @return -> i posti che non è stato possibile tenere, perché già tenuti da un'altra postazione.
+     */
+    public List<String> hold(ScreeningKey screening, Collection<String> seatNames) {
+        lastActivity = System.currentTimeMillis();
+        List<String> res = new ArrayList<>();
+        try (DBConnection dbConnection = connectionProvider.borrowConnection()) {
+            doDeleteExpired(dbConnection);
+            for(String seatName : seatNames) {
+                if(!doInsertHold(dbConnection, screening, seatName) && !doRenewHold(dbConnection, screening, seatName)) {
+                    res.add(seatName);
+                }
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+        startHeartbeat();
+        return res;
+    }
+
+    /**
+     * Libera dei posti tenuti da questa postazione.
+     * @param screening -> la proiezione;
+     * @param seatNames -> i nomi dei posti.
+     */
+    public void release(ScreeningKey screening, Collection<String> seatNames) {
+        lastActivity = System.currentTimeMillis();
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".SEAT_HOLD WHERE " + SCREENINGCONDITION + " AND NOME_POSTO = ? AND ID_SESSIONE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            for(String seatName : seatNames) {
+                setScreening(ps, screening);
+                ps.setString(5, seatName);
+                ps.setString(6, sessionId);
+                ps.execute();
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /** Libera tutti i posti tenuti da questa postazione. */
+    public void releaseAll() {
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".SEAT_HOLD WHERE ID_SESSIONE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setString(1, sessionId);
+            ps.execute();
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /**
+     * @param screening -> la proiezione.
+     * @return -> i nomi dei posti della proiezione tenuti, e non ancora scaduti, dalle altre postazioni.
+     */
+    public Set<String> retrieveHeldByOthers(ScreeningKey screening) {
+        String query = "SELECT NOME_POSTO FROM " + DataReferences.DBNAME + ".SEAT_HOLD WHERE " + SCREENINGCONDITION
+                     + " AND ID_SESSIONE <> ? AND SCADENZA >= CURRENT_TIMESTAMP";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            setScreening(ps, screening);
+            ps.setString(5, sessionId);
+            try (ResultSet resultSet = ps.executeQuery()) {
+                Set<String> res = new HashSet<>();
+                while(resultSet.next()) {
+                    res.add(resultSet.getString("NOME_POSTO"));
+                }
+                return res;
+            }
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /** Prolunga la scadenza di tutti i posti tenuti da questa postazione; viene richiamato periodicamente dall'heartbeat. */
+    public void renew() {
+        String query = "UPDATE " + DataReferences.DBNAME + ".SEAT_HOLD SET SCADENZA = " + EXPIRATION + " WHERE ID_SESSIONE = ?";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setInt(1, ttlSeconds);
+            ps.setString(2, sessionId);
+            ps.execute();
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+    }
+
+    /** Ferma l'heartbeat e libera tutti i posti: viene richiamato alla chiusura del form di prenotazione. */
+    public void close() {
+        stopHeartbeat();
+        releaseAll();
+    }
+
+    /* Il prolungamento avviene tre volte per durata, così un heartbeat perso non fa scadere i posti.
+     * Un errore non deve fermare il task: viene registrato e si riprova al prossimo giro.
+     */
+    private synchronized void startHeartbeat() {
+        if(heartbeat != null) { return; }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "seat-hold-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, ttlSeconds * 1000L / 3);
+        heartbeat.scheduleWithFixedDelay(() -> {
+            if(System.currentTimeMillis() - lastActivity > idleSeconds * 1000L) {
+                stopHeartbeat();
+                return;
+            }
+            try {
+                renew();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Prolungamento dei posti tenuti non riuscito, nuovo tentativo tra {} ms", interval, e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    //I posti restano tenuti fino alla scadenza; il prossimo hold riavvia l'heartbeat
+    private synchronized void stopHeartbeat() {
+        if(heartbeat != null) {
+            heartbeat.shutdown();
+            heartbeat = null;
+        }
+    }
+
+    private void doDeleteExpired(DBConnection dbConnection) throws SQLException {
+        String query = "DELETE FROM " + DataReferences.DBNAME + ".SEAT_HOLD WHERE SCADENZA < CURRENT_TIMESTAMP";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.execute();
+        }
+    }
+
+    private boolean doInsertHold(DBConnection dbConnection, ScreeningKey screening, String seatName) throws SQLException {
+        String query = "INSERT INTO " + DataReferences.DBNAME + ".SEAT_HOLD (CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, NOME_POSTO, ID_SESSIONE, SCADENZA) "
+                     + "values (?,?,?,?,?,?," + EXPIRATION + ")";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            setScreening(ps, screening);
+            ps.setString(5, seatName);
+            ps.setString(6, sessionId);
+            ps.setInt(7, ttlSeconds);
+            ps.execute();
+            return true;
+        } catch (SQLException e) {
+            if(PrenotationDaoImpl.isUniqueViolation(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    //Il posto è già tenuto: va bene solo se è tenuto da questa postazione
+    private boolean doRenewHold(DBConnection dbConnection, ScreeningKey screening, String seatName) throws SQLException {
+        String query = "UPDATE " + DataReferences.DBNAME + ".SEAT_HOLD SET SCADENZA = " + EXPIRATION
+                     + " WHERE " + SCREENINGCONDITION + " AND NOME_POSTO = ? AND ID_SESSIONE = ?";
+        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.setInt(1, ttlSeconds);
+            ps.setString(2, screening.getMovieCode());
+            ps.setString(3, screening.getDate());
+            ps.setString(4, screening.getTime());
+            ps.setString(5, screening.getHallName());
+            ps.setString(6, seatName);
+            ps.setString(7, sessionId);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private void setScreening(PreparedStatement ps, ScreeningKey screening) throws SQLException {
+        ps.setString(1, screening.getMovieCode());
+        ps.setString(2, screening.getDate());
+        ps.setString(3, screening.getTime());
+        ps.setString(4, screening.getHallName());
+    }
+}
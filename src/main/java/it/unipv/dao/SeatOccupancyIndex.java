@@ -0,0 +1,154 @@
+package it.unipv.dao;
+
+import it.unipv.db.ConnectionProvider;
+import it.unipv.model.ChangeSet;
+import it.unipv.model.HallLayout;
+import it.unipv.model.Prenotation;
+import it.unipv.model.ScreeningAvailability;
+import it.unipv.model.ScreeningKey;
+import it.unipv.model.SeatTYPE;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice dei posti occupati di ogni proiezione: per ogni ScreeningKey un BitSet sugli indici dei posti della piantina (HallLayout).
+ * L'indice è costruito in modo incrementale dalla copia in memoria delle prenotazioni (SyncedReplica), di cui è listener:
+ *     una nuova prenotazione accende i bit dei suoi posti, una prenotazione eliminata fa ricalcolare solo la sua proiezione.
+ * I posti di ogni prenotazione (POSTISELEZIONATI, separati da "-") vengono separati una sola volta, all'arrivo della prenotazione;
+ *     il BitSet di una proiezione viene calcolato alla prima richiesta e ricalcolato solo se la piantina della sala cambia versione.
+ * Insieme al BitSet vengono aggiornati i contatori dei posti occupati per tipo, da cui getAvailability ricava
+ *     la disponibilità della proiezione senza scorrere i posti.
+ */
+public class SeatOccupancyIndex {
+    private static final ProviderRegistry<SeatOccupancyIndex> INSTANCES = new ProviderRegistry<>();
+
+    private final SyncedReplica<Prenotation> prenotations;
+    private final Map<Long, Booking> bookings = new HashMap<>();
+    private final Map<ScreeningKey, Set<Long>> bookingsByScreening = new HashMap<>();
+    private final Map<ScreeningKey, Occupancy> occupancies = new HashMap<>();
+
+    /** @param prenotations -> la copia in memoria delle prenotazioni da cui costruire l'indice. */
+    public SeatOccupancyIndex(SyncedReplica<Prenotation> prenotations) {
+        this.prenotations = prenotations;
+        prenotations.addListener(this::apply);
+    }
+
+    /**
+     * @param connectionProvider -> il fornitore di connessioni al database.
+     * @return -> l'indice costruito sulla copia in memoria delle prenotazioni di quel fornitore di connessioni.
+     */
+    public static SeatOccupancyIndex of(ConnectionProvider connectionProvider) {
+        return INSTANCES.get(connectionProvider, cp -> new SeatOccupancyIndex(PrenotationDaoImpl.getReplica(cp)));
+    }
+
+    /** Scarica le prenotazioni inserite o eliminate dall'ultimo aggiornamento e le applica all'indice. */
+    public void refresh() { prenotations.refresh(); }
+
+    /**
+     * @param screening -> la proiezione;
+     * @param layout -> la piantina attuale della sala della proiezione.
+     * @return -> una copia del BitSet dei posti occupati: il bit i è acceso se il posto layout.getName(i) è già prenotato.
+     */
+    public synchronized BitSet getOccupiedSeats(ScreeningKey screening, HallLayout layout) {
+        return (BitSet) getOccupancy(screening, layout).seats.clone();
+    }
+
+    /**
+     * @param screening -> la proiezione;
+     * @param layout -> la piantina attuale della sala della proiezione;
+     * @param seatIndex -> l'indice del posto nella piantina.
+     * @return -> true se il posto è già prenotato.
+     */
+    public synchronized boolean isOccupied(ScreeningKey screening, HallLayout layout, int seatIndex) {
+        return getOccupancy(screening, layout).seats.get(seatIndex);
+    }
+
+    /**
+     * @param screening -> la proiezione;
+     * @param layout -> la piantina attuale della sala della proiezione.
+     * @return -> i posti totali e quelli ancora liberi della proiezione.
+     */
+    public synchronized ScreeningAvailability getAvailability(ScreeningKey screening, HallLayout layout) {
+        Occupancy occupancy = getOccupancy(screening, layout);
+        int vip = layout.getCount(SeatTYPE.VIP);
+        int accessible = layout.getCount(SeatTYPE.DISABILE);
+        return new ScreeningAvailability( layout.size()
+                                        , layout.size() - occupancy.seats.cardinality()
+                                        , vip - occupancy.occupiedByType[SeatTYPE.VIP.ordinal()]
+                                        , accessible - occupancy.occupiedByType[SeatTYPE.DISABILE.ordinal()]);
+    }
+
+    //Eseguito dalla replica, sotto il suo lock, a ogni modifica applicata
+    private synchronized void apply(ChangeSet<Prenotation> changes) {
+        if(changes.isFull()) {
+            bookings.clear();
+            bookingsByScreening.clear();
+            occupancies.clear();
+        }
+        for(Long id : changes.getDeletedIds()) {
+            Booking removed = bookings.remove(id);
+            if(removed != null) {
+                bookingsByScreening.get(removed.screening).remove(id);
+                occupancies.remove(removed.screening);
+            }
+        }
+        for(Prenotation p : changes.getUpserted()) {
+            Booking booking = new Booking(ScreeningKey.of(p), p.getSeatNames());
+            if(bookings.put(p.getId(), booking) != null) { continue; }
+            bookingsByScreening.computeIfAbsent(booking.screening, k -> new HashSet<>()).add(p.getId());
+            Occupancy occupancy = occupancies.get(booking.screening);
+            if(occupancy != null) {
+                occupancy.add(booking);
+            }
+        }
+    }
+
+    private Occupancy getOccupancy(ScreeningKey screening, HallLayout layout) {
+        Occupancy res = occupancies.get(screening);
+        if(res == null || res.layout.getVersion() != layout.getVersion() || !res.layout.getHallName().equals(layout.getHallName())) {
+            res = new Occupancy(layout);
+            for(Long id : bookingsByScreening.getOrDefault(screening, new HashSet<>())) {
+                res.add(bookings.get(id));
+            }
+            occupancies.put(screening, res);
+        }
+        return res;
+    }
+
+    private static class Booking {
+        private final ScreeningKey screening;
+        private final List<String> seatNames;
+
+        private Booking(ScreeningKey screening, List<String> seatNames) {
+            this.screening = screening;
+            this.seatNames = seatNames;
+        }
+    }
+
+    private static class Occupancy {
+        private final HallLayout layout;
+        private final BitSet seats;
+        private final int[] occupiedByType = new int[SeatTYPE.values().length];
+
+        private Occupancy(HallLayout layout) {
+            this.layout = layout;
+            this.seats = new BitSet(layout.size());
+        }
+
+        //I posti che non esistono più nella piantina (sala modificata dopo la prenotazione) vengono ignorati
+        private void add(Booking booking) {
+            for(String name : booking.seatNames) {
+                int index = layout.indexOf(name);
+                if(index >= 0 && !seats.get(index)) {
+                    seats.set(index);
+                    occupiedByType[layout.getType(index).ordinal()]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package it.unipv.dao;
+
+import it.unipv.model.ChangeSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Copia in memoria di una tabella, mantenuta aggiornata tramite la sincronizzazione incrementale (retrieveChangesSince dei DAO):
+ *     il primo refresh scarica l'intera tabella, i successivi solamente le righe inserite o eliminate nel frattempo.
+ * Gli oggetti restituiti sono condivisi con la replica e non vanno modificati.
+ * Le strutture derivate dalla tabella (ad esempio SeatOccupancyIndex) si registrano come listener
+ *     e ricevono ogni modifica applicata, indipendentemente da chi ha richiesto il refresh.
+ * @param <T> -> tipo delle righe
+ */
+public class SyncedReplica<T> {
+    private final LongFunction<ChangeSet<T>> source;
+    private final ToLongFunction<T> idOf;
+    private final Map<Long, T> rows = new LinkedHashMap<>();
+    private final List<Consumer<ChangeSet<T>>> listeners = new ArrayList<>();
+    private long watermark = 0;
+
+    /**
+     * @param source -> la sincronizzazione del DAO, che riceve il watermark e restituisce le modifiche successive;
+     * @param idOf -> l'ID di una riga.
+     */
+    public SyncedReplica(LongFunction<ChangeSet<T>> source, ToLongFunction<T> idOf) {
+        this.source = source;
+        this.idOf = idOf;
+    }
+
+    /**
+     * Applica alla replica le modifiche avvenute dall'ultimo refresh.
+     * @return -> le modifiche applicate.
+     */
+    public synchronized ChangeSet<T> refresh() {
+        ChangeSet<T> changes = source.apply(watermark);
+        if(changes.isFull()) {
+            rows.clear();
+        }
+        for(Long id : changes.getDeletedIds()) {
+            rows.remove(id);
+        }
+        for(T row : changes.getUpserted()) {
+            rows.put(idOf.applyAsLong(row), row);
+        }
+        watermark = changes.getWatermark();
+        for(Consumer<ChangeSet<T>> l : listeners) {
+            l.accept(changes);
+        }
+        return changes;
+    }
+
+    /**
+     * Registra un'azione da eseguire, sotto il lock della replica, a ogni modifica applicata.
+     *     L'azione riceve subito il contenuto attuale della replica come modifica completa (isFull).
+     * @param listener -> l'azione, che riceve le modifiche applicate.
+     */
+    public synchronized void addListener(Consumer<ChangeSet<T>> listener) {
+        listeners.add(listener);
+        listener.accept(new ChangeSet<>(new ArrayList<>(rows.values()), new ArrayList<>(), watermark, true));
+    }
+
+    /**
+     * @param condition -> le righe da restituire.
+     * @return -> le righe della replica che soddisfano la condizione, senza interrogare il database.
+     */
+    public synchronized List<T> retrieve(Predicate<T> condition) {
+        List<T> res = new ArrayList<>();
+        for(T row : rows.values()) {
+            if(condition.test(row)) {
+                res.add(row);
+            }
+        }
+        return res;
+    }
+
+    public synchronized int size() { return rows.size(); }
+
+    public synchronized long getWatermark() { return watermark; }
+}
@@ -1,5 +1,6 @@
 package it.unipv.dao;
 
+import it.unipv.db.ConnectionProvider;
 import it.unipv.db.DBConnection;
 import it.unipv.model.User;
 import it.unipv.utils.ApplicationException;
@@ -16,9 +17,9 @@ import java.util.List;
  * Si occupa di inserire/recuperare/aggiornare/eliminare i dati riguardanti gli utenti.
  */
 public class UserDaoImpl implements UserDao {
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
 
-    public UserDaoImpl(DBConnection dbConnection) { this.dbConnection = dbConnection; }
+    public UserDaoImpl(ConnectionProvider connectionProvider) { this.connectionProvider = connectionProvider; }
 
     /**
      * Recupera la lista degli utenti dal database.
@@ -46,7 +47,8 @@ public class UserDaoImpl implements UserDao {
 
     private void doUpdateUser(User toUpdate) {
         String query = "UPDATE " + DataReferences.DBNAME + ".USER SET PASSWORD = ? WHERE CODICE = ?";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setString(1, toUpdate.getPassword());
             ps.setString(2, toUpdate.getCodice());
             ps.execute();
@@ -57,7 +59,8 @@ public class UserDaoImpl implements UserDao {
 
     private void doDeleteUser(User toDelete) {
         String query = "DELETE FROM " + DataReferences.DBNAME + ".USER where CODICE = ?";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setString(1, toDelete.getCodice());
             ps.execute();
         } catch (SQLException e) {
@@ -67,7 +70,8 @@ public class UserDaoImpl implements UserDao {
 
     private void doInsertNewUser(User toInsert) {
         String query = "INSERT INTO " + DataReferences.DBNAME + ".USER (CODICE, NOME, PASSWORD, EMAIL) values (?,?,?,?)";
-        try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
             ps.setString(1, toInsert.getCodice());
             ps.setString(2, toInsert.getNome());
             ps.setString(3, toInsert.getPassword());
@@ -79,8 +83,10 @@ public class UserDaoImpl implements UserDao {
     }
 
     private List<User> doRetrieveUserList() {
-        try {
-            return getUsersFromResultSet(dbConnection.getResultFromQuery("SELECT * FROM " + DataReferences.DBNAME + ".USER"));
+        String query = "SELECT * FROM " + DataReferences.DBNAME + ".USER";
+        try (DBConnection dbConnection = connectionProvider.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            return getUsersFromResultSet(ps.executeQuery());
         } catch (SQLException e) {
             throw new ApplicationException(e);
         }
@@ -1,7 +1,15 @@
 package it.unipv.main;
 
 import it.unipv.controller.common.IHomeInitializer;
-import it.unipv.db.DBConnection;
+import it.unipv.dao.ChangeTracker;
+import it.unipv.dao.DaoExecutor;
+import it.unipv.db.ConnectionPool;
+import it.unipv.db.ConnectionProvider;
+import it.unipv.db.DBBackend;
+import it.unipv.db.EmbeddedDBBackend;
+import it.unipv.db.RemoteDBBackend;
+import it.unipv.db.SchemaMigrator;
+import it.unipv.utils.DataReferences;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
@@ -13,14 +21,18 @@ import javafx.stage.Stage;
 
 /**
  * Classe principale del progetto: avvia home.fxml pilotato da it.unipv.controller.home.HomeController.
- * All'avvio crea una connessione con il database, per poi chiuderla una volta che si chiude l'intero programma:
- *     questo perché il sito myremotesql permette di avere poche connessioni attive alla volta.
+ * All'avvio crea il pool di connessioni con il database, per poi chiuderlo una volta che si chiude l'intero programma:
+ *     il pool è limitato perché il sito myremotesql permette di avere poche connessioni attive alla volta.
+ * Il database utilizzato dipende da DataReferences.DBBACKEND: quello remoto oppure uno embedded in locale.
+ * Prima di aprire la Home lo schema del database viene portato all'ultima versione (SchemaMigrator),
+ *     a meno che non sia disabilitato tramite DataReferences.DBMIGRATEONSTARTUP, e viene avviato il ChangeTracker,
+ *     che tiene aggiornate le cache con le modifiche fatte dalle altre postazioni.
  * In chiusura, inoltre, richiama il metodo closeAll dell'HomeController, principalmente per chiudere tutto
  * ciò che non viene chiuso in automatico da JavaFX, come il thread dei suggerimenti.
  */
 public class Home extends Application {
 
-    private DBConnection dbConnection;
+    private ConnectionProvider connectionProvider;
 
     @Override
     public void start(Stage stage) throws Exception {
@@ -28,11 +40,15 @@ public class Home extends Application {
     }
 
     private void openHome(Stage stage) throws java.io.IOException {
-        this.dbConnection = new DBConnection();
+        this.connectionProvider = new ConnectionPool(createDBBackend(), DataReferences.DBPOOLMAXSIZE);
+        if(DataReferences.DBMIGRATEONSTARTUP) {
+            new SchemaMigrator(connectionProvider).migrate();
+        }
+        ChangeTracker.of(connectionProvider).start(DataReferences.CHANGEPOLLINTERVAL);
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/home/home.fxml"));
         stage.setScene(new Scene(loader.load()));
         IHomeInitializer hc = loader.getController();
-        hc.init(dbConnection);
+        hc.init(connectionProvider);
         stage.setTitle("Golden Movie Studio");
         stage.setResizable(true);
 
@@ -47,10 +63,23 @@ public class Home extends Application {
         stage.show();
         stage.setOnHidden(e -> {
             hc.closeAll();
-            dbConnection.close();
+            DaoExecutor.shutdown();
+            ChangeTracker.of(connectionProvider).close();
+            connectionProvider.close();
             Platform.exit();
         });
     }
 
+    /**
+     * Crea il backend indicato da DataReferences.DBBACKEND.
+     * @return -> il backend embedded se richiesto, altrimenti quello remoto.
+     */
+    static DBBackend createDBBackend() {
+        if(DataReferences.DBBACKEND.equalsIgnoreCase("embedded")) {
+            return new EmbeddedDBBackend(DataReferences.EMBEDDEDDBURL);
+        }
+        return new RemoteDBBackend();
+    }
+
     public static void main(String[] args) { launch(args); }
 }
@@ -0,0 +1,29 @@
+package it.unipv.main;
+
+import it.unipv.dao.PrenotationSeatMigrator;
+import it.unipv.db.ConnectionPool;
+import it.unipv.db.SchemaMigrator;
+
+/**
+ * Punto di ingresso da riga di comando per migrare lo schema del database senza avviare l'interfaccia grafica.
+ * Dopo lo schema copia i posti delle prenotazioni in SEAT_RESERVATION (PrenotationSeatMigrator): la copia può essere
+ *     interrotta e, rilanciando il comando, riprende dall'ultimo blocco copiato.
+ * Il database da migrare si sceglie con le stesse proprietà di sistema del programma (-Dgoldenmoviestudio.db.backend, ...),
+ *     ad esempio: java -cp GoldenMovieStudio.jar it.unipv.main.MigrateDB
+ */
+public class MigrateDB {
+
+    public static void main(String[] args) {
+        ConnectionPool connectionPool = new ConnectionPool(Home.createDBBackend(), 2);
+        try {
+            int executed = new SchemaMigrator(connectionPool).migrate();
+            System.out.println("Migrazioni applicate: " + executed);
+            PrenotationSeatMigrator seatMigrator = new PrenotationSeatMigrator(connectionPool);
+            long prenotations = seatMigrator.migrate();
+            System.out.println("Prenotazioni copiate in SEAT_RESERVATION: " + prenotations + " (posti: " + seatMigrator.getMigratedSeats()
+                             + ", posti già assegnati ad altre prenotazioni: " + seatMigrator.getConflicts() + ")");
+        } finally {
+            connectionPool.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package it.unipv.model;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Oggetto che rappresenta le modifiche a una tabella avvenute dopo un certo punto del log delle modifiche (watermark):
+ *     1) upserted -> le righe inserite, nel loro stato attuale;
+ *     2) deletedIds -> gli ID delle righe eliminate;
+ *     3) watermark -> il punto del log da passare alla richiesta successiva;
+ *     4) full -> se true upserted contiene l'intera tabella, quindi chi tiene una copia dei dati deve prima svuotarla.
+ * @param <T> -> tipo delle righe (ad esempio Prenotation o Schedule)
+ */
+public class ChangeSet<T> {
+    private final List<T> upserted;
+    private final Collection<Long> deletedIds;
+    private final long watermark;
+    private final boolean full;
+
+    public ChangeSet(List<T> upserted, Collection<Long> deletedIds, long watermark, boolean full) {
+        this.upserted = upserted;
+        this.deletedIds = deletedIds;
+        this.watermark = watermark;
+        this.full = full;
+    }
+
+    public List<T> getUpserted() { return upserted; }
+
+    public Collection<Long> getDeletedIds() { return deletedIds; }
+
+    public long getWatermark() { return watermark; }
+
+    public boolean isFull() { return full; }
+
+    public boolean isEmpty() { return !full && upserted.isEmpty() && deletedIds.isEmpty(); }
+
+    public String toString() {
+        return   "Inserite: " + upserted.size() + "\n"
+               + "Eliminate: " + deletedIds.size() + "\n"
+               + "Watermark: " + watermark + "\n"
+               + "Completo: " + full + "\n";
+    }
+}
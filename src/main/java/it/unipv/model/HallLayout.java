@@ -0,0 +1,106 @@
+package it.unipv.model;
+
+import it.unipv.utils.ApplicationException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Oggetto immutabile che rappresenta la piantina di una sala: per ogni posto il nome, le coordinate e il tipo,
+ *     memorizzati in array paralleli. A differenza di Seat non crea componenti grafici, quindi è adatto
+ *     ai calcoli sui posti (conteggi, occupazione) e ad essere memorizzato in cache.
+ * L'indice di un posto (da 0 a size()-1) resta lo stesso finché la piantina non cambia versione.
+ */
+public final class HallLayout {
+    private static final SeatTYPE[] TYPES = SeatTYPE.values();
+
+    private final String hallName;
+    private final long version;
+    private final String[] names;
+    private final int[] xs;
+    private final int[] ys;
+    private final byte[] types;
+    private final int[] counts = new int[TYPES.length];
+    private final Map<String, Integer> indexes;
+    private volatile HallRows rows;
+
+    /**
+     * @param hallName -> il nome della sala;
+     * @param version -> la versione della piantina sul database, incrementata a ogni modifica dei posti;
+     * @param names -> i nomi dei posti;
+     * @param xs -> le ascisse dei posti;
+     * @param ys -> le ordinate dei posti;
+     * @param types -> i tipi dei posti.
+     */
+    public HallLayout(String hallName, long version, String[] names, int[] xs, int[] ys, SeatTYPE[] types) {
+        if(names.length != xs.length || names.length != ys.length || names.length != types.length) {
+            throw new ApplicationException("Gli array dei posti della sala " + hallName + " hanno lunghezze diverse");
+        }
+        this.hallName = hallName;
+        this.version = version;
+        this.names = names.clone();
+        this.xs = xs.clone();
+        this.ys = ys.clone();
+        this.types = new byte[types.length];
+        this.indexes = new HashMap<>(names.length * 2);
+        for(int i=0; i<types.length; i++) {
+            this.types[i] = (byte) types[i].ordinal();
+            counts[types[i].ordinal()]++;
+            indexes.put(names[i], i);
+        }
+    }
+
+    public String getHallName() { return hallName; }
+
+    public long getVersion() { return version; }
+
+    public int size() { return names.length; }
+
+    public String getName(int index) { return names[index]; }
+
+    public int getX(int index) { return xs[index]; }
+
+    public int getY(int index) { return ys[index]; }
+
+    public SeatTYPE getType(int index) { return TYPES[types[index]]; }
+
+    /**
+     * @param name -> il nome del posto.
+     * @return -> l'indice del posto, oppure -1 se la sala non ha un posto con quel nome.
+     */
+    public int indexOf(String name) {
+        Integer res = indexes.get(name);
+        return res == null ? -1 : res;
+    }
+
+    /**
+     * @param type -> il tipo di posto.
+     * @return -> il numero di posti di quel tipo.
+     */
+    public int getCount(SeatTYPE type) { return counts[type.ordinal()]; }
+
+    /** @return -> le file della sala, calcolate alla prima richiesta e poi riutilizzate finché la piantina resta in cache. */
+    public HallRows getRows() {
+        HallRows res = rows;
+        if(res == null) {
+            res = new HallRows(this);
+            rows = res;
+        }
+        return res;
+    }
+
+    /** @return -> la memoria occupata stimata, usata come peso nella cache delle piantine. */
+    public long getEstimatedBytes() {
+        long res = 64 + types.length * 9L;
+        for(String name : names) {
+            res += 48 + name.length() * 2L;
+        }
+        return res;
+    }
+
+    public String toString() {
+        return   "Sala: " + hallName + "\n"
+               + "Versione: " + version + "\n"
+               + "Posti: " + names.length + "\n";
+    }
+}
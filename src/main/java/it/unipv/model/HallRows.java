@@ -0,0 +1,126 @@
+package it.unipv.model;
+
+import it.unipv.utils.ApplicationException;
+import it.unipv.utils.DataReferences;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Oggetto immutabile che rappresenta le file di una sala, ricavate una sola volta dalle coordinate dei posti della piantina
+ *     (HallLayout.getRows): i posti con ordinata simile formano una fila, ordinata per ascissa, e due posti vicini
+ *     sono adiacenti se tra loro non c'è un corridoio.
+ * Viene usato per cercare il miglior blocco di posti adiacenti per un gruppo (findBestBlock), in tempo lineare nel numero di posti.
+ */
+public final class HallRows {
+    private final HallLayout layout;
+    private final int[][] rows;
+    private final boolean[][] adjacentToPrevious;
+    private final double centerX;
+    private final double halfWidth;
+
+    HallRows(HallLayout layout) {
+        this.layout = layout;
+
+        Integer[] order = new Integer[layout.size()];
+        for(int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(layout::getY).thenComparingInt(layout::getX));
+
+        //Una nuova fila inizia quando l'ordinata si allontana di più di mezzo posto dal primo posto della fila
+        List<List<Integer>> groups = new ArrayList<>();
+        int rowY = Integer.MIN_VALUE;
+        for(int index : order) {
+            if(groups.isEmpty() || layout.getY(index) - rowY > DataReferences.MYDRAGGABLESEATHEIGTH / 2) {
+                groups.add(new ArrayList<>());
+                rowY = layout.getY(index);
+            }
+            groups.get(groups.size() - 1).add(index);
+        }
+
+        rows = new int[groups.size()][];
+        adjacentToPrevious = new boolean[groups.size()][];
+        int minX = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        for(int r=0; r<rows.length; r++) {
+            List<Integer> group = groups.get(r);
+            group.sort(Comparator.comparingInt(layout::getX));
+            rows[r] = group.stream().mapToInt(Integer::intValue).toArray();
+            adjacentToPrevious[r] = new boolean[rows[r].length];
+            for(int i=0; i<rows[r].length; i++) {
+                int x = layout.getX(rows[r][i]);
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                adjacentToPrevious[r][i] = i > 0 && x - layout.getX(rows[r][i-1]) <= DataReferences.SEATFINDERMAXGAP;
+            }
+        }
+        centerX = rows.length == 0 ? 0 : (minX + maxX) / 2.0;
+        halfWidth = rows.length == 0 ? 1 : Math.max(1, (maxX - minX) / 2.0);
+    }
+
+    public int getRowCount() { return rows.length; }
+
+    /**
+     * @param row -> la fila, a partire da quella più in alto nella piantina (la più vicina allo schermo).
+     * @return -> gli indici nella piantina dei posti della fila, da sinistra verso destra.
+     */
+    public int[] getRow(int row) { return rows[row].clone(); }
+
+    /**
+     * Cerca il miglior blocco di posti liberi e adiacenti nella stessa fila, tutti dello stesso tipo: posti di tipo diverso
+     *     hanno prezzi diversi, quindi un blocco non li mescola anche se sono ammessi entrambi. Il punteggio di un blocco è tanto più alto
+     *     quanto più il blocco è vicino al centro della fila e alla fila preferita (DataReferences.SEATFINDERPREFERREDROW).
+     * @param unavailable -> i posti non disponibili (occupati o tenuti da altri), come bit sugli indici della piantina;
+     * @param partySize -> il numero di posti richiesti;
+     * @param types -> i tipi di posto ammessi; viene scelto il blocco migliore tra quelli di ciascun tipo.
+     * @return -> gli indici nella piantina dei posti del blocco, da sinistra verso destra; un array vuoto se nessun blocco è disponibile.
+     */
+    public int[] findBestBlock(BitSet unavailable, int partySize, Set<SeatTYPE> types) {
+        if(partySize <= 0) {
+            throw new ApplicationException("Il numero di posti richiesti deve essere positivo: " + partySize);
+        }
+        double preferredRow = (rows.length - 1) * DataReferences.SEATFINDERPREFERREDROW;
+        double rowSpan = Math.max(1, rows.length - 1);
+
+        int bestRow = -1;
+        int bestEnd = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for(int r=0; r<rows.length; r++) {
+            double rowPenalty = Math.abs(r - preferredRow) / rowSpan;
+            if(-rowPenalty <= bestScore) {
+                continue;
+            }
+            int[] row = rows[r];
+            int run = 0;
+            for(int i=0; i<row.length; i++) {
+                boolean eligible = !unavailable.get(row[i]) && types.contains(layout.getType(row[i]));
+                boolean continuesRun = adjacentToPrevious[r][i] && layout.getType(row[i]) == layout.getType(row[i-1]);
+                run = !eligible ? 0 : continuesRun ? run + 1 : 1;
+                if(run >= partySize) {
+                    double blockCenter = (layout.getX(row[i - partySize + 1]) + layout.getX(row[i])) / 2.0;
+                    double score = -rowPenalty - Math.abs(blockCenter - centerX) / halfWidth;
+                    if(score > bestScore) {
+                        bestScore = score;
+                        bestRow = r;
+                        bestEnd = i;
+                    }
+                }
+            }
+        }
+
+        if(bestRow < 0) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(rows[bestRow], bestEnd - partySize + 1, bestEnd + 1);
+    }
+
+    public String toString() {
+        return "Sala: " + layout.getHallName() + "\n"
+             + "File: " + rows.length + "\n";
+    }
+}
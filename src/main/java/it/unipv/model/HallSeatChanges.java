@@ -0,0 +1,43 @@
+package it.unipv.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Oggetto che rappresenta le modifiche fatte alla piantina di una sala rispetto all'ultimo salvataggio.
+ *     1) inserted -> i posti da inserire (nuovi o rinominati);
+ *     2) updated -> i posti spostati o con il tipo modificato, indicizzati per nome;
+ *     3) removedNames -> i nomi dei posti da eliminare (eliminati o rinominati).
+ * Un posto rinominato compare sia tra i posti eliminati (con il vecchio nome) sia tra quelli inseriti:
+ *     in questo modo il nome del posto resta la chiave con cui viene identificato sul database.
+ */
+public class HallSeatChanges {
+    private List<Seat> inserted = new ArrayList<>();
+    private Map<String, Seat> updated = new LinkedHashMap<>();
+    private List<String> removedNames = new ArrayList<>();
+
+    public void addInserted(Seat seat) { inserted.add(seat); }
+
+    public void addUpdated(Seat seat) { updated.put(seat.getText(), seat); }
+
+    public void addRemoved(String seatName) { removedNames.add(seatName); }
+
+    public List<Seat> getInserted() { return Collections.unmodifiableList(inserted); }
+
+    public List<Seat> getUpdated() { return Collections.unmodifiableList(new ArrayList<>(updated.values())); }
+
+    public List<String> getRemovedNames() { return Collections.unmodifiableList(removedNames); }
+
+    public int size() { return inserted.size() + updated.size() + removedNames.size(); }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    public String toString() {
+        return   "Inseriti: " + inserted.size() + "\n"
+               + "Aggiornati: " + updated.size() + "\n"
+               + "Eliminati: " + removedNames.size() + "\n";
+    }
+}
@@ -0,0 +1,33 @@
+package it.unipv.model;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Oggetto che rappresenta il numero di posti di una sala per ogni tipo (SeatTYPE),
+ *     calcolato direttamente dal database senza dover scaricare i singoli posti.
+ */
+public class HallSeatCounts {
+    private String hallName;
+    private Map<SeatTYPE, Integer> counts = new EnumMap<>(SeatTYPE.class);
+
+    public HallSeatCounts(String hallName) { this.hallName = hallName; }
+
+    public String getHallName() { return hallName; }
+
+    public void setCount(SeatTYPE type, int count) { counts.put(type, count); }
+
+    public int getCount(SeatTYPE type) { return counts.getOrDefault(type, 0); }
+
+    public int getTotal() {
+        int res = 0;
+        for(int count : counts.values()) {
+            res += count;
+        }
+        return res;
+    }
+
+    public String toString() {
+        return hallName + " " + counts;
+    }
+}
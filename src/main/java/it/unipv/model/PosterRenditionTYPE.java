@@ -0,0 +1,17 @@
+package it.unipv.model;
+
+/**
+ * Formati ridotti della locandina, generati al caricamento del film:
+ *     ogni schermata scarica solamente il formato che le serve, con la larghezza indicata (in pixel).
+ */
+public enum PosterRenditionTYPE {
+      THUMBNAIL(130)
+    , GRID(260)
+    , DETAIL(700);
+
+    private final int width;
+
+    PosterRenditionTYPE(int width) { this.width = width; }
+
+    public int getWidth() { return width; }
+}
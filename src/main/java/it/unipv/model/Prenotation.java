@@ -3,12 +3,17 @@ package it.unipv.model;
 import it.unipv.utils.ApplicationException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Oggetto che rappresenta la prenotazione di un film da parte di un utente.
  */
 public class Prenotation implements Comparable<Prenotation> {
+    private long id;
     private String nomeUtente;
     private String nomeFilm;
     private String codiceFilm;
@@ -29,6 +34,8 @@ public class Prenotation implements Comparable<Prenotation> {
         this.costoTotale = costoTotale;
     }
 
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
     public String getNomeUtente() { return nomeUtente; }
     public String getNomeFilm() { return nomeFilm; }
     public String getCodiceFilm() { return codiceFilm; }
@@ -36,6 +43,18 @@ public class Prenotation implements Comparable<Prenotation> {
     public String getOraFilm() { return oraFilm; }
     public String getSalaFilm() { return salaFilm; }
     public String getPostiSelezionati() { return postiSelezionati; }
+
+    /** @return -> i nomi dei posti selezionati (POSTISELEZIONATI, separati da "-"), senza spazi e senza ripetizioni. */
+    public List<String> getSeatNames() {
+        Set<String> res = new LinkedHashSet<>();
+        for(String s : postiSelezionati.split("-")) {
+            if(!s.trim().isEmpty()) {
+                res.add(s.trim());
+            }
+        }
+        return new ArrayList<>(res);
+    }
+
     public String getCostoTotale() { return costoTotale; }
     public void setCostoTotale(String costoTotale) { this.costoTotale = costoTotale; }
 
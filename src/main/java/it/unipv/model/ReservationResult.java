@@ -0,0 +1,41 @@
+package it.unipv.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Oggetto che rappresenta l'esito della prenotazione dei posti di una proiezione:
+ *     o tutti i posti sono stati prenotati, o nessuno, e in quel caso vengono indicati quelli già occupati.
+ */
+public class ReservationResult {
+    private long prenotationId;
+    private List<String> conflicts;
+
+    private ReservationResult(long prenotationId, List<String> conflicts) {
+        this.prenotationId = prenotationId;
+        this.conflicts = Collections.unmodifiableList(new ArrayList<>(conflicts));
+    }
+
+    /**
+     * @param prenotationId -> l'ID della prenotazione inserita.
+     * @return -> l'esito di una prenotazione andata a buon fine.
+     */
+    public static ReservationResult reserved(long prenotationId) { return new ReservationResult(prenotationId, new ArrayList<>()); }
+
+    /**
+     * @param conflicts -> i posti già prenotati da altri.
+     * @return -> l'esito di una prenotazione non effettuata.
+     */
+    public static ReservationResult conflicting(List<String> conflicts) { return new ReservationResult(0, conflicts); }
+
+    public boolean isReserved() { return conflicts.isEmpty(); }
+
+    public long getPrenotationId() { return prenotationId; }
+
+    public List<String> getConflicts() { return conflicts; }
+
+    public String toString() {
+        return isReserved() ? "Prenotazione " + prenotationId : "Posti già occupati: " + conflicts;
+    }
+}
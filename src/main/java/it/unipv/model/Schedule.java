@@ -10,11 +10,16 @@ import java.util.Calendar;
  * Oggetto che rappresenta la programmazione di un film
  */
 public class Schedule implements Comparable<Schedule> {
+    private long id;
     private String movieCode;
     private String date;
     private String time;
     private String hall;
 
+    public long getId() { return id; }
+
+    public void setId(long id) { this.id = id; }
+
     public String getMovieCode() { return movieCode; }
 
     public void setMovieCode(String movieCode) { this.movieCode = movieCode; }
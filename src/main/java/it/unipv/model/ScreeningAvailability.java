@@ -0,0 +1,43 @@
+package it.unipv.model;
+
+/**
+ * Oggetto immutabile che riassume la disponibilità di una proiezione: posti totali della sala e posti ancora liberi,
+ *     in totale e per i tipi che interessano a chi sceglie l'orario (VIP e per disabili).
+ */
+public final class ScreeningAvailability {
+    private final int total;
+    private final int free;
+    private final int freeVip;
+    private final int freeAccessible;
+
+    public ScreeningAvailability(int total, int free, int freeVip, int freeAccessible) {
+        this.total = total;
+        this.free = free;
+        this.freeVip = freeVip;
+        this.freeAccessible = freeAccessible;
+    }
+
+    /**
+     * @param other -> la disponibilità di un'altra proiezione.
+     * @return -> la disponibilità complessiva delle due proiezioni, ad esempio di tutte le sale di uno stesso orario.
+     */
+    public ScreeningAvailability plus(ScreeningAvailability other) {
+        return new ScreeningAvailability(total + other.total, free + other.free, freeVip + other.freeVip, freeAccessible + other.freeAccessible);
+    }
+
+    public int getTotal() { return total; }
+
+    public int getFree() { return free; }
+
+    public int getFreeVip() { return freeVip; }
+
+    public int getFreeAccessible() { return freeAccessible; }
+
+    public boolean isSoldOut() { return free == 0; }
+
+    public String toString() {
+        return   "Posti liberi: " + free + " su " + total + "\n"
+               + "VIP liberi: " + freeVip + "\n"
+               + "Per disabili liberi: " + freeAccessible;
+    }
+}
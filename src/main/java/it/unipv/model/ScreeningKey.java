@@ -0,0 +1,66 @@
+package it.unipv.model;
+
+import java.util.Objects;
+
+/**
+ * Oggetto immutabile che identifica una proiezione (film, giorno, ora e sala), usato come chiave
+ *     per raggruppare le prenotazioni e i posti occupati.
+ */
+public final class ScreeningKey {
+    private final String movieCode;
+    private final String date;
+    private final String time;
+    private final String hallName;
+
+    public ScreeningKey(String movieCode, String date, String time, String hallName) {
+        this.movieCode = movieCode;
+        this.date = date;
+        this.time = time;
+        this.hallName = hallName;
+    }
+
+    /**
+     * @param p -> la prenotazione.
+     * @return -> la proiezione a cui si riferisce la prenotazione.
+     */
+    public static ScreeningKey of(Prenotation p) {
+        return new ScreeningKey(p.getCodiceFilm(), p.getGiornoFilm(), p.getOraFilm(), p.getSalaFilm());
+    }
+
+    /**
+     * @param s -> la programmazione.
+     * @return -> la proiezione corrispondente alla programmazione.
+     */
+    public static ScreeningKey of(Schedule s) {
+        return new ScreeningKey(s.getMovieCode(), s.getDate(), s.getTime(), s.getHallName());
+    }
+
+    public String getMovieCode() { return movieCode; }
+
+    public String getDate() { return date; }
+
+    public String getTime() { return time; }
+
+    public String getHallName() { return hallName; }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) { return true; }
+        if(!(o instanceof ScreeningKey)) { return false; }
+        ScreeningKey that = (ScreeningKey) o;
+        return Objects.equals(movieCode, that.movieCode)
+            && Objects.equals(date, that.date)
+            && Objects.equals(time, that.time)
+            && Objects.equals(hallName, that.hallName);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(movieCode, date, time, hallName); }
+
+    public String toString() {
+        return   "Film: " + movieCode + "\n"
+               + "Giorno: " + date + "\n"
+               + "Ora: " + time + "\n"
+               + "Sala: " + hallName + "\n";
+    }
+}
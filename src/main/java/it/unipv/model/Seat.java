@@ -6,6 +6,8 @@ import it.unipv.utils.DataReferences;
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Questa classe rappresenta il singolo posto a sedere:
@@ -16,6 +18,7 @@ public class Seat extends JLabel {
 
     private boolean amISelected;
     private boolean amICopied;
+    private boolean amIHeld;
     private SeatTYPE type;
 
     public Seat(int x, int y, SeatTYPE type) {
@@ -31,6 +34,21 @@ public class Seat extends JLabel {
         setBackgroundPerType();
     }
 
+    /**
+     * Crea i componenti grafici dei posti di una piantina, da usare solo quando la piantina deve essere visualizzata.
+     * @param layout -> la piantina della sala.
+     * @return -> i posti, nello stesso ordine degli indici della piantina.
+     */
+    public static List<Seat> createSeats(HallLayout layout) {
+        List<Seat> res = new ArrayList<>(layout.size());
+        for(int i=0; i<layout.size(); i++) {
+            Seat s = new Seat(layout.getX(i), layout.getY(i), layout.getType(i));
+            s.setText(layout.getName(i));
+            res.add(s);
+        }
+        return res;
+    }
+
     public void setIsSelected(boolean selected) { amISelected = selected; }
 
     public boolean getIsSelected() { return amISelected; }
@@ -39,6 +57,14 @@ public class Seat extends JLabel {
 
     public void setIsCopied(boolean amICopied) { this.amICopied = amICopied; }
 
+    public boolean getIsHeld() { return amIHeld; }
+
+    //Un posto tenuto da un'altra postazione viene mostrato in grigio scuro finché non torna libero
+    public void setIsHeld(boolean amIHeld) {
+        this.amIHeld = amIHeld;
+        setBackgroundPerType();
+    }
+
     public SeatTYPE getType() { return type; }
 
     public void setType(SeatTYPE type) { this.type = type; }
@@ -46,6 +72,10 @@ public class Seat extends JLabel {
     public void updateBackgroundForChangingType() { setBackgroundPerType(); }
 
     private void setBackgroundPerType() {
+        if(amIHeld) {
+            setBackground(new Color(0x6E6E6E));
+            return;
+        }
         switch (type) {
             case NORMALE:
                 setBackground(new Color(0x9CED9F));
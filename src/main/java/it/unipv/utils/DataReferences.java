@@ -19,6 +19,63 @@ public class DataReferences {
 
     public final static String DBNAME = "z6xOH9WKhI";
     public final static String DBPASS = "NSpPIYAmt3";
+    //Backend del database: "remote" (mysql su remotemysql.com) oppure "embedded" (H2 in-process), impostabile con -Dgoldenmoviestudio.db.backend
+    public final static String DBBACKEND = System.getProperty("goldenmoviestudio.db.backend", "remote");
+    public final static String EMBEDDEDDBURL = System.getProperty("goldenmoviestudio.db.url", "jdbc:h2:./data/db/goldenmoviestudio");
+    public final static String EMBEDDEDDBOPTIONS = ";MODE=MySQL;NON_KEYWORDS=USER,CAST,DATA;DB_CLOSE_DELAY=-1";
+    public final static int DBPOOLMAXSIZE = 4;
+    public final static long DBPOOLBORROWTIMEOUT = 30000; //ms
+    public final static long DBPOOLVALIDATIONINTERVAL = 30000; //ms
+    public final static int DBPOOLVALIDATIONTIMEOUT = 2; //s
+    public final static int DBSTATEMENTCACHESIZE = 32;
+    public final static int DBBATCHSIZE = 200;
+    //Migrazioni dello schema (resources/db/migration), da applicare in quest'ordine
+    public final static List<String> DBMIGRATIONS = Arrays.asList( "V1__create_schema.sql"
+                                                                 , "V2__surrogate_keys.sql"
+                                                                 , "V3__access_indexes.sql"
+                                                                 , "V4__poster_version.sql"
+                                                                 , "V5__blob_hashes.sql"
+                                                                 , "V6__poster_renditions.sql"
+                                                                 , "V7__change_versions.sql"
+                                                                 , "V8__change_log.sql"
+                                                                 , "V9__hall_versions.sql"
+                                                                 , "V10__seat_reservations.sql"
+                                                                 , "V11__seat_holds.sql"
+                                                                 , "V12__booking_seat_types.sql"
+                                                                 , "V13__unique_hall_seats.sql"
+                                                                 , "V14__change_log_pruning.sql"
+                                                                 , "V15__schedule_sortable_date.sql");
+    public final static boolean DBMIGRATEONSTARTUP = Boolean.parseBoolean(System.getProperty("goldenmoviestudio.db.migrate", "true"));
+    public final static int DBMIGRATIONBASELINE = Integer.getInteger("goldenmoviestudio.db.baseline", 0);
+    //Attesa massima della migrazione avviata da un'altra postazione
+    public final static long DBMIGRATIONLOCKWAIT = Long.getLong("goldenmoviestudio.db.migrationlockwait", 600000); //ms
+    public final static int DAOIOTHREADS = DBPOOLMAXSIZE;
+    //Locandine della home scaricate contemporaneamente: un thread resta libero per le altre operazioni sul database
+    public final static int POSTERLOADPARALLELISM = Math.max(1, DAOIOTHREADS - 1);
+    //Cartella della cache su disco di locandine e anteprime delle sale, impostabile con -Dgoldenmoviestudio.blobcache.dir
+    public final static String BLOBCACHEDIR = System.getProperty("goldenmoviestudio.blobcache.dir", "data" + File.separator + "cache");
+    //Memoria massima occupata dalle locandine già decodificate, impostabile con -Dgoldenmoviestudio.postercache.bytes
+    public final static long POSTERCACHEMAXBYTES = Long.getLong("goldenmoviestudio.postercache.bytes", 64L * 1024 * 1024);
+    //Memoria massima occupata dalle piantine delle sale (HallLayout), impostabile con -Dgoldenmoviestudio.layoutcache.bytes
+    public final static long HALLLAYOUTCACHEMAXBYTES = Long.getLong("goldenmoviestudio.layoutcache.bytes", 4L * 1024 * 1024);
+    //Validità degli snapshot del catalogo condivisi tra i pannelli, impostabile con -Dgoldenmoviestudio.catalogcache.ttl
+    public final static long CATALOGCACHETTL = Long.getLong("goldenmoviestudio.catalogcache.ttl", 60000L); //ms
+    //Ogni quanto leggere le versioni delle tabelle modificate dalle altre postazioni, impostabile con -Dgoldenmoviestudio.changepoll.interval
+    public final static long CHANGEPOLLINTERVAL = Long.getLong("goldenmoviestudio.changepoll.interval", 3000L); //ms
+    //Ogni quanto eliminare il log delle modifiche già letto da tutte le postazioni, impostabile con -Dgoldenmoviestudio.changelog.pruneinterval
+    public final static long CHANGELOGPRUNEINTERVAL = Long.getLong("goldenmoviestudio.changelog.pruneinterval", 600000L); //ms
+    //Una postazione che non sincronizza da più di questo tempo non trattiene più il log: alla ripresa ricarica l'intera tabella
+    public final static int CHANGELOGREADERTTL = Integer.getInteger("goldenmoviestudio.changelog.readerttl", 86400); //s
+    //Durata dei posti tenuti nel selettore senza conferma della postazione, impostabile con -Dgoldenmoviestudio.seathold.ttl
+    public final static int SEATHOLDTTL = Integer.getInteger("goldenmoviestudio.seathold.ttl", 60); //s
+    //Inattività nel selettore dei posti dopo la quale i posti tenuti non vengono più prolungati, impostabile con -Dgoldenmoviestudio.seathold.idle
+    public final static int SEATHOLDIDLETIMEOUT = Integer.getInteger("goldenmoviestudio.seathold.idle", 600); //s
+    //Prenotazioni copiate in SEAT_RESERVATION per ogni transazione della migrazione, impostabile con -Dgoldenmoviestudio.seatmigration.chunk
+    public final static int SEATMIGRATIONCHUNK = Integer.getInteger("goldenmoviestudio.seatmigration.chunk", 500);
+    //Ricerca dei posti migliori per un gruppo: oltre questa distanza tra due posti della stessa fila c'è un corridoio
+    public final static int SEATFINDERMAXGAP = MYDRAGGABLESEATWIDTH * 3 / 2;
+    //Fila preferita, come frazione della distanza tra la prima fila (la più in alto nella piantina, vicina allo schermo) e l'ultima
+    public final static double SEATFINDERPREFERREDROW = 0.6;
 
     public final static List<String> HOMETIPS = Arrays.asList( "Benvenuto in Golden Movie Studio!"
                                                              , "Hai già visto le nuove uscite?"
@@ -0,0 +1,107 @@
+package it.unipv.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Cache in memoria con un limite di occupazione espresso in byte:
+ *     ogni elemento viene inserito insieme alla sua dimensione stimata e,
+ *     superato il limite, vengono eliminati gli elementi usati meno di recente.
+ * I metodi sono sincronizzati perché la cache è condivisa tra i thread che eseguono le query.
+ * @param <K> -> tipo della chiave
+ * @param <V> -> tipo del valore
+ */
+public class LRUCache<K, V> {
+    private final long maxBytes;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /** @param maxBytes -> la dimensione massima occupabile dagli elementi; se minore o uguale a 0 la cache non memorizza nulla. */
+    public LRUCache(long maxBytes) { this.maxBytes = maxBytes; }
+
+    /**
+     * @param key -> la chiave dell'elemento cercato.
+     * @return -> l'elemento, oppure null se non presente.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Inserisce un elemento, eliminando se necessario quelli usati meno di recente.
+     *     Un elemento più grande dell'intera cache non viene memorizzato.
+     * @param key -> la chiave dell'elemento;
+     * @param value -> l'elemento da memorizzare;
+     * @param bytes -> la dimensione stimata dell'elemento.
+     */
+    public synchronized void put(K key, V value, long bytes) {
+        remove(key);
+        if(value == null || bytes > maxBytes) { return; }
+        entries.put(key, new Entry<>(value, bytes));
+        currentBytes += bytes;
+        evictIfNeeded();
+    }
+
+    /** @param key -> la chiave dell'elemento da eliminare. */
+    public synchronized void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if(removed != null) {
+            currentBytes -= removed.bytes;
+        }
+    }
+
+    /** @param condition -> le chiavi degli elementi da eliminare (ad esempio tutte le versioni di una locandina). */
+    public synchronized void removeIf(Predicate<K> condition) {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<K, Entry<V>> e = it.next();
+            if(condition.test(e.getKey())) {
+                currentBytes -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() { return entries.size(); }
+
+    public synchronized long getCurrentBytes() { return currentBytes; }
+
+    public long getMaxBytes() { return maxBytes; }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    private void evictIfNeeded() {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while(currentBytes > maxBytes && it.hasNext()) {
+            currentBytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long bytes;
+
+        private Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
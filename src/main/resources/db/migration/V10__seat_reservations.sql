@@ -0,0 +1,15 @@
+-- Un posto prenotato per ogni riga: il vincolo di unicità sulla proiezione e sul nome del posto
+-- impedisce al database stesso di vendere due volte lo stesso posto, anche da postazioni diverse.
+-- Le righe vengono scritte ed eliminate da PrenotationDaoImpl nella stessa transazione della prenotazione (ID_PRENOTAZIONE).
+CREATE TABLE z6xOH9WKhI.SEAT_RESERVATION (
+    ID BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    ID_PRENOTAZIONE BIGINT NOT NULL,
+    CODICEFILM VARCHAR(50) NOT NULL,
+    GIORNOFILM VARCHAR(10) NOT NULL,
+    ORAFILM VARCHAR(5) NOT NULL,
+    SALAFILM VARCHAR(100) NOT NULL,
+    NOME_POSTO VARCHAR(50) NOT NULL,
+    CONSTRAINT SEAT_RESERVATION_POSTO UNIQUE (CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, NOME_POSTO)
+);
+
+CREATE INDEX SEAT_RESERVATION_PRENOTAZIONE ON z6xOH9WKhI.SEAT_RESERVATION (ID_PRENOTAZIONE);
@@ -0,0 +1,16 @@
+-- Posti tenuti da una postazione mentre l'utente li sta scegliendo nel selettore (SeatHoldService).
+-- Una riga vale fino a SCADENZA, prolungata periodicamente finché la postazione è attiva:
+-- le righe scadute non vengono più considerate e l'indice su SCADENZA permette di eliminarle senza leggere le altre.
+CREATE TABLE z6xOH9WKhI.SEAT_HOLD (
+    CODICEFILM VARCHAR(50) NOT NULL,
+    GIORNOFILM VARCHAR(10) NOT NULL,
+    ORAFILM VARCHAR(5) NOT NULL,
+    SALAFILM VARCHAR(100) NOT NULL,
+    NOME_POSTO VARCHAR(50) NOT NULL,
+    ID_SESSIONE VARCHAR(36) NOT NULL,
+    SCADENZA TIMESTAMP NOT NULL,
+    PRIMARY KEY (CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, NOME_POSTO)
+);
+
+CREATE INDEX SEAT_HOLD_SESSIONE ON z6xOH9WKhI.SEAT_HOLD (ID_SESSIONE);
+CREATE INDEX SEAT_HOLD_SCADENZA ON z6xOH9WKhI.SEAT_HOLD (SCADENZA);
@@ -0,0 +1,10 @@
+-- Tipo del posto prenotato (da MAPS), così che i posti di una prenotazione si possano contare e aggregare senza rileggere la piantina.
+-- Le prenotazioni precedenti a SEAT_RESERVATION vengono copiate a blocchi da PrenotationSeatMigrator:
+-- DATA_MIGRATION ne registra l'ultimo ID copiato, e permette di riprendere la copia da dove si era interrotta.
+ALTER TABLE z6xOH9WKhI.SEAT_RESERVATION ADD COLUMN TIPO_POSTO VARCHAR(20);
+
+CREATE TABLE z6xOH9WKhI.DATA_MIGRATION (
+    NOME VARCHAR(100) NOT NULL PRIMARY KEY,
+    ULTIMO_ID BIGINT NOT NULL DEFAULT 0,
+    COMPLETATA BOOLEAN NOT NULL DEFAULT FALSE
+);
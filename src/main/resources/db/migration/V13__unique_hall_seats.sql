@@ -0,0 +1,37 @@
+-- Il nome di un posto è unico nella sala (HallEditor non permette due posti con lo stesso nome, e HallDaoImpl
+-- aggiorna ed elimina i posti per nome): l'indice MAPS_SALA_POSTO diventa UNIQUE, così il vincolo vale anche sul database.
+
+-- Le righe dei posti duplicati, salvati prima del controllo sui nomi, restano in MAPS_DUPLICATE per poterle controllare.
+CREATE TABLE z6xOH9WKhI.MAPS_DUPLICATE (
+    NOME_SALA VARCHAR(100) NOT NULL,
+    NOME_POSTO VARCHAR(50) NOT NULL,
+    COORD_X INT NOT NULL,
+    COORD_Y INT NOT NULL,
+    TIPO_POSTO VARCHAR(20) NOT NULL
+);
+
+INSERT INTO z6xOH9WKhI.MAPS_DUPLICATE (NOME_SALA, NOME_POSTO, COORD_X, COORD_Y, TIPO_POSTO)
+SELECT M.NOME_SALA, M.NOME_POSTO, M.COORD_X, M.COORD_Y, M.TIPO_POSTO
+FROM z6xOH9WKhI.MAPS M
+JOIN (SELECT NOME_SALA, NOME_POSTO FROM z6xOH9WKhI.MAPS GROUP BY NOME_SALA, NOME_POSTO HAVING COUNT(*) > 1) D
+  ON D.NOME_SALA = M.NOME_SALA AND D.NOME_POSTO = M.NOME_POSTO;
+
+DELETE FROM z6xOH9WKhI.MAPS
+WHERE EXISTS (SELECT 1 FROM z6xOH9WKhI.MAPS_DUPLICATE D WHERE D.NOME_SALA = MAPS.NOME_SALA AND D.NOME_POSTO = MAPS.NOME_POSTO);
+
+-- Di ogni posto duplicato resta quello più in alto a sinistra nella piantina
+INSERT INTO z6xOH9WKhI.MAPS (NOME_SALA, NOME_POSTO, COORD_X, COORD_Y, TIPO_POSTO)
+SELECT D.NOME_SALA, D.NOME_POSTO, D.COORD_X, D.COORD_Y, MIN(D.TIPO_POSTO)
+FROM z6xOH9WKhI.MAPS_DUPLICATE D
+WHERE NOT EXISTS (SELECT 1 FROM z6xOH9WKhI.MAPS_DUPLICATE E
+                  WHERE E.NOME_SALA = D.NOME_SALA AND E.NOME_POSTO = D.NOME_POSTO
+                    AND (E.COORD_Y < D.COORD_Y OR (E.COORD_Y = D.COORD_Y AND E.COORD_X < D.COORD_X)))
+GROUP BY D.NOME_SALA, D.NOME_POSTO, D.COORD_X, D.COORD_Y;
+
+-- Le piantine in cache delle sale corrette vengono ricaricate
+UPDATE z6xOH9WKhI.HALL_VERSION SET VERSIONE = VERSIONE + 1
+WHERE NOME_SALA IN (SELECT DISTINCT NOME_SALA FROM z6xOH9WKhI.MAPS_DUPLICATE);
+
+ALTER TABLE z6xOH9WKhI.MAPS DROP INDEX MAPS_SALA_POSTO;
+
+CREATE UNIQUE INDEX MAPS_SALA_POSTO ON z6xOH9WKhI.MAPS (NOME_SALA, NOME_POSTO);
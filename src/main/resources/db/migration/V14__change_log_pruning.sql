@@ -0,0 +1,13 @@
+-- Eliminazione delle righe di CHANGE_LOG non più necessarie (ChangeLog.prune).
+-- Ogni replica registra il proprio watermark in CHANGE_LOG_READER a ogni sincronizzazione: il log viene eliminato
+-- fino al watermark più basso tra i lettori attivi, ed il limite raggiunto viene salvato in CHANGE_VERSION.LOG_ELIMINATO,
+-- così un lettore rimasto indietro (inattivo oltre DataReferences.CHANGELOGREADERTTL) ricarica l'intera tabella.
+CREATE TABLE z6xOH9WKhI.CHANGE_LOG_READER (
+    ID_LETTORE VARCHAR(36) NOT NULL,
+    NOME_TABELLA VARCHAR(50) NOT NULL,
+    WATERMARK BIGINT NOT NULL,
+    AGGIORNATO TIMESTAMP NOT NULL,
+    PRIMARY KEY (ID_LETTORE, NOME_TABELLA)
+);
+
+ALTER TABLE z6xOH9WKhI.CHANGE_VERSION ADD COLUMN LOG_ELIMINATO BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,11 @@
+-- Data delle programmazioni in formato yyyyMMdd (ScheduleDaoImpl): DATA è salvata come dd/MM/yyyy, quindi
+-- le ricerche per intervallo di giorni e l'ordinamento cronologico non potevano usare alcun indice.
+-- Le programmazioni già presenti ricevono la data riscritta; le nuove la ricevono da ScheduleDaoImpl all'inserimento.
+ALTER TABLE z6xOH9WKhI.SCHEDULE ADD COLUMN DATA_ORDINABILE VARCHAR(10) NOT NULL DEFAULT '';
+
+UPDATE z6xOH9WKhI.SCHEDULE SET DATA_ORDINABILE = CONCAT(SUBSTRING(DATA,7,4), SUBSTRING(DATA,4,2), SUBSTRING(DATA,1,2))
+WHERE CHAR_LENGTH(DATA) = 10;
+
+UPDATE z6xOH9WKhI.SCHEDULE SET DATA_ORDINABILE = DATA WHERE CHAR_LENGTH(DATA) <> 10;
+
+CREATE INDEX SCHEDULE_DATA_ORA ON z6xOH9WKhI.SCHEDULE (DATA_ORDINABILE, ORA);
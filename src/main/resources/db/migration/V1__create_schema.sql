@@ -0,0 +1,63 @@
+-- Schema di partenza: le tabelle come presenti sul database remoto prima dell'introduzione delle migrazioni.
+-- Le istruzioni devono essere compatibili sia con MySQL sia con H2 in modalità MySQL.
+
+CREATE SCHEMA IF NOT EXISTS z6xOH9WKhI;
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.MAPS (
+    NOME_SALA VARCHAR(100) NOT NULL,
+    NOME_POSTO VARCHAR(50) NOT NULL,
+    COORD_X INT NOT NULL,
+    COORD_Y INT NOT NULL,
+    TIPO_POSTO VARCHAR(20) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.MAPPREVIEWS (
+    NOME_SALA VARCHAR(100) NOT NULL PRIMARY KEY,
+    PREVIEW LONGBLOB
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.MOVIE (
+    CODICE VARCHAR(50) NOT NULL PRIMARY KEY,
+    LOCANDINA LONGBLOB,
+    TITOLO VARCHAR(255),
+    GENERE VARCHAR(255),
+    REGIA VARCHAR(255),
+    CAST VARCHAR(1000),
+    DURATA VARCHAR(10),
+    ANNO VARCHAR(10),
+    TRAMA VARCHAR(5000),
+    TIPO VARCHAR(20),
+    STATUS VARCHAR(20)
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.SCHEDULE (
+    CODICE_FILM VARCHAR(50) NOT NULL,
+    DATA VARCHAR(10) NOT NULL,
+    ORA VARCHAR(5) NOT NULL,
+    SALA VARCHAR(100) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.PRENOTATION (
+    NOMEUTENTE VARCHAR(100) NOT NULL,
+    NOMEFILM VARCHAR(255) NOT NULL,
+    CODICEFILM VARCHAR(50) NOT NULL,
+    GIORNOFILM VARCHAR(10) NOT NULL,
+    ORAFILM VARCHAR(5) NOT NULL,
+    SALAFILM VARCHAR(100) NOT NULL,
+    POSTISELEZIONATI VARCHAR(2000) NOT NULL,
+    COSTOTOTALE VARCHAR(20) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.USER (
+    CODICE VARCHAR(50) NOT NULL PRIMARY KEY,
+    NOME VARCHAR(100) NOT NULL,
+    PASSWORD VARCHAR(100) NOT NULL,
+    EMAIL VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS z6xOH9WKhI.PRICES (
+    BASE DOUBLE NOT NULL,
+    VIP DOUBLE NOT NULL,
+    THREED DOUBLE NOT NULL,
+    REDUCED DOUBLE NOT NULL
+);
@@ -0,0 +1,5 @@
+-- ID numerici di SCHEDULE e PRENOTATION: le righe già presenti ricevono un ID progressivo.
+
+ALTER TABLE z6xOH9WKhI.SCHEDULE ADD COLUMN ID BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY FIRST;
+
+ALTER TABLE z6xOH9WKhI.PRENOTATION ADD COLUMN ID BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY FIRST;
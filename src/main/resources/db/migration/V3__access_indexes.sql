@@ -0,0 +1,12 @@
+-- Indici richiesti dalle ricerche dei DAO.
+
+-- HallDaoImpl: posti di una sala e aggiornamento dei singoli posti per nome
+CREATE INDEX MAPS_SALA_POSTO ON z6xOH9WKhI.MAPS (NOME_SALA, NOME_POSTO);
+
+-- ScheduleDaoImpl: programmazioni di un film (anche in un giorno) e di una sala
+CREATE INDEX SCHEDULE_FILM_DATA ON z6xOH9WKhI.SCHEDULE (CODICE_FILM, DATA);
+CREATE INDEX SCHEDULE_SALA ON z6xOH9WKhI.SCHEDULE (SALA);
+
+-- PrenotationDaoImpl: prenotazioni di un utente e di una proiezione
+CREATE INDEX PRENOTATION_UTENTE ON z6xOH9WKhI.PRENOTATION (NOMEUTENTE);
+CREATE INDEX PRENOTATION_PROIEZIONE ON z6xOH9WKhI.PRENOTATION (CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM);
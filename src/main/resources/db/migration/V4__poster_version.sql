@@ -0,0 +1,3 @@
+-- Versione della locandina, incrementata ad ogni aggiornamento:
+-- permette a MovieDaoImpl di riutilizzare le locandine già scaricate senza dover leggere il blob.
+ALTER TABLE z6xOH9WKhI.MOVIE ADD COLUMN LOCANDINA_VERSION INT NOT NULL DEFAULT 0;
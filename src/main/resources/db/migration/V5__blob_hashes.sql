@@ -0,0 +1,5 @@
+-- Hash SHA-256 di locandine e anteprime delle sale, scritto dai DAO insieme al blob:
+-- permette di verificare la cache su disco (BlobDiskCache) senza scaricare il blob.
+-- Per le righe già presenti l'hash viene calcolato al primo download.
+ALTER TABLE z6xOH9WKhI.MOVIE ADD COLUMN LOCANDINA_HASH VARCHAR(64);
+ALTER TABLE z6xOH9WKhI.MAPPREVIEWS ADD COLUMN PREVIEW_HASH VARCHAR(64);
@@ -0,0 +1,8 @@
+-- Formati ridotti delle locandine (PosterRenditionTYPE), generati da MovieDaoImpl al caricamento della locandina.
+CREATE TABLE z6xOH9WKhI.MOVIE_POSTER_RENDITION (
+    CODICE_FILM VARCHAR(50) NOT NULL,
+    FORMATO VARCHAR(20) NOT NULL,
+    IMMAGINE LONGBLOB NOT NULL,
+    HASH VARCHAR(64) NOT NULL,
+    PRIMARY KEY (CODICE_FILM, FORMATO)
+);
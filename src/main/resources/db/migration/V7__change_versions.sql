@@ -0,0 +1,8 @@
+-- Versione di ogni tabella condivisa tra le postazioni, incrementata dai DAO a ogni scrittura (ChangeTracker):
+-- le altre istanze del programma leggono periodicamente solo questa tabella per sapere quali cache invalidare.
+CREATE TABLE z6xOH9WKhI.CHANGE_VERSION (
+    NOME_TABELLA VARCHAR(50) NOT NULL PRIMARY KEY,
+    VERSIONE BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO z6xOH9WKhI.CHANGE_VERSION (NOME_TABELLA, VERSIONE) VALUES ('MOVIE', 0), ('SCHEDULE', 0), ('MAPS', 0), ('PRICES', 0), ('PRENOTATION', 0);
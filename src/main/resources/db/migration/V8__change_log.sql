@@ -0,0 +1,9 @@
+-- Log delle righe inserite ed eliminate in SCHEDULE e PRENOTATION, scritto dai DAO nella stessa transazione della modifica (ChangeLog).
+-- SEQ è il watermark della sincronizzazione incrementale: un client chiede solo le righe del log successive all'ultimo SEQ visto.
+CREATE TABLE z6xOH9WKhI.CHANGE_LOG (
+    SEQ BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    NOME_TABELLA VARCHAR(50) NOT NULL,
+    ID_RIGA BIGINT NOT NULL
+);
+
+CREATE INDEX CHANGE_LOG_TABELLA_SEQ ON z6xOH9WKhI.CHANGE_LOG (NOME_TABELLA, SEQ);
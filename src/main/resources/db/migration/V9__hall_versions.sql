@@ -0,0 +1,8 @@
+-- Versione della piantina di ogni sala, incrementata da HallDaoImpl nella stessa transazione di ogni modifica dei posti:
+-- le piantine in cache (HallLayout) vengono riutilizzate finché la versione sul database non cambia.
+CREATE TABLE z6xOH9WKhI.HALL_VERSION (
+    NOME_SALA VARCHAR(100) NOT NULL PRIMARY KEY,
+    VERSIONE BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT INTO z6xOH9WKhI.HALL_VERSION (NOME_SALA, VERSIONE) SELECT DISTINCT NOME_SALA, 0 FROM z6xOH9WKhI.MAPS;
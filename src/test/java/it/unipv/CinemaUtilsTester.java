@@ -1,8 +1,12 @@
 package it.unipv;
 
+import it.unipv.model.HallLayout;
+import it.unipv.model.HallRows;
 import it.unipv.model.Schedule;
+import it.unipv.model.SeatTYPE;
 import it.unipv.utils.ApplicationException;
 import it.unipv.utils.ApplicationUtils;
+import it.unipv.utils.LRUCache;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -108,6 +112,30 @@ public class CinemaUtilsTester extends TestCase {
                   , is(new LinkedList<>(Arrays.asList("Azione", "Commedia", "Dramma"))));   //expected
     }
 
+    @Test
+    public void testLRUCacheByteBudget() {
+        LRUCache<String, String> cache = new LRUCache<>(100);
+        cache.put("A", "a", 40);
+        cache.put("B", "b", 40);
+        assertEquals("a", cache.get("A"));
+
+        //B è il meno usato di recente: viene eliminato per far spazio a C
+        cache.put("C", "c", 40);
+        assertNull(cache.get("B"));
+        assertEquals("a", cache.get("A"));
+        assertEquals(80, cache.getCurrentBytes());
+
+        //Un elemento più grande della cache non viene memorizzato
+        cache.put("D", "d", 101);
+        assertNull(cache.get("D"));
+
+        cache.removeIf(key -> key.equals("A"));
+        assertNull(cache.get("A"));
+        assertEquals(40, cache.getCurrentBytes());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
     @Test
     public void testIfICanAddThisSchedule() {
         assertTrue(checkIfICanAddThisSchedule("17/05/2019 17:00", 60, 30, "17/05/2019 15:29", 60));
@@ -116,6 +144,70 @@ public class CinemaUtilsTester extends TestCase {
         assertFalse(checkIfICanAddThisSchedule("17/05/2019 17:00", 60, 30, "17/05/2019 16:59", 60));
     }
 
+    @Test
+    public void testBestContiguousSeats() {
+        //Tre file da 10 posti, con un corridoio a metà fila; i primi due posti della prima fila sono per disabili
+        String[] names = new String[30];
+        int[] xs = new int[30];
+        int[] ys = new int[30];
+        SeatTYPE[] types = new SeatTYPE[30];
+        for(int i=0; i<30; i++) {
+            int row = i / 10;
+            int column = i % 10;
+            names[i] = String.valueOf((char) ('A' + row)) + column;
+            xs[i] = column * 35 + (column >= 5 ? 45 : 0);
+            ys[i] = row * 30 + (column % 2);
+            types[i] = i < 2 ? SeatTYPE.DISABILE : SeatTYPE.NORMALE;
+        }
+        HallLayout layout = new HallLayout("Sala", 1, names, xs, ys, types);
+        HallRows rows = layout.getRows();
+        assertEquals(3, rows.getRowCount());
+        assertSame(rows, layout.getRows());
+
+        //La fila preferita è la seconda, e a parità di distanza dal centro vince il blocco più a sinistra
+        Set<SeatTYPE> normal = EnumSet.of(SeatTYPE.NORMALE, SeatTYPE.VIP);
+        BitSet unavailable = new BitSet(30);
+        assertEquals(Arrays.asList("B3", "B4"), getNames(layout, rows.findBestBlock(unavailable, 2, normal)));
+
+        unavailable.set(layout.indexOf("B4"));
+        assertEquals(Arrays.asList("B5", "B6"), getNames(layout, rows.findBestBlock(unavailable, 2, normal)));
+
+        //Il corridoio separa i blocchi: nessuna fila ha 6 posti adiacenti
+        assertEquals(0, rows.findBestBlock(new BitSet(30), 6, normal).length);
+        assertEquals(Arrays.asList("A0", "A1"), getNames(layout, rows.findBestBlock(new BitSet(30), 2, EnumSet.of(SeatTYPE.DISABILE))));
+    }
+
+    @Test
+    public void testBestContiguousSeatsOfOneType() {
+        //Una fila da 8 posti senza corridoi: i primi 4 sono VIP, gli altri normali
+        String[] names = new String[8];
+        int[] xs = new int[8];
+        int[] ys = new int[8];
+        SeatTYPE[] types = new SeatTYPE[8];
+        for(int i=0; i<8; i++) {
+            names[i] = "A" + i;
+            xs[i] = i * 35;
+            types[i] = i < 4 ? SeatTYPE.VIP : SeatTYPE.NORMALE;
+        }
+        HallLayout layout = new HallLayout("Sala", 1, names, xs, ys, types);
+        HallRows rows = layout.getRows();
+        Set<SeatTYPE> normalOrVip = EnumSet.of(SeatTYPE.NORMALE, SeatTYPE.VIP);
+
+        //Il blocco centrale A2-A5 mescolerebbe VIP e normali: a parità di distanza dal centro vince il blocco più a sinistra
+        assertEquals(Arrays.asList("A0", "A1", "A2", "A3"), getNames(layout, rows.findBestBlock(new BitSet(8), 4, normalOrVip)));
+        assertEquals(Arrays.asList("A2", "A3"), getNames(layout, rows.findBestBlock(new BitSet(8), 2, normalOrVip)));
+        assertEquals(Arrays.asList("A4", "A5", "A6", "A7"), getNames(layout, rows.findBestBlock(new BitSet(8), 4, EnumSet.of(SeatTYPE.NORMALE))));
+        assertEquals(0, rows.findBestBlock(new BitSet(8), 5, normalOrVip).length);
+    }
+
+    private List<String> getNames(HallLayout layout, int[] indexes) {
+        List<String> res = new ArrayList<>();
+        for(int i : indexes) {
+            res.add(layout.getName(i));
+        }
+        return res;
+    }
+
     private boolean checkIfICanAddThisSchedule(String existingScheduleDate, int existingMovieDuration, int pause, String incomingScheduleDate, int incomingMovieDuration) {
         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
         Calendar realIncomingScheduleDate = Calendar.getInstance();
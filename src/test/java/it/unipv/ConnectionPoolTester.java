@@ -0,0 +1,116 @@
+package it.unipv;
+
+import it.unipv.db.ConnectionPool;
+import it.unipv.db.DBConnection;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class ConnectionPoolTester extends TestCase {
+
+    //Conta quante volte le connessioni finte hanno dovuto preparare realmente uno statement
+    private AtomicInteger prepareCount = new AtomicInteger();
+    private AtomicInteger openCount = new AtomicInteger();
+
+    @Test
+    public void testIfPoolReusesReleasedConnections() {
+        ConnectionPool pool = new ConnectionPool(this::openFakeConnection, 2);
+
+        DBConnection first = pool.borrowConnection();
+        DBConnection second = pool.borrowConnection();
+        assertNotSame(first, second);
+        assertEquals(2, openCount.get());
+
+        second.close();
+        DBConnection third = pool.borrowConnection();
+        assertSame(second, third);
+        assertEquals(2, openCount.get());
+
+        first.close();
+        third.close();
+        assertEquals(2, pool.getIdleConnections());
+        pool.close();
+        assertEquals(0, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testIfStatementsAreCachedPerConnection() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::openFakeConnection, 1);
+        String query = "select * from MAPS where NOME_SALA = ?";
+
+        for(int i=0; i<5; i++) {
+            try (DBConnection dbConnection = pool.borrowConnection();
+                 PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+                ps.setString(1, "Sala " + i);
+            }
+        }
+
+        assertEquals(1, prepareCount.get());
+        assertEquals(4, pool.getStatementCacheHits());
+        assertEquals(1, pool.getStatementCacheMisses());
+        pool.close();
+    }
+
+    @Test
+    public void testIfSameQueryOpenedTwiceIsNotShared() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::openFakeConnection, 1);
+        String query = "select * from USER";
+
+        try (DBConnection dbConnection = pool.borrowConnection();
+             PreparedStatement ps1 = dbConnection.getPreparedStatementFromQuery(query);
+             PreparedStatement ps2 = dbConnection.getPreparedStatementFromQuery(query)) {
+            assertNotSame(ps1, ps2);
+        }
+        assertEquals(2, prepareCount.get());
+        pool.close();
+    }
+
+    @Test
+    public void testIfCloseListenersRunOnce() {
+        ConnectionPool pool = new ConnectionPool(this::openFakeConnection, 1);
+        AtomicInteger closeCount = new AtomicInteger();
+        pool.addCloseListener(closeCount::incrementAndGet);
+        //Le azioni vengono eseguite prima della chiusura, quindi possono ancora usare le connessioni del pool
+        pool.addCloseListener(() -> pool.releaseConnection(pool.borrowConnection()));
+        pool.close();
+        pool.close();
+        assertEquals(1, closeCount.get());
+
+        //Un pool già chiuso esegue subito le nuove azioni
+        pool.addCloseListener(closeCount::incrementAndGet);
+        assertEquals(2, closeCount.get());
+    }
+
+    //Backend finto: le connessioni non sono collegate ad alcun database
+    private Connection openFakeConnection() {
+        openCount.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    prepareCount.incrementAndGet();
+                    return fakeStatement();
+                case "getAutoCommit":
+                case "isValid":
+                    return true;
+                case "isClosed":
+                    return false;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private PreparedStatement fakeStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+            if(method.getName().equals("isClosed")) { return false; }
+            return null;
+        });
+    }
+}
@@ -1,6 +1,40 @@
 package it.unipv;
 
+import it.unipv.dao.BlobDiskCache;
+import it.unipv.dao.CatalogCache;
+import it.unipv.dao.ChangeTracker;
+import it.unipv.dao.HallDao;
+import it.unipv.dao.HallDaoImpl;
+import it.unipv.dao.MovieDao;
+import it.unipv.dao.MovieDaoImpl;
+import it.unipv.dao.PrenotationDao;
+import it.unipv.dao.PrenotationDaoImpl;
+import it.unipv.dao.PrenotationSeatMigrator;
+import it.unipv.dao.ScheduleDao;
+import it.unipv.dao.ScheduleDaoImpl;
+import it.unipv.dao.SeatHoldService;
+import it.unipv.dao.SeatOccupancyIndex;
+import it.unipv.dao.SyncedReplica;
+import it.unipv.db.ConnectionPool;
 import it.unipv.db.DBConnection;
+import it.unipv.db.EmbeddedDBBackend;
+import it.unipv.db.SchemaMigrator;
+import it.unipv.model.ChangeSet;
+import it.unipv.model.HallLayout;
+import it.unipv.model.HallSeatChanges;
+import it.unipv.model.HallSeatCounts;
+import it.unipv.model.Movie;
+import it.unipv.model.MovieStatusTYPE;
+import it.unipv.model.MovieTYPE;
+import it.unipv.model.PosterRenditionTYPE;
+import it.unipv.model.Prenotation;
+import it.unipv.model.ReservationResult;
+import it.unipv.model.Schedule;
+import it.unipv.model.ScreeningAvailability;
+import it.unipv.model.ScreeningKey;
+import it.unipv.model.Seat;
+import it.unipv.model.SeatTYPE;
+import it.unipv.utils.ApplicationException;
 import it.unipv.utils.DataReferences;
 import junit.framework.TestCase;
 import org.junit.After;
@@ -9,31 +43,65 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 public class DBTester extends TestCase {
 
-    private DBConnection dbConnection;
+    private ConnectionPool connectionPool;
 
+    //Database embedded in memoria: i test non richiedono la rete
     @Before
     public void before() {
-        dbConnection = new DBConnection();
+        connectionPool = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 2);
+        new SchemaMigrator(connectionPool).migrate();
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             PreparedStatement clear = dbConnection.getPreparedStatementFromQuery("delete from " + DataReferences.DBNAME + ".MAPS");
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery("insert into " + DataReferences.DBNAME + ".MAPS(NOME_SALA,NOME_POSTO,COORD_X, COORD_Y, TIPO_POSTO) values (?,?,?,?,?)")) {
+            ps.setString(1, "Sala 1");
+            ps.setString(2, "A1");
+            ps.setInt(3, 5);
+            ps.setInt(4, 5);
+            ps.setString(5, "NORMALE");
+            clear.execute();
+            ps.execute();
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
     }
 
     @After
     public void after() {
-        dbConnection.close();
+        connectionPool.close();
     }
 
     @Test
     public void testQuery() throws SQLException {
         List<String> result = new ArrayList<>();
 
-        try (ResultSet resultSet = dbConnection.getResultFromQuery("select distinct NOME_SALA from " + DataReferences.DBNAME + ".MAPS")) {
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("select distinct NOME_SALA from " + DataReferences.DBNAME + ".MAPS")) {
             while (resultSet.next()) {
                 result.add(resultSet.getString("NOME_SALA"));
             }
@@ -48,9 +116,746 @@ public class DBTester extends TestCase {
 
     @Test
     public void checkConnection() throws SQLException {
+        DBConnection dbConnection = connectionPool.borrowConnection();
         assertFalse(dbConnection.getConnection().isClosed());
 
+        //La restituzione non chiude la connessione fisica, la chiusura del pool sì
         dbConnection.close();
+        assertFalse(dbConnection.getConnection().isClosed());
+        connectionPool.close();
         assertTrue(dbConnection.getConnection().isClosed());
     }
+
+    @Test
+    public void testHallSeatsBatch() {
+        HallDaoImpl hallDao = new HallDaoImpl(connectionPool);
+        List<Seat> seats = new ArrayList<>();
+        for(int i=0; i<450; i++) {
+            Seat s = new Seat(i%30, i/30, i%10==0 ? SeatTYPE.VIP : SeatTYPE.NORMALE);
+            s.setText("P" + i);
+            seats.add(s);
+        }
+        hallDao.insertNewHall("Sala Grande", seats);
+        assertEquals(450, hallDao.retrieveSeats("Sala Grande").size());
+        assertTrue(hallDao.getLastSeatsWriteRate()>0);
+
+        //Vengono scritte solo le modifiche: un posto spostato, uno rinominato, uno eliminato ed uno nuovo
+        HallSeatChanges changes = new HallSeatChanges();
+        Seat moved = new Seat(100, 100, SeatTYPE.DISABILE);
+        moved.setText("P1");
+        changes.addUpdated(moved);
+        changes.addRemoved("P2");
+        Seat renamed = new Seat(2, 0, SeatTYPE.NORMALE);
+        renamed.setText("P2 bis");
+        changes.addInserted(renamed);
+        changes.addRemoved("P3");
+        Seat added = new Seat(200, 200, SeatTYPE.VIP);
+        added.setText("P450");
+        changes.addInserted(added);
+        hallDao.updateHallSeats("Sala Grande", changes);
+
+        List<Seat> updated = hallDao.retrieveSeats("Sala Grande");
+        assertEquals(450, updated.size());
+        for(Seat s : updated) {
+            assertFalse(s.getText().equals("P2") || s.getText().equals("P3"));
+            if(s.getText().equals("P1")) {
+                assertEquals(SeatTYPE.DISABILE, s.getType());
+                assertEquals(100, s.getX());
+            }
+        }
+
+        //Se un posto non è valido l'aggiornamento viene annullato e la sala resta invariata
+        HallSeatChanges invalid = new HallSeatChanges();
+        invalid.addRemoved("P4");
+        Seat invalidSeat = new Seat(0, 0, SeatTYPE.NORMALE);
+        invalidSeat.setText("P451");
+        invalidSeat.setType(null);
+        invalid.addInserted(invalidSeat);
+        try {
+            hallDao.updateHallSeats("Sala Grande", invalid);
+            fail();
+        } catch (RuntimeException expected) { }
+        assertEquals(450, hallDao.retrieveSeats("Sala Grande").size());
+    }
+
+    @Test
+    public void testScheduleQueries() {
+        ScheduleDao scheduleDao = new ScheduleDaoImpl(connectionPool);
+        String[][] schedules = { {"SCH1", "02/01/2030", "21:00", "Sala A"}
+                               , {"SCH1", "15/12/2029", "18:00", "Sala B"}
+                               , {"SCH1", "02/01/2030", "09:30", "Sala A"}
+                               , {"SCH2", "01/01/2030", "20:00", "Sala A"} };
+        for(String[] s : schedules) {
+            Schedule toInsert = new Schedule();
+            toInsert.setMovieCode(s[0]);
+            toInsert.setDate(s[1]);
+            toInsert.setTime(s[2]);
+            toInsert.setHallName(s[3]);
+            scheduleDao.insertNewMovieSchedule(toInsert);
+        }
+
+        List<Schedule> byMovie = scheduleDao.retrieveSchedulesByMovie("SCH1");
+        assertEquals(3, byMovie.size());
+        assertEquals("15/12/2029", byMovie.get(0).getDate());
+        assertEquals("09:30", byMovie.get(1).getTime());
+        assertEquals("21:00", byMovie.get(2).getTime());
+
+        assertEquals(2, scheduleDao.retrieveSchedulesByMovieAndDate("SCH1", "02/01/2030").size());
+        assertEquals(3, scheduleDao.retrieveSchedulesByHall("Sala A").size());
+        assertEquals("SCH2", scheduleDao.retrieveSchedulesByHall("Sala A").get(0).getMovieCode());
+        assertEquals(1, scheduleDao.retrieveSchedulesBetween("31/12/2029", "01/01/2030").size());
+        assertEquals(4, scheduleDao.retrieveSchedulesBetween("15/12/2029", "02/01/2030").size());
+
+        //La ricerca per intervallo di giorni usa l'indice sulla data ordinabile, invece di scorrere tutta la tabella
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("explain select * from " + DataReferences.DBNAME + ".SCHEDULE "
+                                                                 + "where DATA_ORDINABILE between '20291215' and '20300102' order by DATA_ORDINABILE, ORA")) {
+            assertTrue(resultSet.next());
+            assertTrue(resultSet.getString(1).contains("SCHEDULE_DATA_ORA"));
+        } catch (SQLException e) {
+            throw new ApplicationException(e);
+        }
+
+        for(Schedule s : scheduleDao.retrieveMovieSchedules()) {
+            scheduleDao.deleteMovieSchedule(s);
+        }
+    }
+
+    @Test
+    public void testPrenotationQueries() {
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        prenotationDao.insertNewPrenotation(new Prenotation("Mario", "Film", "PRN1", "02/01/2030", "21:00", "Sala A", "A1-A2", "15.0"));
+        prenotationDao.insertNewPrenotation(new Prenotation("Luigi", "Film", "PRN1", "02/01/2030", "21:00", "Sala A", "B1", "7.5"));
+        prenotationDao.insertNewPrenotation(new Prenotation("Mario", "Film", "PRN1", "03/01/2030", "21:00", "Sala A", "C1", "7.5"));
+
+        assertEquals(2, prenotationDao.retrieveByUser("Mario").size());
+        assertEquals(2, prenotationDao.countByUser("Mario"));
+        assertEquals(0, prenotationDao.countByUser("Peach"));
+        assertEquals(2, prenotationDao.retrieveByScreening("PRN1", "02/01/2030", "21:00", "Sala A").size());
+        assertTrue(prenotationDao.existsByScreening("PRN1", "03/01/2030", "21:00", "Sala A"));
+        assertFalse(prenotationDao.existsByScreening("PRN1", "03/01/2030", "18:00", "Sala A"));
+
+        //Due prenotazioni dello stesso utente per la stessa proiezione hanno ID diversi: se ne elimina una sola
+        Prenotation duplicate = new Prenotation("Luigi", "Film", "PRN1", "02/01/2030", "21:00", "Sala A", "B2", "7.5");
+        long id = prenotationDao.insertNewPrenotation(duplicate);
+        assertEquals(id, duplicate.getId());
+        prenotationDao.deletePrenotation(duplicate);
+        assertEquals(1, prenotationDao.retrieveByUser("Luigi").size());
+
+        for(Prenotation p : prenotationDao.retrievePrenotationList()) {
+            prenotationDao.deletePrenotation(p);
+        }
+    }
+
+    @Test
+    public void testMigrations() throws SQLException {
+        //Il database è già stato migrato nel before: una nuova esecuzione non applica nulla
+        assertEquals(0, new SchemaMigrator(connectionPool).migrate());
+
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("select count(*) from " + DataReferences.DBNAME + ".SCHEMA_VERSION")) {
+            resultSet.next();
+            assertEquals(DataReferences.DBMIGRATIONS.size(), resultSet.getInt(1));
+        }
+
+        //Uno script modificato dopo essere stato applicato blocca la migrazione
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery("update " + DataReferences.DBNAME + ".SCHEMA_VERSION set CHECKSUM = 'x' where VERSION = 1")) {
+            ps.execute();
+        }
+        try {
+            new SchemaMigrator(connectionPool).migrate();
+            fail();
+        } catch (ApplicationException expected) {
+        } finally {
+            //V1 è idempotente: la si può rieseguire per ripristinare il checksum corretto
+            try (DBConnection dbConnection = connectionPool.borrowConnection();
+                 PreparedStatement ps = dbConnection.getPreparedStatementFromQuery("delete from " + DataReferences.DBNAME + ".SCHEMA_VERSION where VERSION = 1")) {
+                ps.execute();
+            }
+            assertEquals(1, new SchemaMigrator(connectionPool).migrate());
+        }
+    }
+
+    @Test
+    public void testConcurrentMigrations() throws Exception {
+        //Due postazioni avviate insieme su un database vuoto: gli script vengono applicati una sola volta
+        ConnectionPool first = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester-lock"), 2);
+        ConnectionPool second = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester-lock"), 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> firstMigration = executor.submit(() -> new SchemaMigrator(first).migrate());
+            Future<Integer> secondMigration = executor.submit(() -> new SchemaMigrator(second).migrate());
+            assertEquals(DataReferences.DBMIGRATIONS.size(), firstMigration.get() + secondMigration.get());
+        } finally {
+            executor.shutdown();
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testHallPreviewDiskCache() throws IOException, SQLException {
+        File cacheDir = Files.createTempDirectory("blobcache").toFile();
+        HallDao hallDao = new HallDaoImpl(connectionPool, new BlobDiskCache(cacheDir));
+        byte[] preview = new byte[] {1, 2, 3, 4};
+        hallDao.insertNewHallpreview("Sala Cache", new ByteArrayInputStream(preview));
+        try {
+            assertTrue(new File(cacheDir, BlobDiskCache.hashOf(preview)).isFile());
+
+            //Se l'hash sul database corrisponde ad un file in cache, il blob non viene scaricato
+            executeUpdate("update " + DataReferences.DBNAME + ".MAPPREVIEWS set PREVIEW = X'09' where NOME_SALA = 'Sala Cache'");
+            assertTrue(Arrays.equals(preview, BlobDiskCache.readFully(hallDao.retrieveHallPreviewAsStream("Sala Cache"))));
+
+            //Senza hash (preview caricata prima della cache) il blob viene scaricato e l'hash salvato
+            executeUpdate("update " + DataReferences.DBNAME + ".MAPPREVIEWS set PREVIEW_HASH = null where NOME_SALA = 'Sala Cache'");
+            assertTrue(Arrays.equals(new byte[] {9}, BlobDiskCache.readFully(hallDao.retrieveHallPreviewAsStream("Sala Cache"))));
+            assertTrue(new File(cacheDir, BlobDiskCache.hashOf(new byte[] {9})).isFile());
+            assertTrue(Arrays.equals(new byte[] {9}, BlobDiskCache.readFully(hallDao.retrieveHallPreviewAsStream("Sala Cache"))));
+
+            assertNull(hallDao.retrieveHallPreviewAsStream("Sala Inesistente"));
+        } finally {
+            hallDao.removeHallAndPreview("Sala Cache");
+        }
+    }
+
+    @Test
+    public void testPosterRenditionsOnUpload() throws IOException, SQLException {
+        File poster = File.createTempFile("poster", ".png");
+        ImageIO.write(new BufferedImage(1000, 1500, BufferedImage.TYPE_INT_RGB), "png", poster);
+        MovieDao movieDao = new MovieDaoImpl(connectionPool, new BlobDiskCache(Files.createTempDirectory("blobcache").toFile()));
+        Movie movie = new Movie();
+        movie.setCodice("RENDITION");
+        movie.setTipo(MovieTYPE.TWOD);
+        movie.setStatus(MovieStatusTYPE.AVAILABLE);
+        movieDao.insertNewMovie(movie, new FileInputStream(poster));
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("select FORMATO, IMMAGINE from " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION where CODICE_FILM = 'RENDITION'")) {
+            int count = 0;
+            while(resultSet.next()) {
+                BufferedImage rendition = ImageIO.read(resultSet.getBinaryStream("IMMAGINE"));
+                assertEquals(PosterRenditionTYPE.valueOf(resultSet.getString("FORMATO")).getWidth(), rendition.getWidth());
+                assertEquals(rendition.getWidth() * 3 / 2, rendition.getHeight());
+                count++;
+            }
+            assertEquals(PosterRenditionTYPE.values().length, count);
+        } finally {
+            movieDao.deleteMovie(movie);
+        }
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("select count(*) from " + DataReferences.DBNAME + ".MOVIE_POSTER_RENDITION")) {
+            resultSet.next();
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void testSeatCountsPerHall() {
+        HallDao hallDao = new HallDaoImpl(connectionPool);
+        List<Seat> seats = new ArrayList<>();
+        for(int i=0; i<12; i++) {
+            Seat s = new Seat(i, 0, i<2 ? SeatTYPE.VIP : i<3 ? SeatTYPE.DISABILE : SeatTYPE.NORMALE);
+            s.setText("C" + i);
+            seats.add(s);
+        }
+        hallDao.insertNewHall("Sala Conteggio", seats);
+        try {
+            Map<String, HallSeatCounts> counts = hallDao.retrieveSeatCountsPerHall();
+            HallSeatCounts hall = counts.get("Sala Conteggio");
+            assertEquals(12, hall.getTotal());
+            assertEquals(2, hall.getCount(SeatTYPE.VIP));
+            assertEquals(1, hall.getCount(SeatTYPE.DISABILE));
+            assertEquals(9, hall.getCount(SeatTYPE.NORMALE));
+            assertEquals(0, hall.getCount(SeatTYPE.OCCUPATO));
+            assertEquals(1, counts.get("Sala 1").getTotal());
+        } finally {
+            hallDao.removeHallAndPreview("Sala Conteggio");
+        }
+    }
+
+    @Test
+    public void testCatalogCache() throws SQLException {
+        ScheduleDao scheduleDao = new ScheduleDaoImpl(connectionPool);
+        CatalogCache catalogCache = CatalogCache.of(connectionPool);
+        Schedule toInsert = new Schedule();
+        toInsert.setMovieCode("CAT1");
+        toInsert.setDate("02/01/2030");
+        toInsert.setTime("21:00");
+        toInsert.setHallName("Sala 1");
+        scheduleDao.insertNewMovieSchedule(toInsert);
+
+        //La seconda lettura, anche se filtrata, non interroga il database; le copie restituite sono modificabili
+        List<Schedule> first = scheduleDao.retrieveMovieSchedules();
+        first.get(0).setHallName("Modificata");
+        first.clear();
+        assertEquals(1, catalogCache.getMisses());
+        assertEquals("Sala 1", scheduleDao.retrieveSchedulesByMovie("CAT1").get(0).getHallName());
+        assertEquals(1, scheduleDao.retrieveSchedulesBetween("01/01/2030", "02/01/2030").size());
+
+        //Le scritture di un'altra istanza del programma sono visibili solo dopo il TTL o un'invalidazione
+        ConnectionPool otherWorkstation = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 1);
+        Schedule other = new Schedule();
+        other.setMovieCode("CAT1");
+        other.setDate("03/01/2030");
+        other.setTime("18:00");
+        other.setHallName("Sala 1");
+        try {
+            new ScheduleDaoImpl(otherWorkstation).insertNewMovieSchedule(other);
+        } finally {
+            otherWorkstation.close();
+        }
+        assertEquals(1, scheduleDao.retrieveMovieSchedules().size());
+        catalogCache.invalidate(CatalogCache.Catalog.SCHEDULES);
+        assertEquals(2, scheduleDao.retrieveMovieSchedules().size());
+
+        //Le scritture tramite DAO invalidano subito il catalogo
+        scheduleDao.deleteMovieSchedule(toInsert);
+        scheduleDao.deleteMovieSchedule(other);
+        assertEquals(0, scheduleDao.retrieveMovieSchedules().size());
+        assertEquals(1, new HallDaoImpl(connectionPool).retrieveHallNames().size());
+        new HallDaoImpl(connectionPool).renameHallAndPreview("Sala 1", "Sala 2");
+        assertEquals("Sala 2", new HallDaoImpl(connectionPool).retrieveHallNames().get(0));
+    }
+
+    @Test
+    public void testChangeTracker() {
+        //Un secondo pool sullo stesso database simula un'altra postazione
+        ConnectionPool otherWorkstation = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 1);
+        try {
+            ScheduleDao otherScheduleDao = new ScheduleDaoImpl(otherWorkstation);
+            ChangeTracker otherTracker = ChangeTracker.of(otherWorkstation);
+            otherTracker.poll();
+            int before = otherScheduleDao.retrieveMovieSchedules().size();
+
+            Schedule toInsert = new Schedule();
+            toInsert.setMovieCode("CHG1");
+            toInsert.setDate("02/01/2030");
+            toInsert.setTime("21:00");
+            toInsert.setHallName("Sala 1");
+            new ScheduleDaoImpl(connectionPool).insertNewMovieSchedule(toInsert);
+            assertEquals(before, otherScheduleDao.retrieveMovieSchedules().size());
+
+            assertEquals(EnumSet.of(ChangeTracker.Table.SCHEDULE), otherTracker.poll());
+            assertEquals(before + 1, otherScheduleDao.retrieveMovieSchedules().size());
+            assertTrue(otherTracker.poll().isEmpty());
+
+            new ScheduleDaoImpl(connectionPool).deleteMovieSchedule(toInsert);
+        } finally {
+            otherWorkstation.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testChangeTrackerKeepsPollingAfterErrors() throws InterruptedException {
+        ConnectionPool otherWorkstation = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 1);
+        ChangeTracker otherTracker = ChangeTracker.of(otherWorkstation);
+        try {
+            //Un listener che fallisce non deve fermare il poller: la seconda modifica viene comunque rilevata
+            CountDownLatch notifications = new CountDownLatch(2);
+            otherTracker.addListener(tables -> {
+                notifications.countDown();
+                throw new IllegalStateException("listener fallito");
+            });
+            otherTracker.poll();
+            otherTracker.start(20);
+            ChangeTracker.of(connectionPool).tableChanged(ChangeTracker.Table.PRICES);
+            while(notifications.getCount() == 2) { Thread.sleep(10); }
+            ChangeTracker.of(connectionPool).tableChanged(ChangeTracker.Table.PRICES);
+            assertTrue(notifications.await(5, TimeUnit.SECONDS));
+        } finally {
+            otherTracker.close();
+            otherWorkstation.close();
+        }
+        //Alla chiusura del pool le istanze condivise vengono eliminate, insieme ai loro listener
+        assertNotSame(otherTracker, ChangeTracker.of(otherWorkstation));
+
+        //Una versione non aggiornabile, qui per il pool chiuso, non fa fallire la scrittura che l'ha segnalata
+        otherTracker.tableChanged(ChangeTracker.Table.PRICES);
+    }
+
+    @Test
+    public void testPrenotationDeltaSync() throws SQLException {
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        Prenotation existing = new Prenotation("Mario", "Film", "SYN1", "02/01/2030", "21:00", "Sala 1", "A1", "7.5");
+        prenotationDao.insertNewPrenotation(existing);
+
+        //La prima sincronizzazione scarica tutta la tabella, comprese le righe scritte senza passare dal log
+        executeUpdate("insert into " + DataReferences.DBNAME + ".PRENOTATION(NOMEUTENTE, NOMEFILM, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, POSTISELEZIONATI, COSTOTOTALE) "
+                    + "values ('Luigi', 'Film', 'SYN1', '02/01/2030', '21:00', 'Sala 1', 'A2', '7.5')");
+        ChangeSet<Prenotation> full = prenotationDao.retrieveChangesSince(0);
+        assertTrue(full.isFull());
+        SyncedReplica<Prenotation> replica = new SyncedReplica<>(prenotationDao::retrieveChangesSince, Prenotation::getId);
+        replica.refresh();
+        assertEquals(full.getUpserted().size(), replica.size());
+
+        //Le successive solo le righe inserite o eliminate nel frattempo
+        Prenotation added = new Prenotation("Mario", "Film", "SYN1", "02/01/2030", "21:00", "Sala 1", "A3", "7.5");
+        prenotationDao.insertNewPrenotation(added);
+        prenotationDao.deletePrenotation(existing);
+        ChangeSet<Prenotation> delta = replica.refresh();
+        assertFalse(delta.isFull());
+        assertEquals(1, delta.getUpserted().size());
+        assertEquals(added.getId(), delta.getUpserted().get(0).getId());
+        assertTrue(delta.getDeletedIds().contains(existing.getId()));
+        assertEquals(1, replica.retrieve(p -> p.getPostiSelezionati().equals("A3")).size());
+        assertTrue(replica.retrieve(p -> p.getId() == existing.getId()).isEmpty());
+
+        for(Prenotation p : prenotationDao.retrieveByScreening("SYN1", "02/01/2030", "21:00", "Sala 1")) {
+            prenotationDao.deletePrenotation(p);
+        }
+        replica.refresh();
+        assertTrue(replica.retrieve(p -> p.getCodiceFilm().equals("SYN1")).isEmpty());
+    }
+
+    @Test
+    public void testChangeLogPruning() throws SQLException {
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        ChangeTracker tracker = ChangeTracker.of(connectionPool);
+        long stale = prenotationDao.retrieveChangesSince(0).getWatermark();
+        Prenotation first = new Prenotation("Mario", "Film", "PRN1", "03/01/2030", "21:00", "Sala 1", "A1", "7.5");
+        Prenotation second = new Prenotation("Mario", "Film", "PRN1", "03/01/2030", "21:00", "Sala 1", "A2", "7.5");
+        try {
+            //Il log non ancora letto da questa postazione viene mantenuto
+            prenotationDao.insertNewPrenotation(first);
+            tracker.pruneChangeLog();
+            ChangeSet<Prenotation> delta = prenotationDao.retrieveChangesSince(stale);
+            assertFalse(delta.isFull());
+            assertEquals(first.getId(), delta.getUpserted().get(0).getId());
+
+            //Letto da tutti, resta solo l'ultima riga
+            prenotationDao.insertNewPrenotation(second);
+            prenotationDao.retrieveChangesSince(delta.getWatermark());
+            assertTrue(tracker.pruneChangeLog() > 0);
+            try (DBConnection dbConnection = connectionPool.borrowConnection();
+                 ResultSet resultSet = dbConnection.getResultFromQuery("select count(*) from " + DataReferences.DBNAME + ".CHANGE_LOG where NOME_TABELLA = 'PRENOTATION'")) {
+                resultSet.next();
+                assertEquals(1, resultSet.getInt(1));
+            }
+
+            //Un watermark il cui log è stato eliminato riceve l'intera tabella
+            assertTrue(prenotationDao.retrieveChangesSince(stale).isFull());
+        } finally {
+            prenotationDao.deletePrenotation(first);
+            prenotationDao.deletePrenotation(second);
+        }
+    }
+
+    @Test
+    public void testHallLayoutCache() {
+        HallDao hallDao = new HallDaoImpl(connectionPool);
+        List<Seat> seats = new ArrayList<>();
+        for(int i=0; i<20; i++) {
+            Seat s = new Seat(i*10, 5, i<4 ? SeatTYPE.VIP : SeatTYPE.NORMALE);
+            s.setText("L" + (char) ('A' + i));
+            seats.add(s);
+        }
+        hallDao.insertNewHall("Sala Piantina", seats);
+        try {
+            HallLayout layout = hallDao.retrieveHallLayout("Sala Piantina");
+            assertEquals(20, layout.size());
+            assertEquals(4, layout.getCount(SeatTYPE.VIP));
+            assertEquals(16, layout.getCount(SeatTYPE.NORMALE));
+            int index = layout.indexOf("LC");
+            assertEquals(20, layout.getX(index));
+            assertEquals(SeatTYPE.VIP, layout.getType(index));
+            assertEquals(-1, layout.indexOf("ZZ"));
+
+            //Finché la versione non cambia viene restituita la piantina in cache
+            assertSame(layout, hallDao.retrieveHallLayout("Sala Piantina"));
+
+            //Un altro database con una sala dallo stesso nome non riceve la piantina in cache
+            ConnectionPool otherDatabase = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester-other"), 2);
+            try {
+                new SchemaMigrator(otherDatabase).migrate();
+                HallDao otherHallDao = new HallDaoImpl(otherDatabase);
+                otherHallDao.insertNewHall("Sala Piantina", seats.subList(0, 2));
+                assertEquals(2, otherHallDao.retrieveHallLayout("Sala Piantina").size());
+                assertSame(layout, hallDao.retrieveHallLayout("Sala Piantina"));
+            } finally {
+                otherDatabase.close();
+            }
+
+            HallSeatChanges changes = new HallSeatChanges();
+            Seat moved = new Seat(500, 5, SeatTYPE.DISABILE);
+            moved.setText("LC");
+            changes.addUpdated(moved);
+            hallDao.updateHallSeats("Sala Piantina", changes);
+            HallLayout updated = hallDao.retrieveHallLayout("Sala Piantina");
+            assertTrue(updated.getVersion() > layout.getVersion());
+            assertEquals(500, updated.getX(updated.indexOf("LC")));
+            assertEquals(1, updated.getCount(SeatTYPE.DISABILE));
+        } finally {
+            hallDao.removeHallAndPreview("Sala Piantina");
+        }
+        assertEquals(0, hallDao.retrieveHallLayout("Sala Piantina").size());
+    }
+
+    @Test
+    public void testSeatOccupancyIndex() {
+        HallDao hallDao = new HallDaoImpl(connectionPool);
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        List<Seat> seats = new ArrayList<>();
+        for(int i=0; i<10; i++) {
+            Seat s = new Seat(i*10, 5, SeatTYPE.NORMALE);
+            s.setText("B" + i);
+            seats.add(s);
+        }
+        hallDao.insertNewHall("Sala Indice", seats);
+        ScreeningKey screening = new ScreeningKey("IDX1", "03/01/2030", "18:00", "Sala Indice");
+        Prenotation first = new Prenotation("Mario", "Film", "IDX1", "03/01/2030", "18:00", "Sala Indice", "B1-B2", "15");
+        Prenotation second = new Prenotation("Luigi", "Film", "IDX1", "03/01/2030", "18:00", "Sala Indice", "B7", "7.5");
+        Prenotation otherHour = new Prenotation("Anna", "Film", "IDX1", "03/01/2030", "21:00", "Sala Indice", "B3", "7.5");
+        try {
+            prenotationDao.insertNewPrenotation(first);
+            SeatOccupancyIndex index = new SeatOccupancyIndex(new SyncedReplica<>(prenotationDao::retrieveChangesSince, Prenotation::getId));
+            index.refresh();
+            HallLayout layout = hallDao.retrieveHallLayout("Sala Indice");
+            BitSet occupied = index.getOccupiedSeats(screening, layout);
+            assertEquals(2, occupied.cardinality());
+            assertTrue(occupied.get(layout.indexOf("B1")));
+            assertTrue(occupied.get(layout.indexOf("B2")));
+
+            //Le prenotazioni successive aggiornano la proiezione già calcolata
+            prenotationDao.insertNewPrenotation(second);
+            prenotationDao.insertNewPrenotation(otherHour);
+            index.refresh();
+            assertTrue(index.isOccupied(screening, layout, layout.indexOf("B7")));
+            assertFalse(index.isOccupied(screening, layout, layout.indexOf("B3")));
+
+            prenotationDao.deletePrenotation(first);
+            index.refresh();
+            occupied = index.getOccupiedSeats(screening, layout);
+            assertEquals(1, occupied.cardinality());
+            assertTrue(occupied.get(layout.indexOf("B7")));
+        } finally {
+            for(Prenotation p : prenotationDao.retrievePrenotationList()) {
+                if(p.getCodiceFilm().equals("IDX1")) {
+                    prenotationDao.deletePrenotation(p);
+                }
+            }
+            hallDao.removeHallAndPreview("Sala Indice");
+        }
+    }
+
+    @Test
+    public void testScreeningAvailability() {
+        HallDao hallDao = new HallDaoImpl(connectionPool);
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        List<Seat> seats = new ArrayList<>();
+        for(int i=0; i<8; i++) {
+            Seat s = new Seat(i*10, 5, i<2 ? SeatTYPE.VIP : i<4 ? SeatTYPE.DISABILE : SeatTYPE.NORMALE);
+            s.setText("E" + i);
+            seats.add(s);
+        }
+        hallDao.insertNewHall("Sala Disponibilita", seats);
+        ScreeningKey screening = new ScreeningKey("AVL1", "07/01/2030", "16:00", "Sala Disponibilita");
+        Prenotation booking = new Prenotation("Mario", "Film", "AVL1", "07/01/2030", "16:00", "Sala Disponibilita", "E0-E2-E5", "22.5");
+        try {
+            SeatOccupancyIndex index = new SeatOccupancyIndex(new SyncedReplica<>(prenotationDao::retrieveChangesSince, Prenotation::getId));
+            HallLayout layout = hallDao.retrieveHallLayout("Sala Disponibilita");
+            ScreeningAvailability empty = index.getAvailability(screening, layout);
+            assertEquals(8, empty.getTotal());
+            assertEquals(8, empty.getFree());
+
+            //I contatori della proiezione già calcolata vengono aggiornati dalle nuove prenotazioni
+            prenotationDao.insertNewPrenotation(booking);
+            index.refresh();
+            ScreeningAvailability availability = index.getAvailability(screening, layout);
+            assertEquals(5, availability.getFree());
+            assertEquals(1, availability.getFreeVip());
+            assertEquals(1, availability.getFreeAccessible());
+            assertEquals(13, availability.plus(empty).getFree());
+
+            prenotationDao.deletePrenotation(booking);
+            index.refresh();
+            assertEquals(8, index.getAvailability(screening, layout).getFree());
+        } finally {
+            hallDao.removeHallAndPreview("Sala Disponibilita");
+        }
+    }
+
+    @Test
+    public void testSeatReservation() {
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        ConnectionPool otherPool = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 1);
+        PrenotationDao otherWorkstation = new PrenotationDaoImpl(otherPool);
+        Prenotation first = new Prenotation("Mario", "Film", "RES1", "04/01/2030", "20:00", "Sala 1", "C1-C2-C3", "22.5");
+        Prenotation second = new Prenotation("Luigi", "Film", "RES1", "04/01/2030", "20:00", "Sala 1", "C4-C3-C1", "22.5");
+        Prenotation otherHall = new Prenotation("Luigi", "Film", "RES1", "04/01/2030", "20:00", "Sala 2", "C3", "7.5");
+        try {
+            assertTrue(prenotationDao.reserve(first).isReserved());
+
+            //Nessun posto viene prenotato se anche uno solo è occupato, e vengono indicati esattamente quelli occupati
+            ReservationResult result = otherWorkstation.reserve(second);
+            assertFalse(result.isReserved());
+            assertEquals(Arrays.asList("C3", "C1"), result.getConflicts());
+            assertEquals(1, prenotationDao.retrieveByScreening("RES1", "04/01/2030", "20:00", "Sala 1").size());
+            try {
+                otherWorkstation.insertNewPrenotation(second);
+                fail();
+            } catch (ApplicationException e) {
+                assertTrue(e.getMessage().contains("C3-C1"));
+            }
+
+            assertTrue(otherWorkstation.reserve(otherHall).isReserved());
+
+            //Eliminando la prenotazione i posti tornano liberi
+            prenotationDao.deletePrenotation(first);
+            assertTrue(otherWorkstation.reserve(second).isReserved());
+        } finally {
+            for(Prenotation p : prenotationDao.retrievePrenotationList()) {
+                if(p.getCodiceFilm().equals("RES1")) {
+                    prenotationDao.deletePrenotation(p);
+                }
+            }
+            otherPool.close();
+        }
+    }
+
+    @Test
+    public void testSeatHolds() {
+        ScreeningKey screening = new ScreeningKey("HLD1", "05/01/2030", "17:00", "Sala 1");
+        SeatHoldService first = new SeatHoldService(connectionPool, 60, 60);
+        ConnectionPool otherPool = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester"), 1);
+        SeatHoldService second = new SeatHoldService(otherPool, 60, 60);
+        try {
+            assertTrue(first.hold(screening, Arrays.asList("D1", "D2")).isEmpty());
+            assertEquals(Arrays.asList("D2"), second.hold(screening, Arrays.asList("D2", "D3")));
+            assertEquals(new HashSet<>(Arrays.asList("D1", "D2")), second.retrieveHeldByOthers(screening));
+            assertEquals(new HashSet<>(Arrays.asList("D3")), first.retrieveHeldByOthers(screening));
+
+            //Tenere di nuovo un proprio posto ne prolunga solo la scadenza
+            assertTrue(first.hold(screening, Arrays.asList("D1")).isEmpty());
+
+            first.release(screening, Arrays.asList("D2"));
+            assertTrue(second.hold(screening, Arrays.asList("D2")).isEmpty());
+
+            //Una postazione che ha smesso di prolungare i suoi posti li perde alla scadenza
+            SeatHoldService stopped = new SeatHoldService(connectionPool, -1, 60);
+            assertTrue(stopped.hold(screening, Arrays.asList("D9")).isEmpty());
+            assertFalse(first.retrieveHeldByOthers(screening).contains("D9"));
+            assertTrue(first.hold(screening, Arrays.asList("D9")).isEmpty());
+            stopped.close();
+        } finally {
+            first.close();
+            second.close();
+            otherPool.close();
+        }
+        assertTrue(first.retrieveHeldByOthers(screening).isEmpty());
+    }
+
+    @Test
+    public void testIdleSeatHoldsExpire() throws InterruptedException {
+        //Selettore abbandonato: dopo un secondo senza attività l'heartbeat smette di prolungare i posti, che scadono
+        ScreeningKey screening = new ScreeningKey("HLD2", "05/01/2030", "17:00", "Sala 1");
+        SeatHoldService abandoned = new SeatHoldService(connectionPool, 2, 1);
+        SeatHoldService other = new SeatHoldService(connectionPool, 60, 60);
+        try {
+            assertTrue(abandoned.hold(screening, Arrays.asList("E1")).isEmpty());
+            assertTrue(other.retrieveHeldByOthers(screening).contains("E1"));
+            Thread.sleep(3500);
+            assertFalse(other.retrieveHeldByOthers(screening).contains("E1"));
+        } finally {
+            abandoned.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void testPrenotationSeatMigration() throws SQLException {
+        executeUpdate("delete from " + DataReferences.DBNAME + ".DATA_MIGRATION");
+        String insert = "insert into " + DataReferences.DBNAME + ".PRENOTATION(NOMEUTENTE, NOMEFILM, CODICEFILM, GIORNOFILM, ORAFILM, SALAFILM, POSTISELEZIONATI, COSTOTOTALE) "
+                      + "values ('Mario', 'Film', 'MIG1', '06/01/2030', '21:00', 'Sala 1', ";
+        executeUpdate(insert + "'A1-A2', '15')");
+        executeUpdate(insert + "'A3', '7.5')");
+        executeUpdate(insert + "'A2 - A4', '15')");
+        executeUpdate(insert + "'A5', '7.5')");
+        PrenotationDao prenotationDao = new PrenotationDaoImpl(connectionPool);
+        prenotationDao.insertNewPrenotation(new Prenotation("Luigi", "Film", "MIG1", "06/01/2030", "21:00", "Sala 1", "A6", "7.5"));
+        try {
+            //Copia interrotta dopo il primo blocco: una nuova istanza riprende dal secondo
+            assertEquals(2, new PrenotationSeatMigrator(connectionPool, 2).migrateNextChunk());
+            assertEquals(4, countSeatReservations("MIG1"));
+            PrenotationSeatMigrator migrator = new PrenotationSeatMigrator(connectionPool, 2);
+            assertEquals(2, migrator.migrate());
+            assertEquals(2, migrator.getMigratedSeats());
+            assertEquals(1, migrator.getConflicts());
+            assertEquals(6, countSeatReservations("MIG1"));
+            assertEquals(0, new PrenotationSeatMigrator(connectionPool, 2).migrate());
+
+            try (DBConnection dbConnection = connectionPool.borrowConnection();
+                 ResultSet resultSet = dbConnection.getResultFromQuery("select TIPO_POSTO from " + DataReferences.DBNAME + ".SEAT_RESERVATION where CODICEFILM = 'MIG1' and NOME_POSTO = 'A1'")) {
+                assertTrue(resultSet.next());
+                assertEquals("NORMALE", resultSet.getString(1));
+            }
+
+            //Le prenotazioni copiate sono protette come le nuove
+            assertFalse(prenotationDao.reserve(new Prenotation("Luigi", "Film", "MIG1", "06/01/2030", "21:00", "Sala 1", "A4", "7.5")).isReserved());
+        } finally {
+            for(Prenotation p : prenotationDao.retrievePrenotationList()) {
+                if(p.getCodiceFilm().equals("MIG1")) {
+                    prenotationDao.deletePrenotation(p);
+                }
+            }
+        }
+        assertEquals(0, countSeatReservations("MIG1"));
+    }
+
+    @Test
+    public void testUniqueHallSeats() throws SQLException {
+        //Database alla versione precedente, con un posto salvato due volte prima del controllo sui nomi
+        ConnectionPool oldPool = new ConnectionPool(new EmbeddedDBBackend("jdbc:h2:mem:dbtester-v13"), 2);
+        try {
+            List<String> scripts = DataReferences.DBMIGRATIONS;
+            int v13 = scripts.indexOf("V13__unique_hall_seats.sql");
+            new SchemaMigrator(oldPool, "/db/migration/", scripts.subList(0, v13), 0).migrate();
+            try (DBConnection dbConnection = oldPool.borrowConnection();
+                 PreparedStatement ps = dbConnection.getPreparedStatementFromQuery("insert into " + DataReferences.DBNAME + ".MAPS(NOME_SALA,NOME_POSTO,COORD_X, COORD_Y, TIPO_POSTO) values (?,?,?,?,?)")) {
+                Object[][] rows = { {"A1", 50, 10}, {"A1", 10, 10}, {"A2", 90, 10} };
+                for(Object[] row : rows) {
+                    ps.setString(1, "Sala 1");
+                    ps.setString(2, (String)row[0]);
+                    ps.setInt(3, (Integer)row[1]);
+                    ps.setInt(4, (Integer)row[2]);
+                    ps.setString(5, "NORMALE");
+                    ps.execute();
+                }
+            }
+
+            assertEquals(scripts.size() - v13, new SchemaMigrator(oldPool).migrate());
+            try (DBConnection dbConnection = oldPool.borrowConnection()) {
+                try (ResultSet resultSet = dbConnection.getResultFromQuery("select count(*) from " + DataReferences.DBNAME + ".MAPS_DUPLICATE")) {
+                    resultSet.next();
+                    assertEquals(2, resultSet.getInt(1));
+                }
+                try (ResultSet resultSet = dbConnection.getResultFromQuery("select COORD_X from " + DataReferences.DBNAME + ".MAPS where NOME_POSTO = 'A1'")) {
+                    assertTrue(resultSet.next());
+                    assertEquals(10, resultSet.getInt(1));
+                    assertFalse(resultSet.next());
+                }
+                try (PreparedStatement ps = dbConnection.getPreparedStatementFromQuery("insert into " + DataReferences.DBNAME + ".MAPS(NOME_SALA,NOME_POSTO,COORD_X, COORD_Y, TIPO_POSTO) values ('Sala 1','A2',0,0,'NORMALE')")) {
+                    ps.execute();
+                    fail();
+                } catch (SQLException expected) {
+                }
+            }
+        } finally {
+            oldPool.close();
+        }
+    }
+
+    private int countSeatReservations(String movieCode) throws SQLException {
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             ResultSet resultSet = dbConnection.getResultFromQuery("select count(*) from " + DataReferences.DBNAME + ".SEAT_RESERVATION where CODICEFILM = '" + movieCode + "'")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void executeUpdate(String query) throws SQLException {
+        try (DBConnection dbConnection = connectionPool.borrowConnection();
+             PreparedStatement ps = dbConnection.getPreparedStatementFromQuery(query)) {
+            ps.execute();
+        }
+    }
 }